@@ -0,0 +1,122 @@
+package de.grogra.numeric.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.math.ode.FirstOrderDifferentialEquations;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.grogra.numeric.CVodeAdapter;
+import de.grogra.numeric.CVodeBackend;
+
+/**
+ * Compares the cost of a RHS callback between the JNA and the
+ * java.lang.foreign backend of the CVODE bindings.
+ * 
+ * Each operation integrates a cheap linear decay problem, so the time is
+ * dominated by crossing between native code and Java. The auxiliary counter
+ * rhsCalls reports the number of callbacks per operation; dividing the score
+ * by it gives the cost per callback. The benchmark rate calls the equations
+ * directly from Java, its score is the part of a callback that is not
+ * overhead (it does not depend on the backend).
+ * 
+ * The FFM backend must be run on Java 22 or later with a build of fdm that
+ * includes it, the native libraries must be found on java.library.path (FFM)
+ * and jna.library.path (JNA).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CallbackOverheadBenchmark {
+
+	@Param({ "JNA", "FFM" })
+	public String backend;
+
+	@Param({ "1", "100", "10000" })
+	public int dimension;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Calls {
+		public long rhsCalls;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			rhsCalls = 0;
+		}
+	}
+
+	CVodeAdapter solver;
+	double[] y0;
+	double[] y;
+	Decay ode;
+
+	// dy/dt = -y, counts evaluations
+	static class Decay implements FirstOrderDifferentialEquations {
+		final int n;
+		long calls;
+
+		Decay(int n) {
+			this.n = n;
+		}
+
+		public int getDimension() {
+			return n;
+		}
+
+		public void computeDerivatives(double t, double[] y, double[] yDot) {
+			calls++;
+			for (int i = 0; i < n; i++) {
+				yDot[i] = -y[i];
+			}
+		}
+	}
+
+	@Setup
+	public void setUp() {
+		solver = CVodeBackend.valueOf(backend).createAdapter();
+		solver.setAbsTolDefault(1e-8);
+		solver.setRelTolDefault(1e-8);
+		// the Jacobian is diagonal, a dense one would measure LU instead of callbacks
+		solver.setLinearSolver(CVodeAdapter.LinearSolver.BAND);
+		solver.setBandwidths(0, 0);
+		ode = new Decay(dimension);
+		y0 = new double[dimension];
+		java.util.Arrays.fill(y0, 1);
+		y = new double[dimension];
+	}
+
+	@TearDown
+	public void tearDown() {
+		solver.close();
+	}
+
+	@Benchmark
+	public double integrate(Calls calls) throws Exception {
+		long before = ode.calls;
+		double t = solver.integrate(ode, 0, y0, 10, y);
+		calls.rhsCalls += ode.calls - before;
+		return t + y[0];
+	}
+
+	@Benchmark
+	public double[] rate() throws Exception {
+		ode.computeDerivatives(0, y0, y);
+		return y;
+	}
+}
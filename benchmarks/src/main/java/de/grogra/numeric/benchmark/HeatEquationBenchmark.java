@@ -0,0 +1,71 @@
+package de.grogra.numeric.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.grogra.numeric.ODE;
+import de.grogra.numeric.Solver;
+
+/**
+ * Integrates the method-of-lines discretisation of the heat equation on a
+ * line and on a square with a growing number of points per axis, so the
+ * problem gets larger and stiffer at the same time. Implicit solvers use
+ * the band linear solver with the bandwidths of the stencil, which is the
+ * number of points per axis in 2D.
+ *
+ * CVODE needs the native libraries on jna.library.path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeatEquationBenchmark {
+
+	@Param({ "CVODE", "DOPRI853", "BDF", "RODAS4", "SWITCHING" })
+	public String solver;
+
+	@Param({ "HEAT_1D", "HEAT_2D" })
+	public Problem problem;
+
+	// points per axis
+	@Param({ "16", "32", "64", "128" })
+	public int size;
+
+	Solver s;
+	ODE ode;
+	double[] y0;
+	double[] y;
+
+	@Setup
+	public void setUp() {
+		s = Solvers.create(solver, true);
+		ode = problem.create(size);
+		y0 = problem.getInitialState(size);
+		y = new double[y0.length];
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		Solvers.close(s);
+	}
+
+	@Benchmark
+	public double integrate() throws Exception {
+		s.integrate(ode, 0, y0, problem.getEndTime(), y);
+		return y[y.length / 2];
+	}
+}
@@ -0,0 +1,111 @@
+package de.grogra.numeric.benchmark;
+
+import static de.grogra.numeric.cvode.N_Vec_Serial.N_VDestroy_Serial;
+import static de.grogra.numeric.cvode.N_Vec_Serial.N_VNew_Serial;
+
+import java.nio.DoubleBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+
+import de.grogra.numeric.cvode.N_Vector;
+import de.grogra.numeric.cvode.N_VectorCache;
+
+/**
+ * Measures the ways the callbacks move a state between a serial N_Vector
+ * and Java: the N_Vector structure element by element and as a whole
+ * array, the N_VectorCache used for raw pointers, and direct access to
+ * the buffer on native memory used for {@linkplain de.grogra.numeric.BufferODE}.
+ *
+ * Needs the native libraries on jna.library.path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NVectorBenchmark {
+
+	@Param({ "10", "1000", "100000" })
+	public int size;
+
+	N_Vector v;
+	Pointer p;
+	N_VectorCache cache;
+	double[] a;
+
+	@Setup
+	public void setUp() {
+		v = N_VNew_Serial(new NativeLong(size));
+		p = v.getPointer();
+		cache = new N_VectorCache();
+		a = new double[size];
+		for (int i = 0; i < size; i++) {
+			a[i] = i;
+		}
+		v.set(a);
+	}
+
+	@TearDown
+	public void tearDown() {
+		N_VDestroy_Serial(v);
+	}
+
+	@Benchmark
+	public double structureGetElements() {
+		double s = 0;
+		for (int i = 0; i < size; i++) {
+			s += v.get(i);
+		}
+		return s;
+	}
+
+	@Benchmark
+	public double[] structureGet() {
+		v.get(a);
+		return a;
+	}
+
+	@Benchmark
+	public N_Vector structureSet() {
+		v.set(a);
+		return v;
+	}
+
+	@Benchmark
+	public double[] cacheGet() {
+		cache.get(p, a);
+		return a;
+	}
+
+	@Benchmark
+	public Pointer cacheSet() {
+		cache.set(p, a);
+		return p;
+	}
+
+	@Benchmark
+	public double bufferSum() {
+		DoubleBuffer b = cache.getBuffer(p);
+		double s = 0;
+		for (int i = 0; i < size; i++) {
+			s += b.get(i);
+		}
+		return s;
+	}
+}
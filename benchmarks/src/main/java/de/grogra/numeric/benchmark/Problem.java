@@ -0,0 +1,135 @@
+package de.grogra.numeric.benchmark;
+
+import java.util.Arrays;
+
+import de.grogra.numeric.ODE;
+import de.grogra.numeric.fdm.BoundaryCondition;
+import de.grogra.numeric.fdm.Grid;
+import de.grogra.numeric.fdm.MethodOfLines;
+
+/**
+ * Standard test problems of the benchmarks. The size is the number of
+ * equations of DECAY and the number of grid points per axis of the heat
+ * equations, the other problems have a fixed dimension.
+ *
+ * Van der Pol is written in the scaled form of Hairer and Wanner,
+ * y1' = y2, y2' = ((1 - y1^2) y2 - y1) mu^-2, so that the end time covers
+ * about one period for every mu while the stiffness grows with mu^2.
+ */
+public enum Problem {
+
+	/** y' = -y, not stiff */
+	DECAY(0, 10),
+	VAN_DER_POL_1(1, 2),
+	VAN_DER_POL_10(10, 2),
+	VAN_DER_POL_100(100, 2),
+	/** chemical kinetics of Robertson, stiff with eigenvalues down to -1e4 */
+	ROBERTSON(0, 40),
+	/** u_t = u_xx on (0,1) with zero boundary values */
+	HEAT_1D(0, 0.1),
+	/** u_t = u_xx + u_yy on (0,1)^2 with zero boundary values */
+	HEAT_2D(0, 0.1);
+
+	final double mu;
+	final double endTime;
+
+	Problem(double mu, double endTime) {
+		this.mu = mu;
+		this.endTime = endTime;
+	}
+
+	public double getEndTime() {
+		return endTime;
+	}
+
+	/**
+	 * Return the number of equations for the given size.
+	 * @param size
+	 * @return
+	 */
+	public int getDimension(int size) {
+		switch (this) {
+		case DECAY:
+		case HEAT_1D:
+			return size;
+		case HEAT_2D:
+			return size * size;
+		case ROBERTSON:
+			return 3;
+		default:
+			return 2;
+		}
+	}
+
+	/**
+	 * Create the equations for the given size.
+	 * @param size
+	 * @return
+	 */
+	public ODE create(int size) {
+		switch (this) {
+		case DECAY:
+			return (rate, t, y) -> {
+				for (int i = 0; i < rate.length; i++) {
+					rate[i] = -y[i];
+				}
+			};
+		case ROBERTSON:
+			return (rate, t, y) -> {
+				rate[0] = -0.04 * y[0] + 1e4 * y[1] * y[2];
+				rate[2] = 3e7 * y[1] * y[1];
+				rate[1] = -rate[0] - rate[2];
+			};
+		case HEAT_1D:
+			return heat(Grid.line(size, 1.0 / (size + 1), 1));
+		case HEAT_2D:
+			return heat(Grid.plane(size, size, 1.0 / (size + 1), 1.0 / (size + 1), 1));
+		default:
+			final double eps = 1 / (mu * mu);
+			return (rate, t, y) -> {
+				rate[0] = y[1];
+				rate[1] = ((1 - y[0] * y[0]) * y[1] - y[0]) / eps;
+			};
+		}
+	}
+
+	static MethodOfLines heat(Grid grid) {
+		MethodOfLines mol = new MethodOfLines(grid).addDiffusion(0, 1);
+		mol.setBoundary(BoundaryCondition.dirichlet(0));
+		return mol;
+	}
+
+	/**
+	 * Return the initial state for the given size.
+	 * @param size
+	 * @return
+	 */
+	public double[] getInitialState(int size) {
+		double[] y = new double[getDimension(size)];
+		switch (this) {
+		case DECAY:
+			Arrays.fill(y, 1);
+			break;
+		case ROBERTSON:
+			y[0] = 1;
+			break;
+		case HEAT_1D:
+			for (int i = 0; i < size; i++) {
+				y[i] = Math.sin(Math.PI * (i + 1) / (size + 1));
+			}
+			break;
+		case HEAT_2D:
+			for (int j = 0; j < size; j++) {
+				for (int i = 0; i < size; i++) {
+					y[j * size + i] = Math.sin(Math.PI * (i + 1) / (size + 1))
+							* Math.sin(Math.PI * (j + 1) / (size + 1));
+				}
+			}
+			break;
+		default:
+			y[0] = 2;
+			y[1] = -2.0 / 3;
+		}
+		return y;
+	}
+}
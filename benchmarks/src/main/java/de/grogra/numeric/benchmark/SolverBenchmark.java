@@ -0,0 +1,75 @@
+package de.grogra.numeric.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.grogra.numeric.ODE;
+import de.grogra.numeric.Solver;
+
+/**
+ * Integrates the small standard problems with every solver, to pick a
+ * solver per kind of model and to catch regressions of the adapters.
+ * Explicit solvers take many steps on the stiff problems (Van der Pol
+ * with large mu, Robertson), which is the point of the comparison.
+ * ADAMS_MOULTON is left out of the default matrix because it does not
+ * finish VAN_DER_POL_100 and ROBERTSON in reasonable time, select it with
+ * -p solver=ADAMS_MOULTON -p problem=DECAY,VAN_DER_POL_1,VAN_DER_POL_10.
+ * Restrict the matrix with -p, e.g. -p solver=CVODE,BDF.
+ *
+ * CVODE and CVODE_ORIGINAL need the native libraries on jna.library.path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SolverBenchmark {
+
+	@Param({ "CVODE", "CVODE_ORIGINAL", "DOPRI853", "DOPRI54", "GBS", "BDF", "RODAS4",
+			"SWITCHING" })
+	public String solver;
+
+	@Param({ "DECAY", "VAN_DER_POL_1", "VAN_DER_POL_10", "VAN_DER_POL_100", "ROBERTSON" })
+	public Problem problem;
+
+	// number of equations of DECAY
+	@Param({ "10" })
+	public int size;
+
+	Solver s;
+	ODE ode;
+	double[] y0;
+	double[] y;
+
+	@Setup
+	public void setUp() {
+		s = Solvers.create(solver, false);
+		ode = problem.create(size);
+		y0 = problem.getInitialState(size);
+		y = new double[y0.length];
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		Solvers.close(s);
+	}
+
+	@Benchmark
+	public double integrate() throws Exception {
+		s.integrate(ode, 0, y0, problem.getEndTime(), y);
+		return y[0];
+	}
+}
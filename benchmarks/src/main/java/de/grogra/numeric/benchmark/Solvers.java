@@ -0,0 +1,108 @@
+package de.grogra.numeric.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.math.ode.nonstiff.AdamsMoultonIntegrator;
+import org.apache.commons.math.ode.nonstiff.AdaptiveStepsizeIntegrator;
+import org.apache.commons.math.ode.nonstiff.DormandPrince54Integrator;
+import org.apache.commons.math.ode.nonstiff.DormandPrince853Integrator;
+import org.apache.commons.math.ode.nonstiff.GraggBulirschStoerIntegrator;
+
+import de.grogra.numeric.BDFSolver;
+import de.grogra.numeric.CVodeAdapter;
+import de.grogra.numeric.CVodeAdapterOriginal;
+import de.grogra.numeric.FirstOrderIntegratorAdapter;
+import de.grogra.numeric.RosenbrockSolver;
+import de.grogra.numeric.Solver;
+import de.grogra.numeric.StiffSolver;
+import de.grogra.numeric.SwitchingSolver;
+
+/**
+ * Creates the solvers compared by the benchmarks, all with relative
+ * tolerance {@value #REL_TOL} and absolute tolerance {@value #ABS_TOL}
+ * (CVODE_ORIGINAL has fixed tolerances). Names are
+ * CVODE, CVODE_ORIGINAL, DOPRI853, DOPRI54, GBS, ADAMS_MOULTON, BDF,
+ * RODAS4 and SWITCHING.
+ */
+final class Solvers {
+
+	static final double REL_TOL = 1e-6;
+	static final double ABS_TOL = 1e-8;
+	static final double INITIAL_STEP = 1e-6;
+
+	private Solvers() {
+	}
+
+	/**
+	 * Create the solver of the given name. Band selects the band linear
+	 * solver of the implicit methods, with the bandwidths reported by the
+	 * equations.
+	 * @param name
+	 * @param band
+	 * @return
+	 */
+	static Solver create(String name, boolean band) {
+		Solver s;
+		switch (name) {
+		case "CVODE": {
+			CVodeAdapter cvode = new CVodeAdapter();
+			cvode.setRelTolDefault(REL_TOL);
+			cvode.setAbsTolDefault(ABS_TOL);
+			s = new FirstOrderIntegratorAdapter(cvode);
+			break;
+		}
+		case "CVODE_ORIGINAL":
+			s = new CVodeAdapterOriginal();
+			break;
+		case "DOPRI853":
+			s = commons(new DormandPrince853Integrator(0, Double.POSITIVE_INFINITY, ABS_TOL, REL_TOL));
+			break;
+		case "DOPRI54":
+			s = commons(new DormandPrince54Integrator(0, Double.POSITIVE_INFINITY, ABS_TOL, REL_TOL));
+			break;
+		case "GBS":
+			s = commons(new GraggBulirschStoerIntegrator(0, Double.POSITIVE_INFINITY, ABS_TOL, REL_TOL));
+			break;
+		case "ADAMS_MOULTON":
+			s = commons(new AdamsMoultonIntegrator(4, 0, Double.POSITIVE_INFINITY, ABS_TOL, REL_TOL));
+			break;
+		case "BDF":
+			s = stiff(new BDFSolver());
+			break;
+		case "RODAS4":
+			s = stiff(new RosenbrockSolver(RosenbrockSolver.Method.RODAS4));
+			break;
+		case "SWITCHING":
+			s = stiff(new SwitchingSolver());
+			break;
+		default:
+			throw new IllegalArgumentException("unknown solver " + name);
+		}
+		if (band) {
+			Map<Object, Object> options = new HashMap<>();
+			options.put(CVodeAdapter.Options.LINEAR_SOLVER, CVodeAdapter.LinearSolver.BAND);
+			s.setOptions(options);
+		}
+		return s;
+	}
+
+	// the initial step estimate of Commons Math overflows on stiff Van der Pol,
+	// after which the integrator loops forever on NaN, so start small instead
+	static Solver commons(AdaptiveStepsizeIntegrator integrator) {
+		integrator.setInitialStepSize(INITIAL_STEP);
+		return new FirstOrderIntegratorAdapter(integrator);
+	}
+
+	static Solver stiff(StiffSolver solver) {
+		solver.setRelTolDefault(REL_TOL);
+		solver.setAbsTolDefault(ABS_TOL);
+		return solver;
+	}
+
+	static void close(Solver s) throws Exception {
+		if (s instanceof AutoCloseable) {
+			((AutoCloseable) s).close();
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package de.grogra.numeric.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.grogra.numeric.BDFSolver;
+import de.grogra.numeric.CVodeAdapter;
+import de.grogra.numeric.FirstOrderIntegratorAdapter;
+import de.grogra.numeric.RosenbrockSolver;
+import de.grogra.numeric.Solver;
+import de.grogra.numeric.fdm.BoundaryCondition;
+import de.grogra.numeric.fdm.Grid;
+import de.grogra.numeric.fdm.MethodOfLines;
+
+/**
+ * Compares the pure-Java BDF and Rosenbrock solvers with CVODE on a stiff
+ * reaction-diffusion problem, the method-of-lines discretisation of
+ * u_t = u_xx - u^2 on a line. All use the band linear solver with the
+ * bandwidths of the stencil.
+ *
+ * CVODE needs the native libraries on jna.library.path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StiffSolverBenchmark {
+
+	@Param({ "BDF", "RODAS4", "CVODE" })
+	public String solver;
+
+	@Param({ "100", "1000" })
+	public int dimension;
+
+	Solver s;
+	MethodOfLines ode;
+	double[] y0;
+	double[] y;
+
+	@Setup
+	public void setUp() throws Exception {
+		Grid grid = Grid.line(dimension, 1.0 / dimension, 1);
+		ode = new MethodOfLines(grid).addDiffusion(0, 1);
+		ode.setBoundary(BoundaryCondition.dirichlet(1));
+		ode.setReaction((out, t, state, offset) -> out[offset] = -state[offset] * state[offset]);
+
+		Map<Object, Object> options = new HashMap<>();
+		options.put(CVodeAdapter.Options.LINEAR_SOLVER, CVodeAdapter.LinearSolver.BAND);
+		if ("BDF".equals(solver)) {
+			BDFSolver bdf = new BDFSolver();
+			bdf.setRelTolDefault(1e-6);
+			bdf.setAbsTolDefault(1e-8);
+			s = bdf;
+		} else if ("RODAS4".equals(solver)) {
+			RosenbrockSolver rodas = new RosenbrockSolver(RosenbrockSolver.Method.RODAS4);
+			rodas.setRelTolDefault(1e-6);
+			rodas.setAbsTolDefault(1e-8);
+			rodas.setAutonomous(true);
+			s = rodas;
+		} else {
+			CVodeAdapter cvode = new CVodeAdapter();
+			cvode.setRelTolDefault(1e-6);
+			cvode.setAbsTolDefault(1e-8);
+			s = new FirstOrderIntegratorAdapter(cvode);
+		}
+		s.setOptions(options);
+		y0 = new double[dimension];
+		y = new double[dimension];
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		if (s instanceof AutoCloseable) {
+			((AutoCloseable) s).close();
+		}
+	}
+
+	@Benchmark
+	public double integrate() throws Exception {
+		s.integrate(ode, 0, y0, 1, y);
+		return y[dimension / 2];
+	}
+}
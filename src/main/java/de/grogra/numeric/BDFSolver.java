@@ -0,0 +1,369 @@
+package de.grogra.numeric;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A variable-order, variable-step BDF solver for stiff equations written in
+ * Java, so that it runs without the native SUNDIALS libraries and the JIT
+ * can inline the rate of the equations into the solver.
+ *
+ * The method follows LSODE: the history is kept as Nordsieck array
+ * z[j] = h^j y^(j) / j! of orders 1 to 5, step size changes rescale the
+ * array, and step size and order are chosen from the estimated local errors
+ * of the orders q-1, q and q+1 after q+1 steps at constant step size.
+ * The corrector is solved by a modified Newton iteration with the matrix
+ * I - gamma*J, which is only refactored if gamma changed considerably.
+ * Jacobian and linear solver are set up as described for
+ * {@linkplain StiffSolver}.
+ */
+public class BDFSolver extends StiffSolver {
+
+	public static final int MAX_ORDER = 5;
+
+	// corrector coefficients l[q][j] for constant steps, normalized to l[q][1] = 1
+	static final double[][] L = new double[MAX_ORDER + 2][];
+	// local error of order q is C[q] * h^(q+1) y^(q+1)
+	static final double[] C = new double[MAX_ORDER + 2];
+	static final double[] FACTORIAL = new double[MAX_ORDER + 2];
+
+	static {
+		FACTORIAL[0] = 1;
+		for (int q = 1; q <= MAX_ORDER + 1; q++) {
+			// coefficients of prod_{i=1}^{q} (1 + x/i)
+			double[] l = new double[q + 1];
+			l[0] = 1;
+			for (int i = 1; i <= q; i++) {
+				for (int j = i; j >= 1; j--) {
+					l[j] += l[j - 1] / i;
+				}
+			}
+			double s = l[1];
+			for (int j = 0; j <= q; j++) {
+				l[j] /= s;
+			}
+			L[q] = l;
+			C[q] = l[0] / (q + 1);
+			FACTORIAL[q] = FACTORIAL[q - 1] * q;
+		}
+	}
+
+	// maximum number of failures of a single step
+	static final int MAX_CONVERGENCE_FAILURES = 10;
+	static final int MAX_ERROR_TEST_FAILURES = 7;
+	// number of Newton iterations per attempt
+	static final int MAX_ITERATIONS = 3;
+	// the Newton iteration must converge to this fraction of the error test
+	static final double NEWTON_TOLERANCE = 0.1;
+	// the Newton matrix is refactored after this many steps or relative change of gamma
+	static final int MAX_STEPS_BETWEEN_SETUPS = 20;
+	static final double MAX_GAMMA_CHANGE = 0.3;
+	// the Jacobian is reevaluated after this many steps
+	static final int MAX_STEPS_BETWEEN_JACOBIANS = 50;
+
+	int maxOrder = MAX_ORDER;
+
+	// Nordsieck array and its copy before prediction
+	double[][] z = new double[0][];
+	double[][] zSave = new double[0][];
+	double[] acor, acorPrev, delta, f, y;
+
+	// current order
+	int q;
+	// steps to wait before step size or order may change
+	int wait;
+	double gamma;
+	double gammaFactored;
+	int stepsSinceSetup;
+	int stepsSinceJacobian;
+	boolean jacobianCurrent;
+	boolean jacobianNeeded;
+	double crate;
+
+	@Override
+	void start(double[] y0, double t1, double dir) {
+		// start with backward Euler
+		final int N = y0.length;
+		q = 1;
+		wait = 2;
+		System.arraycopy(y0, 0, z[0], 0, N);
+		rate(f, t, z[0]);
+		weights(z[0]);
+		h = dir * initialStep(z[0], f, t1, dir, 1, delta);
+		for (int i = 0; i < N; i++) {
+			z[1][i] = h * f[i];
+		}
+		jacobianNeeded = true;
+		stepsSinceSetup = 0;
+		stepsSinceJacobian = 0;
+		crate = 1;
+	}
+
+	@Override
+	void init(ODE ode, int N) throws NumericException {
+		super.init(ode, N);
+		if (z.length == 0 || z[0].length != N) {
+			z = new double[MAX_ORDER + 1][N];
+			zSave = new double[MAX_ORDER + 1][N];
+			acor = new double[N];
+			acorPrev = new double[N];
+			delta = new double[N];
+			f = new double[N];
+			y = new double[N];
+		}
+	}
+
+	// take one step from t with step size h, adapting h on failures
+	@Override
+	void step() throws NumericException {
+		final int N = acor.length;
+		int convergenceFails = 0;
+		int errorFails = 0;
+		weights(z[0]);
+		while (true) {
+			for (int j = 0; j <= q; j++) {
+				System.arraycopy(z[j], 0, zSave[j], 0, N);
+			}
+			// predict by the Pascal triangle
+			for (int k = 1; k <= q; k++) {
+				for (int j = q; j >= k; j--) {
+					final double[] a = z[j - 1], b = z[j];
+					for (int i = 0; i < N; i++) {
+						a[i] += b[i];
+					}
+				}
+			}
+			final double tn = t + h;
+			if (tn == t)
+				throw new NumericException("step size " + h + " too small at t = " + t);
+
+			if (!correct(tn)) {
+				restore();
+				convergenceFailures++;
+				if (++convergenceFails >= MAX_CONVERGENCE_FAILURES)
+					throw new NumericException("corrector failed to converge repeatedly at t = " + t);
+				if (!jacobianCurrent) {
+					// retry with a new Jacobian first
+					jacobianNeeded = true;
+				} else {
+					rescale(0.25);
+				}
+				continue;
+			}
+
+			final double err = FACTORIAL[q] * L[q][q] / (q + 1) * norm(acor);
+			if (err > 1) {
+				restore();
+				errorTestFailures++;
+				if (++errorFails >= MAX_ERROR_TEST_FAILURES)
+					throw new NumericException("error test failed repeatedly at t = " + t);
+				double eta;
+				if (errorFails >= 3) {
+					// restart at order 1 from the current state
+					if (q > 1) {
+						q = 1;
+					}
+					eta = 0.1;
+				} else {
+					eta = Math.max(0.1, Math.min(0.9, 1 / (Math.pow(1.2 * err, 1.0 / (q + 1)) + 1e-6)));
+				}
+				rescale(eta);
+				wait = q + 1;
+				continue;
+			}
+
+			// accept step
+			final double[] l = L[q];
+			for (int j = 0; j <= q; j++) {
+				final double c = l[j] / l[0];
+				final double[] zj = z[j];
+				for (int i = 0; i < N; i++) {
+					zj[i] += c * acor[i];
+				}
+			}
+			t = tn;
+			stepCount++;
+			stepsSinceSetup++;
+			stepsSinceJacobian++;
+			jacobianCurrent = false;
+			if (--wait > 0) {
+				if (wait == 1 && q < maxOrder) {
+					System.arraycopy(acor, 0, acorPrev, 0, N);
+				}
+			} else {
+				adapt(err);
+			}
+			return;
+		}
+	}
+
+	// choose step size and order for the next step after an accepted step with error err
+	void adapt(double err) {
+		final int N = acor.length;
+		double eta = 1 / (Math.pow(1.2 * err, 1.0 / (q + 1)) + 1e-6);
+		int newq = q;
+		if (q > 1) {
+			double errDown = C[q - 1] * FACTORIAL[q] * norm(z[q]);
+			double etaDown = 1 / (Math.pow(1.3 * errDown, 1.0 / q) + 1e-6);
+			if (etaDown > eta) {
+				eta = etaDown;
+				newq = q - 1;
+			}
+		}
+		if (q < maxOrder) {
+			final double d = FACTORIAL[q] * L[q][q] / L[q][0];
+			for (int i = 0; i < N; i++) {
+				delta[i] = d * (acor[i] - acorPrev[i]);
+			}
+			double errUp = C[q + 1] * norm(delta);
+			double etaUp = 1 / (Math.pow(1.4 * errUp, 1.0 / (q + 2)) + 1e-6);
+			if (etaUp > eta) {
+				eta = etaUp;
+				newq = q + 1;
+			}
+		}
+		if (eta < 1.1) {
+			// not worth a change
+			wait = 3;
+			return;
+		}
+		if (newq > q) {
+			// h^(q+1) y^(q+1) / (q+1)! from the last correction
+			final double c = L[q][q] / (L[q][0] * (q + 1));
+			final double[] zq = z[q + 1];
+			for (int i = 0; i < N; i++) {
+				zq[i] = c * acor[i];
+			}
+		}
+		q = newq;
+		rescale(Math.min(eta, 10));
+		wait = q + 1;
+	}
+
+	// solve the corrector equation by modified Newton iteration, returns false if it failed
+	boolean correct(double tn) {
+		final int N = acor.length;
+		final double l0 = L[q][0];
+		gamma = h * l0;
+		rate(f, tn, z[0]);
+		if (jacobianNeeded || stepsSinceJacobian >= MAX_STEPS_BETWEEN_JACOBIANS) {
+			evaluateJacobian(tn, z[0], f);
+			jacobianCurrent = true;
+			jacobianNeeded = false;
+			stepsSinceJacobian = 0;
+			stepsSinceSetup = MAX_STEPS_BETWEEN_SETUPS;
+		}
+		if (stepsSinceSetup >= MAX_STEPS_BETWEEN_SETUPS
+				|| Math.abs(gamma / gammaFactored - 1) > MAX_GAMMA_CHANGE) {
+			M.setIdentityMinus(gamma, J);
+			factorCount++;
+			stepsSinceSetup = 0;
+			gammaFactored = gamma;
+			crate = 1;
+			if (!M.factor()) {
+				// force a new Jacobian or a smaller step
+				gammaFactored = Double.NaN;
+				stepsSinceSetup = MAX_STEPS_BETWEEN_SETUPS;
+				return false;
+			}
+		}
+		// correct for the difference between gamma and the factored one
+		final double scale = 2 / (1 + gamma / gammaFactored);
+
+		final double[] z0 = z[0], z1 = z[1];
+		Arrays.fill(acor, 0);
+		double delp = 0;
+		for (int m = 0;; m++) {
+			for (int i = 0; i < N; i++) {
+				delta[i] = gamma * f[i] - l0 * z1[i] - acor[i];
+			}
+			M.solve(delta);
+			if (scale != 1) {
+				for (int i = 0; i < N; i++) {
+					delta[i] *= scale;
+				}
+			}
+			final double del = norm(delta);
+			for (int i = 0; i < N; i++) {
+				acor[i] += delta[i];
+				y[i] = z0[i] + acor[i];
+			}
+			if (m > 0) {
+				crate = Math.max(0.3 * crate, del / delp);
+			}
+			double dcon = del * Math.min(1, crate) * FACTORIAL[q] * L[q][q] / (q + 1) / NEWTON_TOLERANCE;
+			if (dcon <= 1) {
+				return true;
+			}
+			if (m + 1 >= MAX_ITERATIONS || (m > 0 && del > 2 * delp)) {
+				if (!jacobianCurrent) {
+					stepsSinceSetup = MAX_STEPS_BETWEEN_SETUPS;
+				}
+				return false;
+			}
+			delp = del;
+			rate(f, tn, y);
+		}
+	}
+
+	// undo the prediction after a failed attempt
+	void restore() {
+		for (int j = 0; j <= q; j++) {
+			System.arraycopy(zSave[j], 0, z[j], 0, acor.length);
+		}
+	}
+
+	// change step size by factor eta, keeping it within maxStep
+	void rescale(double eta) {
+		if (Math.abs(h * eta) > maxStep) {
+			eta = maxStep / Math.abs(h);
+		}
+		h *= eta;
+		double r = 1;
+		for (int j = 1; j <= q; j++) {
+			r *= eta;
+			final double[] zj = z[j];
+			for (int i = 0; i < zj.length; i++) {
+				zj[i] *= r;
+			}
+		}
+	}
+
+	// evaluate the interpolating polynomial of the Nordsieck array at time tout
+	@Override
+	void interpolate(double[] out, double tout) {
+		final int N = out.length;
+		final double s = (tout - t) / h;
+		System.arraycopy(z[q], 0, out, 0, N);
+		for (int j = q - 1; j >= 0; j--) {
+			final double[] zj = z[j];
+			for (int i = 0; i < N; i++) {
+				out[i] = out[i] * s + zj[i];
+			}
+		}
+	}
+
+	/**
+	 * Supports the key MAX_ORDER of {@linkplain CVodeAdapter.Options} in
+	 * addition to those of {@linkplain StiffSolver#setOptions(Map)}.
+	 */
+	@Override
+	public void setOptions(Map options) {
+		super.setOptions(options);
+		Object value = options.get(CVodeAdapter.Options.MAX_ORDER);
+		if (value != null) {
+			int order = CVodeOptions.number(CVodeAdapter.Options.MAX_ORDER, value).intValue();
+			setMaxOrder(order != 0 ? order : MAX_ORDER);
+		}
+	}
+
+	public int getMaxOrder() {
+		return maxOrder;
+	}
+
+	public void setMaxOrder(int maxOrder) {
+		if (maxOrder < 1 || maxOrder > MAX_ORDER)
+			throw new IllegalArgumentException("order must be between 1 and " + MAX_ORDER);
+		this.maxOrder = maxOrder;
+	}
+}
@@ -0,0 +1,104 @@
+package de.grogra.numeric;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * A dense or band matrix stored column by column in a DoubleBuffer,
+ * which may refer to native memory. This is the layout of SUNDIALS: each
+ * column occupies ldim elements. For a dense matrix ldim is N and element
+ * (i,j) is stored at index j*N + i. For a band matrix element (i,j) is
+ * stored at index j*ldim + i-j+smu, where smu is the stored upper bandwidth,
+ * which may exceed the upper bandwidth to leave room for the LU factorization.
+ */
+public class BufferJacobianMatrix implements JacobianMatrix {
+
+	final DoubleBuffer data;
+	final int N;
+	final int ldim;
+	final int smu;
+	// element (i,j) is found at j*stride + i + smu
+	final int stride;
+	final int mu;
+	final int ml;
+
+	/**
+	 * Create a view on a dense matrix of size N x N.
+	 * @param data
+	 * @param N
+	 */
+	public BufferJacobianMatrix(DoubleBuffer data, int N) {
+		this(data, N, N, 0, N - 1, N - 1, N);
+	}
+
+	/**
+	 * Create a view on a band matrix of size N x N.
+	 * @param data
+	 * @param N
+	 * @param ldim number of elements stored per column
+	 * @param smu stored upper bandwidth
+	 * @param mu upper bandwidth
+	 * @param ml lower bandwidth
+	 */
+	public BufferJacobianMatrix(DoubleBuffer data, int N, int ldim, int smu, int mu, int ml) {
+		this(data, N, ldim, smu, mu, ml, ldim - 1);
+	}
+
+	private BufferJacobianMatrix(DoubleBuffer data, int N, int ldim, int smu, int mu, int ml, int stride) {
+		if (data.capacity() < (long) N * ldim)
+			throw new IllegalArgumentException("buffer too small for matrix");
+		this.data = data;
+		this.N = N;
+		this.ldim = ldim;
+		this.smu = smu;
+		this.mu = mu;
+		this.ml = ml;
+		this.stride = stride;
+	}
+
+	@Override
+	public int getDimension() {
+		return N;
+	}
+
+	@Override
+	public int getUpperBandwidth() {
+		return mu;
+	}
+
+	@Override
+	public int getLowerBandwidth() {
+		return ml;
+	}
+
+	// return position of element (i,j) in data
+	private int index(int i, int j) {
+		if (i < 0 || j < 0 || i >= N || j >= N || j - i > mu || i - j > ml)
+			throw new IndexOutOfBoundsException("(" + i + "," + j + ") outside of matrix");
+		return j * stride + i + smu;
+	}
+
+	@Override
+	public double get(int i, int j) {
+		return data.get(index(i, j));
+	}
+
+	@Override
+	public void set(int i, int j, double value) {
+		data.put(index(i, j), value);
+	}
+
+	@Override
+	public void add(int i, int j, double value) {
+		int k = index(i, j);
+		data.put(k, data.get(k) + value);
+	}
+
+	/**
+	 * Set all stored elements to zero.
+	 */
+	public void clear() {
+		for (int k = 0, n = N * ldim; k < n; k++) {
+			data.put(k, 0);
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package de.grogra.numeric;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * Variant of {@linkplain ODE} that reads the state from and writes the
+ * rate to buffers instead of arrays.
+ * 
+ * Solvers that keep the state in native memory (like {@linkplain CVodeAdapter})
+ * pass direct buffers that are mapped onto their vectors, so the state does not
+ * have to be copied into a Java array and the rate back again for every evaluation.
+ * This matters for systems with a large number of components.
+ * 
+ * Elements must be accessed by absolute index, the buffers are only valid
+ * during the call of getRate.
+ */
+public interface BufferODE extends ODE {
+
+	/**
+	 * Calculate the rate (derivative of state) of the system
+	 * for a given time and state.
+	 * @param out provides memory for storing the rate
+	 * @param t current time
+	 * @param state current state
+	 */
+	void getRate(DoubleBuffer out, double t, DoubleBuffer state);
+
+	/**
+	 * Array-based evaluation for solvers that work on Java arrays.
+	 * Wraps the arrays and delegates to the buffer-based method.
+	 */
+	@Override
+	default void getRate(double[] out, double t, double[] state) {
+		getRate(DoubleBuffer.wrap(out), t, DoubleBuffer.wrap(state));
+	}
+}
@@ -1,26 +1,13 @@
 package de.grogra.numeric;
 
 //import static de.grogra.numeric.cvode.CVODE.CVDense;
-import static de.grogra.numeric.cvode.CVODE.CV_BDF;
-import static de.grogra.numeric.cvode.CVODE.CV_NEWTON;
-import static de.grogra.numeric.cvode.CVODE.CV_NORMAL;
-import static de.grogra.numeric.cvode.CVODE.CV_ROOT_RETURN;
-import static de.grogra.numeric.cvode.CVODE.CV_SUCCESS;
-import static de.grogra.numeric.cvode.CVODE.CV_TOO_MUCH_WORK;
-import static de.grogra.numeric.cvode.CVODE.CVode;
-import static de.grogra.numeric.cvode.CVODE.CVodeCreate;
-import static de.grogra.numeric.cvode.CVODE.CVodeFree;
-import static de.grogra.numeric.cvode.CVODE.CVodeGetReturnFlagName;
-import static de.grogra.numeric.cvode.CVODE.CVodeGetRootInfo;
-import static de.grogra.numeric.cvode.CVODE.CVodeInit;
-import static de.grogra.numeric.cvode.CVODE.CVodeRootInit;
-import static de.grogra.numeric.cvode.CVODE.CVodeSStolerances;
-import static de.grogra.numeric.cvode.CVODE.CVodeSVtolerances;
-import static de.grogra.numeric.cvode.N_Vec_Serial.N_VDestroy_Serial;
-import static de.grogra.numeric.cvode.N_Vec_Serial.N_VNew_Serial;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.commons.math.ode.DerivativeException;
 import org.apache.commons.math.ode.FirstOrderDifferentialEquations;
@@ -29,14 +16,7 @@ import org.apache.commons.math.ode.IntegratorException;
 import org.apache.commons.math.ode.events.EventHandler;
 import org.apache.commons.math.ode.sampling.StepHandler;
 
-import com.sun.jna.NativeLong;
 import com.sun.jna.Pointer;
-import com.sun.jna.ptr.DoubleByReference;
-import com.sun.jna.ptr.PointerByReference;
-
-import de.grogra.numeric.cvode.CVRhsFn;
-import de.grogra.numeric.cvode.CVRootFn;
-import de.grogra.numeric.cvode.N_Vector;
 
 /**
  * Wrapper to CVODE2 library.
@@ -45,30 +25,64 @@ import de.grogra.numeric.cvode.N_Vector;
  * 
  * requires 2 libraries ::> sundials_covde.dll + sundials_nvecserial.dll
  * 
+ * Equations implementing {@linkplain BufferODE} (or an ODE wrapped by
+ * FirstOrderDifferentialEquationsAdapter that does) are evaluated directly
+ * on the native state and rate vectors without copying.
+ * 
+ * Step handlers are called after every internal step of CVODE with a
+ * {@linkplain CVodeStepInterpolator}, which samples the dense output of
+ * the solver without further evaluations of the equations.
+ * 
+ * A whole grid of output times can be integrated in a single run of the
+ * solver into a preallocated buffer, see
+ * {@linkplain #integrate(FirstOrderDifferentialEquations, double, double[], double[], double[], Layout)}.
+ * 
+ * Long integrations can be saved as {@linkplain CVodeCheckpoint} and
+ * continued in another process without a cold start of the solver.
+ * 
  * based on CVodeAdapterOriginal.java by Reinhard Hemmerling
  * extended by Jonas Coussement 2016
  *
  */
-public class CVodeAdapter implements FirstOrderIntegrator {
-
-//	public enum Options {
-//		TEST
-//	}
-	
-	// TODO add this to Solver interface
-	// set additional options that affect behavior of the solver
-//	void setOptions(Map<Options, Object> options) {
-//		for (Map.Entry<Options, Object> e : options.entrySet()) {
-//			switch (e.getKey()) {
-//			case TEST:
-//				// TODO
-//				break;
-//
-//			default:
-//				break;
-//			}
-//		}
-//	}
+public class CVodeAdapter implements FirstOrderIntegrator, AutoCloseable {
+
+	/**
+	 * Keys of options accepted by {@linkplain #setOptions(Map)}.
+	 */
+	public enum Options {
+		/** linear solver for the Newton iteration, value is a {@linkplain LinearSolver} */
+		LINEAR_SOLVER,
+		/** upper bandwidth of the Jacobian, value is an Integer */
+		UPPER_BANDWIDTH,
+		/** lower bandwidth of the Jacobian, value is an Integer */
+		LOWER_BANDWIDTH,
+		/** maximum Krylov subspace dimension of iterative linear solvers, value is an Integer */
+		KRYLOV_DIMENSION,
+		/** see {@linkplain CVodeOptions#setMaxSteps(long)}, value is a Number */
+		MAX_STEPS,
+		/** see {@linkplain CVodeOptions#setMaxStep(double)}, value is a Number */
+		MAX_STEP,
+		/** see {@linkplain CVodeOptions#setMinStep(double)}, value is a Number */
+		MIN_STEP,
+		/** see {@linkplain CVodeOptions#setInitialStep(double)}, value is a Number */
+		INITIAL_STEP,
+		/** see {@linkplain CVodeOptions#setMaxOrder(int)}, value is a Number */
+		MAX_ORDER,
+		/** see {@linkplain CVodeOptions#setStabilityLimitDetection(boolean)}, value is a Boolean */
+		STABILITY_LIMIT_DETECTION,
+		/** see {@linkplain CVodeOptions#setMaxStepsBetweenJacobians(long)}, value is a Number */
+		MAX_STEPS_BETWEEN_JACOBIANS,
+		/** see {@linkplain CVodeOptions#setMaxNonlinearIterations(int)}, value is a Number */
+		MAX_NONLINEAR_ITERATIONS,
+		/** see {@linkplain CVodeOptions#setMaxConvergenceFailures(int)}, value is a Number */
+		MAX_CONVERGENCE_FAILURES,
+		/** see {@linkplain CVodeOptions#setMaxErrorTestFailures(int)}, value is a Number */
+		MAX_ERROR_TEST_FAILURES,
+		/** see {@linkplain CVodeOptions#setNonlinearConvergenceCoefficient(double)}, value is a Number */
+		NONLINEAR_CONVERGENCE_COEFFICIENT,
+		/** see {@linkplain CVodeOptions#setLinearSolverTolerance(double)}, value is a Number */
+		LINEAR_SOLVER_TOLERANCE
+	}
 	
 	double absTolDefault = 1e-10;
 	double relTolDefault = 1e-10;
@@ -79,6 +93,73 @@ public class CVodeAdapter implements FirstOrderIntegrator {
 	int nrtfn;
 	Monitor monitor;
 	
+	/**
+	 * Linear solvers for the Newton iteration of the BDF method.
+	 */
+	public enum LinearSolver {
+		/** dense matrix, factorized by SUNDIALS itself */
+		DENSE,
+		/** dense matrix, factorized by LAPACK (requires SUNDIALS built with LAPACK) */
+		LAPACK_DENSE,
+		/** band matrix, factorized by SUNDIALS itself */
+		BAND,
+		/** band matrix, factorized by LAPACK (requires SUNDIALS built with LAPACK) */
+		LAPACK_BAND,
+		/** matrix-free GMRES, left preconditioning */
+		SPGMR,
+		/** matrix-free flexible GMRES, right preconditioning */
+		SPFGMR,
+		/** matrix-free Bi-CGStab, left preconditioning */
+		SPBCGS;
+
+		public boolean isBand() {
+			return this == BAND || this == LAPACK_BAND;
+		}
+
+		/**
+		 * Return true for matrix-free linear solvers, which use
+		 * {@linkplain JacobianTimesVector} and {@linkplain Preconditioner}
+		 * instead of a Jacobian matrix.
+		 * @return
+		 */
+		public boolean isIterative() {
+			return this == SPGMR || this == SPFGMR || this == SPBCGS;
+		}
+	}
+
+	/**
+	 * Arrangement of the states in the flat output buffer of
+	 * {@linkplain CVodeAdapter#integrate(FirstOrderDifferentialEquations, double, double[], double[], double[], Layout)}.
+	 */
+	public enum Layout {
+		/** one state after the other, element i at tout[k] is at k * n + i */
+		ROW_MAJOR,
+		/** one time series per element, element i at tout[k] is at i * tout.length + k */
+		COLUMN_MAJOR
+	}
+
+	// native solver kept alive between integrations
+	CVodeSession session;
+	boolean warmStart;
+	LinearSolver linearSolver = LinearSolver.DENSE;
+	// bandwidths of the Jacobian, negative if not declared
+	int upperBandwidth = -1;
+	int lowerBandwidth = -1;
+	// operators for the iterative linear solvers
+	JacobianTimesVector jacobianTimesVector;
+	Preconditioner preconditioner;
+	int krylovDimension;
+	// structure of the Jacobian for colored difference quotients
+	SparsityPattern sparsity;
+	// pool for parallel evaluation of partitioned equations
+	ForkJoinPool pool;
+	// optional inputs of the integrator and the Newton iteration
+	CVodeOptions cvodeOptions = new CVodeOptions();
+	// cost of the last integration
+	CVodeStatistics statistics;
+	// called after every internal step of the solver
+	final List<StepHandler> stepHandlers = new ArrayList<StepHandler>();
+	
 	public void setMonitor(int n, Monitor monitor) throws NumericException
 	{
 		if (n < 0) throw new NumericException("number of monitor functions must be non-negative");
@@ -88,176 +169,384 @@ public class CVodeAdapter implements FirstOrderIntegrator {
 	public double integrate(FirstOrderDifferentialEquations ode, double t0, double[] y0, double t1, double[] y1)
 			throws DerivativeException, IntegratorException {
 		assert y0.length == y1.length;
-		//System.out.println("State received by solver intially (line called in CVODE Adapter): ");
-		//System.out.println(Arrays.toString(y0));
-		//System.out.println(Arrays.toString(y1));
-		int flag;
-		N_Vector y = null;
-		Pointer cvode_mem = Pointer.NULL;
-		
-		// get problem dimension
-		final int N = y0.length;
 
-		// create callback for rate function
-		CVRhsFn f = new CVRhsFn() {
-			final double[] state = new double[N];
-			final double[] rate = new double[N];
-			@Override
-			public int callback(double t, N_Vector y, N_Vector ydot,
-					Pointer user_data) {
-				try {
-					assert N == y.getLength();
-					assert N == ydot.getLength();
-					y.get(state);
-					ode.computeDerivatives(t,state,rate);
-					ydot.set(rate);
-					return 0;
-				} catch (Throwable throwable) {
-					throwable.printStackTrace();
-				}
-				// return negative value to indicate unrecoverable error
-				return -1;
-			}
-			
-		};
-
-		// create callback for root functions
-		CVRootFn g = new CVRootFn() {
-			final double[] out = new double[nrtfn];
-			final double[] y = new double[N];
-			@Override
-			public int callback(double t, N_Vector y, Pointer gout,
-					Pointer user_data) {
-				try {
-					assert N == y.getLength();
-					y.get(this.y);
-					monitor.g(out, t, this.y);
-					gout.write(0, out, 0, nrtfn);
-					return 0;
-				} catch (Throwable throwable) {
-					throwable.printStackTrace();
-				}
-				// return non-zero value to indicate error
-				return -1;
+		try {
+			CVodeSession s = prepare(ode, t0, y0);
+			try {
+				return s.integrate(t1, y1);
+			} finally {
+				statistics = s.getStatistics();
 			}
-		};
-		
-		/* try { */
-			// alloc N_Vector
-			y = N_VNew_Serial(new NativeLong(N));
-
-			// create solver
-			cvode_mem = CVodeCreate(CV_BDF, CV_NEWTON);
-		/*
-		 * if (cvode_mem == Pointer.NULL) throw new
-		 * NumericException("could not create CVODE solver");
-		 */
-			// init solver
-			y.set(y0);
-			
-			flag = CVodeInit(cvode_mem, f, t0, y);
-		/* checkFlag(flag, "could not init CVODE solver"); */
-
-			// set tolerances
-			if (absTol != null) {
-				// relative is scalar, absolute is vector 
-				assert absTolDefault > 0;
-				assert relTolDefault > 0;
-				assert absTol.length == N;
-				y.set(absTol);
-				for (int i = 0; i < N; i++) {
-					// replace zero tolerance by default one
-					if (absTol[i] == 0)
-						y.set(i, absTolDefault);
-				}
-				flag = CVodeSVtolerances(cvode_mem, relTolDefault, y);
-			} else {
-				// relative is scalar, absolute is scalar
-				flag = CVodeSStolerances(cvode_mem, relTolDefault, absTolDefault);
+		} catch (NumericException e) {
+			throw new IntegratorException(e);
+		}
+	}
+
+	/**
+	 * Integrate ode from t0 through all output times in a single run of
+	 * the solver and store the state at each of them into out, without
+	 * allocating memory per output time. The output times must follow
+	 * each other in the direction of integration, the first may be t0.
+	 * @param ode equations
+	 * @param t0 initial time
+	 * @param y0 initial state
+	 * @param tout output times
+	 * @param out memory of at least tout.length * y0.length elements
+	 * @param layout arrangement of the states in out
+	 * @return number of output times reached, which is less than
+	 * tout.length if a monitor requested to stop
+	 * @throws DerivativeException
+	 * @throws IntegratorException
+	 */
+	public int integrate(FirstOrderDifferentialEquations ode, double t0, double[] y0, double[] tout,
+			double[] out, Layout layout) throws DerivativeException, IntegratorException {
+		if (out.length < (long) tout.length * y0.length) {
+			throw new IllegalArgumentException("output buffer too small for " + tout.length + " states");
+		}
+		try {
+			CVodeSession s = prepare(ode, t0, y0);
+			try {
+				return s.integrate(tout, out, layout == Layout.ROW_MAJOR);
+			} finally {
+				statistics = s.getStatistics();
 			}
-		/* checkFlag(flag, "could not set tolerances"); */
-			
-			// set optional inputs
-			// TODO
-
-			// set linear solver for newton iteration
-			//flag = CVDense(cvode_mem, N);
-		/* checkFlag(flag, "could not set linear solver"); */
-			
-			// set linear solver optional inputs
-			// TODO
-			
-			// specify rootfinding problem
-			CVodeRootInit(cvode_mem, nrtfn, g);
-			
-			// repeat integration until t1 reached
-			while (true) {
-				// perform actual integration
-				DoubleByReference t = new DoubleByReference();
-				long startTime = System.currentTimeMillis();
-				
-				
-				flag = CVode(cvode_mem, t1, y, t, CV_NORMAL);
-				System.out.println(System.currentTimeMillis() - startTime);
-				System.out.println("t = " + t.getValue()  + " t1 " + t1);
-				System.out.println("y = " + y.get(1));
-				if (flag == CV_SUCCESS) {
-					// break loop if target time was reached
-					System.out.println("t = " + flag);
-					break;
-				} else if (flag == CV_ROOT_RETURN) {
-					// one of the monitor functions triggered
-					// find out which
-					int[] rootsfound = new int[nrtfn];
-					flag = CVodeGetRootInfo(cvode_mem, rootsfound);
-				/* checkFlag(flag, "root was found, but could not determine which"); */
-					boolean stop = false;
-					for (int i = 0; i < nrtfn; i++) {
-						if (rootsfound[i] != 0) {
-							// call event handler
-							stop |= monitor.handleEvent(i, t.getValue(), y1);
-						}
-					}
-					if (stop) {
-						break;
-					}
-				} else {
-				/* checkFlag(flag, "error during integration"); */
-				}
+		} catch (NumericException e) {
+			throw new IntegratorException(e);
+		}
+	}
+
+	/**
+	 * Integrate ode from t0 through all output times like
+	 * {@linkplain #integrate(FirstOrderDifferentialEquations, double, double[], double[], double[], Layout)},
+	 * but store the state at tout[k] into out[k].
+	 * @param ode equations
+	 * @param t0 initial time
+	 * @param y0 initial state
+	 * @param tout output times
+	 * @param out memory for the states, with at least tout.length rows
+	 * of y0.length elements
+	 * @return number of output times reached
+	 * @throws DerivativeException
+	 * @throws IntegratorException
+	 */
+	public int integrate(FirstOrderDifferentialEquations ode, double t0, double[] y0, double[] tout,
+			double[][] out) throws DerivativeException, IntegratorException {
+		if (out.length < tout.length) {
+			throw new IllegalArgumentException("output buffer too small for " + tout.length + " states");
+		}
+		for (int k = 0; k < tout.length; k++) {
+			if (out[k].length < y0.length) {
+				throw new IllegalArgumentException("output row " + k + " too small");
 			}
-			
-		/*} catch (NumericException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} finally {*/
-			if (cvode_mem != Pointer.NULL) {
-				// free solver
-				PointerByReference p_cvode_mem = new PointerByReference(cvode_mem);
-				CVodeFree(p_cvode_mem);
+		}
+		try {
+			CVodeSession s = prepare(ode, t0, y0);
+			try {
+				return s.integrate(tout, out);
+			} finally {
+				statistics = s.getStatistics();
 			}
+		} catch (NumericException e) {
+			throw new IntegratorException(e);
+		}
+	}
 
-			if (y != null) {
-				// free N_Vector
-				N_VDestroy_Serial(y);
-			}
-		/*}*/
-		return 0d;
-	}
-
-	// throw an exception if flag is not CV_SUCCESS
-	private void checkFlag(int flag, String msg) throws NumericException {
-		if (flag == CV_TOO_MUCH_WORK){
-			//added to override stopping at maximal number of steps (auth: Jonas Coussement)
-		}else{	
-			if (flag != CV_SUCCESS)
-				throw new NumericException("[" + CVodeGetReturnFlagName(flag)
-					+ "] " + msg);
+	/**
+	 * Save the state of the solver at the end of the last integration, to
+	 * continue it later with {@linkplain #resume(FirstOrderDifferentialEquations, CVodeCheckpoint, double, double[])}.
+	 * See {@linkplain CVodeCheckpointer} to save checkpoints periodically
+	 * during an integration.
+	 * @return
+	 * @throws IntegratorException
+	 */
+	public CVodeCheckpoint checkpoint() throws IntegratorException {
+		if (session == null || Double.isNaN(session.tLast)) {
+			throw new IllegalStateException("no integration to save");
+		}
+		try {
+			return session.checkpoint(session.tLast);
+		} catch (NumericException e) {
+			throw new IntegratorException(e);
+		}
+	}
+
+	/**
+	 * Continue the integration saved by the checkpoint up to t1. Unless
+	 * an initial step size is set, the solver starts with a step size
+	 * derived from the checkpoint instead of its own small estimate.
+	 * The equations and settings should be the same as for the
+	 * integration that was saved.
+	 * @param ode equations
+	 * @param checkpoint
+	 * @param t1 final time
+	 * @param y1 memory to return the final state
+	 * @return time reached
+	 * @throws DerivativeException
+	 * @throws IntegratorException
+	 */
+	public double resume(FirstOrderDifferentialEquations ode, CVodeCheckpoint checkpoint, double t1, double[] y1)
+			throws DerivativeException, IntegratorException {
+		if (checkpoint.getDimension() != y1.length) {
+			throw new IllegalArgumentException("checkpoint has dimension " + checkpoint.getDimension());
+		}
+		getSession(y1.length).setRestart(checkpoint);
+		return integrate(ode, checkpoint.getTime(), checkpoint.derivatives[0], t1, y1);
+	}
+
+	/**
+	 * Set up the session for the dimension of y0 and initialize it for
+	 * the initial value problem, or resume it if possible.
+	 * @param ode
+	 * @param t0
+	 * @param y0
+	 * @return
+	 * @throws NumericException
+	 */
+	CVodeSession prepare(FirstOrderDifferentialEquations ode, double t0, double[] y0)
+			throws NumericException {
+		// get problem dimension
+		final int N = y0.length;
+
+		// reuse native solver if dimension did not change
+		CVodeSession s = getSession(N);
+		s.setWarmStart(warmStart);
+		s.setTolerances(relTolDefault, absTolDefault, absTol);
+		s.setMonitor(nrtfn, monitor);
+		// use the structure reported by the equations, if not set explicitly
+		SparsityPattern pattern = sparsity;
+		if (pattern == null && CVodeSession.unwrap(ode) instanceof JacobianStructure) {
+			pattern = ((JacobianStructure) CVodeSession.unwrap(ode)).getSparsityPattern();
+		}
+		if (pattern != null && pattern.getDimension() != N) {
+			pattern = null;
+		}
+		int mu = upperBandwidth, ml = lowerBandwidth;
+		if (pattern != null && mu < 0 && ml < 0) {
+			mu = pattern.getUpperBandwidth();
+			ml = pattern.getLowerBandwidth();
+		}
+		s.setLinearSolver(linearSolver, mu, ml);
+		s.setKrylov(jacobianTimesVector, preconditioner, krylovDimension);
+		s.setSparsity(pattern);
+		s.setPool(pool);
+		s.setOptions(cvodeOptions);
+		s.setStepHandlers(stepHandlers);
+		s.init(ode, t0, y0);
+		return s;
+	}
+
+	/**
+	 * Return a session for problems of dimension n. The session of the
+	 * previous integration is reused if it has the same dimension.
+	 * @param n problem dimension
+	 * @return
+	 */
+	CVodeSession getSession(int n) {
+		if (session != null && session.getDimension() != n) {
+			session.close();
+			session = null;
+		}
+		if (session == null) {
+			session = new CVodeSession(n);
+		}
+		return session;
+	}
+
+	/**
+	 * Return the cost of the last integration, or null if there was none.
+	 * @return
+	 */
+	public CVodeStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Free native memory held by this solver. The solver may be used
+	 * again afterwards.
+	 */
+	@Override
+	public void close() {
+		if (session != null) {
+			session.close();
+			session = null;
 		}
 	}
 
+	public boolean isWarmStart() {
+		return warmStart;
+	}
+
+	/**
+	 * If enabled, an integration that continues exactly where the previous
+	 * one stopped resumes the native solver with its current step size and
+	 * order. Any other integration starts with the last step size taken.
+	 * @param warmStart
+	 */
+	public void setWarmStart(boolean warmStart) {
+		this.warmStart = warmStart;
+	}
+
+	public LinearSolver getLinearSolver() {
+		return linearSolver;
+	}
+
+	/**
+	 * Select the linear solver used for the Newton iteration.
+	 * Default is {@linkplain LinearSolver#DENSE}.
+	 * @param linearSolver
+	 */
+	public void setLinearSolver(LinearSolver linearSolver) {
+		if (linearSolver == null) throw new IllegalArgumentException("linear solver must not be null");
+		this.linearSolver = linearSolver;
+	}
+
+	public int getUpperBandwidth() {
+		return upperBandwidth;
+	}
+
+	public int getLowerBandwidth() {
+		return lowerBandwidth;
+	}
+
+	/**
+	 * Declare the bandwidths of the Jacobian, so that df_i/dy_j is zero
+	 * for j-i &gt; mupper and i-j &gt; mlower. They are used by the band linear
+	 * solvers, an undeclared (negative) bandwidth is taken as N-1.
+	 * @param mupper upper bandwidth
+	 * @param mlower lower bandwidth
+	 */
+	public void setBandwidths(int mupper, int mlower) {
+		this.upperBandwidth = mupper;
+		this.lowerBandwidth = mlower;
+	}
+
+	public SparsityPattern getSparsity() {
+		return sparsity;
+	}
+
+	/**
+	 * Set the structure of the Jacobian. For equations that do not provide
+	 * a {@linkplain Jacobian}, the matrix of the direct linear solvers is
+	 * then computed by a {@linkplain ColoredJacobian}, which needs one rate
+	 * evaluation per color instead of one per column. If no bandwidths are
+	 * declared, those of the pattern are used for the band solvers.
+	 * Equations implementing {@linkplain JacobianStructure} report their
+	 * pattern themselves, the pattern set here takes precedence.
+	 * Pass null to return to the difference quotients of CVODE.
+	 * @param sparsity
+	 */
+	public void setSparsity(SparsityPattern sparsity) {
+		this.sparsity = sparsity;
+	}
+
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Set the pool on which equations implementing {@linkplain PartitionedODE}
+	 * are evaluated. Each call of the rate by CVODE then computes the
+	 * partitions in parallel, which pays off for large systems such as
+	 * {@linkplain de.grogra.numeric.fdm.MethodOfLines}. Pass null, the
+	 * default, for sequential evaluation.
+	 * @param pool
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	public JacobianTimesVector getJacobianTimesVector() {
+		return jacobianTimesVector;
+	}
+
+	/**
+	 * Set the product of the Jacobian with a vector for the iterative
+	 * linear solvers. If null, the product is approximated by a difference
+	 * quotient, which costs one evaluation of the rate.
+	 * @param jacobianTimesVector
+	 */
+	public void setJacobianTimesVector(JacobianTimesVector jacobianTimesVector) {
+		this.jacobianTimesVector = jacobianTimesVector;
+	}
+
+	public Preconditioner getPreconditioner() {
+		return preconditioner;
+	}
+
+	/**
+	 * Set the preconditioner for the iterative linear solvers, or null
+	 * to solve without preconditioning.
+	 * @param preconditioner
+	 */
+	public void setPreconditioner(Preconditioner preconditioner) {
+		this.preconditioner = preconditioner;
+	}
+
+	public int getKrylovDimension() {
+		return krylovDimension;
+	}
+
+	/**
+	 * Set the maximum dimension of the Krylov subspace of the iterative
+	 * linear solvers, zero selects the default of SUNDIALS (5).
+	 * @param krylovDimension
+	 */
+	public void setKrylovDimension(int krylovDimension) {
+		if (krylovDimension < 0) throw new IllegalArgumentException("Krylov dimension must be non-negative");
+		this.krylovDimension = krylovDimension;
+	}
+
+	/**
+	 * Return the optional inputs of CVODE used by this solver. Changes
+	 * take effect with the next integration.
+	 * @return
+	 */
+	public CVodeOptions getCVodeOptions() {
+		return cvodeOptions;
+	}
+
+	/**
+	 * Replace the optional inputs of CVODE by a copy of options.
+	 * @param options
+	 */
+	public void setCVodeOptions(CVodeOptions options) {
+		if (options == null) throw new IllegalArgumentException("options must not be null");
+		cvodeOptions = new CVodeOptions(options);
+	}
+
+	/**
+	 * Set options given as mapping from {@linkplain Options} to values.
+	 * Declaring a bandwidth selects the band linear solver, unless a
+	 * linear solver is set at the same time. The remaining keys set the
+	 * {@linkplain CVodeOptions}, other keys are ignored. Values of the
+	 * wrong type or out of range cause an IllegalArgumentException.
+	 * @param options
+	 */
 	public void setOptions(Map options) {
-		// TODO Auto-generated method stub
-		
+		Map<?, ?> map = options;
+		for (Map.Entry<?, ?> e : map.entrySet()) {
+			if (e.getKey() instanceof Options) {
+				cvodeOptions.set((Options) e.getKey(), e.getValue());
+			}
+		}
+		Object mu = options.get(Options.UPPER_BANDWIDTH);
+		Object ml = options.get(Options.LOWER_BANDWIDTH);
+		Object ls = options.get(Options.LINEAR_SOLVER);
+		Object maxl = options.get(Options.KRYLOV_DIMENSION);
+		if (maxl != null) {
+			setKrylovDimension(((Number) maxl).intValue());
+		}
+		if (mu != null) {
+			upperBandwidth = ((Number) mu).intValue();
+		}
+		if (ml != null) {
+			lowerBandwidth = ((Number) ml).intValue();
+		}
+		if (ls != null) {
+			setLinearSolver((LinearSolver) ls);
+		} else if ((mu != null || ml != null) && !linearSolver.isBand()) {
+			linearSolver = LinearSolver.BAND;
+		}
 	}
 
 	public void setTolerances(double[] absTol, double[] relTol) {
@@ -295,20 +584,17 @@ public class CVodeAdapter implements FirstOrderIntegrator {
 
 	@Override
 	public void addStepHandler(StepHandler handler) {
-		// TODO Auto-generated method stub
-		
+		stepHandlers.add(handler);
 	}
 
 	@Override
 	public Collection<StepHandler> getStepHandlers() {
-		// TODO Auto-generated method stub
-		return null;
+		return Collections.unmodifiableCollection(stepHandlers);
 	}
 
 	@Override
 	public void clearStepHandlers() {
-		// TODO Auto-generated method stub
-		
+		stepHandlers.clear();
 	}
 
 	@Override
@@ -330,16 +616,32 @@ public class CVodeAdapter implements FirstOrderIntegrator {
 		
 	}
 
+	/**
+	 * Return the start of the last internal step of the solver, or NaN if
+	 * there is no solver.
+	 */
 	@Override
 	public double getCurrentStepStart() {
-		// TODO Auto-generated method stub
-		return 0;
+		try {
+			return session != null && session.cvode_mem != Pointer.NULL
+				? session.getCurrentTime() - session.getLastStep() : Double.NaN;
+		} catch (NumericException e) {
+			return Double.NaN;
+		}
 	}
 
+	/**
+	 * Return the signed size of the last internal step of the solver, or
+	 * NaN if there is no solver.
+	 */
 	@Override
 	public double getCurrentSignedStepsize() {
-		// TODO Auto-generated method stub
-		return 0;
+		try {
+			return session != null && session.cvode_mem != Pointer.NULL
+				? session.getLastStep() : Double.NaN;
+		} catch (NumericException e) {
+			return Double.NaN;
+		}
 	}
 
 	@Override
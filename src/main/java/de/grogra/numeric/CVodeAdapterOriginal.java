@@ -2,6 +2,7 @@ package de.grogra.numeric;
 
 import static de.grogra.numeric.cvode.CVODEOriginal.*;
 
+import java.nio.ByteOrder;
 import java.util.Map;
 
 import com.sun.jna.Native;
@@ -10,8 +11,10 @@ import com.sun.jna.Pointer;
 import com.sun.jna.ptr.DoubleByReference;
 import com.sun.jna.ptr.PointerByReference;
 
+import de.grogra.numeric.cvode.CVDlsDenseJacFn;
 import de.grogra.numeric.cvode.CVRhsFn;
 import de.grogra.numeric.cvode.CVRootFn;
+import de.grogra.numeric.cvode.DlsMat;
 import de.grogra.numeric.cvode.N_Vector;
 
 /**
@@ -115,6 +118,32 @@ public class CVodeAdapterOriginal implements Solver {
 				return -1;
 			}
 		};
+
+		// create callback for the Jacobian, if the equations provide one
+		CVDlsDenseJacFn jac = !(ode instanceof Jacobian) ? null : new CVDlsDenseJacFn() {
+			final double[] state = new double[N];
+			final double[] rate = new double[N];
+			@Override
+			public int callback(NativeLong n, double t, N_Vector y, N_Vector fy,
+					DlsMat Jac, Pointer user_data, N_Vector tmp1, N_Vector tmp2,
+					N_Vector tmp3) {
+				try {
+					assert N == n.intValue();
+					y.get(state);
+					fy.get(rate);
+					// write directly into the dense matrix of the solver
+					assert N == Jac.ldim.intValue();
+					BufferJacobianMatrix J = new BufferJacobianMatrix(
+							Jac.data.getByteBuffer(0, 8L * N * N).order(ByteOrder.nativeOrder()).asDoubleBuffer(), N);
+					((Jacobian) ode).getJacobian(J, t, state, rate);
+					return 0;
+				} catch (Throwable throwable) {
+					throwable.printStackTrace();
+				}
+				// return negative value to indicate unrecoverable error
+				return -1;
+			}
+		};
 		
 		try {
 			// alloc N_Vector
@@ -157,7 +186,10 @@ public class CVodeAdapterOriginal implements Solver {
 			checkFlag(flag, "could not set linear solver");
 			
 			// set linear solver optional inputs
-			// TODO
+			if (jac != null) {
+				flag = CVDlsSetDenseJacFn(cvode_mem, jac);
+				checkFlag(flag, "could not set Jacobian function");
+			}
 			
 			// specify rootfinding problem
 			CVodeRootInit(cvode_mem, nrtfn, g);
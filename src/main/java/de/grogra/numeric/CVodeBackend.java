@@ -0,0 +1,73 @@
+package de.grogra.numeric;
+
+/**
+ * Selects how the native CVODE library is called.
+ * 
+ * JNA is always available. FFM uses java.lang.foreign and requires the
+ * classes from src/main/java22, which are only compiled on Java 22 or later
+ * (Maven profile ffm).
+ * 
+ * The default backend is taken from the system property
+ * {@value #PROPERTY} (values "jna" or "ffm") and falls back to JNA.
+ */
+public enum CVodeBackend {
+
+	JNA("de.grogra.numeric.CVodeAdapter"),
+	FFM("de.grogra.numeric.ForeignCVodeAdapter");
+
+	public static final String PROPERTY = "de.grogra.numeric.cvode.backend";
+
+	private final String adapterClass;
+
+	private CVodeBackend(String adapterClass) {
+		this.adapterClass = adapterClass;
+	}
+
+	/**
+	 * Return the backend selected by the system property, or JNA
+	 * if the property is not set or names no backend.
+	 * @return
+	 */
+	public static CVodeBackend getDefault() {
+		String value = System.getProperty(PROPERTY);
+		if (value != null) {
+			try {
+				return valueOf(value.trim().toUpperCase());
+			} catch (IllegalArgumentException e) {
+				// unknown backend, use the default one
+			}
+		}
+		return JNA;
+	}
+
+	/**
+	 * Check whether the classes of this backend are present.
+	 * Does not check if the native libraries can be loaded.
+	 * @return
+	 */
+	public boolean isAvailable() {
+		try {
+			Class.forName(adapterClass, false, CVodeBackend.class.getClassLoader());
+			return true;
+		} catch (ClassNotFoundException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Create a new solver that uses this backend.
+	 * @return
+	 */
+	public CVodeAdapter createAdapter() {
+		if (this == JNA) {
+			return new CVodeAdapter();
+		}
+		try {
+			return (CVodeAdapter) Class.forName(adapterClass).getDeclaredConstructor().newInstance();
+		} catch (ClassNotFoundException e) {
+			throw new UnsupportedOperationException(name() + " backend requires a build with Java 22 or later", e);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
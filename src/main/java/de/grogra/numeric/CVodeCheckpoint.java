@@ -0,0 +1,199 @@
+package de.grogra.numeric;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * State of a CVODE integration that allows to continue it in another
+ * process, see {@linkplain CVodeAdapter#resume(org.apache.commons.math.ode.FirstOrderDifferentialEquations, CVodeCheckpoint, double, double[])}.
+ *
+ * A checkpoint holds the time, the derivatives of order 0 to q of the
+ * interpolating polynomial of the solver at that time, which is the
+ * Nordsieck history up to scaling, the size and order q of the last step
+ * and the counters of the solver.
+ *
+ * CVODE cannot be initialized with a history, it always restarts with
+ * order 1. Instead of letting CVODE estimate the initial step size, which
+ * starts with very small steps, a restart takes the step size for which
+ * the local error of order 1 estimated from the second derivative meets
+ * the tolerances, limited by the last step size. The solver then returns
+ * to the previous step size and order within a few steps. The counters
+ * are informational only, a resumed integration counts from zero like
+ * any other after a (re)initialization of the solver.
+ *
+ * The file starts with magic number, version, dimension n and order q
+ * as ints, followed by time and last step size as doubles, the counters
+ * as longs and the q + 1 derivatives of n doubles each, all little endian.
+ */
+public class CVodeCheckpoint {
+
+	static final int MAGIC = 0x4B435643;	// "CVCK" in little endian
+	static final int VERSION = 1;
+	static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+	// safety factor of the initial step size, as for the estimate of CVODE
+	static final double SAFETY = 0.5;
+
+	double time;
+	double lastStep;
+	// derivatives[k] is the k-th derivative at time
+	double[][] derivatives;
+	CVodeStatistics statistics;
+
+	CVodeCheckpoint() {
+	}
+
+	public double getTime() {
+		return time;
+	}
+
+	/**
+	 * Return the state at the time of the checkpoint.
+	 * @return
+	 */
+	public double[] getState() {
+		return derivatives[0].clone();
+	}
+
+	public int getDimension() {
+		return derivatives[0].length;
+	}
+
+	/**
+	 * Return the order of the last step before the checkpoint.
+	 * @return
+	 */
+	public int getOrder() {
+		return derivatives.length - 1;
+	}
+
+	/**
+	 * Return the k-th derivative of the solution at the time of the
+	 * checkpoint, k must not exceed the order.
+	 * @param k
+	 * @return
+	 */
+	public double[] getDerivative(int k) {
+		return derivatives[k].clone();
+	}
+
+	/**
+	 * Return the signed size of the last step before the checkpoint.
+	 * @return
+	 */
+	public double getLastStep() {
+		return lastStep;
+	}
+
+	/**
+	 * Return the counters of the solver since its last (re)initialization
+	 * before the checkpoint. They are not restored on resume, statistics of
+	 * the resumed integration only include the work done after it.
+	 * @return
+	 */
+	public CVodeStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Return the size of the first step after a restart with order 1 for
+	 * the given tolerances. An absolute tolerance vector may be null.
+	 * @param relTol
+	 * @param absTol
+	 * @param absTolVector
+	 * @return
+	 */
+	public double getRestartStep(double relTol, double absTol, double[] absTolVector) {
+		double h = Math.abs(lastStep);
+		if (derivatives.length < 3) {
+			// no second derivative, keep the last step size
+			return h;
+		}
+		final double[] y = derivatives[0];
+		final double[] ydd = derivatives[2];
+		double sum = 0;
+		for (int i = 0; i < y.length; i++) {
+			double atol = absTolVector != null && absTolVector[i] != 0 ? absTolVector[i] : absTol;
+			double e = ydd[i] / (relTol * Math.abs(y[i]) + atol);
+			sum += e * e;
+		}
+		double norm = Math.sqrt(sum / y.length);
+		// local error h^2 / 2 * y'' of order 1 equals the tolerance
+		return norm > 0 ? Math.min(h, SAFETY * Math.sqrt(2 / norm)) : h;
+	}
+
+	/**
+	 * Write the checkpoint to file. The file is replaced only after the
+	 * checkpoint was written completely, so an interrupted write keeps the
+	 * previous checkpoint.
+	 * @param file
+	 * @throws IOException
+	 */
+	public void write(Path file) throws IOException {
+		final int n = getDimension();
+		ByteBuffer b = ByteBuffer.allocate(16 + 16 + 6 * 8 + derivatives.length * 8 * n).order(ORDER);
+		b.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(getOrder());
+		b.putDouble(time).putDouble(lastStep);
+		b.putLong(statistics.steps).putLong(statistics.rhsEvaluations).putLong(statistics.linearSolverSetups)
+			.putLong(statistics.errorTestFailures).putLong(statistics.nonlinearIterations)
+			.putLong(statistics.rootEvaluations);
+		for (double[] d : derivatives) {
+			for (double v : d) {
+				b.putDouble(v);
+			}
+		}
+		b.flip();
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			while (b.hasRemaining()) {
+				channel.write(b);
+			}
+			channel.force(false);
+		}
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Read a checkpoint written by {@linkplain #write(Path)}.
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static CVodeCheckpoint read(Path file) throws IOException {
+		ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(file)).order(ORDER);
+		if (b.remaining() < 80 || b.getInt() != MAGIC)
+			throw new IOException(file + " is not a checkpoint");
+		if (b.getInt() != VERSION)
+			throw new IOException(file + " has an unsupported version");
+		int n = b.getInt();
+		int q = b.getInt();
+		if (n <= 0 || q < 0 || b.remaining() != 16 + 6 * 8 + (q + 1) * 8L * n)
+			throw new IOException(file + " is truncated or corrupt");
+		CVodeCheckpoint c = new CVodeCheckpoint();
+		c.time = b.getDouble();
+		c.lastStep = b.getDouble();
+		CVodeStatistics s = new CVodeStatistics();
+		s.steps = b.getLong();
+		s.rhsEvaluations = b.getLong();
+		s.linearSolverSetups = b.getLong();
+		s.errorTestFailures = b.getLong();
+		s.nonlinearIterations = b.getLong();
+		s.rootEvaluations = b.getLong();
+		s.lastStep = c.lastStep;
+		s.order = q;
+		c.statistics = s;
+		c.derivatives = new double[q + 1][n];
+		for (double[] d : c.derivatives) {
+			for (int i = 0; i < n; i++) {
+				d[i] = b.getDouble();
+			}
+		}
+		return c;
+	}
+}
@@ -0,0 +1,73 @@
+package de.grogra.numeric;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.math.ode.DerivativeException;
+import org.apache.commons.math.ode.sampling.StepHandler;
+import org.apache.commons.math.ode.sampling.StepInterpolator;
+
+/**
+ * Step handler of a {@linkplain CVodeAdapter} that saves a
+ * {@linkplain CVodeCheckpoint} at the end of a step whenever the given
+ * interval of wall-clock time has passed since the last one, and at the
+ * end of every integration. Each checkpoint replaces the previous one.
+ */
+public class CVodeCheckpointer implements StepHandler {
+
+	final Path file;
+	final long interval;
+	long last = System.nanoTime();
+	CVodeCheckpoint checkpoint;
+
+	/**
+	 * Save checkpoints to file at the given interval.
+	 * @param file
+	 * @param interval
+	 * @param unit
+	 */
+	public CVodeCheckpointer(Path file, long interval, TimeUnit unit) {
+		if (interval < 0) throw new IllegalArgumentException("interval must not be negative");
+		this.file = file;
+		this.interval = unit.toNanos(interval);
+	}
+
+	/**
+	 * Return the checkpoint saved last, or null if there is none.
+	 * @return
+	 */
+	public CVodeCheckpoint getCheckpoint() {
+		return checkpoint;
+	}
+
+	@Override
+	public boolean requiresDenseOutput() {
+		return false;
+	}
+
+	@Override
+	public void reset() {
+	}
+
+	@Override
+	public void handleStep(StepInterpolator interpolator, boolean isLast) throws DerivativeException {
+		long now = System.nanoTime();
+		if (!isLast && now - last < interval) {
+			return;
+		}
+		// copies and steps of the foreign backend have no JNA session
+		if (!(interpolator instanceof CVodeStepInterpolator)
+				|| !(((CVodeStepInterpolator) interpolator).session instanceof CVodeSession)) {
+			throw new DerivativeException("checkpoints require a CVodeAdapter");
+		}
+		try {
+			CVodeSession s = (CVodeSession) ((CVodeStepInterpolator) interpolator).session;
+			checkpoint = s.checkpoint(interpolator.getCurrentTime());
+			checkpoint.write(file);
+		} catch (NumericException | IOException e) {
+			throw new DerivativeException(e);
+		}
+		last = now;
+	}
+}
@@ -0,0 +1,403 @@
+package de.grogra.numeric;
+
+import static de.grogra.numeric.cvode.CVODE.CVodeSetEpsLin;
+import static de.grogra.numeric.cvode.CVODE.CVodeSetMaxConvFails;
+import static de.grogra.numeric.cvode.CVODE.CVodeSetMaxErrTestFails;
+import static de.grogra.numeric.cvode.CVODE.CVodeSetMaxNonlinIters;
+import static de.grogra.numeric.cvode.CVODE.CVodeSetMaxNumSteps;
+import static de.grogra.numeric.cvode.CVODE.CVodeSetMaxOrd;
+import static de.grogra.numeric.cvode.CVODE.CVodeSetMaxStep;
+import static de.grogra.numeric.cvode.CVODE.CVodeSetMaxStepsBetweenJac;
+import static de.grogra.numeric.cvode.CVODE.CVodeSetMinStep;
+import static de.grogra.numeric.cvode.CVODE.CVodeSetNonlinConvCoef;
+import static de.grogra.numeric.cvode.CVODE.CVodeSetStabLimDet;
+
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+
+/**
+ * Optional inputs of CVODE that control the cost of an integration. Each
+ * value is validated when it is set, and zero (or false) selects the default
+ * of CVODE. The options are applied by {@linkplain CVodeSession} when the
+ * solver is created and whenever they changed, the options of the linear
+ * solver again whenever a new linear solver is attached.
+ *
+ * The values can also be set as {@linkplain CVodeAdapter.Options} by
+ * {@linkplain CVodeAdapter#setOptions(java.util.Map)}.
+ */
+public class CVodeOptions {
+
+	/** largest order of the BDF method */
+	public static final int MAX_ORDER = 5;
+	/** default maximum number of Newton iterations per step attempt */
+	public static final int DEFAULT_MAX_NONLINEAR_ITERATIONS = 3;
+	/** default maximum number of convergence failures in one step */
+	public static final int DEFAULT_MAX_CONVERGENCE_FAILURES = 10;
+	/** default maximum number of error test failures in one step */
+	public static final int DEFAULT_MAX_ERROR_TEST_FAILURES = 7;
+	/** default safety factor of the convergence test of the Newton iteration */
+	public static final double DEFAULT_NONLINEAR_CONVERGENCE_COEFFICIENT = 0.1;
+
+	long maxSteps;
+	double maxStep;
+	double minStep;
+	double initialStep;
+	int maxOrder;
+	boolean stabilityLimitDetection;
+	long maxStepsBetweenJacobians;
+	int maxNonlinearIterations;
+	int maxConvergenceFailures;
+	int maxErrorTestFailures;
+	double nonlinearConvergenceCoefficient;
+	double linearSolverTolerance;
+
+	public CVodeOptions() {
+	}
+
+	public CVodeOptions(CVodeOptions o) {
+		maxSteps = o.maxSteps;
+		maxStep = o.maxStep;
+		minStep = o.minStep;
+		initialStep = o.initialStep;
+		maxOrder = o.maxOrder;
+		stabilityLimitDetection = o.stabilityLimitDetection;
+		maxStepsBetweenJacobians = o.maxStepsBetweenJacobians;
+		maxNonlinearIterations = o.maxNonlinearIterations;
+		maxConvergenceFailures = o.maxConvergenceFailures;
+		maxErrorTestFailures = o.maxErrorTestFailures;
+		nonlinearConvergenceCoefficient = o.nonlinearConvergenceCoefficient;
+		linearSolverTolerance = o.linearSolverTolerance;
+	}
+
+	public long getMaxSteps() {
+		return maxSteps;
+	}
+
+	/**
+	 * Set the maximum number of internal steps to reach the final time of
+	 * an integration or the next root. If the steps are exceeded, the
+	 * integration fails with a {@linkplain NumericException}. Zero selects
+	 * no limit, the solver is then called again after every 500 steps.
+	 * @param maxSteps
+	 */
+	public void setMaxSteps(long maxSteps) {
+		if (maxSteps < 0) throw new IllegalArgumentException("maximum number of steps must be non-negative");
+		this.maxSteps = maxSteps;
+	}
+
+	public double getMaxStep() {
+		return maxStep;
+	}
+
+	/**
+	 * Set the upper bound of the step size, zero for no bound.
+	 * @param maxStep
+	 */
+	public void setMaxStep(double maxStep) {
+		if (!(maxStep >= 0)) throw new IllegalArgumentException("maximum step size must be non-negative");
+		if (maxStep > 0 && minStep > maxStep)
+			throw new IllegalArgumentException("maximum step size must not be below minimum step size " + minStep);
+		this.maxStep = maxStep;
+	}
+
+	public double getMinStep() {
+		return minStep;
+	}
+
+	/**
+	 * Set the lower bound of the step size, zero for no bound.
+	 * @param minStep
+	 */
+	public void setMinStep(double minStep) {
+		if (!(minStep >= 0)) throw new IllegalArgumentException("minimum step size must be non-negative");
+		if (maxStep > 0 && minStep > maxStep)
+			throw new IllegalArgumentException("minimum step size must not exceed maximum step size " + maxStep);
+		this.minStep = minStep;
+	}
+
+	public double getInitialStep() {
+		return initialStep;
+	}
+
+	/**
+	 * Set the size of the first step of each integration that is not
+	 * resumed, zero to use the last step size on warm start or an estimate.
+	 * @param initialStep
+	 */
+	public void setInitialStep(double initialStep) {
+		if (!(initialStep >= 0)) throw new IllegalArgumentException("initial step size must be non-negative");
+		this.initialStep = initialStep;
+	}
+
+	public int getMaxOrder() {
+		return maxOrder;
+	}
+
+	/**
+	 * Set the maximum order of the BDF method between 1 and
+	 * {@value #MAX_ORDER}, zero selects {@value #MAX_ORDER}.
+	 * @param maxOrder
+	 */
+	public void setMaxOrder(int maxOrder) {
+		if (maxOrder < 0 || maxOrder > MAX_ORDER)
+			throw new IllegalArgumentException("order must be between 1 and " + MAX_ORDER);
+		this.maxOrder = maxOrder;
+	}
+
+	public boolean isStabilityLimitDetection() {
+		return stabilityLimitDetection;
+	}
+
+	/**
+	 * Enable detection of the stability limit of BDF of orders 3 to 5,
+	 * which reduces the order for problems with eigenvalues close to the
+	 * imaginary axis, such as oscillating models.
+	 * @param stabilityLimitDetection
+	 */
+	public void setStabilityLimitDetection(boolean stabilityLimitDetection) {
+		this.stabilityLimitDetection = stabilityLimitDetection;
+	}
+
+	public long getMaxStepsBetweenJacobians() {
+		return maxStepsBetweenJacobians;
+	}
+
+	/**
+	 * Set the maximum number of steps between evaluations of the Jacobian
+	 * or the preconditioner, zero selects the default (50). Larger values
+	 * save Jacobians and factorizations of slowly changing problems.
+	 * @param maxStepsBetweenJacobians
+	 */
+	public void setMaxStepsBetweenJacobians(long maxStepsBetweenJacobians) {
+		if (maxStepsBetweenJacobians < 0)
+			throw new IllegalArgumentException("maximum steps between Jacobians must be non-negative");
+		this.maxStepsBetweenJacobians = maxStepsBetweenJacobians;
+	}
+
+	public int getMaxNonlinearIterations() {
+		return maxNonlinearIterations;
+	}
+
+	/**
+	 * Set the maximum number of Newton iterations per step attempt,
+	 * zero selects the default
+	 * ({@value #DEFAULT_MAX_NONLINEAR_ITERATIONS}).
+	 * @param maxNonlinearIterations
+	 */
+	public void setMaxNonlinearIterations(int maxNonlinearIterations) {
+		if (maxNonlinearIterations < 0)
+			throw new IllegalArgumentException("maximum number of iterations must be non-negative");
+		this.maxNonlinearIterations = maxNonlinearIterations;
+	}
+
+	public int getMaxConvergenceFailures() {
+		return maxConvergenceFailures;
+	}
+
+	/**
+	 * Set the maximum number of convergence failures of the Newton
+	 * iteration in one step, zero selects the default
+	 * ({@value #DEFAULT_MAX_CONVERGENCE_FAILURES}).
+	 * @param maxConvergenceFailures
+	 */
+	public void setMaxConvergenceFailures(int maxConvergenceFailures) {
+		if (maxConvergenceFailures < 0)
+			throw new IllegalArgumentException("maximum number of convergence failures must be non-negative");
+		this.maxConvergenceFailures = maxConvergenceFailures;
+	}
+
+	public int getMaxErrorTestFailures() {
+		return maxErrorTestFailures;
+	}
+
+	/**
+	 * Set the maximum number of error test failures in one step,
+	 * zero selects the default ({@value #DEFAULT_MAX_ERROR_TEST_FAILURES}).
+	 * @param maxErrorTestFailures
+	 */
+	public void setMaxErrorTestFailures(int maxErrorTestFailures) {
+		if (maxErrorTestFailures < 0)
+			throw new IllegalArgumentException("maximum number of error test failures must be non-negative");
+		this.maxErrorTestFailures = maxErrorTestFailures;
+	}
+
+	public double getNonlinearConvergenceCoefficient() {
+		return nonlinearConvergenceCoefficient;
+	}
+
+	/**
+	 * Set the safety factor of the convergence test of the Newton
+	 * iteration, zero selects the default
+	 * ({@value #DEFAULT_NONLINEAR_CONVERGENCE_COEFFICIENT}).
+	 * @param nonlinearConvergenceCoefficient
+	 */
+	public void setNonlinearConvergenceCoefficient(double nonlinearConvergenceCoefficient) {
+		if (!(nonlinearConvergenceCoefficient >= 0))
+			throw new IllegalArgumentException("convergence coefficient must be non-negative");
+		this.nonlinearConvergenceCoefficient = nonlinearConvergenceCoefficient;
+	}
+
+	public double getLinearSolverTolerance() {
+		return linearSolverTolerance;
+	}
+
+	/**
+	 * Set the tolerance of the iterative linear solvers as factor of the
+	 * tolerance of the Newton iteration, zero selects the default (0.05).
+	 * @param linearSolverTolerance
+	 */
+	public void setLinearSolverTolerance(double linearSolverTolerance) {
+		if (!(linearSolverTolerance >= 0))
+			throw new IllegalArgumentException("linear solver tolerance must be non-negative");
+		this.linearSolverTolerance = linearSolverTolerance;
+	}
+
+	/**
+	 * Set the option for key to value. Numbers are expected for all keys
+	 * except STABILITY_LIMIT_DETECTION, which expects a Boolean.
+	 * @param key
+	 * @param value
+	 * @return false if key is not an option of this class
+	 */
+	public boolean set(CVodeAdapter.Options key, Object value) {
+		switch (key) {
+		case MAX_STEPS:
+			setMaxSteps(number(key, value).longValue());
+			return true;
+		case MAX_STEP:
+			setMaxStep(number(key, value).doubleValue());
+			return true;
+		case MIN_STEP:
+			setMinStep(number(key, value).doubleValue());
+			return true;
+		case INITIAL_STEP:
+			setInitialStep(number(key, value).doubleValue());
+			return true;
+		case MAX_ORDER:
+			setMaxOrder(number(key, value).intValue());
+			return true;
+		case STABILITY_LIMIT_DETECTION:
+			if (!(value instanceof Boolean))
+				throw new IllegalArgumentException("option " + key + " requires a Boolean, got " + value);
+			setStabilityLimitDetection((Boolean) value);
+			return true;
+		case MAX_STEPS_BETWEEN_JACOBIANS:
+			setMaxStepsBetweenJacobians(number(key, value).longValue());
+			return true;
+		case MAX_NONLINEAR_ITERATIONS:
+			setMaxNonlinearIterations(number(key, value).intValue());
+			return true;
+		case MAX_CONVERGENCE_FAILURES:
+			setMaxConvergenceFailures(number(key, value).intValue());
+			return true;
+		case MAX_ERROR_TEST_FAILURES:
+			setMaxErrorTestFailures(number(key, value).intValue());
+			return true;
+		case NONLINEAR_CONVERGENCE_COEFFICIENT:
+			setNonlinearConvergenceCoefficient(number(key, value).doubleValue());
+			return true;
+		case LINEAR_SOLVER_TOLERANCE:
+			setLinearSolverTolerance(number(key, value).doubleValue());
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	// return value as Number, or throw an exception naming the option
+	static Number number(CVodeAdapter.Options key, Object value) {
+		if (!(value instanceof Number))
+			throw new IllegalArgumentException("option " + key + " requires a number, got " + value);
+		return (Number) value;
+	}
+
+	/**
+	 * Apply the options of the integrator and the Newton iteration to a
+	 * solver. The initial step size is left to the caller, since its sign
+	 * depends on the direction of integration.
+	 * @param cvode_mem
+	 * @throws NumericException
+	 */
+	void apply(Pointer cvode_mem) throws NumericException {
+		int flag;
+		flag = CVodeSetMaxNumSteps(cvode_mem, new NativeLong(maxSteps));
+		CVodeSession.checkFlag(flag, "could not set maximum number of steps");
+		// bounds are set in an order that keeps them consistent with the previous ones
+		flag = CVodeSetMinStep(cvode_mem, 0);
+		CVodeSession.checkFlag(flag, "could not set minimum step size");
+		flag = CVodeSetMaxStep(cvode_mem, maxStep);
+		CVodeSession.checkFlag(flag, "could not set maximum step size");
+		flag = CVodeSetMinStep(cvode_mem, minStep);
+		CVodeSession.checkFlag(flag, "could not set minimum step size");
+		flag = CVodeSetMaxOrd(cvode_mem, maxOrder != 0 ? maxOrder : MAX_ORDER);
+		CVodeSession.checkFlag(flag, "could not set maximum order");
+		flag = CVodeSetStabLimDet(cvode_mem, stabilityLimitDetection ? 1 : 0);
+		CVodeSession.checkFlag(flag, "could not set stability limit detection");
+		// unlike the options above, CVODE does not take zero as default for these
+		flag = CVodeSetMaxErrTestFails(cvode_mem,
+				maxErrorTestFailures != 0 ? maxErrorTestFailures : DEFAULT_MAX_ERROR_TEST_FAILURES);
+		CVodeSession.checkFlag(flag, "could not set maximum number of error test failures");
+		flag = CVodeSetMaxNonlinIters(cvode_mem,
+				maxNonlinearIterations != 0 ? maxNonlinearIterations : DEFAULT_MAX_NONLINEAR_ITERATIONS);
+		CVodeSession.checkFlag(flag, "could not set maximum number of iterations");
+		flag = CVodeSetMaxConvFails(cvode_mem,
+				maxConvergenceFailures != 0 ? maxConvergenceFailures : DEFAULT_MAX_CONVERGENCE_FAILURES);
+		CVodeSession.checkFlag(flag, "could not set maximum number of convergence failures");
+		flag = CVodeSetNonlinConvCoef(cvode_mem, nonlinearConvergenceCoefficient != 0
+				? nonlinearConvergenceCoefficient : DEFAULT_NONLINEAR_CONVERGENCE_COEFFICIENT);
+		CVodeSession.checkFlag(flag, "could not set convergence coefficient");
+	}
+
+	/**
+	 * Apply the options of the linear solver, which must be attached
+	 * already.
+	 * @param cvode_mem
+	 * @param iterative true for the iterative linear solvers
+	 * @throws NumericException
+	 */
+	void applyLinearSolver(Pointer cvode_mem, boolean iterative) throws NumericException {
+		int flag;
+		flag = CVodeSetMaxStepsBetweenJac(cvode_mem, new NativeLong(maxStepsBetweenJacobians));
+		CVodeSession.checkFlag(flag, "could not set maximum steps between Jacobians");
+		if (iterative) {
+			flag = CVodeSetEpsLin(cvode_mem, linearSolverTolerance);
+			CVodeSession.checkFlag(flag, "could not set linear solver tolerance");
+		}
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof CVodeOptions))
+			return false;
+		CVodeOptions o = (CVodeOptions) obj;
+		return maxSteps == o.maxSteps
+				&& Double.compare(maxStep, o.maxStep) == 0
+				&& Double.compare(minStep, o.minStep) == 0
+				&& Double.compare(initialStep, o.initialStep) == 0
+				&& maxOrder == o.maxOrder
+				&& stabilityLimitDetection == o.stabilityLimitDetection
+				&& maxStepsBetweenJacobians == o.maxStepsBetweenJacobians
+				&& maxNonlinearIterations == o.maxNonlinearIterations
+				&& maxConvergenceFailures == o.maxConvergenceFailures
+				&& maxErrorTestFailures == o.maxErrorTestFailures
+				&& Double.compare(nonlinearConvergenceCoefficient, o.nonlinearConvergenceCoefficient) == 0
+				&& Double.compare(linearSolverTolerance, o.linearSolverTolerance) == 0;
+	}
+
+	@Override
+	public int hashCode() {
+		int h = Long.hashCode(maxSteps);
+		h = 31 * h + Double.hashCode(maxStep);
+		h = 31 * h + Double.hashCode(minStep);
+		h = 31 * h + Double.hashCode(initialStep);
+		h = 31 * h + maxOrder;
+		h = 31 * h + (stabilityLimitDetection ? 1 : 0);
+		h = 31 * h + Long.hashCode(maxStepsBetweenJacobians);
+		h = 31 * h + maxNonlinearIterations;
+		h = 31 * h + maxConvergenceFailures;
+		h = 31 * h + maxErrorTestFailures;
+		h = 31 * h + Double.hashCode(nonlinearConvergenceCoefficient);
+		h = 31 * h + Double.hashCode(linearSolverTolerance);
+		return h;
+	}
+}
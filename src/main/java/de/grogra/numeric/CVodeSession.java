@@ -0,0 +1,1307 @@
+package de.grogra.numeric;
+
+import static de.grogra.numeric.cvode.CVODE.CV_BDF;
+import static de.grogra.numeric.cvode.CVODE.CV_NEWTON;
+import static de.grogra.numeric.cvode.CVODE.CV_NORMAL;
+import static de.grogra.numeric.cvode.CVODE.CV_ONE_STEP;
+import static de.grogra.numeric.cvode.CVODE.PREC_LEFT;
+import static de.grogra.numeric.cvode.CVODE.PREC_NONE;
+import static de.grogra.numeric.cvode.CVODE.PREC_RIGHT;
+import static de.grogra.numeric.cvode.CVODE.CV_ROOT_RETURN;
+import static de.grogra.numeric.cvode.CVODE.CV_SUCCESS;
+import static de.grogra.numeric.cvode.CVODE.CV_TSTOP_RETURN;
+import static de.grogra.numeric.cvode.CVODE.CV_TOO_MUCH_WORK;
+import static de.grogra.numeric.cvode.CVODE.CV_BAD_DKY;
+import static de.grogra.numeric.cvode.CVODE.CV_BAD_K;
+import static de.grogra.numeric.cvode.CVODE.CV_BAD_T;
+import static de.grogra.numeric.cvode.CVODE.CV_CONV_FAILURE;
+import static de.grogra.numeric.cvode.CVODE.CV_ERR_FAILURE;
+import static de.grogra.numeric.cvode.CVODE.CV_FIRST_RHSFUNC_ERR;
+import static de.grogra.numeric.cvode.CVODE.CV_ILL_INPUT;
+import static de.grogra.numeric.cvode.CVODE.CV_LINIT_FAIL;
+import static de.grogra.numeric.cvode.CVODE.CV_LSETUP_FAIL;
+import static de.grogra.numeric.cvode.CVODE.CV_LSOLVE_FAIL;
+import static de.grogra.numeric.cvode.CVODE.CV_MEM_FAIL;
+import static de.grogra.numeric.cvode.CVODE.CV_MEM_NULL;
+import static de.grogra.numeric.cvode.CVODE.CV_NO_MALLOC;
+import static de.grogra.numeric.cvode.CVODE.CV_REPTD_RHSFUNC_ERR;
+import static de.grogra.numeric.cvode.CVODE.CV_RHSFUNC_FAIL;
+import static de.grogra.numeric.cvode.CVODE.CV_RTFUNC_FAIL;
+import static de.grogra.numeric.cvode.CVODE.CV_TOO_CLOSE;
+import static de.grogra.numeric.cvode.CVODE.CV_TOO_MUCH_ACC;
+import static de.grogra.numeric.cvode.CVODE.CV_UNREC_RHSFUNC_ERR;
+import static de.grogra.numeric.cvode.CVODE.CV_WARNING;
+import static de.grogra.numeric.cvode.CVODE.CVode;
+import static de.grogra.numeric.cvode.CVODE.CVodeCreate;
+import static de.grogra.numeric.cvode.CVODE.CVodeFree;
+import static de.grogra.numeric.cvode.CVODE.CVodeGetCurrentTime;
+import static de.grogra.numeric.cvode.CVODE.CVodeGetDky;
+import static de.grogra.numeric.cvode.CVODE.CVodeGetLastOrder;
+import static de.grogra.numeric.cvode.CVODE.CVodeGetLastStep;
+import static de.grogra.numeric.cvode.CVODE.CVodeGetRootInfo;
+import static de.grogra.numeric.cvode.CVODE.CVodeInitRaw;
+import static de.grogra.numeric.cvode.CVODE.CVodeReInit;
+import static de.grogra.numeric.cvode.CVODE.CVodeRootInitRaw;
+import static de.grogra.numeric.cvode.CVODE.CVodeSStolerances;
+import static de.grogra.numeric.cvode.CVODE.CVodeSVtolerances;
+import static de.grogra.numeric.cvode.CVODE.CVodeSetInitStep;
+import static de.grogra.numeric.cvode.CVODE.CVodeSetJacFn;
+import static de.grogra.numeric.cvode.CVODE.CVodeSetJacTimes;
+import static de.grogra.numeric.cvode.CVODE.CVodeSetPreconditioner;
+import static de.grogra.numeric.cvode.CVODE.CVodeSetStopTime;
+import static de.grogra.numeric.cvode.CVODE.CVodeSetLinearSolver;
+import static de.grogra.numeric.cvode.CVODE.SUNLinSolFree;
+import static de.grogra.numeric.cvode.CVODE.SUNMatDestroy;
+import static de.grogra.numeric.cvode.N_Vec_Serial.N_VDestroy_Serial;
+import static de.grogra.numeric.cvode.N_Vec_Serial.N_VNew_Serial;
+import static de.grogra.numeric.cvode.Sunlinsolband.SUNLinSol_Band;
+import static de.grogra.numeric.cvode.Sunlinsoldense.SUNLinSol_Dense;
+import static de.grogra.numeric.cvode.Sunlinsollapackband.SUNLinSol_LapackBand;
+import static de.grogra.numeric.cvode.Sunlinsollapackdense.SUNLinSol_LapackDense;
+import static de.grogra.numeric.cvode.Sunlinsolspbcgs.SUNLinSol_SPBCGS;
+import static de.grogra.numeric.cvode.Sunlinsolspfgmr.SUNLinSol_SPFGMR;
+import static de.grogra.numeric.cvode.Sunlinsolspgmr.SUNLinSol_SPGMR;
+import static de.grogra.numeric.cvode.Sunmatrixband.SUNBandMatrix;
+import static de.grogra.numeric.cvode.Sunmatrixband.SUNBandMatrix_Data;
+import static de.grogra.numeric.cvode.Sunmatrixband.SUNBandMatrix_LDim;
+import static de.grogra.numeric.cvode.Sunmatrixband.SUNBandMatrix_StoredUpperBandwidth;
+import static de.grogra.numeric.cvode.Sunmatrixdense.SUNDenseMatrix;
+import static de.grogra.numeric.cvode.Sunmatrixdense.SUNDenseMatrix_Data;
+
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.commons.math.ode.DerivativeException;
+import org.apache.commons.math.ode.FirstOrderDifferentialEquations;
+import org.apache.commons.math.ode.sampling.StepHandler;
+
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.DoubleByReference;
+import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.NativeLongByReference;
+import com.sun.jna.ptr.PointerByReference;
+
+import de.grogra.numeric.cvode.CVLsJacFnRaw;
+import de.grogra.numeric.cvode.CVLsJacTimesSetupFnRaw;
+import de.grogra.numeric.cvode.CVLsJacTimesVecFnRaw;
+import de.grogra.numeric.cvode.CVLsPrecSetupFnRaw;
+import de.grogra.numeric.cvode.CVLsPrecSolveFnRaw;
+import de.grogra.numeric.cvode.CVRhsFnRaw;
+import de.grogra.numeric.cvode.CVRootFnRaw;
+import de.grogra.numeric.cvode.N_Vector;
+import de.grogra.numeric.cvode.N_VectorCache;
+
+/**
+ * A CVODE solver instance that is kept alive across several integrations.
+ *
+ * The native solver memory, the state vector and the callbacks are created
+ * once for a given problem dimension. Every further initial value problem of
+ * the same dimension only reinitializes the solver with CVodeReInit instead
+ * of creating and freeing it again. This is meant for simulation loops that
+ * advance the same model in many short intervals.
+ *
+ * If warm start is enabled, an integration that starts exactly where the
+ * previous one stopped (same time, same state, same equations) just resumes
+ * the solver, so step size, order and history are kept. Otherwise the last
+ * step size taken is used as initial step size for the reinitialized solver.
+ *
+ * The Newton iteration uses the linear solver selected with
+ * {@linkplain #setLinearSolver(CVodeAdapter.LinearSolver)}, dense by default.
+ * Band solvers use the bandwidths passed along with the linear solver.
+ * If the equations implement {@linkplain Jacobian}, it is evaluated directly
+ * into the matrix of the linear solver instead of difference quotients.
+ * Iterative linear solvers are matrix-free and use the operators passed with
+ * {@linkplain #setKrylov(JacobianTimesVector, Preconditioner, int)}.
+ * Matrix and linear solver are created once together with the solver.
+ * If a pool is set with {@linkplain #setPool(ForkJoinPool)}, equations
+ * implementing {@linkplain PartitionedODE} are evaluated on all its workers
+ * within each callback of the solver. The {@linkplain CVodeOptions} are
+ * applied when the solver is created and whenever they changed.
+ *
+ * If step handlers are set with {@linkplain #setStepHandlers(Collection)},
+ * the solver returns after every internal step, which is passed to the
+ * handlers together with a {@linkplain CVodeStepInterpolator} for dense
+ * output. The last step is cut at the final time by a stop time of CVODE.
+ *
+ * Integrations, returns of CVode and a sample of the callbacks are
+ * recorded as Flight Recorder events, see {@linkplain IntegrateEvent}.
+ *
+ * A session must be closed to release its native memory.
+ */
+public class CVodeSession implements CVodeStepInterpolator.DenseOutput {
+
+	final int N;
+
+	Pointer cvode_mem = Pointer.NULL;
+	N_Vector y;
+
+	FirstOrderDifferentialEquations ode;
+	// set if ode can be evaluated on buffers, which avoids copying
+	BufferODE direct;
+	// pool for partitioned equations, and their parallel evaluation
+	ForkJoinPool pool;
+	ParallelODE parallel;
+	// set if ode provides its Jacobian, or if a sparsity pattern was given
+	Jacobian jacobian;
+	SparsityPattern sparsity;
+	ColoredJacobian colored;
+	FirstOrderDifferentialEquations coloredOde;
+
+	// tolerances to apply on next (re)initialization
+	double relTol;
+	double absTol;
+	double[] absTolVector;
+	boolean tolerancesChanged = true;
+
+	// monitor functions as requested and as registered with the solver
+	int nrtfn;
+	Monitor monitor;
+	int nrtfnRegistered = -1;
+	double[] gout = new double[0];
+
+	// linear solver as requested and as attached to the solver
+	CVodeAdapter.LinearSolver linearSolver = CVodeAdapter.LinearSolver.DENSE;
+	CVodeAdapter.LinearSolver linearSolverAttached;
+	int mupper, mlower;
+	int mupperAttached, mlowerAttached;
+	Pointer A = Pointer.NULL;
+	Pointer LS = Pointer.NULL;
+	// view on the data of A, passed to the Jacobian
+	BufferJacobianMatrix matrix;
+	boolean jacobianRegistered;
+
+	// operators and subspace dimension of the iterative linear solvers
+	JacobianTimesVector jacobianTimesVector;
+	Preconditioner preconditioner;
+	int maxl;
+	int maxlAttached;
+	int pretypeAttached;
+	boolean jacobianTimesVectorRegistered;
+	boolean preconditionerRegistered;
+
+	boolean warmStart;
+	double tStart;
+	double hInit;
+	boolean initStepPending;
+
+	// optional inputs as requested and as applied to the solver
+	CVodeOptions options = new CVodeOptions();
+	CVodeOptions optionsApplied;
+
+	// step handlers and the interpolator passed to them
+	Collection<StepHandler> stepHandlers = Collections.emptyList();
+	CVodeStepInterpolator interpolator;
+	N_Vector dky;
+	// time of the last return of CVode, where the next step passed to the
+	// step handlers starts
+	double tReturned;
+	// set while a stop time was set that has not been reached yet
+	boolean stopTimePending;
+	// final time of the current integration, where the last step ends
+	double tFinal;
+
+	// checkpoint to continue on the next initialization
+	CVodeCheckpoint restart;
+
+	// solver time and state at the end of the last integration
+	double tLast = Double.NaN;
+	final double[] yLast;
+	FirstOrderDifferentialEquations odeLast;
+
+	// callbacks must be referenced as long as the native solver exists
+	final CVRhsFnRaw f;
+	final CVRootFnRaw g;
+	final CVLsJacFnRaw jac;
+	final CVLsJacTimesSetupFnRaw jtsetup;
+	final CVLsJacTimesVecFnRaw jtimes;
+	final CVLsPrecSetupFnRaw psetup;
+	final CVLsPrecSolveFnRaw psolve;
+	final N_VectorCache vectors = new N_VectorCache();
+
+	final double[] state;
+	final double[] rate;
+	// states passed to the monitor during integration through output times
+	final double[] monitorState;
+	final DoubleByReference tret = new DoubleByReference();
+
+	// Flight Recorder events and time spent in callbacks
+	final SolverProfile profile = new SolverProfile();
+
+	// counters at the start of the current integration, and cost of the last one
+	CVodeStatistics counters = new CVodeStatistics();
+	CVodeStatistics statistics = new CVodeStatistics();
+	final NativeLongByReference count = new NativeLongByReference();
+	final IntByReference qcur = new IntByReference();
+	final DoubleByReference hlast = new DoubleByReference();
+	final DoubleByReference tcur = new DoubleByReference();
+
+	public CVodeSession(int n) {
+		if (n <= 0) throw new IllegalArgumentException("dimension must be positive");
+		this.N = n;
+		this.state = new double[N];
+		this.rate = new double[N];
+		this.monitorState = new double[N];
+		this.yLast = new double[N];
+
+		// create callback for rate function, vectors are accessed through
+		// the cache to avoid structure marshaling on every evaluation
+		f = new CVRhsFnRaw() {
+			@Override
+			public int callback(double t, Pointer y, Pointer ydot,
+					Pointer user_data) {
+				final long start = profile.beginCallback();
+				try {
+					assert N == vectors.getLength(y);
+					assert N == vectors.getLength(ydot);
+					if (direct != null) {
+						// evaluate directly on native memory
+						direct.getRate(vectors.getBuffer(ydot), t, vectors.getBuffer(y));
+					} else {
+						vectors.get(y, state);
+						ode.computeDerivatives(t, state, rate);
+						vectors.set(ydot, rate);
+					}
+					return 0;
+				} catch (Throwable throwable) {
+					throwable.printStackTrace();
+				} finally {
+					profile.endCallback(start, CallbackEvent.RATE);
+				}
+				// return negative value to indicate unrecoverable error
+				return -1;
+			}
+		};
+
+		// create callback for root functions
+		g = new CVRootFnRaw() {
+			final double[] y = new double[N];
+			@Override
+			public int callback(double t, Pointer y, Pointer gout,
+					Pointer user_data) {
+				final long start = profile.beginCallback();
+				try {
+					assert N == vectors.getLength(y);
+					vectors.get(y, this.y);
+					monitor.g(CVodeSession.this.gout, t, this.y);
+					gout.write(0, CVodeSession.this.gout, 0, nrtfnRegistered);
+					return 0;
+				} catch (Throwable throwable) {
+					throwable.printStackTrace();
+				} finally {
+					profile.endCallback(start, CallbackEvent.MONITOR);
+				}
+				// return non-zero value to indicate error
+				return -1;
+			}
+		};
+
+		// create callback for the Jacobian, which writes directly into
+		// the matrix attached to the solver
+		jac = new CVLsJacFnRaw() {
+			@Override
+			public int callback(double t, Pointer y, Pointer fy, Pointer Jac,
+					Pointer user_data, Pointer tmp1, Pointer tmp2, Pointer tmp3) {
+				final long start = profile.beginCallback();
+				try {
+					assert Jac.equals(A);
+					vectors.get(y, state);
+					vectors.get(fy, rate);
+					jacobian.getJacobian(matrix, t, state, rate);
+					return 0;
+				} catch (Throwable throwable) {
+					throwable.printStackTrace();
+				} finally {
+					profile.endCallback(start, CallbackEvent.JACOBIAN);
+				}
+				// return negative value to indicate unrecoverable error
+				return -1;
+			}
+		};
+
+		// create callbacks for the iterative linear solvers, these work
+		// on buffers to keep memory and copying at O(N)
+		jtsetup = new CVLsJacTimesSetupFnRaw() {
+			@Override
+			public int callback(double t, Pointer y, Pointer fy, Pointer user_data) {
+				final long start = profile.beginCallback();
+				try {
+					jacobianTimesVector.setup(t, vectors.getBuffer(y), vectors.getBuffer(fy));
+					return 0;
+				} catch (Throwable throwable) {
+					throwable.printStackTrace();
+				} finally {
+					profile.endCallback(start, CallbackEvent.LINEAR_SOLVER);
+				}
+				return -1;
+			}
+		};
+		jtimes = new CVLsJacTimesVecFnRaw() {
+			@Override
+			public int callback(Pointer v, Pointer Jv, double t, Pointer y,
+					Pointer fy, Pointer user_data, Pointer tmp) {
+				final long start = profile.beginCallback();
+				try {
+					jacobianTimesVector.multiply(vectors.getBuffer(Jv), vectors.getBuffer(v),
+							t, vectors.getBuffer(y), vectors.getBuffer(fy));
+					return 0;
+				} catch (Throwable throwable) {
+					throwable.printStackTrace();
+				} finally {
+					profile.endCallback(start, CallbackEvent.LINEAR_SOLVER);
+				}
+				return -1;
+			}
+		};
+		psetup = new CVLsPrecSetupFnRaw() {
+			@Override
+			public int callback(double t, Pointer y, Pointer fy, int jok,
+					Pointer jcurPtr, double gamma, Pointer user_data) {
+				final long start = profile.beginCallback();
+				try {
+					boolean jcur = preconditioner.setup(t, vectors.getBuffer(y), vectors.getBuffer(fy),
+							jok != 0, gamma);
+					jcurPtr.setInt(0, jcur ? 1 : 0);
+					return 0;
+				} catch (Throwable throwable) {
+					throwable.printStackTrace();
+				} finally {
+					profile.endCallback(start, CallbackEvent.LINEAR_SOLVER);
+				}
+				return -1;
+			}
+		};
+		psolve = new CVLsPrecSolveFnRaw() {
+			@Override
+			public int callback(double t, Pointer y, Pointer fy, Pointer r,
+					Pointer z, double gamma, double delta, int lr, Pointer user_data) {
+				final long start = profile.beginCallback();
+				try {
+					preconditioner.solve(vectors.getBuffer(z), vectors.getBuffer(r), t,
+							vectors.getBuffer(y), vectors.getBuffer(fy), gamma, delta);
+					return 0;
+				} catch (Throwable throwable) {
+					throwable.printStackTrace();
+				} finally {
+					profile.endCallback(start, CallbackEvent.LINEAR_SOLVER);
+				}
+				return -1;
+			}
+		};
+	}
+
+	/**
+	 * Return the problem dimension this session was created for.
+	 * @return
+	 */
+	public int getDimension() {
+		return N;
+	}
+
+	public boolean isWarmStart() {
+		return warmStart;
+	}
+
+	/**
+	 * Enable or disable resuming the solver when an integration continues
+	 * exactly where the previous one stopped. Disabled by default, so that
+	 * each integration starts with a freshly reinitialized solver.
+	 * @param warmStart
+	 */
+	public void setWarmStart(boolean warmStart) {
+		this.warmStart = warmStart;
+	}
+
+	/**
+	 * Set monitor functions to be used for the next integration.
+	 * @param n number of monitor functions
+	 * @param monitor
+	 */
+	public void setMonitor(int n, Monitor monitor) {
+		assert n >= 0;
+		this.nrtfn = n;
+		this.monitor = monitor;
+	}
+
+	/**
+	 * Set the linear solver for the Newton iteration. A different linear
+	 * solver replaces the current one on the next initialization.
+	 * @param linearSolver
+	 */
+	public void setLinearSolver(CVodeAdapter.LinearSolver linearSolver) {
+		setLinearSolver(linearSolver, -1, -1);
+	}
+
+	/**
+	 * Set the linear solver for the Newton iteration together with the
+	 * bandwidths of the Jacobian, which are used by band linear solvers.
+	 * Negative or too large bandwidths are replaced by N-1.
+	 * @param linearSolver
+	 * @param mupper upper bandwidth
+	 * @param mlower lower bandwidth
+	 */
+	public void setLinearSolver(CVodeAdapter.LinearSolver linearSolver, int mupper, int mlower) {
+		assert linearSolver != null;
+		this.linearSolver = linearSolver;
+		this.mupper = mupper < 0 || mupper > N - 1 ? N - 1 : mupper;
+		this.mlower = mlower < 0 || mlower > N - 1 ? N - 1 : mlower;
+	}
+
+	/**
+	 * Set the structure of the Jacobian, which is used to compute it by
+	 * colored difference quotients if the equations do not provide one.
+	 * @param sparsity pattern of dimension N, or null
+	 */
+	public void setSparsity(SparsityPattern sparsity) {
+		assert sparsity == null || sparsity.getDimension() == N;
+		this.sparsity = sparsity;
+	}
+
+	/**
+	 * Set the pool on which equations implementing {@linkplain PartitionedODE}
+	 * are evaluated, or null to evaluate all equations sequentially.
+	 * @param pool
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Set the optional inputs of CVODE, which are applied on the next
+	 * initialization if they differ from those applied before.
+	 * @param options
+	 */
+	public void setOptions(CVodeOptions options) {
+		if (!options.equals(this.options)) {
+			this.options = new CVodeOptions(options);
+		}
+	}
+
+	/**
+	 * Set the step handlers called after every internal step of the solver.
+	 * The collection is not copied, an empty one disables step handling.
+	 * @param handlers
+	 */
+	public void setStepHandlers(Collection<StepHandler> handlers) {
+		this.stepHandlers = handlers;
+	}
+
+	/**
+	 * Continue the integration saved by the checkpoint on the next
+	 * initialization, which should start at the time and state of the
+	 * checkpoint. Unless an initial step size is set in the options, the
+	 * solver starts with the step size given by
+	 * {@linkplain CVodeCheckpoint#getRestartStep(double, double, double[])}.
+	 * @param checkpoint
+	 */
+	public void setRestart(CVodeCheckpoint checkpoint) {
+		assert checkpoint.getDimension() == N;
+		this.restart = checkpoint;
+	}
+
+	/**
+	 * Set the operators for the iterative linear solvers. If jtv is null,
+	 * Jacobian-vector products are approximated by difference quotients.
+	 * If prec is null, no preconditioning is used.
+	 * @param jtv
+	 * @param prec
+	 * @param maxl maximum Krylov subspace dimension, zero for the default
+	 */
+	public void setKrylov(JacobianTimesVector jtv, Preconditioner prec, int maxl) {
+		this.jacobianTimesVector = jtv;
+		this.preconditioner = prec;
+		this.maxl = maxl;
+	}
+
+	// return preconditioning type for the selected iterative solver
+	int getPretype() {
+		if (preconditioner == null)
+			return PREC_NONE;
+		// flexible GMRES only supports right preconditioning
+		return linearSolver == CVodeAdapter.LinearSolver.SPFGMR ? PREC_RIGHT : PREC_LEFT;
+	}
+
+	// check if the requested linear solver differs from the attached one
+	boolean linearSolverChanged() {
+		return linearSolver != linearSolverAttached
+				|| (linearSolver.isBand() && (mupper != mupperAttached || mlower != mlowerAttached))
+				|| (linearSolver.isIterative() && (maxl != maxlAttached || getPretype() != pretypeAttached));
+	}
+
+	/**
+	 * Set tolerances to be used for the next integration. If absTolVector
+	 * is not null, it provides element-specific absolute tolerances, where
+	 * zero entries are replaced by absTol.
+	 * @param relTol scalar relative tolerance
+	 * @param absTol scalar absolute tolerance
+	 * @param absTolVector element-specific absolute tolerances, or null
+	 */
+	public void setTolerances(double relTol, double absTol, double[] absTolVector) {
+		assert absTolVector == null || absTolVector.length == N;
+		if (relTol != this.relTol || absTol != this.absTol
+				|| !Arrays.equals(absTolVector, this.absTolVector)) {
+			this.relTol = relTol;
+			this.absTol = absTol;
+			this.absTolVector = absTolVector != null ? absTolVector.clone() : null;
+			tolerancesChanged = true;
+		}
+	}
+
+	/**
+	 * Prepare the solver for integration of ode starting at (t0, y0).
+	 * Creates the native solver on first use and reinitializes it afterwards.
+	 * @param ode equations
+	 * @param t0 initial time
+	 * @param y0 initial state
+	 * @throws NumericException
+	 */
+	public void init(FirstOrderDifferentialEquations ode, double t0, double[] y0) throws NumericException {
+		assert y0.length == N;
+		int flag;
+		this.ode = ode;
+		Object o = unwrap(ode);
+		if (pool != null && o instanceof PartitionedODE) {
+			if (parallel == null || parallel.getODE() != o || parallel.pool != pool) {
+				parallel = new ParallelODE((PartitionedODE) o, pool);
+				colored = null;
+			}
+			this.direct = parallel;
+		} else {
+			parallel = null;
+			this.direct = getBufferODE(ode);
+		}
+		this.jacobian = getJacobian(ode);
+		if (jacobian == null && sparsity != null) {
+			// approximate by colored difference quotients
+			if (colored == null || coloredOde != ode || colored.getPattern() != sparsity) {
+				colored = new ColoredJacobian(parallel != null ? parallel : asODE(ode), sparsity);
+				coloredOde = ode;
+			}
+			jacobian = colored;
+		}
+
+		if (cvode_mem == Pointer.NULL) {
+			// alloc N_Vector
+			y = N_VNew_Serial(new NativeLong(N));
+			if (y == null)
+				throw new NumericException("could not allocate state vector");
+
+			// create solver
+			cvode_mem = CVodeCreate(CV_BDF, CV_NEWTON);
+			if (cvode_mem == Pointer.NULL)
+				throw new NumericException("could not create CVODE solver");
+
+			// init solver
+			y.set(y0);
+			flag = CVodeInitRaw(cvode_mem, f, t0, y);
+			checkFlag(flag, "could not init CVODE solver");
+			hInit = options.getInitialStep();
+			initStepPending = true;
+		} else if (warmStart && ode == odeLast && !tolerancesChanged
+				&& nrtfn == nrtfnRegistered && !linearSolverChanged() && options == optionsApplied
+				&& Double.compare(t0, tLast) == 0 && Arrays.equals(y0, yLast)) {
+			// integration continues where it stopped, simply resume
+			restart = null;
+			return;
+		} else {
+			// start with the given step size, or the last one if requested,
+			// otherwise let CVODE estimate it
+			hInit = options.getInitialStep();
+			if (hInit == 0 && warmStart && CVodeGetLastStep(cvode_mem, tret) == CV_SUCCESS) {
+				hInit = Math.abs(tret.getValue());
+			}
+			initStepPending = true;
+
+			// reinit solver
+			y.set(y0);
+			flag = CVodeReInit(cvode_mem, t0, y);
+			checkFlag(flag, "could not reinit CVODE solver");
+		}
+		if (restart != null) {
+			// continue a checkpointed integration with a suitable step size
+			if (options.getInitialStep() == 0) {
+				hInit = restart.getRestartStep(relTol, absTol, absTolVector);
+			}
+			restart = null;
+		}
+		tStart = t0;
+		tReturned = t0;
+		tLast = Double.NaN;
+		// counters start from zero after (re)initialization, also on
+		// restart, as those of the checkpoint are informational only
+		counters = new CVodeStatistics();
+
+		if (tolerancesChanged) {
+			// set tolerances
+			if (absTolVector != null) {
+				// relative is scalar, absolute is vector
+				assert absTol > 0;
+				assert relTol > 0;
+				y.set(absTolVector);
+				for (int i = 0; i < N; i++) {
+					// replace zero tolerance by default one
+					if (absTolVector[i] == 0)
+						y.set(i, absTol);
+				}
+				flag = CVodeSVtolerances(cvode_mem, relTol, y);
+				// restore y0, which an output time at t0 reads from y
+				y.set(y0);
+			} else {
+				// relative is scalar, absolute is scalar
+				flag = CVodeSStolerances(cvode_mem, relTol, absTol);
+			}
+			checkFlag(flag, "could not set tolerances");
+			tolerancesChanged = false;
+		}
+
+		// a new linear solver starts with default options
+		boolean optionsChanged = options != optionsApplied;
+		if (optionsChanged) {
+			options.apply(cvode_mem);
+		}
+		if (linearSolverChanged()) {
+			attachLinearSolver();
+			optionsChanged = true;
+		}
+		if (optionsChanged) {
+			options.applyLinearSolver(cvode_mem, linearSolver.isIterative());
+			optionsApplied = options;
+		}
+
+		if (linearSolver.isIterative()) {
+			if ((jacobianTimesVector != null) != jacobianTimesVectorRegistered) {
+				// use Jacobian-vector product if provided, difference quotients otherwise
+				flag = jacobianTimesVector != null ? CVodeSetJacTimes(cvode_mem, jtsetup, jtimes)
+						: CVodeSetJacTimes(cvode_mem, null, null);
+				checkFlag(flag, "could not set Jacobian-vector product");
+				jacobianTimesVectorRegistered = jacobianTimesVector != null;
+			}
+			if ((preconditioner != null) != preconditionerRegistered) {
+				flag = preconditioner != null ? CVodeSetPreconditioner(cvode_mem, psetup, psolve)
+						: CVodeSetPreconditioner(cvode_mem, null, null);
+				checkFlag(flag, "could not set preconditioner");
+				preconditionerRegistered = preconditioner != null;
+			}
+		} else if ((jacobian != null) != jacobianRegistered) {
+			// use analytic Jacobian if provided, difference quotients otherwise
+			flag = CVodeSetJacFn(cvode_mem, jacobian != null ? jac : null);
+			checkFlag(flag, "could not set Jacobian function");
+			jacobianRegistered = jacobian != null;
+		}
+
+		if (nrtfn != nrtfnRegistered) {
+			// specify rootfinding problem
+			gout = new double[nrtfn];
+			flag = CVodeRootInitRaw(cvode_mem, nrtfn, g);
+			checkFlag(flag, "could not init rootfinding");
+			nrtfnRegistered = nrtfn;
+		}
+	}
+
+	/**
+	 * Create matrix and linear solver as selected and attach them to the
+	 * solver. Previously attached objects are freed afterwards.
+	 * @throws NumericException
+	 */
+	void attachLinearSolver() throws NumericException {
+		Pointer newA = Pointer.NULL;
+		Pointer newLS = Pointer.NULL;
+		switch (linearSolver) {
+		case DENSE:
+			newA = SUNDenseMatrix(N, N);
+			if (newA != Pointer.NULL)
+				newLS = SUNLinSol_Dense(y, newA);
+			break;
+		case LAPACK_DENSE:
+			newA = SUNDenseMatrix(N, N);
+			if (newA != Pointer.NULL)
+				newLS = SUNLinSol_LapackDense(y, newA);
+			break;
+		case BAND:
+			newA = SUNBandMatrix(N, mupper, mlower);
+			if (newA != Pointer.NULL)
+				newLS = SUNLinSol_Band(y, newA);
+			break;
+		case LAPACK_BAND:
+			newA = SUNBandMatrix(N, mupper, mlower);
+			if (newA != Pointer.NULL)
+				newLS = SUNLinSol_LapackBand(y, newA);
+			break;
+		case SPGMR:
+			newLS = SUNLinSol_SPGMR(y, getPretype(), maxl);
+			break;
+		case SPFGMR:
+			newLS = SUNLinSol_SPFGMR(y, getPretype(), maxl);
+			break;
+		case SPBCGS:
+			newLS = SUNLinSol_SPBCGS(y, getPretype(), maxl);
+			break;
+		}
+		if (newLS == Pointer.NULL) {
+			if (newA != Pointer.NULL)
+				SUNMatDestroy(newA);
+			throw new NumericException("could not create linear solver " + linearSolver);
+		}
+
+		int flag = CVodeSetLinearSolver(cvode_mem, newLS, newA);
+		if (flag != CV_SUCCESS) {
+			SUNLinSolFree(newLS);
+			if (newA != Pointer.NULL)
+				SUNMatDestroy(newA);
+			checkFlag(flag, "could not attach linear solver " + linearSolver);
+		}
+
+		freeLinearSolver();
+		A = newA;
+		LS = newLS;
+		if (linearSolver.isIterative()) {
+			matrix = null;
+		} else if (linearSolver.isBand()) {
+			int ldim = (int) SUNBandMatrix_LDim(A);
+			matrix = new BufferJacobianMatrix(SUNBandMatrix_Data(A).getByteBuffer(0, 8L * ldim * N)
+					.order(ByteOrder.nativeOrder()).asDoubleBuffer(), N, ldim,
+					(int) SUNBandMatrix_StoredUpperBandwidth(A), mupper, mlower);
+		} else {
+			matrix = new BufferJacobianMatrix(SUNDenseMatrix_Data(A).getByteBuffer(0, 8L * N * N)
+					.order(ByteOrder.nativeOrder()).asDoubleBuffer(), N);
+		}
+		// attaching a linear solver resets the Jacobian functions and preconditioner
+		jacobianRegistered = false;
+		jacobianTimesVectorRegistered = false;
+		preconditionerRegistered = false;
+		linearSolverAttached = linearSolver;
+		mupperAttached = mupper;
+		mlowerAttached = mlower;
+		maxlAttached = maxl;
+		pretypeAttached = getPretype();
+	}
+
+	// free matrix and linear solver, must not be in use by the solver anymore
+	void freeLinearSolver() {
+		if (LS != Pointer.NULL) {
+			SUNLinSolFree(LS);
+			LS = Pointer.NULL;
+		}
+		if (A != Pointer.NULL) {
+			SUNMatDestroy(A);
+			A = Pointer.NULL;
+		}
+		// the work vectors of the linear solver are freed with it, and new
+		// ones may be allocated at the same addresses
+		vectors.clear();
+		matrix = null;
+		linearSolverAttached = null;
+	}
+
+	/**
+	 * Return the equations as BufferODE if they support evaluation on buffers,
+	 * either directly or as an ODE wrapped by FirstOrderDifferentialEquationsAdapter.
+	 * @param ode
+	 * @return
+	 */
+	static BufferODE getBufferODE(FirstOrderDifferentialEquations ode) {
+		Object o = unwrap(ode);
+		return o instanceof BufferODE ? (BufferODE) o : null;
+	}
+
+	/**
+	 * Return the equations as Jacobian if they provide one, either directly
+	 * or as an ODE wrapped by FirstOrderDifferentialEquationsAdapter.
+	 * @param ode
+	 * @return
+	 */
+	static Jacobian getJacobian(FirstOrderDifferentialEquations ode) {
+		Object o = unwrap(ode);
+		return o instanceof Jacobian ? (Jacobian) o : null;
+	}
+
+	// return equations as ODE, which is needed for ColoredJacobian
+	static ODE asODE(final FirstOrderDifferentialEquations ode) {
+		Object o = unwrap(ode);
+		if (o instanceof ODE) {
+			return (ODE) o;
+		}
+		return new ODE() {
+			@Override
+			public void getRate(double[] out, double t, double[] state) {
+				try {
+					ode.computeDerivatives(t, state, out);
+				} catch (DerivativeException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+	}
+
+	// return the ODE wrapped by a FirstOrderDifferentialEquationsAdapter, or ode itself
+	static Object unwrap(FirstOrderDifferentialEquations ode) {
+		if (ode instanceof FirstOrderDifferentialEquationsAdapter) {
+			return ((FirstOrderDifferentialEquationsAdapter) ode).ode;
+		}
+		return ode;
+	}
+
+	/**
+	 * Integrate from the current solver time to t1. The state at the time
+	 * reached is stored into y1.
+	 * @param t1 final time
+	 * @param y1 memory to return the final state
+	 * @return time reached, which is before t1 if a monitor requested to stop
+	 * @throws NumericException
+	 */
+	public double integrate(double t1, double[] y1) throws NumericException {
+		assert cvode_mem != Pointer.NULL;
+		assert y1.length == N;
+
+		setInitStep(t1);
+		tFinal = t1;
+		IntegrateEvent event = new IntegrateEvent();
+		profile.start(event);
+		try {
+			resetStepHandlers();
+			advance(t1, y1);
+			y.get(y1);
+		} finally {
+			end(event, t1);
+		}
+
+		// remember where integration stopped to allow resuming
+		tLast = tReturned;
+		System.arraycopy(y1, 0, yLast, 0, N);
+		odeLast = ode;
+		return tLast;
+	}
+
+	/**
+	 * Integrate from the current solver time through all output times,
+	 * which must follow each other in the direction of integration, and
+	 * store the state at each of them into out. The solver is called once
+	 * for the whole grid, the states are copied from the native vector
+	 * directly into out. Row-major layout stores the state at tout[k] at
+	 * out[k * N + i], column-major layout stores element i of all states
+	 * consecutively at out[i * tout.length + k].
+	 * @param tout output times
+	 * @param out memory of at least tout.length * N elements
+	 * @param rowMajor layout of out
+	 * @return number of output times reached, which is less than
+	 * tout.length if a monitor requested to stop
+	 * @throws NumericException
+	 */
+	public int integrate(double[] tout, double[] out, boolean rowMajor) throws NumericException {
+		assert out.length >= tout.length * N;
+		return integrate(tout, out, null, rowMajor);
+	}
+
+	/**
+	 * Integrate from the current solver time through all output times like
+	 * {@linkplain #integrate(double[], double[], boolean)}, but store the
+	 * state at tout[k] into out[k].
+	 * @param tout output times
+	 * @param out memory for the states
+	 * @return number of output times reached
+	 * @throws NumericException
+	 */
+	public int integrate(double[] tout, double[][] out) throws NumericException {
+		assert out.length >= tout.length;
+		return integrate(tout, null, out, true);
+	}
+
+	// store the states either into flat or into rows
+	int integrate(double[] tout, double[] flat, double[][] rows, boolean rowMajor)
+			throws NumericException {
+		assert cvode_mem != Pointer.NULL;
+		if (tout.length == 0) {
+			return 0;
+		}
+
+		final int n = tout.length;
+		final double t1 = tout[n - 1];
+		setInitStep(t1);
+		tFinal = t1;
+		IntegrateEvent event = new IntegrateEvent();
+		profile.start(event);
+		int k = 0;
+		try {
+			resetStepHandlers();
+			// an output time at the current time, e.g. the initial one,
+			// takes the state returned last without calling the solver
+			while (k < n && (tout[k] == tReturned || advance(tout[k], monitorState))) {
+				DoubleBuffer b = vectors.getBuffer(y.getPointer());
+				if (rows != null) {
+					b.get(rows[k], 0, N);
+				} else if (rowMajor) {
+					b.get(flat, k * N, N);
+				} else {
+					for (int i = 0; i < N; i++) {
+						flat[i * n + k] = b.get(i);
+					}
+				}
+				k++;
+			}
+		} finally {
+			end(event, t1);
+		}
+
+		// remember where integration stopped to allow resuming
+		tLast = tReturned;
+		y.get(yLast);
+		odeLast = ode;
+		return k;
+	}
+
+	// set the initial step size after (re)initialization
+	void setInitStep(double t1) throws NumericException {
+		if (initStepPending) {
+			// sign of initial step size must match direction of integration
+			int flag = CVodeSetInitStep(cvode_mem, t1 < tStart ? -hInit : hInit);
+			checkFlag(flag, "could not set initial step size");
+			initStepPending = false;
+		}
+	}
+
+	// record the cost of an integration, also if it failed
+	void end(IntegrateEvent event, double t1) {
+		CVodeStatistics c = CVodeStatistics.read(cvode_mem, count, qcur, hlast);
+		statistics = c.since(counters);
+		counters = c;
+		profile.end(event, "CVODE", N, tStart, t1, tReturned);
+	}
+
+	void resetStepHandlers() {
+		for (StepHandler h : stepHandlers) {
+			h.reset();
+		}
+	}
+
+	// integrate from the current solver time to t1, the solution is left in
+	// y and y1 is used to pass states to the monitor; return false if a
+	// monitor requested to stop before t1
+	boolean advance(double t1, double[] y1) throws NumericException {
+		// stop exactly at t1 if steps are handled, which also replaces a stop
+		// time of an earlier integration that was not reached; t1 may lie
+		// within the last step if an earlier integration went past it
+		boolean stopAtT1 = false;
+		if (!stepHandlers.isEmpty() || stopTimePending) {
+			int flag = CVodeGetCurrentTime(cvode_mem, tcur);
+			checkFlag(flag, "could not get current time");
+			if ((t1 - tcur.getValue()) * (t1 - tReturned) > 0) {
+				flag = CVodeSetStopTime(cvode_mem, t1);
+				checkFlag(flag, "could not set stop time");
+				stopAtT1 = stopTimePending = true;
+			}
+		}
+		if (stepHandlers.isEmpty()) {
+			return integrateNormal(t1, y1);
+		} else {
+			return integrateSteps(t1, y1, stopAtT1 ? CV_ONE_STEP : CV_NORMAL);
+		}
+	}
+
+	// repeat integration until t1 is reached or a monitor requests to stop
+	boolean integrateNormal(double t1, double[] y1) throws NumericException {
+		while (true) {
+			// perform actual integration
+			int flag = call(t1, CV_NORMAL);
+			if (flag == CV_SUCCESS || flag == CV_TSTOP_RETURN) {
+				// break loop if target time was reached
+				return true;
+			} else if (flag == CV_ROOT_RETURN) {
+				if (handleRoots(y1)) {
+					return false;
+				}
+			} else {
+				checkIntegrationFlag(flag);
+			}
+		}
+	}
+
+	// pass every step of the solver to the step handlers until t1 is reached
+	// or a monitor requests to stop, itask is CV_NORMAL if t1 lies within
+	// the last step
+	boolean integrateSteps(double t1, double[] y1, int itask) throws NumericException {
+		if (interpolator == null) {
+			interpolator = new CVodeStepInterpolator(this);
+		}
+		while (true) {
+			// the step starts where the previous return of CVode was
+			double t0 = tReturned;
+			int flag = call(t1, itask);
+			boolean reached = false, stop = false;
+			if (flag == CV_SUCCESS || flag == CV_TSTOP_RETURN) {
+				reached = tret.getValue() == t1;
+			} else if (flag == CV_ROOT_RETURN) {
+				stop = handleRoots(y1);
+				reached = !stop && tret.getValue() == t1;
+			} else {
+				checkIntegrationFlag(flag);
+				continue;
+			}
+			interpolator.setStep(t0, tret.getValue());
+			// the step is the last one if t1 was reached at the end of
+			// the integration, or if a monitor requested to stop
+			boolean last = stop || (reached && t1 == tFinal);
+			for (StepHandler h : stepHandlers) {
+				try {
+					h.handleStep(interpolator, last);
+				} catch (DerivativeException e) {
+					throw new NumericException(e);
+				}
+			}
+			if (reached || stop) {
+				return reached;
+			}
+		}
+	}
+
+	// call CVode, the state returned is left in y
+	int call(double t1, int itask) {
+		profile.beginCall();
+		int flag = CVode(cvode_mem, t1, y, tret, itask);
+		if (profile.enabled) {
+			profile.endCall(flag, tret.getValue());
+		}
+		if (flag == CV_TSTOP_RETURN) {
+			// CVODE clears the stop time once it was reached
+			stopTimePending = false;
+		}
+		if (flag >= CV_SUCCESS) {
+			tReturned = tret.getValue();
+		}
+		return flag;
+	}
+
+	// call the event handlers of the monitor functions that triggered at the
+	// time returned, return true if one of them requested to stop
+	boolean handleRoots(double[] y1) throws NumericException {
+		// one of the monitor functions triggered
+		// find out which
+		int[] rootsfound = new int[nrtfnRegistered];
+		int flag = CVodeGetRootInfo(cvode_mem, rootsfound);
+		checkFlag(flag, "root was found, but could not determine which");
+		y.get(y1);
+		boolean stop = false;
+		for (int i = 0; i < nrtfnRegistered; i++) {
+			if (rootsfound[i] != 0) {
+				// call event handler
+				final long start = profile.beginCallback();
+				stop |= monitor.handleEvent(i, tret.getValue(), y1);
+				profile.endCallback(start, CallbackEvent.MONITOR);
+			}
+		}
+		return stop;
+	}
+
+	/**
+	 * Return the current time of the solver, which is the end of the last
+	 * internal step and may lie beyond the time returned by the last
+	 * integration.
+	 * @return
+	 * @throws NumericException
+	 */
+	public double getCurrentTime() throws NumericException {
+		checkFlag(CVodeGetCurrentTime(cvode_mem, tcur), "could not get current time");
+		return tcur.getValue();
+	}
+
+	/**
+	 * Return the signed size of the last internal step of the solver, or
+	 * zero if no step was taken since the last (re)initialization.
+	 * @return
+	 * @throws NumericException
+	 */
+	public double getLastStep() throws NumericException {
+		checkFlag(CVodeGetLastStep(cvode_mem, hlast), "could not get last step size");
+		return hlast.getValue();
+	}
+
+	/**
+	 * Compute the k-th derivative of the interpolating polynomial of the
+	 * solver at time t, which must lie within the last internal step.
+	 * k must not exceed the order of the last step.
+	 * @param t
+	 * @param k
+	 * @param out
+	 * @throws NumericException
+	 */
+	public void getDky(double t, int k, double[] out) throws NumericException {
+		assert out.length == N;
+		if (dky == null) {
+			dky = N_VNew_Serial(new NativeLong(N));
+		}
+		checkFlag(CVodeGetDky(cvode_mem, t, k, dky), "could not interpolate at t = " + t);
+		vectors.get(dky.getPointer(), out);
+	}
+
+	/**
+	 * Return the derivatives of order 0 to q of the interpolating polynomial
+	 * at the current time of the solver, where q is the order of the last
+	 * internal step. Element k of the result is the k-th derivative.
+	 * @return
+	 * @throws NumericException
+	 */
+	public double[][] getDerivatives() throws NumericException {
+		return getDerivatives(getCurrentTime());
+	}
+
+	/**
+	 * Return the derivatives of order 0 to q of the interpolating polynomial
+	 * at time t, which must lie within the last internal step.
+	 * @param t
+	 * @return
+	 * @throws NumericException
+	 */
+	public double[][] getDerivatives(double t) throws NumericException {
+		checkFlag(CVodeGetLastOrder(cvode_mem, qcur), "could not get order of last step");
+		double[][] d = new double[qcur.getValue() + 1][N];
+		for (int k = 0; k < d.length; k++) {
+			getDky(t, k, d[k]);
+		}
+		return d;
+	}
+
+	/**
+	 * Save the state of the integration at time t, which must lie within
+	 * the last internal step, e.g. the time returned by the last integration.
+	 * @param t
+	 * @return
+	 * @throws NumericException
+	 */
+	public CVodeCheckpoint checkpoint(double t) throws NumericException {
+		CVodeCheckpoint c = new CVodeCheckpoint();
+		c.time = t;
+		c.derivatives = getDerivatives(t);
+		c.lastStep = getLastStep();
+		c.statistics = CVodeStatistics.read(cvode_mem, count, qcur, hlast);
+		c.statistics.order = c.getOrder();
+		return c;
+	}
+
+	/**
+	 * Return the cost of the last integration.
+	 * @return
+	 */
+	public CVodeStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Free the native solver and state vector. The session may be used
+	 * again afterwards, in which case a new solver is created.
+	 */
+	public void close() {
+		if (cvode_mem != Pointer.NULL) {
+			// free solver
+			PointerByReference p_cvode_mem = new PointerByReference(cvode_mem);
+			CVodeFree(p_cvode_mem);
+			cvode_mem = Pointer.NULL;
+		}
+		freeLinearSolver();
+		vectors.clear();
+		if (dky != null) {
+			N_VDestroy_Serial(dky);
+			dky = null;
+		}
+
+		if (y != null) {
+			// free N_Vector
+			N_VDestroy_Serial(y);
+			y = null;
+		}
+
+		nrtfnRegistered = -1;
+		tolerancesChanged = true;
+		optionsApplied = null;
+		tLast = Double.NaN;
+		odeLast = null;
+		stopTimePending = false;
+	}
+
+	// throw an exception if flag returned by CVode is an error; CVODE
+	// returns CV_TOO_MUCH_WORK after the maximum number of steps, which
+	// is an error only if that number was set in the options, otherwise
+	// the integration continues with the next call of CVode
+	void checkIntegrationFlag(int flag) throws NumericException {
+		if (flag == CV_TOO_MUCH_WORK && options.getMaxSteps() != 0) {
+			throw new NumericException("[" + getReturnFlagName(flag)
+				+ "] maximum number of " + options.getMaxSteps() + " steps exceeded before t = "
+				+ tFinal);
+		}
+		checkFlag(flag, "error during integration");
+	}
+
+	// throw an exception if flag is not CV_SUCCESS
+	static void checkFlag(int flag, String msg) throws NumericException {
+		if (flag == CV_TOO_MUCH_WORK){
+			//added to override stopping at maximal number of steps (auth: Jonas Coussement)
+		}else{
+			if (flag != CV_SUCCESS)
+				throw new NumericException("[" + getReturnFlagName(flag)
+					+ "] " + msg);
+		}
+	}
+
+	/**
+	 * Return the name of a return flag of CVODE. Unlike CVodeGetReturnFlagName,
+	 * this does not allocate native memory that is never freed.
+	 * @param flag
+	 * @return
+	 */
+	static String getReturnFlagName(int flag) {
+		switch (flag) {
+		case CV_SUCCESS:
+			return "CV_SUCCESS";
+		case CV_TSTOP_RETURN:
+			return "CV_TSTOP_RETURN";
+		case CV_ROOT_RETURN:
+			return "CV_ROOT_RETURN";
+		case CV_WARNING:
+			return "CV_WARNING";
+		case CV_TOO_MUCH_WORK:
+			return "CV_TOO_MUCH_WORK";
+		case CV_TOO_MUCH_ACC:
+			return "CV_TOO_MUCH_ACC";
+		case CV_ERR_FAILURE:
+			return "CV_ERR_FAILURE";
+		case CV_CONV_FAILURE:
+			return "CV_CONV_FAILURE";
+		case CV_LINIT_FAIL:
+			return "CV_LINIT_FAIL";
+		case CV_LSETUP_FAIL:
+			return "CV_LSETUP_FAIL";
+		case CV_LSOLVE_FAIL:
+			return "CV_LSOLVE_FAIL";
+		case CV_RHSFUNC_FAIL:
+			return "CV_RHSFUNC_FAIL";
+		case CV_FIRST_RHSFUNC_ERR:
+			return "CV_FIRST_RHSFUNC_ERR";
+		case CV_REPTD_RHSFUNC_ERR:
+			return "CV_REPTD_RHSFUNC_ERR";
+		case CV_UNREC_RHSFUNC_ERR:
+			return "CV_UNREC_RHSFUNC_ERR";
+		case CV_RTFUNC_FAIL:
+			return "CV_RTFUNC_FAIL";
+		case CV_MEM_FAIL:
+			return "CV_MEM_FAIL";
+		case CV_MEM_NULL:
+			return "CV_MEM_NULL";
+		case CV_ILL_INPUT:
+			return "CV_ILL_INPUT";
+		case CV_NO_MALLOC:
+			return "CV_NO_MALLOC";
+		case CV_BAD_K:
+			return "CV_BAD_K";
+		case CV_BAD_T:
+			return "CV_BAD_T";
+		case CV_BAD_DKY:
+			return "CV_BAD_DKY";
+		case CV_TOO_CLOSE:
+			return "CV_TOO_CLOSE";
+		default:
+			return "NONE";
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package de.grogra.numeric;
+
+import static de.grogra.numeric.cvode.CVODE.CVodeGetCurrentOrder;
+import static de.grogra.numeric.cvode.CVODE.CVodeGetLastStep;
+import static de.grogra.numeric.cvode.CVODE.CVodeGetNumErrTestFails;
+import static de.grogra.numeric.cvode.CVODE.CVodeGetNumGEvals;
+import static de.grogra.numeric.cvode.CVODE.CVodeGetNumLinSolvSetups;
+import static de.grogra.numeric.cvode.CVODE.CVodeGetNumNonlinSolvIters;
+import static de.grogra.numeric.cvode.CVODE.CVodeGetNumRhsEvals;
+import static de.grogra.numeric.cvode.CVODE.CVodeGetNumSteps;
+import static de.grogra.numeric.cvode.CVODE.CV_SUCCESS;
+
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.DoubleByReference;
+import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.NativeLongByReference;
+
+/**
+ * Cost of a single integration by CVODE. The counters include only the
+ * work done within that integration, also if it resumed the solver where
+ * the previous one stopped. Last step size and current order describe the
+ * state of the solver at its end.
+ *
+ * Statistics are read from the solver once per integration, which costs
+ * a few native calls.
+ */
+public class CVodeStatistics {
+
+	long steps;
+	long rhsEvaluations;
+	long linearSolverSetups;
+	long errorTestFailures;
+	long nonlinearIterations;
+	long rootEvaluations;
+	double lastStep;
+	int order;
+
+	CVodeStatistics() {
+	}
+
+	// read the counters accumulated since the last (re)initialization of the solver
+	static CVodeStatistics read(Pointer cvode_mem, NativeLongByReference count,
+			IntByReference qcur, DoubleByReference hlast) {
+		CVodeStatistics s = new CVodeStatistics();
+		s.steps = CVodeGetNumSteps(cvode_mem, count) == CV_SUCCESS ? count.getValue().longValue() : 0;
+		s.rhsEvaluations = CVodeGetNumRhsEvals(cvode_mem, count) == CV_SUCCESS ? count.getValue().longValue() : 0;
+		s.linearSolverSetups = CVodeGetNumLinSolvSetups(cvode_mem, count) == CV_SUCCESS ? count.getValue().longValue() : 0;
+		s.errorTestFailures = CVodeGetNumErrTestFails(cvode_mem, count) == CV_SUCCESS ? count.getValue().longValue() : 0;
+		s.nonlinearIterations = CVodeGetNumNonlinSolvIters(cvode_mem, count) == CV_SUCCESS ? count.getValue().longValue() : 0;
+		s.rootEvaluations = CVodeGetNumGEvals(cvode_mem, count) == CV_SUCCESS ? count.getValue().longValue() : 0;
+		s.lastStep = CVodeGetLastStep(cvode_mem, hlast) == CV_SUCCESS ? hlast.getValue() : 0;
+		s.order = CVodeGetCurrentOrder(cvode_mem, qcur) == CV_SUCCESS ? qcur.getValue() : 0;
+		return s;
+	}
+
+	// return the counters of this minus those of start
+	CVodeStatistics since(CVodeStatistics start) {
+		CVodeStatistics s = new CVodeStatistics();
+		s.steps = steps - start.steps;
+		s.rhsEvaluations = rhsEvaluations - start.rhsEvaluations;
+		s.linearSolverSetups = linearSolverSetups - start.linearSolverSetups;
+		s.errorTestFailures = errorTestFailures - start.errorTestFailures;
+		s.nonlinearIterations = nonlinearIterations - start.nonlinearIterations;
+		s.rootEvaluations = rootEvaluations - start.rootEvaluations;
+		s.lastStep = lastStep;
+		s.order = order;
+		return s;
+	}
+
+	public long getStepCount() {
+		return steps;
+	}
+
+	/**
+	 * Return the number of evaluations of the rate, excluding those for
+	 * difference quotients of the Jacobian.
+	 * @return
+	 */
+	public long getRateCount() {
+		return rhsEvaluations;
+	}
+
+	/**
+	 * Return the number of setups of the linear solver, each of which
+	 * computes or reuses the Jacobian and factorizes the Newton matrix.
+	 * @return
+	 */
+	public long getLinearSolverSetups() {
+		return linearSolverSetups;
+	}
+
+	public long getErrorTestFailures() {
+		return errorTestFailures;
+	}
+
+	public long getNonlinearIterations() {
+		return nonlinearIterations;
+	}
+
+	/**
+	 * Return the number of evaluations of the monitor functions.
+	 * @return
+	 */
+	public long getRootEvaluations() {
+		return rootEvaluations;
+	}
+
+	public double getLastStep() {
+		return lastStep;
+	}
+
+	public int getOrder() {
+		return order;
+	}
+
+	@Override
+	public String toString() {
+		return "steps=" + steps + ", rhs=" + rhsEvaluations + ", setups=" + linearSolverSetups
+				+ ", errorTestFailures=" + errorTestFailures + ", iterations=" + nonlinearIterations
+				+ ", roots=" + rootEvaluations + ", lastStep=" + lastStep + ", order=" + order;
+	}
+}
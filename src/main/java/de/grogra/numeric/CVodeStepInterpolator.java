@@ -0,0 +1,211 @@
+package de.grogra.numeric;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import org.apache.commons.math.ode.DerivativeException;
+import org.apache.commons.math.ode.sampling.StepInterpolator;
+
+/**
+ * Dense output of CVODE passed to step handlers.
+ *
+ * While a step is handled, state and derivatives are computed with
+ * CVodeGetDky from the interpolating polynomial of the solver, so sampling
+ * within the step needs no evaluation of the equations. A copy stores the
+ * derivatives of this polynomial at the end of the step and evaluates it as
+ * Taylor polynomial, so it remains valid after the solver went on.
+ */
+public class CVodeStepInterpolator implements StepInterpolator {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Solver whose interpolating polynomial is sampled while a step is
+	 * handled, implemented by the sessions of both CVODE backends.
+	 */
+	interface DenseOutput {
+		int getDimension();
+
+		double getCurrentTime() throws NumericException;
+
+		void getDky(double t, int k, double[] out) throws NumericException;
+
+		double[][] getDerivatives() throws NumericException;
+	}
+
+	// session of the step being handled, null for copies
+	transient DenseOutput session;
+
+	double previousTime;
+	double currentTime;
+	double interpolatedTime;
+
+	// derivatives of order 0 to q of the polynomial at time tn, for copies
+	double tn;
+	double[][] derivatives;
+
+	double[] interpolatedState;
+	double[] interpolatedDerivatives;
+	boolean stateValid;
+	boolean derivativesValid;
+
+	/**
+	 * Create an empty interpolator, only needed for deserialization.
+	 */
+	public CVodeStepInterpolator() {
+	}
+
+	CVodeStepInterpolator(DenseOutput session) {
+		this.session = session;
+		interpolatedState = new double[session.getDimension()];
+		interpolatedDerivatives = new double[session.getDimension()];
+	}
+
+	/**
+	 * Start a new step of the solver from t0 to t1.
+	 * @param t0
+	 * @param t1
+	 */
+	void setStep(double t0, double t1) {
+		previousTime = t0;
+		currentTime = t1;
+		interpolatedTime = t1;
+		stateValid = false;
+		derivativesValid = false;
+	}
+
+	@Override
+	public double getPreviousTime() {
+		return previousTime;
+	}
+
+	@Override
+	public double getCurrentTime() {
+		return currentTime;
+	}
+
+	@Override
+	public double getInterpolatedTime() {
+		return interpolatedTime;
+	}
+
+	@Override
+	public void setInterpolatedTime(double time) {
+		interpolatedTime = time;
+		stateValid = false;
+		derivativesValid = false;
+	}
+
+	@Override
+	public double[] getInterpolatedState() throws DerivativeException {
+		if (!stateValid) {
+			interpolate(0, interpolatedState);
+			stateValid = true;
+		}
+		return interpolatedState;
+	}
+
+	@Override
+	public double[] getInterpolatedDerivatives() throws DerivativeException {
+		if (!derivativesValid) {
+			interpolate(1, interpolatedDerivatives);
+			derivativesValid = true;
+		}
+		return interpolatedDerivatives;
+	}
+
+	// compute the k-th derivative at the interpolated time
+	void interpolate(int k, double[] out) throws DerivativeException {
+		if (session != null) {
+			try {
+				session.getDky(interpolatedTime, k, out);
+			} catch (NumericException e) {
+				throw new DerivativeException(e);
+			}
+			return;
+		}
+		// Horner scheme for sum of d[j] * s^(j-k) / (j-k)! over j >= k
+		final int q = derivatives.length - 1;
+		final double s = interpolatedTime - tn;
+		for (int i = 0; i < out.length; i++) {
+			double r = q >= k ? derivatives[q][i] : 0;
+			for (int j = q - 1; j >= k; j--) {
+				r = derivatives[j][i] + r * s / (j - k + 1);
+			}
+			out[i] = r;
+		}
+	}
+
+	@Override
+	public boolean isForward() {
+		return currentTime >= previousTime;
+	}
+
+	@Override
+	public StepInterpolator copy() throws DerivativeException {
+		CVodeStepInterpolator c = new CVodeStepInterpolator();
+		c.previousTime = previousTime;
+		c.currentTime = currentTime;
+		c.interpolatedTime = interpolatedTime;
+		if (session != null) {
+			try {
+				c.tn = session.getCurrentTime();
+				c.derivatives = session.getDerivatives();
+			} catch (NumericException e) {
+				throw new DerivativeException(e);
+			}
+		} else {
+			// the polynomial of a copy is never modified
+			c.tn = tn;
+			c.derivatives = derivatives;
+		}
+		c.interpolatedState = new double[interpolatedState.length];
+		c.interpolatedDerivatives = new double[interpolatedDerivatives.length];
+		return c;
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		CVodeStepInterpolator c = this;
+		if (session != null) {
+			try {
+				c = (CVodeStepInterpolator) copy();
+			} catch (DerivativeException e) {
+				throw new IOException(e);
+			}
+		}
+		out.writeDouble(c.previousTime);
+		out.writeDouble(c.currentTime);
+		out.writeDouble(c.interpolatedTime);
+		out.writeDouble(c.tn);
+		out.writeInt(c.derivatives.length);
+		out.writeInt(c.interpolatedState.length);
+		for (double[] d : c.derivatives) {
+			for (double v : d) {
+				out.writeDouble(v);
+			}
+		}
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException {
+		session = null;
+		previousTime = in.readDouble();
+		currentTime = in.readDouble();
+		interpolatedTime = in.readDouble();
+		tn = in.readDouble();
+		int q = in.readInt();
+		int n = in.readInt();
+		derivatives = new double[q][n];
+		for (double[] d : derivatives) {
+			for (int i = 0; i < n; i++) {
+				d[i] = in.readDouble();
+			}
+		}
+		interpolatedState = new double[n];
+		interpolatedDerivatives = new double[n];
+		stateValid = false;
+		derivativesValid = false;
+	}
+}
@@ -0,0 +1,30 @@
+package de.grogra.numeric;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of a Java callback of a solver. Only every
+ * {@value SolverProfile#SAMPLE_INTERVAL}th callback of an integration is
+ * recorded, the time of all callbacks is summed up in
+ * {@linkplain IntegrateEvent}.
+ */
+@Name("de.grogra.numeric.Callback")
+@Label("Solver Callback")
+@Category({ "Numeric", "Solver" })
+@Description("Sampled evaluation of a Java callback by the solver")
+@StackTrace(false)
+final class CallbackEvent extends Event {
+
+	static final String RATE = "rate";
+	static final String MONITOR = "monitor";
+	static final String JACOBIAN = "jacobian";
+	static final String LINEAR_SOLVER = "linear solver";
+
+	@Label("Kind")
+	String kind;
+}
@@ -0,0 +1,102 @@
+package de.grogra.numeric;
+
+import java.util.Arrays;
+
+/**
+ * Approximates the Jacobian of an ODE by forward difference quotients,
+ * using a {@linkplain SparsityPattern} to perturb all columns of the same
+ * color at once. Costs one evaluation of the rate per color instead of
+ * one per column, which is a small constant for stencil discretisations.
+ * 
+ * Elements outside the band of the matrix passed to
+ * {@linkplain #getJacobian(JacobianMatrix, double, double[], double[])}
+ * are dropped. Instances keep work arrays and are not thread-safe.
+ */
+public class ColoredJacobian implements Jacobian {
+
+	static final double SQRT_EPS = Math.sqrt(Math.ulp(1.0));
+
+	final ODE ode;
+	final SparsityPattern pattern;
+
+	// columns sorted by color, columns of color c are colorColumns[colorStart[c] ... colorStart[c+1]-1]
+	final int[] colorStart;
+	final int[] colorColumns;
+
+	// smallest magnitude used to scale the perturbation of a variable
+	double typicalValue = 1;
+
+	final double[] y;
+	final double[] f;
+	final double[] h;
+
+	public ColoredJacobian(ODE ode, SparsityPattern pattern) {
+		this.ode = ode;
+		this.pattern = pattern;
+		final int N = pattern.getDimension();
+		int[] colors = pattern.getColumnColors();
+		int count = pattern.getColorCount();
+		colorStart = new int[count + 1];
+		for (int j = 0; j < N; j++)
+			colorStart[colors[j] + 1]++;
+		for (int c = 0; c < count; c++)
+			colorStart[c + 1] += colorStart[c];
+		colorColumns = new int[N];
+		int[] next = Arrays.copyOf(colorStart, count);
+		for (int j = 0; j < N; j++)
+			colorColumns[next[colors[j]]++] = j;
+		y = new double[N];
+		f = new double[N];
+		h = new double[N];
+	}
+
+	public SparsityPattern getPattern() {
+		return pattern;
+	}
+
+	public double getTypicalValue() {
+		return typicalValue;
+	}
+
+	/**
+	 * Set the magnitude below which state variables are perturbed by a
+	 * fixed increment, sqrt(eps) * typicalValue. Defaults to 1.
+	 * @param typicalValue
+	 */
+	public void setTypicalValue(double typicalValue) {
+		if (!(typicalValue > 0)) throw new IllegalArgumentException("typical value must be positive");
+		this.typicalValue = typicalValue;
+	}
+
+	@Override
+	public void getJacobian(JacobianMatrix J, double t, double[] state, double[] rate) {
+		final int N = pattern.N;
+		final int[] columnStart = pattern.columnStart;
+		final int[] rows = pattern.rows;
+		final int mu = J.getUpperBandwidth();
+		final int ml = J.getLowerBandwidth();
+		System.arraycopy(state, 0, y, 0, N);
+		for (int c = 0; c + 1 < colorStart.length; c++) {
+			// perturb all columns of this color
+			for (int k = colorStart[c]; k < colorStart[c + 1]; k++) {
+				int j = colorColumns[k];
+				double yj = state[j];
+				y[j] = yj + SQRT_EPS * Math.max(Math.abs(yj), typicalValue);
+				// use the increment that is actually representable
+				h[j] = y[j] - yj;
+			}
+			ode.getRate(f, t, y);
+			for (int k = colorStart[c]; k < colorStart[c + 1]; k++) {
+				int j = colorColumns[k];
+				double inv = 1 / h[j];
+				for (int l = columnStart[j]; l < columnStart[j + 1]; l++) {
+					int i = rows[l];
+					if (j - i <= mu && i - j <= ml) {
+						J.set(i, j, (f[i] - rate[i]) * inv);
+					}
+				}
+				y[j] = state[j];
+			}
+		}
+	}
+}
@@ -0,0 +1,224 @@
+package de.grogra.numeric;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+/**
+ * Runs many independent integrations of the same model, each with its own
+ * parameters and initial state, in parallel on a fork-join pool.
+ * 
+ * Solvers are not thread-safe, so every worker thread gets its own solver
+ * from the solver factory. Solvers are kept for the lifetime of the runner,
+ * so native solvers (like {@linkplain CVodeAdapter}) are reused by later
+ * runs on the same thread. Call {@linkplain #close()} to release them, a
+ * runner used again afterwards creates new solvers.
+ * 
+ * Runs are split recursively and distributed by work stealing, final states
+ * are written into a single preallocated array.
+ */
+public class EnsembleRunner implements AutoCloseable {
+
+	/**
+	 * Creates the model for a single run of the ensemble.
+	 */
+	public interface ModelFactory {
+		/**
+		 * Create the equations for the given parameters. Called once per
+		 * run, possibly from different threads at the same time.
+		 * @param params parameters of the run
+		 * @return
+		 */
+		ODE createModel(double[] params);
+	}
+
+	final ForkJoinPool pool;
+	final Supplier<? extends Solver> solverFactory;
+
+	// solver and state buffer per worker thread, replaced on close(), all
+	// created solvers are remembered for close()
+	volatile ThreadLocal<Worker> workers;
+	final Queue<Solver> created = new ConcurrentLinkedQueue<Solver>();
+
+	// number of runs below which a task is not split any further
+	int grainSize = 1;
+
+	/**
+	 * Create a runner that uses the common fork-join pool.
+	 * @param solverFactory creates a new solver, called once per worker thread
+	 */
+	public EnsembleRunner(Supplier<? extends Solver> solverFactory) {
+		this(solverFactory, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Create a runner that uses the given pool.
+	 * @param solverFactory creates a new solver, called once per worker thread
+	 * @param pool
+	 */
+	public EnsembleRunner(Supplier<? extends Solver> solverFactory, ForkJoinPool pool) {
+		this.solverFactory = solverFactory;
+		this.pool = pool;
+		this.workers = createWorkers();
+	}
+
+	ThreadLocal<Worker> createWorkers() {
+		return new ThreadLocal<Worker>() {
+			@Override
+			protected Worker initialValue() {
+				Solver s = solverFactory.get();
+				created.add(s);
+				return new Worker(s);
+			}
+		};
+	}
+
+	// resources of a single worker thread
+	static final class Worker {
+		final Solver solver;
+		// final state of the current run, reused by all runs of the thread
+		double[] y = new double[0];
+
+		Worker(Solver solver) {
+			this.solver = solver;
+		}
+
+		double[] getBuffer(int n) {
+			if (y.length != n) {
+				y = new double[n];
+			}
+			return y;
+		}
+	}
+
+	public int getGrainSize() {
+		return grainSize;
+	}
+
+	/**
+	 * Set the number of runs below which work is not split any further.
+	 * @param grainSize
+	 */
+	public void setGrainSize(int grainSize) {
+		if (grainSize < 1) throw new IllegalArgumentException("grain size must be positive");
+		this.grainSize = grainSize;
+	}
+
+	/**
+	 * Integrate all runs from t0 to t1. Run r uses parameters params[r] and
+	 * initial state y0[r], its final state is stored at out[r*N ... r*N+N-1],
+	 * where N is the dimension of the state.
+	 * @param models creates the equations of each run
+	 * @param params parameters per run, may be null if the model has no parameters
+	 * @param y0 initial state per run
+	 * @param t0 initial time
+	 * @param t1 final time
+	 * @param out memory for the final states of all runs
+	 * @throws NumericException if any of the runs failed
+	 */
+	public void run(final ModelFactory models, final double[][] params, final double[][] y0,
+			final double t0, final double t1, final double[] out) throws NumericException {
+		final int runs = y0.length;
+		if (runs == 0) return;
+		final int N = y0[0].length;
+		if (params != null && params.length != runs)
+			throw new IllegalArgumentException("number of parameter sets and initial states differ");
+		// final states of all runs must fit into a single array
+		final long size = (long) runs * N;
+		if (size > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("too many final states for one output array");
+		if (out.length < size)
+			throw new IllegalArgumentException("output array too small");
+
+		try {
+			pool.invoke(new Task(workers, models, params, y0, t0, t1, out, N, 0, runs));
+		} catch (Failure f) {
+			throw f.cause;
+		}
+	}
+
+	// integrates the runs [from, to), splits if there are too many
+	class Task extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final ThreadLocal<Worker> workers;
+		final ModelFactory models;
+		final double[][] params;
+		final double[][] y0;
+		final double t0, t1;
+		final double[] out;
+		final int N, from, to;
+
+		Task(ThreadLocal<Worker> workers, ModelFactory models, double[][] params, double[][] y0,
+				double t0, double t1, double[] out, int N, int from, int to) {
+			this.workers = workers;
+			this.models = models;
+			this.params = params;
+			this.y0 = y0;
+			this.t0 = t0;
+			this.t1 = t1;
+			this.out = out;
+			this.N = N;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > grainSize) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Task(workers, models, params, y0, t0, t1, out, N, from, mid),
+						new Task(workers, models, params, y0, t0, t1, out, N, mid, to));
+				return;
+			}
+			Worker worker = workers.get();
+			Solver solver = worker.solver;
+			double[] y = worker.getBuffer(N);
+			for (int r = from; r < to; r++) {
+				if (y0[r].length != N)
+					throw new IllegalArgumentException("initial state of run " + r + " has wrong dimension");
+				ODE ode = models.createModel(params != null ? params[r] : null);
+				try {
+					solver.integrate(ode, t0, y0[r], t1, y);
+				} catch (NumericException e) {
+					throw new Failure(new NumericException("run " + r + " failed", e));
+				}
+				System.arraycopy(y, 0, out, r * N, N);
+			}
+		}
+	}
+
+	// transports a NumericException out of the pool
+	static class Failure extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		final NumericException cause;
+
+		Failure(NumericException cause) {
+			super(cause);
+			this.cause = cause;
+		}
+	}
+
+	/**
+	 * Release the solvers of all worker threads that hold resources. The
+	 * solvers are not used again, later runs create new ones.
+	 */
+	@Override
+	public void close() {
+		// worker threads keep their values of the previous thread local,
+		// which become unreachable with it
+		workers = createWorkers();
+		Solver s;
+		while ((s = created.poll()) != null) {
+			if (s instanceof AutoCloseable) {
+				try {
+					((AutoCloseable) s).close();
+				} catch (Exception e) {
+					// nothing left to do with this solver
+				}
+			}
+		}
+	}
+}
@@ -2,13 +2,14 @@ package de.grogra.numeric;
 
 import static java.lang.Math.abs;
 
-import java.util.Arrays;
 import java.util.Map;
 
+import org.apache.commons.math.ode.DerivativeException;
 import org.apache.commons.math.ode.FirstOrderDifferentialEquations;
 import org.apache.commons.math.ode.FirstOrderIntegrator;
 import org.apache.commons.math.ode.events.EventException;
 import org.apache.commons.math.ode.events.EventHandler;
+import org.apache.commons.math.ode.sampling.StepHandler;
 
 /**
  * This class is a wrapper to Apache Commons Math.
@@ -22,30 +23,49 @@ import org.apache.commons.math.ode.events.EventHandler;
  * Commons Math, which seems to be in method acceptStep in AbstractIntegrator.
  * 
  * A workaround is to simply always stop integration when an event triggers and
- * handle events afterwards. This is what is implemented for now.
+ * handle events afterwards. This is what is implemented by default, see
+ * {@linkplain EventMode#RESTART}. As all monitor functions share a single event
+ * handler, the bug does not apply to them, so they can also be handled while
+ * the integrator continues, see {@linkplain EventMode#CONTINUE}.
+ * 
+ * Integrations by integrators of Apache Commons Math are recorded as
+ * Flight Recorder events, see {@linkplain IntegrateEvent}.
  * 
  * @author Reinhard Hemmerling
  * 
  */
-public class FirstOrderIntegratorAdapter implements Solver {
+public class FirstOrderIntegratorAdapter implements Solver, AutoCloseable {
 
 	public static final double MAX_CHECK_INTERVAL = 1;	// in time units
 	public static final double CONVERGENCE = 1e-4;		// in time units
 	public static final int MAX_ITERATION_COUNT = 100;
 
+	/**
+	 * How events of the monitor functions are handled.
+	 */
+	public enum EventMode {
+		/**
+		 * stop the integrator at every event, handle the events and start
+		 * a new integration, which begins with a new step size estimate
+		 */
+		RESTART,
+		/**
+		 * handle the events within the integrator, which continues with
+		 * its current step size unless an event handler requests to stop
+		 */
+		CONTINUE
+	}
+
 	FirstOrderIntegrator integrator;
 	
 	int n;
 	Monitor monitor;
-	
-	// data holder to support implementation of setMonitor()
-	private static class EventData {
-		double t;
-		double[] y;
-		double[] gout;
-	}
-	
-	final EventData data = new EventData();
+	// single event handler for all monitor functions
+	MonitorEvents events;
+	EventMode eventMode = EventMode.RESTART;
+
+	// Flight Recorder events and time spent in callbacks
+	final SolverProfile profile = new SolverProfile();
 
 	public FirstOrderIntegratorAdapter(FirstOrderIntegrator integrator) {
 		this.integrator = integrator;
@@ -63,13 +83,26 @@ public class FirstOrderIntegratorAdapter implements Solver {
 
 		FirstOrderDifferentialEquations equations = new FirstOrderDifferentialEquationsAdapter(
 				ode, N);
+		// CVodeAdapter records its own events, and needs the adapter to access the equations
+		IntegrateEvent event = new IntegrateEvent();
+		if (!(integrator instanceof CVodeAdapter)) {
+			profile.start(event);
+			if (profile.enabled) {
+				equations = new ProfiledEquations(equations);
+			}
+		}
+		double t = t0;
 		try {
 			// loop until target time reached
-			double t = t0;
 			System.arraycopy(y0, 0, y, 0, N);
+			if (n > 0) {
+				events.start(equations, t, y, t1);
+			}
 			while (abs(t - t1) > CONVERGENCE) {
 				// integrate until target time reached or event triggered
+				profile.beginCall();
 				t = integrator.integrate(equations, t, y, t1, y);
+				profile.endCall(abs(t - t1) > CONVERGENCE ? "event" : "final time", t);
 				
 //				System.out.println("t = " + t);
 //				for (double d : y) System.out.print(d + "  ");
@@ -77,16 +110,16 @@ public class FirstOrderIntegratorAdapter implements Solver {
 				
 				// check if any monitor was set, and if so check if any one triggered
 				if (n > 0) {
-					// invalidate cache
-					data.t = Double.NaN;
-					// evaluate monitor function
-					monitor.g(data.gout, t, y);
-					// check if any event triggered
-					boolean stop = false;
-					for (int i = 0; i < n; i++) {
-						if (abs(data.gout[i]) < 2 * CONVERGENCE) {
-							stop |= monitor.handleEvent(i, t, y);
-						}
+					boolean stop;
+					if (eventMode == EventMode.CONTINUE
+							&& (events.stop || abs(t - events.lastEvent) <= CONVERGENCE)) {
+						// events were already handled by the integrator
+						stop = events.stop;
+					} else {
+						// evaluate monitor function
+						monitor.g(events.gout, t, y);
+						// handle events triggered, at t1 only those close to their root
+						stop = events.handle(t, y, abs(t - t1) > CONVERGENCE);
 					}
 					// if any event requested to stop, stop integration now
 					if (stop) {
@@ -96,9 +129,39 @@ public class FirstOrderIntegratorAdapter implements Solver {
 			}
 		} catch (Exception ex) {
 			throw new NumericException(ex);
+		} finally {
+			profile.end(event, integrator.getName(), N, t0, t1, t);
+		}
+	}
+
+	// equations whose evaluations are timed by profile
+	final class ProfiledEquations implements FirstOrderDifferentialEquations {
+		final FirstOrderDifferentialEquations equations;
+
+		ProfiledEquations(FirstOrderDifferentialEquations equations) {
+			this.equations = equations;
+		}
+
+		@Override
+		public int getDimension() {
+			return equations.getDimension();
+		}
+
+		@Override
+		public void computeDerivatives(double t, double[] y, double[] yDot) throws DerivativeException {
+			final long start = profile.beginCallback();
+			try {
+				equations.computeDerivatives(t, y, yDot);
+			} finally {
+				profile.endCallback(start, CallbackEvent.RATE);
+			}
 		}
 	}
 	
+	/**
+	 * Set the monitor functions. They are observed by a single event
+	 * handler of the wrapped integrator, see {@linkplain MonitorEvents}.
+	 */
 	public void setMonitor(int n, final Monitor monitor)
 	{
 		assert n == 0 || monitor != null;
@@ -108,49 +171,203 @@ public class FirstOrderIntegratorAdapter implements Solver {
 		this.monitor = monitor;
 		// remove previously set handlers
 		integrator.clearEventHandlers();
-		// set new handlers
-		data.gout = new double[n];
-		for (int i = 0; i < n; i++) {
-			final int INDEX = i;
-			EventHandler eventHandler = new EventHandler() {
-				final int i = INDEX;
-				@Override
-				public int eventOccurred(double t, double[] y, boolean increasing)
-						throws EventException {
-					// always stop, as workaround
-					return STOP;
+		// set new handler
+		events = null;
+		if (n > 0) {
+			events = new MonitorEvents(n);
+			integrator.addEventHandler(events, MAX_CHECK_INTERVAL, CONVERGENCE, MAX_ITERATION_COUNT);
+		}
+	}
+
+	public EventMode getEventMode() {
+		return eventMode;
+	}
+
+	/**
+	 * Select how events of the monitor functions are handled, the default
+	 * is {@linkplain EventMode#RESTART}.
+	 * @param eventMode
+	 */
+	public void setEventMode(EventMode eventMode) {
+		this.eventMode = eventMode;
+	}
+
+	/**
+	 * Event handler that detects the first root of any monitor function.
+	 *
+	 * Every monitor function gi is multiplied by its sign si at the start
+	 * of the current integration, and g returns the minimum of all si * gi.
+	 * This stays positive until the first of the gi changes its sign, so a
+	 * single root search of the integrator finds the earliest event among
+	 * all monitor functions, and each evaluation of g evaluates the monitor
+	 * only once. Functions that are zero at the start cannot trigger until
+	 * the next integration.
+	 *
+	 * The root search stops within {@value #CONVERGENCE} time units of the
+	 * root. So at an event, the functions are also evaluated at the state
+	 * extrapolated by that time in the direction of integration, and each
+	 * function that changes its sign up to there has triggered.
+	 *
+	 * If events are handled while the integrator continues, the triggered
+	 * functions take the sign after their root, and g changes its sign, as
+	 * the integrator expects g to keep the sign it had after the event.
+	 */
+	final class MonitorEvents implements EventHandler {
+		final double[] gout;
+		final double[] signs;
+		final boolean[] triggered;
+		// monitor functions at the state extrapolated by the convergence
+		final double[] gahead;
+		// equations, step of extrapolation and memory for it
+		FirstOrderDifferentialEquations equations;
+		double step;
+		double[] rate;
+		double[] ahead;
+		// sign of g, changes with every event handled while continuing
+		double orientation;
+		// time of the last event handled while continuing, and if a handler
+		// requested to stop then
+		double lastEvent;
+		boolean stop;
+
+		MonitorEvents(int n) {
+			gout = new double[n];
+			signs = new double[n];
+			triggered = new boolean[n];
+			gahead = new double[n];
+		}
+
+		// take the signs of the monitor functions at the start (t, y) of
+		// an integration of the equations to t1
+		void start(FirstOrderDifferentialEquations equations, double t, double[] y, double t1) {
+			this.equations = equations;
+			step = t1 >= t ? CONVERGENCE : -CONVERGENCE;
+			if (rate == null || rate.length != y.length) {
+				rate = new double[y.length];
+				ahead = new double[y.length];
+			}
+			monitor.g(gout, t, y);
+			for (int i = 0; i < gout.length; i++) {
+				signs[i] = Math.signum(gout[i]);
+			}
+			orientation = 1;
+			lastEvent = Double.NaN;
+			stop = false;
+		}
+
+		// call the event handlers of the functions that triggered at the
+		// time gout was evaluated for, which are those that change their
+		// sign up to the extrapolated state; if event is set and none did,
+		// the one with the earliest estimated root has triggered; functions
+		// that triggered take the sign after their root, which they may not
+		// have reached yet, the others take their current sign
+		boolean handle(double t, double[] y, boolean event) throws DerivativeException {
+			equations.computeDerivatives(t, y, rate);
+			for (int i = 0; i < y.length; i++) {
+				ahead[i] = y[i] + step * rate[i];
+			}
+			monitor.g(gahead, t + step, ahead);
+			boolean any = false;
+			int closest = -1;
+			double earliest = Double.POSITIVE_INFINITY;
+			for (int i = 0; i < gout.length; i++) {
+				final double g0 = signs[i] * gout[i];
+				final double g1 = signs[i] * gahead[i];
+				triggered[i] = signs[i] != 0 && (g0 <= 0 || g1 <= 0);
+				any |= triggered[i];
+				// root of the linear interpolation, in units of step
+				if (signs[i] != 0 && g1 < g0 && g0 / (g0 - g1) < earliest) {
+					earliest = g0 / (g0 - g1);
+					closest = i;
 				}
-				@Override
-				public double g(double t, double[] y)
-						throws EventException {
-					assert y != null;
-					// check if (t,y) differs from cached result of g(t,y)
-					if (Double.compare(data.t, t) != 0 || !Arrays.equals(data.y, y)) {
-						// then update cache
-						if (data.y == null || data.y.length != y.length) {
-							data.y = y.clone();
-						} else {
-							System.arraycopy(y, 0, data.y, 0, y.length);
-						}
-						data.t = t;
-						monitor.g(data.gout, t, y);
-					}
-					return data.gout[i];
+			}
+			if (event && !any && closest >= 0) {
+				triggered[closest] = true;
+			}
+			boolean stop = false;
+			for (int i = 0; i < gout.length; i++) {
+				if (triggered[i]) {
+					stop |= monitor.handleEvent(i, t, y);
+					signs[i] = -signs[i];
+				} else {
+					signs[i] = Math.signum(gout[i]);
 				}
-				@Override
-				public void resetState(double t, double[] y)
-						throws EventException {
-					throw new EventException("NOT IMPLEMENTED");
+			}
+			return stop;
+		}
+
+		@Override
+		public int eventOccurred(double t, double[] y, boolean increasing)
+				throws EventException {
+			if (eventMode == EventMode.RESTART) {
+				// always stop, as workaround
+				return STOP;
+			}
+			final long start = profile.beginCallback();
+			monitor.g(gout, t, y);
+			try {
+				stop = handle(t, y, true);
+			} catch (DerivativeException e) {
+				throw new EventException(e);
+			} finally {
+				profile.endCallback(start, CallbackEvent.MONITOR);
+			}
+			orientation = -orientation;
+			lastEvent = t;
+			return stop ? STOP : CONTINUE;
+		}
+
+		@Override
+		public double g(double t, double[] y)
+				throws EventException {
+			assert y != null;
+			final long start = profile.beginCallback();
+			monitor.g(gout, t, y);
+			profile.endCallback(start, CallbackEvent.MONITOR);
+			double min = Double.POSITIVE_INFINITY;
+			for (int i = 0; i < gout.length; i++) {
+				if (signs[i] != 0) {
+					min = Math.min(min, signs[i] * gout[i]);
 				}
-			};
-			integrator.addEventHandler(eventHandler, MAX_CHECK_INTERVAL, CONVERGENCE, MAX_ITERATION_COUNT);
+			}
+			// no function can trigger
+			return orientation * (min == Double.POSITIVE_INFINITY ? 1 : min);
+		}
+
+		@Override
+		public void resetState(double t, double[] y)
+				throws EventException {
+			throw new EventException("NOT IMPLEMENTED");
 		}
 	}
 
+	/**
+	 * Add a step handler to the wrapped integrator, e.g. a
+	 * {@linkplain TrajectoryWriter}. Integrations interrupted by events
+	 * are continued by new integrations, which reset the handlers.
+	 * @param handler
+	 */
+	public void addStepHandler(StepHandler handler) {
+		integrator.addStepHandler(handler);
+	}
+
+	/**
+	 * Remove all step handlers from the wrapped integrator.
+	 */
+	public void clearStepHandlers() {
+		integrator.clearStepHandlers();
+	}
+
+	/**
+	 * Options are passed on to the wrapped integrator if it is a
+	 * {@linkplain CVodeAdapter}, see {@linkplain CVodeAdapter.Options}.
+	 * They are ignored for other integrators.
+	 */
 	@Override
 	public void setOptions(Map options) {
-		// TODO Auto-generated method stub
-		
+		if (integrator instanceof CVodeAdapter) {
+			((CVodeAdapter) integrator).setOptions(options);
+		}
 	}
 
 	@Override
@@ -162,4 +379,21 @@ public class FirstOrderIntegratorAdapter implements Solver {
 		// instead, the user has to set a new solver to set tolerances
 	}
 
+	/**
+	 * Release resources of the wrapped integrator, if it holds any.
+	 * @throws NumericException if the integrator failed to release them
+	 */
+	@Override
+	public void close() throws NumericException {
+		if (integrator instanceof AutoCloseable) {
+			try {
+				((AutoCloseable) integrator).close();
+			} catch (NumericException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new NumericException(e);
+			}
+		}
+	}
+
 }
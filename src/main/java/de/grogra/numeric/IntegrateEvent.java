@@ -0,0 +1,54 @@
+package de.grogra.numeric;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event of a single integration by {@linkplain CVodeSession}
+ * or {@linkplain FirstOrderIntegratorAdapter}. The duration of the event is
+ * split into the time spent in the Java callbacks of the solver (rate,
+ * monitor, Jacobian and linear solver operators) and the remainder, which
+ * is the work of the solver itself including the transitions between Java
+ * and native code.
+ *
+ * Callbacks are only timed while this event is enabled, otherwise the
+ * solvers just check a flag per callback.
+ */
+@Name("de.grogra.numeric.Integrate")
+@Label("Integrate")
+@Category({ "Numeric", "Solver" })
+@Description("Integration of an initial value problem")
+final class IntegrateEvent extends Event {
+
+	@Label("Solver")
+	String solver;
+
+	@Label("Dimension")
+	int dimension;
+
+	@Label("Initial Time")
+	double initialTime;
+
+	@Label("Final Time")
+	double finalTime;
+
+	@Label("Reached Time")
+	double reachedTime;
+
+	@Label("Callbacks")
+	long callbacks;
+
+	@Label("Callback Time")
+	@Description("Time spent in Java callbacks of the solver")
+	@Timespan
+	long callbackTime;
+
+	@Label("Solver Time")
+	@Description("Time spent outside of Java callbacks, including native code and its transitions")
+	@Timespan
+	long solverTime;
+}
@@ -0,0 +1,22 @@
+package de.grogra.numeric;
+
+/**
+ * Equations may implement this interface in addition to {@linkplain ODE}
+ * to provide the Jacobian of the rate function analytically. Solvers then
+ * compute the Jacobian with a single call, instead of approximating it by
+ * difference quotients that need N further evaluations of the rate.
+ */
+public interface Jacobian {
+
+	/**
+	 * Calculate the Jacobian J(i,j) = d rate_i / d state_j for a given
+	 * time and state. J is zero on entry, so only nonzero elements need
+	 * to be set. If J is a band matrix, only elements within its band
+	 * may be set.
+	 * @param J provides the storage of the solver for the Jacobian
+	 * @param t current time
+	 * @param state current state
+	 * @param rate rate at current time and state
+	 */
+	void getJacobian(JacobianMatrix J, double t, double[] state, double[] rate);
+}
@@ -0,0 +1,35 @@
+package de.grogra.numeric;
+
+/**
+ * A square matrix as passed to {@linkplain Jacobian}. Depending on the
+ * linear solver this is a dense or a band matrix, in both cases element
+ * access writes directly into the storage used by the solver.
+ */
+public interface JacobianMatrix {
+
+	/**
+	 * Return number of rows and columns.
+	 * @return
+	 */
+	int getDimension();
+
+	/**
+	 * Return upper bandwidth, elements (i,j) with j-i larger than this
+	 * are not stored. Is N-1 for a dense matrix.
+	 * @return
+	 */
+	int getUpperBandwidth();
+
+	/**
+	 * Return lower bandwidth, elements (i,j) with i-j larger than this
+	 * are not stored. Is N-1 for a dense matrix.
+	 * @return
+	 */
+	int getLowerBandwidth();
+
+	double get(int i, int j);
+
+	void set(int i, int j, double value);
+
+	void add(int i, int j, double value);
+}
@@ -0,0 +1,18 @@
+package de.grogra.numeric;
+
+/**
+ * Equations may implement this interface in addition to {@linkplain ODE}
+ * to report the structure of their Jacobian. Solvers use it to choose
+ * bandwidths and to compute the Jacobian by colored difference quotients
+ * (see {@linkplain ColoredJacobian}) if no analytic Jacobian is provided.
+ */
+public interface JacobianStructure {
+
+	/**
+	 * Return the pattern of elements of the Jacobian that may be nonzero.
+	 * Should be cached by the implementation, as it is queried before
+	 * every integration.
+	 * @return
+	 */
+	SparsityPattern getSparsityPattern();
+}
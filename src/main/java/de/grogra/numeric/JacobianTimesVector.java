@@ -0,0 +1,32 @@
+package de.grogra.numeric;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * Product of the Jacobian of the rate function with a vector, as used
+ * by matrix-free (Krylov) linear solvers. This avoids to form the Jacobian,
+ * so that memory stays O(N). All buffers are views on the vectors of the
+ * solver and must not be kept beyond the call.
+ */
+public interface JacobianTimesVector {
+
+	/**
+	 * Prepare data needed by {@linkplain #multiply} for the Jacobian at
+	 * (t, state). Called whenever the solver updates the Jacobian.
+	 * @param t current time
+	 * @param state current state
+	 * @param rate rate at current time and state
+	 */
+	default void setup(double t, DoubleBuffer state, DoubleBuffer rate) {
+	}
+
+	/**
+	 * Calculate Jv = J(t, state) v.
+	 * @param Jv provides memory for storing the product
+	 * @param v vector to multiply
+	 * @param t current time
+	 * @param state current state
+	 * @param rate rate at current time and state
+	 */
+	void multiply(DoubleBuffer Jv, DoubleBuffer v, double t, DoubleBuffer state, DoubleBuffer rate);
+}
@@ -0,0 +1,331 @@
+package de.grogra.numeric;
+
+import java.util.Arrays;
+
+/**
+ * A dense or band matrix on a Java array together with its LU factorization
+ * with partial pivoting. This is the linear algebra of the Newton iterations
+ * of the pure-Java solvers, which solve systems (I - gamma*J) x = b.
+ *
+ * Matrices are stored column by column as in SUNDIALS. Band matrices keep
+ * ml further superdiagonals for the fill-in of the factorization, so the
+ * Jacobian may only be set within the upper bandwidth mu.
+ */
+public abstract class LUMatrix implements JacobianMatrix {
+
+	final int N;
+	final double[] data;
+	final int[] pivots;
+
+	LUMatrix(int N, int size) {
+		this.N = N;
+		this.data = new double[size];
+		this.pivots = new int[N];
+	}
+
+	/**
+	 * Create a dense matrix of size N x N.
+	 * @param N
+	 * @return
+	 */
+	public static LUMatrix dense(int N) {
+		return new Dense(N);
+	}
+
+	/**
+	 * Create a band matrix of size N x N.
+	 * @param N
+	 * @param mu upper bandwidth
+	 * @param ml lower bandwidth
+	 * @return
+	 */
+	public static LUMatrix band(int N, int mu, int ml) {
+		return new Band(N, Math.min(mu, N - 1), Math.min(ml, N - 1));
+	}
+
+	@Override
+	public int getDimension() {
+		return N;
+	}
+
+	@Override
+	public void add(int i, int j, double value) {
+		set(i, j, get(i, j) + value);
+	}
+
+	/**
+	 * Set all elements to zero.
+	 */
+	public void clear() {
+		Arrays.fill(data, 0);
+	}
+
+	/**
+	 * Set this matrix to I - gamma*J. J must have been created with the same
+	 * dimension and bandwidths.
+	 * @param gamma
+	 * @param J
+	 */
+	public void setIdentityMinus(double gamma, LUMatrix J) {
+		assert J.data.length == data.length;
+		final double[] a = data, b = J.data;
+		for (int k = 0; k < a.length; k++) {
+			a[k] = -gamma * b[k];
+		}
+		for (int i = 0; i < N; i++) {
+			a[index(i, i)] += 1;
+		}
+	}
+
+	/**
+	 * Compute y = A x. Only valid before {@linkplain #factor()}.
+	 * @param x
+	 * @param y
+	 */
+	public abstract void multiply(double[] x, double[] y);
+
+	/**
+	 * Replace the matrix by its LU factorization.
+	 * @return false if the matrix is singular
+	 */
+	public abstract boolean factor();
+
+	/**
+	 * Solve A x = b using the factorization computed by {@linkplain #factor()}.
+	 * @param b right-hand side, overwritten by the solution
+	 */
+	public abstract void solve(double[] b);
+
+	// return position of element (i,j) in data
+	abstract int index(int i, int j);
+
+	static final class Dense extends LUMatrix {
+
+		Dense(int N) {
+			super(N, N * N);
+		}
+
+		@Override
+		public int getUpperBandwidth() {
+			return N - 1;
+		}
+
+		@Override
+		public int getLowerBandwidth() {
+			return N - 1;
+		}
+
+		@Override
+		int index(int i, int j) {
+			if (i < 0 || j < 0 || i >= N || j >= N)
+				throw new IndexOutOfBoundsException("(" + i + "," + j + ") outside of matrix");
+			return j * N + i;
+		}
+
+		@Override
+		public double get(int i, int j) {
+			return data[index(i, j)];
+		}
+
+		@Override
+		public void set(int i, int j, double value) {
+			data[index(i, j)] = value;
+		}
+
+		@Override
+		public void multiply(double[] x, double[] y) {
+			final double[] a = data;
+			Arrays.fill(y, 0, N, 0);
+			for (int j = 0; j < N; j++) {
+				final double xj = x[j];
+				if (xj != 0) {
+					for (int i = 0, cj = j * N; i < N; i++) {
+						y[i] += a[cj + i] * xj;
+					}
+				}
+			}
+		}
+
+		@Override
+		public boolean factor() {
+			final double[] a = data;
+			for (int k = 0; k < N; k++) {
+				final int ck = k * N;
+				int p = k;
+				for (int i = k + 1; i < N; i++) {
+					if (Math.abs(a[ck + i]) > Math.abs(a[ck + p])) p = i;
+				}
+				pivots[k] = p;
+				if (a[ck + p] == 0) return false;
+				if (p != k) {
+					for (int j = k; j < N; j++) {
+						double s = a[j * N + k];
+						a[j * N + k] = a[j * N + p];
+						a[j * N + p] = s;
+					}
+				}
+				final double inv = 1 / a[ck + k];
+				for (int i = k + 1; i < N; i++) {
+					a[ck + i] *= inv;
+				}
+				for (int j = k + 1; j < N; j++) {
+					final int cj = j * N;
+					final double akj = a[cj + k];
+					if (akj != 0) {
+						for (int i = k + 1; i < N; i++) {
+							a[cj + i] -= a[ck + i] * akj;
+						}
+					}
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public void solve(double[] b) {
+			final double[] a = data;
+			for (int k = 0; k < N; k++) {
+				final int p = pivots[k];
+				final double bk = b[p];
+				b[p] = b[k];
+				b[k] = bk;
+				final int ck = k * N;
+				for (int i = k + 1; i < N; i++) {
+					b[i] -= a[ck + i] * bk;
+				}
+			}
+			for (int k = N - 1; k >= 0; k--) {
+				final int ck = k * N;
+				final double bk = b[k] /= a[ck + k];
+				for (int i = 0; i < k; i++) {
+					b[i] -= a[ck + i] * bk;
+				}
+			}
+		}
+	}
+
+	static final class Band extends LUMatrix {
+
+		final int mu;
+		final int ml;
+		// stored upper bandwidth including fill-in, and elements per column
+		final int smu;
+		final int ldim;
+
+		Band(int N, int mu, int ml) {
+			super(N, N * (mu + 2 * ml + 1));
+			this.mu = mu;
+			this.ml = ml;
+			this.smu = mu + ml;
+			this.ldim = smu + ml + 1;
+		}
+
+		@Override
+		public int getUpperBandwidth() {
+			return mu;
+		}
+
+		@Override
+		public int getLowerBandwidth() {
+			return ml;
+		}
+
+		@Override
+		int index(int i, int j) {
+			if (i < 0 || j < 0 || i >= N || j >= N || j - i > smu || i - j > ml)
+				throw new IndexOutOfBoundsException("(" + i + "," + j + ") outside of matrix");
+			return j * ldim + i - j + smu;
+		}
+
+		@Override
+		public double get(int i, int j) {
+			return data[index(i, j)];
+		}
+
+		@Override
+		public void set(int i, int j, double value) {
+			if (j - i > mu)
+				throw new IndexOutOfBoundsException("(" + i + "," + j + ") outside of band");
+			data[index(i, j)] = value;
+		}
+
+		@Override
+		public void multiply(double[] x, double[] y) {
+			final double[] a = data;
+			final int stride = ldim - 1;
+			Arrays.fill(y, 0, N, 0);
+			for (int j = 0; j < N; j++) {
+				final double xj = x[j];
+				if (xj != 0) {
+					final int cj = j * stride + smu;
+					for (int i = Math.max(0, j - mu), last = Math.min(N - 1, j + ml); i <= last; i++) {
+						y[i] += a[cj + i] * xj;
+					}
+				}
+			}
+		}
+
+		@Override
+		public boolean factor() {
+			final double[] a = data;
+			// element (i,j) is found at j*(ldim-1) + i + smu
+			final int stride = ldim - 1;
+			for (int k = 0; k < N; k++) {
+				final int ck = k * stride + smu;
+				final int last = Math.min(N - 1, k + ml);
+				int p = k;
+				for (int i = k + 1; i <= last; i++) {
+					if (Math.abs(a[ck + i]) > Math.abs(a[ck + p])) p = i;
+				}
+				pivots[k] = p;
+				if (a[ck + p] == 0) return false;
+				final int lastColumn = Math.min(N - 1, k + smu);
+				if (p != k) {
+					for (int j = k; j <= lastColumn; j++) {
+						final int cj = j * stride + smu;
+						double s = a[cj + k];
+						a[cj + k] = a[cj + p];
+						a[cj + p] = s;
+					}
+				}
+				final double inv = 1 / a[ck + k];
+				for (int i = k + 1; i <= last; i++) {
+					a[ck + i] *= inv;
+				}
+				for (int j = k + 1; j <= lastColumn; j++) {
+					final int cj = j * stride + smu;
+					final double akj = a[cj + k];
+					if (akj != 0) {
+						for (int i = k + 1; i <= last; i++) {
+							a[cj + i] -= a[ck + i] * akj;
+						}
+					}
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public void solve(double[] b) {
+			final double[] a = data;
+			final int stride = ldim - 1;
+			for (int k = 0; k < N; k++) {
+				final int p = pivots[k];
+				final double bk = b[p];
+				b[p] = b[k];
+				b[k] = bk;
+				final int ck = k * stride + smu;
+				for (int i = k + 1, last = Math.min(N - 1, k + ml); i <= last; i++) {
+					b[i] -= a[ck + i] * bk;
+				}
+			}
+			for (int k = N - 1; k >= 0; k--) {
+				final int ck = k * stride + smu;
+				final double bk = b[k] /= a[ck + k];
+				for (int i = Math.max(0, k - smu); i < k; i++) {
+					b[i] -= a[ck + i] * bk;
+				}
+			}
+		}
+	}
+}
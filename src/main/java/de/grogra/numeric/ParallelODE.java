@@ -0,0 +1,128 @@
+package de.grogra.numeric;
+
+import java.nio.Buffer;
+import java.nio.DoubleBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates a {@linkplain PartitionedODE} in parallel on a fork-join pool.
+ * Ranges of partitions are split recursively and distributed by work
+ * stealing, each task writes the rate of its own partitions and reads the
+ * shared state.
+ *
+ * As {@linkplain BufferODE} it is evaluated directly by {@linkplain CVodeAdapter}:
+ * native state and rate are then copied from and to internal arrays in
+ * parallel as well, so that a single callback of the solver uses all
+ * workers of the pool. Because of these arrays an instance must not be
+ * used by several solvers at the same time.
+ */
+public class ParallelODE implements BufferODE, JacobianStructure {
+
+	final PartitionedODE ode;
+	final ForkJoinPool pool;
+
+	// number of partitions below which a task is not split any further
+	int grainSize;
+
+	// copies of native state and rate
+	double[] state = new double[0];
+	double[] rate = new double[0];
+
+	public ParallelODE(PartitionedODE ode) {
+		this(ode, ForkJoinPool.commonPool());
+	}
+
+	public ParallelODE(PartitionedODE ode, ForkJoinPool pool) {
+		this.ode = ode;
+		this.pool = pool;
+		// a few tasks per worker to balance load
+		this.grainSize = Math.max(1, ode.getPartitionCount() / (4 * pool.getParallelism()));
+	}
+
+	public PartitionedODE getODE() {
+		return ode;
+	}
+
+	public int getGrainSize() {
+		return grainSize;
+	}
+
+	/**
+	 * Set the number of partitions below which work is not split any further.
+	 * @param grainSize
+	 */
+	public void setGrainSize(int grainSize) {
+		if (grainSize < 1) throw new IllegalArgumentException("grain size must be positive");
+		this.grainSize = grainSize;
+	}
+
+	@Override
+	public void getRate(double[] out, double t, double[] state) {
+		pool.invoke(new Task(out, t, state, null, null, 0, ode.getPartitionCount()));
+	}
+
+	@Override
+	public void getRate(DoubleBuffer out, double t, DoubleBuffer state) {
+		final int n = ode.getPartitionCount();
+		final int N = ode.getPartitionOffset(n);
+		if (this.state.length != N) {
+			this.state = new double[N];
+			this.rate = new double[N];
+		}
+		// the whole state must be available before any partition reads its halo
+		pool.invoke(new Task(null, t, this.state, state, null, 0, n));
+		pool.invoke(new Task(rate, t, this.state, null, out, 0, n));
+	}
+
+	@Override
+	public SparsityPattern getSparsityPattern() {
+		return ode instanceof JacobianStructure ? ((JacobianStructure) ode).getSparsityPattern() : null;
+	}
+
+	// copies state from in if set, otherwise computes the rate and copies it to out if set
+	final class Task extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final double[] rate;
+		final double t;
+		final double[] state;
+		final DoubleBuffer in;
+		final DoubleBuffer out;
+		final int from, to;
+
+		Task(double[] rate, double t, double[] state, DoubleBuffer in, DoubleBuffer out, int from, int to) {
+			this.rate = rate;
+			this.t = t;
+			this.state = state;
+			this.in = in;
+			this.out = out;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > grainSize) {
+				final int mid = (from + to) >>> 1;
+				invokeAll(new Task(rate, t, state, in, out, from, mid),
+						new Task(rate, t, state, in, out, mid, to));
+				return;
+			}
+			final int a = ode.getPartitionOffset(from);
+			final int b = ode.getPartitionOffset(to);
+			if (in != null) {
+				DoubleBuffer src = in.duplicate();
+				((Buffer) src).position(a);
+				src.get(state, a, b - a);
+				return;
+			}
+			ode.getRate(rate, t, state, from, to);
+			if (out != null) {
+				DoubleBuffer dst = out.duplicate();
+				((Buffer) dst).position(a);
+				dst.put(rate, a, b - a);
+			}
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package de.grogra.numeric;
+
+/**
+ * An ODE whose state is divided into consecutive partitions (for example
+ * rows or tiles of a grid) whose rates can be computed independently.
+ * Partition p owns the state and rate elements from
+ * getPartitionOffset(p) to getPartitionOffset(p+1)-1.
+ *
+ * Computing the rate of some partitions may read any element of the state,
+ * in particular the halo of neighbouring partitions needed by stencils, but
+ * must write only the rate elements owned by these partitions. This allows
+ * {@linkplain ParallelODE} to compute partitions concurrently on a shared
+ * state without copying halos.
+ */
+public interface PartitionedODE extends ODE {
+
+	/**
+	 * Return number of partitions.
+	 * @return
+	 */
+	int getPartitionCount();
+
+	/**
+	 * Return index of the first state element owned by a partition. For
+	 * partition == getPartitionCount() this is the dimension of the state.
+	 * @param partition
+	 * @return
+	 */
+	int getPartitionOffset(int partition);
+
+	/**
+	 * Calculate the rate of partitions [from, to) only.
+	 * @param out provides memory for storing the rate
+	 * @param t current time
+	 * @param state current state
+	 * @param from first partition
+	 * @param to end of partitions (exclusive)
+	 */
+	void getRate(double[] out, double t, double[] state, int from, int to);
+}
@@ -0,0 +1,37 @@
+package de.grogra.numeric;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * Preconditioner for matrix-free (Krylov) linear solvers. The Newton
+ * iteration of implicit methods solves systems with the matrix
+ * M = I - gamma J, the preconditioner P should approximate M and be
+ * cheap to solve with. All buffers are views on the vectors of the solver
+ * and must not be kept beyond the call.
+ */
+public interface Preconditioner {
+
+	/**
+	 * Prepare P for the given time, state and gamma.
+	 * @param t current time
+	 * @param state current state
+	 * @param rate rate at current time and state
+	 * @param jacobianOk true if Jacobian data saved by a previous call may be reused
+	 * @param gamma scalar in M = I - gamma J
+	 * @return true if Jacobian data was recomputed
+	 */
+	boolean setup(double t, DoubleBuffer state, DoubleBuffer rate, boolean jacobianOk, double gamma);
+
+	/**
+	 * Solve P z = r.
+	 * @param z provides memory for the solution
+	 * @param r right-hand side
+	 * @param t current time
+	 * @param state current state
+	 * @param rate rate at current time and state
+	 * @param gamma scalar in M = I - gamma J
+	 * @param delta tolerance the solution has to meet in the weighted norm
+	 */
+	void solve(DoubleBuffer z, DoubleBuffer r, double t, DoubleBuffer state, DoubleBuffer rate,
+			double gamma, double delta);
+}
@@ -0,0 +1,310 @@
+package de.grogra.numeric;
+
+import java.util.Arrays;
+
+/**
+ * Linearly implicit Rosenbrock-Wanner methods for small, moderately stiff
+ * equations. A step solves one linear system per stage with the single
+ * matrix I - h*gamma*J, without Newton iteration, which keeps the latency
+ * of a step low and avoids any native call.
+ *
+ * The methods are written in the transformed form of Hairer and Wanner,
+ * stage i solves
+ * (I/(h*gamma) - J) k_i = f(t + alpha_i*h, y + sum a_ij k_j) + sum c_ij/h k_j + h*d_i*df/dt.
+ * The Jacobian is evaluated once per step and reused if the step is
+ * rejected. Dense output for monitors and the final time is the cubic
+ * Hermite interpolation of state and rate at both ends of a step. Jacobian
+ * and linear solver are set up as described for {@linkplain StiffSolver}.
+ */
+public class RosenbrockSolver extends StiffSolver {
+
+	public enum Method {
+		/**
+		 * ROS3P of Lang and Verwer, order 3 with embedded method of order 2,
+		 * A-stable and without order reduction for parabolic problems.
+		 */
+		ROS3P(3, 2, 0.7886751345948129,
+				new double[][] {
+					{},
+					{ 1.2679491924311228 },
+					{ 1.2679491924311228, 0 } },
+				new double[][] {
+					{},
+					{ -1.6076951545867364 },
+					{ -3.4641016151377553, -1.7320508075688774 } },
+				new double[] { 0, 1, 1 },
+				new double[] { 0.7886751345948129, -0.2113248654051871, -1.077350269189626 },
+				new double[] { 2, 0.5773502691896257, 0.4226497308103742 },
+				new double[] { -0.1132486540518709, -0.4226497308103742, 0 }),
+
+		/**
+		 * RODAS4 of Hairer and Wanner, order 4 with embedded method of order 3,
+		 * L-stable and stiffly accurate.
+		 */
+		RODAS4(4, 3, 0.25,
+				new double[][] {
+					{},
+					{ 1.544 },
+					{ 0.9466785280815826, 0.2557011698983284 },
+					{ 3.314825187068521, 2.896124015972201, 0.9986419139977817 },
+					{ 1.221224509226641, 6.019134481288629, 12.53708332932087, -0.6878860361058950 },
+					{ 1.221224509226641, 6.019134481288629, 12.53708332932087, -0.6878860361058950, 1 } },
+				new double[][] {
+					{},
+					{ -5.6688 },
+					{ -2.430093356833875, -0.2063599157091915 },
+					{ -0.1073529058151375, -9.594562251023355, -20.47028614809616 },
+					{ 7.496443313967647, -10.24680431464352, -33.99990352819905, 11.70890893206160 },
+					{ 8.083246795921522, -7.981132988064893, -31.52159432874371, 16.31930543123136, -6.058818238834054 } },
+				new double[] { 0, 0.386, 0.21, 0.63, 1, 1 },
+				new double[] { 0.25, -0.1043, 0.1035, -0.0362, 0, 0 },
+				new double[] { 1.221224509226641, 6.019134481288629, 12.53708332932087, -0.6878860361058950, 1, 1 },
+				new double[] { 0, 0, 0, 0, 0, 1 });
+
+		final int order;
+		final int embeddedOrder;
+		final double gamma;
+		final double[][] a;
+		final double[][] c;
+		final double[] alpha;
+		final double[] d;
+		// weights of the solution, and of the error estimate
+		final double[] m;
+		final double[] e;
+
+		Method(int order, int embeddedOrder, double gamma, double[][] a, double[][] c,
+				double[] alpha, double[] d, double[] m, double[] e) {
+			this.order = order;
+			this.embeddedOrder = embeddedOrder;
+			this.gamma = gamma;
+			this.a = a;
+			this.c = c;
+			this.alpha = alpha;
+			this.d = d;
+			this.m = m;
+			this.e = e;
+		}
+
+		public int getOrder() {
+			return order;
+		}
+
+		public int getStages() {
+			return m.length;
+		}
+	}
+
+	// maximum number of rejections of a single step
+	static final int MAX_REJECTIONS = 10;
+	static final double SAFETY = 0.9;
+	static final double MIN_FACTOR = 0.2;
+	static final double MAX_FACTOR = 6;
+
+	Method method = Method.RODAS4;
+	boolean autonomous;
+
+	// state and rate at t, and at the start of the last step
+	double[] y = new double[0], f, yOld, fOld;
+	double tOld, hOld;
+	// stages, time derivative of the rate and work arrays
+	double[][] k = new double[0][];
+	double[] ft, u, err;
+	boolean jacobianCurrent;
+
+	public RosenbrockSolver() {
+	}
+
+	public RosenbrockSolver(Method method) {
+		this.method = method;
+	}
+
+	@Override
+	void init(ODE ode, int N) throws NumericException {
+		super.init(ode, N);
+		final int s = method.getStages();
+		if (k.length != s || y.length != N) {
+			y = new double[N];
+			f = new double[N];
+			yOld = new double[N];
+			fOld = new double[N];
+			k = new double[s][N];
+			ft = new double[N];
+			u = new double[N];
+			err = new double[N];
+		}
+	}
+
+	@Override
+	void start(double[] y0, double t1, double dir) {
+		final int N = y0.length;
+		System.arraycopy(y0, 0, y, 0, N);
+		rate(f, t, y);
+		weights(y);
+		h = dir * initialStep(y, f, t1, dir, method.embeddedOrder, u);
+		jacobianCurrent = false;
+		tOld = t;
+		hOld = h;
+		System.arraycopy(y, 0, yOld, 0, N);
+		System.arraycopy(f, 0, fOld, 0, N);
+	}
+
+	@Override
+	void step() throws NumericException {
+		final int N = y.length;
+		final Method r = method;
+		final int s = r.getStages();
+		if (!jacobianCurrent) {
+			evaluateJacobian(t, y, f);
+			if (autonomous) {
+				Arrays.fill(ft, 0);
+			} else {
+				double delta = Math.sqrt(Math.ulp(1.0) * Math.max(1e-5, Math.abs(t)));
+				rate(ft, t + delta, y);
+				for (int i = 0; i < N; i++) {
+					ft[i] = (ft[i] - f[i]) / delta;
+				}
+			}
+			jacobianCurrent = true;
+		}
+		boolean rejected = false;
+		for (int rejections = 0;; rejections++) {
+			if (rejections >= MAX_REJECTIONS)
+				throw new NumericException("step rejected repeatedly at t = " + t);
+			if (Math.abs(h) > maxStep) {
+				h = Math.copySign(maxStep, h);
+			}
+			if (t + h == t)
+				throw new NumericException("step size " + h + " too small at t = " + t);
+			final double hg = h * r.gamma;
+			M.setIdentityMinus(hg, J);
+			factorCount++;
+			if (!M.factor()) {
+				convergenceFailures++;
+				h *= 0.25;
+				rejected = true;
+				continue;
+			}
+
+			for (int st = 0; st < s; st++) {
+				final double[] ki = k[st];
+				final double[] fi;
+				if (st == 0) {
+					fi = f;
+				} else {
+					final double[] ai = r.a[st];
+					System.arraycopy(y, 0, u, 0, N);
+					for (int j = 0; j < st; j++) {
+						final double aij = ai[j];
+						if (aij != 0) {
+							final double[] kj = k[j];
+							for (int i = 0; i < N; i++) {
+								u[i] += aij * kj[i];
+							}
+						}
+					}
+					rate(ki, t + r.alpha[st] * h, u);
+					fi = ki;
+				}
+				final double hd = h * r.d[st];
+				for (int i = 0; i < N; i++) {
+					ki[i] = fi[i] + hd * ft[i];
+				}
+				final double[] ci = r.c[st];
+				for (int j = 0; j < st; j++) {
+					final double cij = ci[j] / h;
+					final double[] kj = k[j];
+					for (int i = 0; i < N; i++) {
+						ki[i] += cij * kj[i];
+					}
+				}
+				// (I/(h*gamma) - J) k = rhs is solved as (I - h*gamma*J) k = h*gamma*rhs
+				for (int i = 0; i < N; i++) {
+					ki[i] *= hg;
+				}
+				M.solve(ki);
+			}
+
+			// new solution into u, error estimate into err
+			System.arraycopy(y, 0, u, 0, N);
+			Arrays.fill(err, 0);
+			for (int j = 0; j < s; j++) {
+				final double mj = r.m[j], ej = r.e[j];
+				final double[] kj = k[j];
+				for (int i = 0; i < N; i++) {
+					u[i] += mj * kj[i];
+					err[i] += ej * kj[i];
+				}
+			}
+			for (int i = 0; i < N; i++) {
+				w[i] = 1 / (tolRel[i] * Math.max(Math.abs(y[i]), Math.abs(u[i])) + tolAbs[i]);
+			}
+			final double e = norm(err);
+			double fac = e > 0 ? SAFETY * Math.pow(e, -1.0 / (r.embeddedOrder + 1)) : MAX_FACTOR;
+			fac = Math.max(MIN_FACTOR, Math.min(MAX_FACTOR, fac));
+			if (e > 1) {
+				// the Jacobian at (t, y) is still valid
+				errorTestFailures++;
+				h *= fac;
+				rejected = true;
+				continue;
+			}
+
+			// accept step, keep data of dense output
+			double[] swap = yOld;
+			yOld = y;
+			y = swap;
+			swap = fOld;
+			fOld = f;
+			f = swap;
+			System.arraycopy(u, 0, y, 0, N);
+			tOld = t;
+			hOld = h;
+			t += h;
+			rate(f, t, y);
+			stepCount++;
+			jacobianCurrent = false;
+			h *= rejected ? Math.min(1, fac) : fac;
+			return;
+		}
+	}
+
+	// cubic Hermite interpolation between (tOld, yOld, fOld) and (t, y, f)
+	@Override
+	void interpolate(double[] out, double tout) {
+		final int N = out.length;
+		if (t == tOld) {
+			System.arraycopy(y, 0, out, 0, N);
+			return;
+		}
+		final double th = (tout - tOld) / hOld;
+		final double th2 = th * th, th3 = th2 * th;
+		final double h00 = 2 * th3 - 3 * th2 + 1;
+		final double h10 = (th3 - 2 * th2 + th) * hOld;
+		final double h01 = -2 * th3 + 3 * th2;
+		final double h11 = (th3 - th2) * hOld;
+		for (int i = 0; i < N; i++) {
+			out[i] = h00 * yOld[i] + h10 * fOld[i] + h01 * y[i] + h11 * f[i];
+		}
+	}
+
+	public Method getMethod() {
+		return method;
+	}
+
+	public void setMethod(Method method) {
+		this.method = method;
+	}
+
+	public boolean isAutonomous() {
+		return autonomous;
+	}
+
+	/**
+	 * Declare that the rate does not depend on time explicitly, which saves
+	 * the evaluation of df/dt in each step.
+	 * @param autonomous
+	 */
+	public void setAutonomous(boolean autonomous) {
+		this.autonomous = autonomous;
+	}
+}
@@ -0,0 +1,148 @@
+package de.grogra.numeric;
+
+/**
+ * Emits the Flight Recorder events of the integrations of a solver and
+ * accumulates the time spent in its Java callbacks. Profiling is decided
+ * once per integration by {@linkplain #start(IntegrateEvent)}: if the event
+ * is not recorded, all other methods only check a flag.
+ *
+ * Callbacks of a solver are called one after another, so an instance
+ * must only be used by the thread running the integration.
+ */
+final class SolverProfile {
+
+	// record every SAMPLE_INTERVAL-th callback as CallbackEvent
+	static final int SAMPLE_INTERVAL = 64;
+
+	boolean enabled;
+	long startNanos;
+	// callbacks of the current integration and their total time
+	long count;
+	long nanos;
+	CallbackEvent sample;
+	// current call of the solver, and callbacks before it
+	SolverReturnEvent call;
+	long callStartNanos;
+	long callCount;
+	long callNanos;
+
+	/**
+	 * Start an integration, which is profiled if event is enabled.
+	 * @param event
+	 */
+	void start(IntegrateEvent event) {
+		enabled = event.isEnabled();
+		count = 0;
+		nanos = 0;
+		sample = null;
+		if (enabled) {
+			event.begin();
+			startNanos = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Finish the integration started with event and commit the event.
+	 */
+	void end(IntegrateEvent event, String solver, int dimension, double t0, double t1, double t) {
+		if (!enabled) {
+			return;
+		}
+		event.end();
+		if (event.shouldCommit()) {
+			event.solver = solver;
+			event.dimension = dimension;
+			event.initialTime = t0;
+			event.finalTime = t1;
+			event.reachedTime = t;
+			event.callbacks = count;
+			event.callbackTime = nanos;
+			event.solverTime = System.nanoTime() - startNanos - nanos;
+			event.commit();
+		}
+		enabled = false;
+	}
+
+	/**
+	 * Call before the solver is called.
+	 */
+	void beginCall() {
+		if (enabled) {
+			call = new SolverReturnEvent();
+			call.begin();
+			callCount = count;
+			callNanos = nanos;
+			callStartNanos = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Call after the solver returned.
+	 * @param result description of the return value
+	 * @param t time reached by the solver
+	 */
+	void endCall(String result, double t) {
+		endCall(result, 0, t);
+	}
+
+	/**
+	 * Call after CVODE returned. The name of the flag is only looked up
+	 * if the event is recorded.
+	 * @param flag return flag of CVode
+	 * @param t time reached by the solver
+	 */
+	void endCall(int flag, double t) {
+		endCall(null, flag, t);
+	}
+
+	private void endCall(String result, int flag, double t) {
+		if (enabled && call != null) {
+			call.end();
+			if (call.shouldCommit()) {
+				call.result = result != null ? result : CVodeSession.getReturnFlagName(flag);
+				call.reachedTime = t;
+				call.callbacks = count - callCount;
+				call.callbackTime = nanos - callNanos;
+				call.solverTime = System.nanoTime() - callStartNanos - call.callbackTime;
+				call.commit();
+			}
+			call = null;
+		}
+	}
+
+	/**
+	 * Call on entry of a callback.
+	 * @return value to pass to {@linkplain #endCallback(long, String)}
+	 */
+	long beginCallback() {
+		if (!enabled) {
+			return 0;
+		}
+		if (count % SAMPLE_INTERVAL == 0) {
+			sample = new CallbackEvent();
+			sample.begin();
+		}
+		return System.nanoTime();
+	}
+
+	/**
+	 * Call on exit of a callback.
+	 * @param start value returned by {@linkplain #beginCallback()}
+	 * @param kind one of the kinds of {@linkplain CallbackEvent}
+	 */
+	void endCallback(long start, String kind) {
+		if (!enabled) {
+			return;
+		}
+		nanos += System.nanoTime() - start;
+		count++;
+		if (sample != null) {
+			sample.end();
+			if (sample.shouldCommit()) {
+				sample.kind = kind;
+				sample.commit();
+			}
+			sample = null;
+		}
+	}
+}
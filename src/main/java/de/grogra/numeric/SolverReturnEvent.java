@@ -0,0 +1,39 @@
+package de.grogra.numeric;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event of a single return of the solver within an
+ * integration, such as each call of CVode, which returns at the final time
+ * and at every root of the monitor functions.
+ */
+@Name("de.grogra.numeric.SolverReturn")
+@Label("Solver Return")
+@Category({ "Numeric", "Solver" })
+@Description("Call of the solver that returned at the final time, a root or an error")
+@StackTrace(false)
+final class SolverReturnEvent extends Event {
+
+	@Label("Result")
+	String result;
+
+	@Label("Reached Time")
+	double reachedTime;
+
+	@Label("Callbacks")
+	long callbacks;
+
+	@Label("Callback Time")
+	@Timespan
+	long callbackTime;
+
+	@Label("Solver Time")
+	@Timespan
+	long solverTime;
+}
@@ -0,0 +1,252 @@
+package de.grogra.numeric;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The structure of a Jacobian, that is the set of elements (i,j) for which
+ * d rate_i / d state_j may be nonzero. Stored column by column: the rows of
+ * column j are rows[columnStart[j] ... columnStart[j+1]-1] in increasing order.
+ * 
+ * A pattern can be detected by probing the rate function with
+ * {@linkplain #detect(ODE, double, double[])}. Columns are colored such that
+ * columns of the same color have no row in common, then all columns of one
+ * color can be approximated by a single difference quotient
+ * (see {@linkplain ColoredJacobian}).
+ */
+public class SparsityPattern {
+
+	final int N;
+	final int[] columnStart;
+	final int[] rows;
+
+	// bandwidths, computed on first use
+	int mu = -1;
+	int ml = -1;
+
+	// column coloring, computed on first use
+	int[] colors;
+	int colorCount;
+
+	/**
+	 * Create a pattern from its compressed column representation.
+	 * @param N dimension
+	 * @param columnStart start of each column in rows, N+1 elements
+	 * @param rows row indices, sorted within each column
+	 */
+	public SparsityPattern(int N, int[] columnStart, int[] rows) {
+		if (columnStart.length != N + 1 || columnStart[N] > rows.length)
+			throw new IllegalArgumentException("inconsistent pattern");
+		this.N = N;
+		this.columnStart = columnStart;
+		this.rows = rows;
+	}
+
+	/**
+	 * Create the pattern of a band matrix.
+	 * @param N dimension
+	 * @param mupper upper bandwidth
+	 * @param mlower lower bandwidth
+	 * @return
+	 */
+	public static SparsityPattern band(int N, int mupper, int mlower) {
+		int[] columnStart = new int[N + 1];
+		int[] rows = new int[N * (mupper + mlower + 1)];
+		int k = 0;
+		for (int j = 0; j < N; j++) {
+			columnStart[j] = k;
+			for (int i = Math.max(0, j - mupper); i <= Math.min(N - 1, j + mlower); i++) {
+				rows[k++] = i;
+			}
+		}
+		columnStart[N] = k;
+		return new SparsityPattern(N, columnStart, Arrays.copyOf(rows, k));
+	}
+
+	/**
+	 * Detect the pattern of the Jacobian of ode near (t, y) by perturbing
+	 * one state variable after the other. To avoid missing elements that
+	 * vanish by coincidence, this is done at y and at a second, randomly
+	 * displaced state. Costs 2N+2 evaluations of the rate and memory
+	 * proportional to the number of nonzero elements. Diagonal elements
+	 * are always included.
+	 * @param ode equations
+	 * @param t time
+	 * @param y state
+	 * @return
+	 */
+	public static SparsityPattern detect(ODE ode, double t, double[] y) {
+		final int N = y.length;
+		// rows of each column in the order they were found, and the column
+		// that was last marked in each row to find rows already present
+		int[][] columns = new int[N][];
+		int[] counts = new int[N];
+		int[] marks = new int[N];
+		int stamp = 0;
+		double[] base = new double[N];
+		double[] probe = new double[N];
+		double[] f0 = new double[N];
+		double[] f1 = new double[N];
+		Random random = new Random(N);
+		for (int pass = 0; pass < 2; pass++) {
+			for (int j = 0; j < N; j++) {
+				base[j] = pass == 0 ? y[j] : y[j] + (0.5 + random.nextDouble()) * 1e-2 * Math.max(Math.abs(y[j]), 1);
+			}
+			ode.getRate(f0, t, base);
+			System.arraycopy(base, 0, probe, 0, N);
+			for (int j = 0; j < N; j++) {
+				probe[j] = base[j] + 1e-4 * Math.max(Math.abs(base[j]), 1);
+				ode.getRate(f1, t, probe);
+				probe[j] = base[j];
+				if (columns[j] == null) {
+					columns[j] = new int[] { j, 0, 0, 0 };
+					counts[j] = 1;
+				}
+				int[] c = columns[j];
+				int n = counts[j];
+				stamp++;
+				for (int k = 0; k < n; k++) {
+					marks[c[k]] = stamp;
+				}
+				for (int i = 0; i < N; i++) {
+					if (f1[i] != f0[i] && marks[i] != stamp) {
+						marks[i] = stamp;
+						if (n == c.length) {
+							c = Arrays.copyOf(c, 2 * n);
+						}
+						c[n++] = i;
+					}
+				}
+				columns[j] = c;
+				counts[j] = n;
+			}
+		}
+
+		// compress columns
+		int count = 0;
+		for (int j = 0; j < N; j++)
+			count += counts[j];
+		int[] columnStart = new int[N + 1];
+		int[] rows = new int[count];
+		int k = 0;
+		for (int j = 0; j < N; j++) {
+			columnStart[j] = k;
+			System.arraycopy(columns[j], 0, rows, k, counts[j]);
+			k += counts[j];
+			Arrays.sort(rows, columnStart[j], k);
+			columns[j] = null;
+		}
+		columnStart[N] = k;
+		return new SparsityPattern(N, columnStart, rows);
+	}
+
+	public int getDimension() {
+		return N;
+	}
+
+	/**
+	 * Return number of structurally nonzero elements.
+	 * @return
+	 */
+	public int getNonZeroCount() {
+		return columnStart[N];
+	}
+
+	public boolean isNonZero(int i, int j) {
+		return Arrays.binarySearch(rows, columnStart[j], columnStart[j + 1], i) >= 0;
+	}
+
+	/**
+	 * Return the largest j-i of all nonzero elements (i,j).
+	 * @return
+	 */
+	public int getUpperBandwidth() {
+		if (mu < 0) {
+			int mu = 0;
+			for (int j = 0; j < N; j++) {
+				if (columnStart[j + 1] > columnStart[j])
+					mu = Math.max(mu, j - rows[columnStart[j]]);
+			}
+			this.mu = mu;
+		}
+		return mu;
+	}
+
+	/**
+	 * Return the largest i-j of all nonzero elements (i,j).
+	 * @return
+	 */
+	public int getLowerBandwidth() {
+		if (ml < 0) {
+			int ml = 0;
+			for (int j = 0; j < N; j++) {
+				if (columnStart[j + 1] > columnStart[j])
+					ml = Math.max(ml, rows[columnStart[j + 1] - 1] - j);
+			}
+			this.ml = ml;
+		}
+		return ml;
+	}
+
+	/**
+	 * Return the color of each column. Columns of the same color do not
+	 * share a nonzero row (distance-2 coloring of the column intersection
+	 * graph), computed greedily in column order.
+	 * @return
+	 */
+	public int[] getColumnColors() {
+		if (colors == null) {
+			color();
+		}
+		return colors;
+	}
+
+	/**
+	 * Return number of colors of {@linkplain #getColumnColors()}, which is
+	 * the number of rate evaluations needed for a difference quotient
+	 * approximation of the Jacobian.
+	 * @return
+	 */
+	public int getColorCount() {
+		if (colors == null) {
+			color();
+		}
+		return colorCount;
+	}
+
+	private void color() {
+		// transpose to find the columns of each row
+		int[] rowStart = new int[N + 1];
+		for (int k = 0; k < columnStart[N]; k++)
+			rowStart[rows[k] + 1]++;
+		for (int i = 0; i < N; i++)
+			rowStart[i + 1] += rowStart[i];
+		int[] columns = new int[columnStart[N]];
+		int[] next = Arrays.copyOf(rowStart, N);
+		for (int j = 0; j < N; j++)
+			for (int k = columnStart[j]; k < columnStart[j + 1]; k++)
+				columns[next[rows[k]]++] = j;
+
+		// greedy coloring, mark[c] == j if color c is used by a neighbour of column j
+		int[] c = new int[N];
+		Arrays.fill(c, -1);
+		int[] mark = new int[N + 1];
+		Arrays.fill(mark, -1);
+		int count = 0;
+		for (int j = 0; j < N; j++) {
+			for (int k = columnStart[j]; k < columnStart[j + 1]; k++) {
+				int i = rows[k];
+				for (int l = rowStart[i]; l < rowStart[i + 1]; l++) {
+					int cl = c[columns[l]];
+					if (cl >= 0) mark[cl] = j;
+				}
+			}
+			int color = 0;
+			while (mark[color] == j) color++;
+			c[j] = color;
+			count = Math.max(count, color + 1);
+		}
+		colors = c;
+		colorCount = count;
+	}
+}
@@ -0,0 +1,484 @@
+package de.grogra.numeric;
+
+import java.util.Map;
+
+import de.grogra.numeric.CVodeAdapter.LinearSolver;
+
+/**
+ * Common base of the pure-Java solvers for stiff equations. It provides
+ * the integration loop, tolerances and error norm, the Jacobian and the
+ * matrices of the linear systems, the location of monitor events on the
+ * dense output of the methods, and statistics.
+ *
+ * The Jacobian is taken from equations implementing {@linkplain Jacobian},
+ * otherwise it is approximated by a {@linkplain ColoredJacobian} for the
+ * {@linkplain SparsityPattern} set by {@linkplain #setSparsity(SparsityPattern)}
+ * or reported by {@linkplain JacobianStructure}, or by plain difference
+ * quotients. The linear solver is chosen with the
+ * {@linkplain CVodeAdapter.Options} LINEAR_SOLVER, UPPER_BANDWIDTH and
+ * LOWER_BANDWIDTH, so that options can be shared with CVODE. Only the dense
+ * and band solvers are supported.
+ *
+ * Instances keep work arrays and must not be used by several threads.
+ */
+public abstract class StiffSolver implements Solver {
+
+	double absTolDefault = 1e-8;
+	double relTolDefault = 1e-6;
+	double[] absTol;
+	double[] relTol;
+
+	static final int MAX_STEPS = 10000;
+
+	int maxSteps = MAX_STEPS;
+	double initialStep;
+	double maxStep = Double.POSITIVE_INFINITY;
+
+	LinearSolver linearSolver = LinearSolver.DENSE;
+	// bandwidths of the Jacobian, negative if not declared
+	int upperBandwidth = -1;
+	int lowerBandwidth = -1;
+	SparsityPattern sparsity;
+
+	int nrtfn;
+	Monitor monitor;
+
+	// statistics, accumulated over all integrations
+	long stepCount;
+	long rateCount;
+	long jacobianCount;
+	long factorCount;
+	long errorTestFailures;
+	long convergenceFailures;
+
+	// equations and Jacobian of current integration
+	ODE ode;
+	Jacobian jacobian;
+	ColoredJacobian colored;
+	SparsityPattern full;
+	// storage for the Jacobian, and for the matrix of the linear systems
+	LUMatrix J;
+	LUMatrix M;
+
+	// error weights and tolerances per element
+	double[] w = new double[0];
+	double[] tolAbs, tolRel;
+	// state and monitor values for event location
+	double[] yg;
+	double[] gPrev, gA, gB;
+
+	// current time and step size
+	double t;
+	double h;
+
+	@Override
+	public void integrate(ODE ode, double t0, double[] y0, double t1, double[] y1) throws NumericException {
+		assert y0.length == y1.length;
+		final int N = y0.length;
+		if (t0 == t1 || N == 0) {
+			System.arraycopy(y0, 0, y1, 0, N);
+			return;
+		}
+		init(ode, N);
+		final double dir = Math.signum(t1 - t0);
+		t = t0;
+		start(y0, t1, dir);
+		if (nrtfn > 0) {
+			monitor.g(gPrev, t0, y0);
+		}
+		for (int steps = 0; (t - t1) * dir < 0; steps++) {
+			if (steps >= maxSteps)
+				throw new NumericException("maximum number of " + maxSteps + " steps taken before reaching t = " + t1);
+			final double tPrev = t;
+			step();
+			if (nrtfn > 0) {
+				double tEnd = (t - t1) * dir > 0 ? t1 : t;
+				double troot = findEvents(tPrev, tEnd);
+				if (!Double.isNaN(troot)) {
+					interpolate(y1, troot);
+					return;
+				}
+			}
+		}
+		interpolate(y1, t1);
+	}
+
+	/**
+	 * Start the integration at (t, y0) towards t1. Sets the initial step size h.
+	 * @param y0 initial state
+	 * @param t1 final time
+	 * @param dir direction of integration, 1 or -1
+	 * @throws NumericException
+	 */
+	abstract void start(double[] y0, double t1, double dir) throws NumericException;
+
+	/**
+	 * Take one step from t, adapting the step size on failures. Sets t to
+	 * the time reached and h to the size of the next step.
+	 * @throws NumericException
+	 */
+	abstract void step() throws NumericException;
+
+	/**
+	 * Evaluate the dense output of the last step at time tout.
+	 * @param out
+	 * @param tout
+	 */
+	abstract void interpolate(double[] out, double tout);
+
+	// prepare work arrays, Jacobian and matrices for equations of dimension N
+	void init(ODE ode, int N) throws NumericException {
+		if (w.length != N) {
+			w = new double[N];
+			tolAbs = new double[N];
+			tolRel = new double[N];
+			yg = new double[N];
+		}
+		for (int i = 0; i < N; i++) {
+			tolAbs[i] = absTol != null && absTol[i] != 0 ? absTol[i] : absTolDefault;
+			tolRel[i] = relTol != null && relTol[i] != 0 ? relTol[i] : relTolDefault;
+		}
+		if (gPrev == null || gPrev.length != nrtfn) {
+			gPrev = new double[nrtfn];
+			gA = new double[nrtfn];
+			gB = new double[nrtfn];
+		}
+		initJacobian(ode, N);
+		this.ode = ode;
+	}
+
+	// set up the Jacobian of ode and the matrices of the linear systems
+	void initJacobian(ODE ode, int N) throws NumericException {
+		// use the structure reported by the equations, if not set explicitly
+		SparsityPattern pattern = sparsity;
+		if (pattern == null && ode instanceof JacobianStructure) {
+			pattern = ((JacobianStructure) ode).getSparsityPattern();
+		}
+		if (pattern != null && pattern.getDimension() != N) {
+			pattern = null;
+		}
+		if (ode instanceof Jacobian) {
+			jacobian = (Jacobian) ode;
+		} else {
+			if (pattern == null) {
+				// plain difference quotients, one column per color
+				if (full == null || full.getDimension() != N) {
+					full = SparsityPattern.band(N, N - 1, N - 1);
+				}
+				pattern = full;
+			}
+			if (colored == null || this.ode != ode || colored.getPattern() != pattern) {
+				colored = new ColoredJacobian(ode, pattern);
+			}
+			jacobian = colored;
+		}
+
+		int mu = N - 1, ml = N - 1;
+		if (linearSolver.isBand()) {
+			mu = upperBandwidth;
+			ml = lowerBandwidth;
+			if (mu < 0 && ml < 0 && pattern != null) {
+				mu = pattern.getUpperBandwidth();
+				ml = pattern.getLowerBandwidth();
+			}
+			mu = mu < 0 || mu >= N ? N - 1 : mu;
+			ml = ml < 0 || ml >= N ? N - 1 : ml;
+		} else if (linearSolver.isIterative()) {
+			throw new NumericException("linear solver " + linearSolver + " is not supported by " + getClass().getSimpleName());
+		}
+		if (J == null || J.getDimension() != N || J.getUpperBandwidth() != mu
+				|| J.getLowerBandwidth() != ml || (J instanceof LUMatrix.Band) != linearSolver.isBand()) {
+			J = linearSolver.isBand() ? LUMatrix.band(N, mu, ml) : LUMatrix.dense(N);
+			M = linearSolver.isBand() ? LUMatrix.band(N, mu, ml) : LUMatrix.dense(N);
+		}
+	}
+
+	// evaluate the Jacobian at (t, y) with rate f into J
+	void evaluateJacobian(double t, double[] y, double[] f) {
+		J.clear();
+		jacobian.getJacobian(J, t, y, f);
+		jacobianCount++;
+	}
+
+	/**
+	 * Estimate the size of the first step of a method of order p, so that
+	 * its error is about the tolerance. The second derivative is approximated
+	 * by difference quotients from f = f(t, y) and stands in for the higher
+	 * derivatives.
+	 * @param y state at t
+	 * @param f rate at t
+	 * @param t1 final time
+	 * @param dir direction of integration
+	 * @param p order of the method
+	 * @param work array for intermediate values
+	 * @return positive step size
+	 */
+	double initialStep(double[] y, double[] f, double t1, double dir, int p, double[] work) {
+		final double span = Math.abs(t1 - t);
+		if (initialStep > 0) {
+			return Math.min(initialStep, span);
+		}
+		final double hmax = Math.min(0.1 * span, maxStep);
+		final int N = f.length;
+		double d1 = norm(f);
+		double hg = Math.min(1e-3 * span, d1 > 0 ? 0.1 / d1 : span);
+		for (int i = 0; i < N; i++) {
+			yg[i] = y[i] + dir * hg * f[i];
+		}
+		rate(work, t + dir * hg, yg);
+		for (int i = 0; i < N; i++) {
+			work[i] = (work[i] - f[i]) / hg;
+		}
+		double ydd = norm(work);
+		double h0 = ydd > 0 ? Math.pow(1 / ydd, 1.0 / (p + 1)) : hmax;
+		if (p > 1) {
+			// the estimate is less reliable for higher orders
+			h0 = Math.min(h0, 100 * hg);
+		}
+		return Math.max(Math.min(h0, hmax), 1e-3 * hg);
+	}
+
+	// locate events of the monitor within (tPrev, tEnd], returns NaN or the time integration stopped at
+	double findEvents(double tPrev, double tEnd) {
+		final int n = nrtfn;
+		final double[] y = yg;
+		double ta = tPrev;
+		interpolate(y, tEnd);
+		monitor.g(gB, tEnd, y);
+		while (crossed(gPrev, gB)) {
+			// bisect for the first change of sign
+			System.arraycopy(gPrev, 0, gA, 0, n);
+			double tb = tEnd;
+			final double ttol = 100 * Math.ulp(1.0) * (Math.abs(t) + Math.abs(h));
+			while (Math.abs(tb - ta) > ttol) {
+				double tm = 0.5 * (ta + tb);
+				interpolate(y, tm);
+				monitor.g(gB, tm, y);
+				if (crossed(gA, gB)) {
+					tb = tm;
+				} else {
+					ta = tm;
+					System.arraycopy(gB, 0, gA, 0, n);
+				}
+			}
+			interpolate(y, tb);
+			monitor.g(gB, tb, y);
+			boolean stop = false;
+			for (int i = 0; i < n; i++) {
+				if (crossed(gPrev[i], gB[i])) {
+					stop |= monitor.handleEvent(i, tb, y);
+				}
+			}
+			if (stop) {
+				return tb;
+			}
+			// continue with remaining interval
+			System.arraycopy(gB, 0, gPrev, 0, n);
+			ta = tb;
+			interpolate(y, tEnd);
+			monitor.g(gB, tEnd, y);
+		}
+		System.arraycopy(gB, 0, gPrev, 0, n);
+		return Double.NaN;
+	}
+
+	static boolean crossed(double[] a, double[] b) {
+		for (int i = 0; i < a.length; i++) {
+			if (crossed(a[i], b[i])) return true;
+		}
+		return false;
+	}
+
+	static boolean crossed(double a, double b) {
+		return (a < 0 && b >= 0) || (a > 0 && b <= 0);
+	}
+
+	void weights(double[] y) {
+		for (int i = 0; i < w.length; i++) {
+			w[i] = 1 / (tolRel[i] * Math.abs(y[i]) + tolAbs[i]);
+		}
+	}
+
+	// weighted root mean square norm
+	double norm(double[] v) {
+		double s = 0;
+		for (int i = 0; i < v.length; i++) {
+			double x = v[i] * w[i];
+			s += x * x;
+		}
+		return Math.sqrt(s / v.length);
+	}
+
+	void rate(double[] out, double t, double[] state) {
+		rateCount++;
+		ode.getRate(out, t, state);
+	}
+
+	@Override
+	public void setMonitor(int n, Monitor monitor) throws NumericException {
+		if (n < 0) throw new NumericException("number of monitor functions must be non-negative");
+		this.nrtfn = n;
+		this.monitor = monitor;
+	}
+
+	/**
+	 * Supports the keys LINEAR_SOLVER, UPPER_BANDWIDTH, LOWER_BANDWIDTH,
+	 * MAX_STEPS, MAX_STEP and INITIAL_STEP of {@linkplain CVodeAdapter.Options},
+	 * other keys are ignored. As for CVODE, declaring a bandwidth without a
+	 * linear solver selects BAND, and zero selects the default of the
+	 * numeric options.
+	 */
+	@Override
+	public void setOptions(Map options) {
+		Object mu = options.get(CVodeAdapter.Options.UPPER_BANDWIDTH);
+		Object ml = options.get(CVodeAdapter.Options.LOWER_BANDWIDTH);
+		Object ls = options.get(CVodeAdapter.Options.LINEAR_SOLVER);
+		Object value = options.get(CVodeAdapter.Options.MAX_STEPS);
+		if (value != null) {
+			int n = CVodeOptions.number(CVodeAdapter.Options.MAX_STEPS, value).intValue();
+			setMaxSteps(n != 0 ? n : MAX_STEPS);
+		}
+		value = options.get(CVodeAdapter.Options.MAX_STEP);
+		if (value != null) {
+			double hmax = CVodeOptions.number(CVodeAdapter.Options.MAX_STEP, value).doubleValue();
+			setMaxStep(hmax != 0 ? hmax : Double.POSITIVE_INFINITY);
+		}
+		value = options.get(CVodeAdapter.Options.INITIAL_STEP);
+		if (value != null) {
+			setInitialStep(CVodeOptions.number(CVodeAdapter.Options.INITIAL_STEP, value).doubleValue());
+		}
+		if (mu != null) {
+			upperBandwidth = ((Number) mu).intValue();
+		}
+		if (ml != null) {
+			lowerBandwidth = ((Number) ml).intValue();
+		}
+		if (ls != null) {
+			setLinearSolver((LinearSolver) ls);
+		} else if ((mu != null || ml != null) && !linearSolver.isBand()) {
+			linearSolver = LinearSolver.BAND;
+		}
+	}
+
+	@Override
+	public void setTolerances(double[] absTol, double[] relTol) {
+		assert absTol == null || relTol == null || absTol.length == relTol.length;
+		this.absTol = absTol != null ? absTol.clone() : null;
+		this.relTol = relTol != null ? relTol.clone() : null;
+	}
+
+	public double getAbsTolDefault() {
+		return absTolDefault;
+	}
+
+	public double getRelTolDefault() {
+		return relTolDefault;
+	}
+
+	public void setAbsTolDefault(double value) {
+		if (!(value > 0)) throw new IllegalArgumentException("tolerance must be positive");
+		absTolDefault = value;
+	}
+
+	public void setRelTolDefault(double value) {
+		if (!(value >= 0)) throw new IllegalArgumentException("tolerance must be non-negative");
+		relTolDefault = value;
+	}
+
+	public LinearSolver getLinearSolver() {
+		return linearSolver;
+	}
+
+	/**
+	 * Select the linear solver. The LAPACK variants are treated as their
+	 * Java counterparts DENSE and BAND.
+	 * @param linearSolver
+	 */
+	public void setLinearSolver(LinearSolver linearSolver) {
+		if (linearSolver.isIterative())
+			throw new IllegalArgumentException("linear solver " + linearSolver + " is not supported");
+		this.linearSolver = linearSolver;
+	}
+
+	/**
+	 * Declare the bandwidths of the Jacobian for the band solver. Negative
+	 * values select those of the sparsity pattern, or a full band.
+	 * @param mupper
+	 * @param mlower
+	 */
+	public void setBandwidths(int mupper, int mlower) {
+		this.upperBandwidth = mupper;
+		this.lowerBandwidth = mlower;
+	}
+
+	public SparsityPattern getSparsity() {
+		return sparsity;
+	}
+
+	/**
+	 * Set the structure of the Jacobian, used for colored difference
+	 * quotients if the equations do not implement {@linkplain Jacobian}.
+	 * @param sparsity
+	 */
+	public void setSparsity(SparsityPattern sparsity) {
+		this.sparsity = sparsity;
+	}
+
+	public int getMaxSteps() {
+		return maxSteps;
+	}
+
+	/**
+	 * Set the maximum number of steps of a single integration.
+	 * @param maxSteps
+	 */
+	public void setMaxSteps(int maxSteps) {
+		if (maxSteps <= 0) throw new IllegalArgumentException("maximum number of steps must be positive");
+		this.maxSteps = maxSteps;
+	}
+
+	public double getInitialStep() {
+		return initialStep;
+	}
+
+	/**
+	 * Set the size of the first step, or zero to estimate it.
+	 * @param initialStep
+	 */
+	public void setInitialStep(double initialStep) {
+		this.initialStep = Math.abs(initialStep);
+	}
+
+	public double getMaxStep() {
+		return maxStep;
+	}
+
+	public void setMaxStep(double maxStep) {
+		if (!(maxStep > 0)) throw new IllegalArgumentException("maximum step size must be positive");
+		this.maxStep = maxStep;
+	}
+
+	public long getStepCount() {
+		return stepCount;
+	}
+
+	public long getRateCount() {
+		return rateCount;
+	}
+
+	public long getJacobianCount() {
+		return jacobianCount;
+	}
+
+	public long getFactorCount() {
+		return factorCount;
+	}
+
+	public long getErrorTestFailures() {
+		return errorTestFailures;
+	}
+
+	public long getConvergenceFailures() {
+		return convergenceFailures;
+	}
+}
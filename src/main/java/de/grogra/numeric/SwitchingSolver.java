@@ -0,0 +1,381 @@
+package de.grogra.numeric;
+
+import java.util.Map;
+
+/**
+ * A solver that detects stiffness and switches between an explicit method
+ * and {@linkplain BDFSolver}, like LSODA. Non-stiff phases are integrated
+ * by the explicit Dormand-Prince method of order 5, which needs neither a
+ * Jacobian nor linear algebra. Stiff phases, in which the explicit method
+ * is forced to tiny steps by stability rather than accuracy, are integrated
+ * by BDF with Newton iteration.
+ *
+ * Stiffness of the explicit method is detected as by Hairer in DOPRI5:
+ * h*lambda is estimated from the last two stages of a step, and values
+ * beyond the stability boundary in {@value #STIFF_STEPS} steps without
+ * {@value #NON_STIFF_STEPS} non-stiff steps in between cause a switch to BDF.
+ * During BDF the spectral radius of each new Jacobian is estimated by
+ * power iteration, and BDF switches back if h*rho stays within the
+ * stability boundary for {@value #STIFF_STEPS} steps.
+ *
+ * Integration starts with the method that was active at the end of the
+ * previous integration. Tolerances and options are passed on to the BDF
+ * solver, statistics include those of both methods.
+ */
+public class SwitchingSolver extends StiffSolver {
+
+	// Dormand-Prince 5(4), last row are the weights of the solution
+	static final double[] C = { 0, 1.0 / 5, 3.0 / 10, 4.0 / 5, 8.0 / 9, 1, 1 };
+	static final double[][] A = {
+		{},
+		{ 1.0 / 5 },
+		{ 3.0 / 40, 9.0 / 40 },
+		{ 44.0 / 45, -56.0 / 15, 32.0 / 9 },
+		{ 19372.0 / 6561, -25360.0 / 2187, 64448.0 / 6561, -212.0 / 729 },
+		{ 9017.0 / 3168, -355.0 / 33, 46732.0 / 5247, 49.0 / 176, -5103.0 / 18656 },
+		{ 35.0 / 384, 0, 500.0 / 1113, 125.0 / 192, -2187.0 / 6784, 11.0 / 84 } };
+	// weights of the error estimate
+	static final double[] E = { 71.0 / 57600, 0, -71.0 / 16695, 71.0 / 1920, -17253.0 / 339200, 22.0 / 525, -1.0 / 40 };
+
+	// approximate stability boundary of Dormand-Prince on the negative real axis
+	static final double STABILITY_BOUNDARY = 3.25;
+	static final int STIFF_STEPS = 15;
+	static final int NON_STIFF_STEPS = 6;
+	static final int POWER_ITERATIONS = 10;
+	static final int MAX_REJECTIONS = 20;
+	static final double SAFETY = 0.9;
+	static final double MIN_FACTOR = 0.2;
+	static final double MAX_FACTOR = 10;
+
+	final BDFSolver bdf = new BDFSolver();
+
+	boolean stiff;
+	boolean switchPending;
+	int stiffCount;
+	int nonStiffCount;
+	long switchCount;
+	// spectral radius of the last Jacobian of BDF
+	double rho;
+	long jacobianCountChecked;
+
+	// final time and direction of current integration
+	double t1;
+	double dir;
+
+	// state and rate at t, and at the start of the last explicit step
+	double[] y = new double[0], f, yOld, fOld;
+	double tOld, hOld;
+	double[][] k = new double[0][];
+	double[] u, v, err;
+
+	@Override
+	void initJacobian(ODE ode, int N) throws NumericException {
+		// only BDF needs the Jacobian
+		bdf.absTolDefault = absTolDefault;
+		bdf.relTolDefault = relTolDefault;
+		bdf.absTol = absTol;
+		bdf.relTol = relTol;
+		bdf.linearSolver = linearSolver;
+		bdf.upperBandwidth = upperBandwidth;
+		bdf.lowerBandwidth = lowerBandwidth;
+		bdf.sparsity = sparsity;
+		bdf.maxStep = maxStep;
+		bdf.initialStep = initialStep;
+		bdf.nrtfn = 0;
+		bdf.init(ode, N);
+		if (y.length != N) {
+			y = new double[N];
+			f = new double[N];
+			yOld = new double[N];
+			fOld = new double[N];
+			k = new double[7][N];
+			u = new double[N];
+			v = new double[N];
+			err = new double[N];
+		}
+	}
+
+	/**
+	 * Supports the keys of {@linkplain BDFSolver#setOptions(Map)}, MAX_ORDER
+	 * applies to the stiff phases.
+	 */
+	@Override
+	public void setOptions(Map options) {
+		super.setOptions(options);
+		bdf.setOptions(options);
+	}
+
+	/**
+	 * Return the maximum order of BDF in stiff phases.
+	 * @return
+	 */
+	public int getMaxOrder() {
+		return bdf.getMaxOrder();
+	}
+
+	public void setMaxOrder(int maxOrder) {
+		bdf.setMaxOrder(maxOrder);
+	}
+
+	@Override
+	void start(double[] y0, double t1, double dir) {
+		this.t1 = t1;
+		this.dir = dir;
+		stiffCount = 0;
+		nonStiffCount = 0;
+		switchPending = false;
+		if (stiff) {
+			startBDF(y0);
+		} else {
+			startExplicit(y0, 0);
+		}
+	}
+
+	void startBDF(double[] y0) {
+		bdf.t = t;
+		bdf.start(y0, t1, dir);
+		h = bdf.h;
+		jacobianCountChecked = bdf.jacobianCount;
+		rho = 0;
+	}
+
+	// start explicit integration at (t, y0), with step size h0 or an estimate if 0
+	void startExplicit(double[] y0, double h0) {
+		final int N = y0.length;
+		System.arraycopy(y0, 0, y, 0, N);
+		rate(f, t, y);
+		weights(y);
+		h = h0 != 0 ? h0 : dir * initialStep(y, f, t1, dir, 4, u);
+		tOld = t;
+		hOld = h;
+		System.arraycopy(y, 0, yOld, 0, N);
+		System.arraycopy(f, 0, fOld, 0, N);
+	}
+
+	@Override
+	void step() throws NumericException {
+		if (switchPending) {
+			switchPending = false;
+			switchCount++;
+			stiffCount = 0;
+			nonStiffCount = 0;
+			if (stiff) {
+				startBDF(y);
+			} else {
+				// continue from the current state of BDF with its step size
+				bdf.interpolate(u, t);
+				startExplicit(u, bdf.h);
+			}
+		}
+		if (stiff) {
+			bdf.step();
+			t = bdf.t;
+			h = bdf.h;
+			detectNonStiffness();
+		} else {
+			explicitStep();
+		}
+	}
+
+	// estimate the spectral radius of new Jacobians, and check whether BDF can be left
+	void detectNonStiffness() {
+		if (bdf.jacobianCount != jacobianCountChecked) {
+			jacobianCountChecked = bdf.jacobianCount;
+			rho = spectralRadius(bdf.J);
+		}
+		if (Math.abs(h) * rho <= STABILITY_BOUNDARY) {
+			if (++nonStiffCount >= STIFF_STEPS) {
+				stiff = false;
+				switchPending = true;
+			}
+		} else {
+			nonStiffCount = 0;
+		}
+	}
+
+	// estimate the spectral radius of J by power iteration
+	double spectralRadius(LUMatrix J) {
+		final int N = u.length;
+		for (int i = 0; i < N; i++) {
+			// avoid starting orthogonal to the dominant eigenvector
+			u[i] = 1 + 0.1 * (i % 7);
+		}
+		double r = 0;
+		for (int it = 0; it < POWER_ITERATIONS; it++) {
+			double nu = norm2(u);
+			J.multiply(u, v);
+			double nv = norm2(v);
+			if (nv == 0) {
+				return 0;
+			}
+			r = nv / nu;
+			for (int i = 0; i < N; i++) {
+				u[i] = v[i] / nv;
+			}
+		}
+		return r;
+	}
+
+	static double norm2(double[] x) {
+		double s = 0;
+		for (double xi : x) {
+			s += xi * xi;
+		}
+		return Math.sqrt(s);
+	}
+
+	void explicitStep() throws NumericException {
+		final int N = y.length;
+		boolean rejected = false;
+		for (int rejections = 0;; rejections++) {
+			if (rejections >= MAX_REJECTIONS)
+				throw new NumericException("step rejected repeatedly at t = " + t);
+			if (Math.abs(h) > maxStep) {
+				h = Math.copySign(maxStep, h);
+			}
+			if (t + h == t)
+				throw new NumericException("step size " + h + " too small at t = " + t);
+			System.arraycopy(f, 0, k[0], 0, N);
+			for (int s = 1; s < 7; s++) {
+				final double[] as = A[s];
+				System.arraycopy(y, 0, u, 0, N);
+				for (int j = 0; j < s; j++) {
+					final double c = h * as[j];
+					if (c != 0) {
+						final double[] kj = k[j];
+						for (int i = 0; i < N; i++) {
+							u[i] += c * kj[i];
+						}
+					}
+				}
+				if (s == 5) {
+					// keep the input of stage 6 for stiffness detection
+					System.arraycopy(u, 0, v, 0, N);
+				}
+				rate(k[s], t + C[s] * h, u);
+			}
+			// now u is the new solution and k[6] its rate
+			for (int i = 0; i < N; i++) {
+				double e = 0;
+				for (int j = 0; j < 7; j++) {
+					e += E[j] * k[j][i];
+				}
+				err[i] = h * e;
+			}
+			for (int i = 0; i < N; i++) {
+				w[i] = 1 / (tolRel[i] * Math.max(Math.abs(y[i]), Math.abs(u[i])) + tolAbs[i]);
+			}
+			final double e = norm(err);
+			double fac = e > 0 ? SAFETY * Math.pow(e, -0.2) : MAX_FACTOR;
+			fac = Math.max(MIN_FACTOR, Math.min(MAX_FACTOR, fac));
+			if (e > 1) {
+				errorTestFailures++;
+				h *= fac;
+				rejected = true;
+				continue;
+			}
+			detectStiffness();
+
+			// accept step, keep data of dense output
+			System.arraycopy(y, 0, yOld, 0, N);
+			System.arraycopy(f, 0, fOld, 0, N);
+			System.arraycopy(u, 0, y, 0, N);
+			System.arraycopy(k[6], 0, f, 0, N);
+			tOld = t;
+			hOld = h;
+			t += h;
+			stepCount++;
+			h *= rejected ? Math.min(1, fac) : fac;
+			return;
+		}
+	}
+
+	// estimate h*lambda from the last two stages, both evaluated at t + h
+	void detectStiffness() {
+		final int N = y.length;
+		double num = 0, den = 0;
+		for (int i = 0; i < N; i++) {
+			double dk = k[6][i] - k[5][i];
+			double dy = u[i] - v[i];
+			num += dk * dk;
+			den += dy * dy;
+		}
+		if (den > 0 && Math.abs(h) * Math.sqrt(num / den) > STABILITY_BOUNDARY) {
+			nonStiffCount = 0;
+			if (++stiffCount >= STIFF_STEPS) {
+				stiff = true;
+				switchPending = true;
+			}
+		} else if (++nonStiffCount >= NON_STIFF_STEPS) {
+			stiffCount = 0;
+		}
+	}
+
+	@Override
+	void interpolate(double[] out, double tout) {
+		if (isStiff()) {
+			bdf.interpolate(out, tout);
+			return;
+		}
+		final int N = out.length;
+		if (t == tOld) {
+			System.arraycopy(y, 0, out, 0, N);
+			return;
+		}
+		final double th = (tout - tOld) / hOld;
+		final double th2 = th * th, th3 = th2 * th;
+		final double h00 = 2 * th3 - 3 * th2 + 1;
+		final double h10 = (th3 - 2 * th2 + th) * hOld;
+		final double h01 = -2 * th3 + 3 * th2;
+		final double h11 = (th3 - th2) * hOld;
+		for (int i = 0; i < N; i++) {
+			out[i] = h00 * yOld[i] + h10 * fOld[i] + h01 * y[i] + h11 * f[i];
+		}
+	}
+
+	/**
+	 * Return true if the last step was taken by BDF.
+	 * @return
+	 */
+	public boolean isStiff() {
+		return stiff != switchPending;
+	}
+
+	/**
+	 * Return the number of switches between the methods.
+	 * @return
+	 */
+	public long getSwitchCount() {
+		return switchCount;
+	}
+
+	@Override
+	public long getStepCount() {
+		return stepCount + bdf.stepCount;
+	}
+
+	@Override
+	public long getRateCount() {
+		return rateCount + bdf.rateCount;
+	}
+
+	@Override
+	public long getJacobianCount() {
+		return bdf.jacobianCount;
+	}
+
+	@Override
+	public long getFactorCount() {
+		return bdf.factorCount;
+	}
+
+	@Override
+	public long getErrorTestFailures() {
+		return errorTestFailures + bdf.errorTestFailures;
+	}
+
+	@Override
+	public long getConvergenceFailures() {
+		return bdf.convergenceFailures;
+	}
+}
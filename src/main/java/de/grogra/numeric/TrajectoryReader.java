@@ -0,0 +1,132 @@
+package de.grogra.numeric;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Random access to a trajectory written by {@linkplain TrajectoryWriter}.
+ * The file is mapped read-only, so records are read from the page cache
+ * without loading the file onto the heap.
+ *
+ * The file starts with a header of {@value #HEADER_SIZE} bytes: the magic
+ * number, the format version, the dimension n and a reserved int, followed
+ * by the number of records as long and a reserved long. Each record has
+ * n + 1 doubles, the time followed by the state. All values are little
+ * endian.
+ */
+public class TrajectoryReader implements Closeable {
+
+	static final int MAGIC = 0x4A415254;	// "TRAJ" in little endian
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 32;
+	static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	final FileChannel channel;
+	final int dimension;
+	final long count;
+	// records of the file mapped in chunks of at most 2 GB
+	final int chunkRecords;
+	final DoubleBuffer[] chunks;
+
+	/**
+	 * Open the file and map all records counted in its header.
+	 * @param file
+	 * @throws IOException
+	 */
+	public TrajectoryReader(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ORDER);
+			while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+			}
+			header.flip();
+			if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC)
+				throw new IOException(file + " is not a trajectory file");
+			if (header.getInt() != VERSION)
+				throw new IOException(file + " has an unsupported version");
+			dimension = header.getInt();
+			header.getInt();
+			count = header.getLong();
+			final long stride = 8L * (dimension + 1);
+			if (dimension <= 0 || count < 0 || HEADER_SIZE + count * stride > channel.size())
+				throw new IOException(file + " is truncated or corrupt");
+
+			chunkRecords = (int) (Integer.MAX_VALUE / stride);
+			chunks = new DoubleBuffer[(int) ((count + chunkRecords - 1) / chunkRecords)];
+			for (int c = 0; c < chunks.length; c++) {
+				long records = Math.min(chunkRecords, count - (long) c * chunkRecords);
+				chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY,
+						HEADER_SIZE + (long) c * chunkRecords * stride, records * stride)
+					.order(ORDER).asDoubleBuffer();
+			}
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	public int getDimension() {
+		return dimension;
+	}
+
+	/**
+	 * Return the number of records.
+	 * @return
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Return the time of record k.
+	 * @param k
+	 * @return
+	 */
+	public double getTime(long k) {
+		return chunk(k).get(offset(k));
+	}
+
+	/**
+	 * Return element i of the state of record k.
+	 * @param k
+	 * @param i
+	 * @return
+	 */
+	public double getState(long k, int i) {
+		if (i < 0 || i >= dimension) throw new IndexOutOfBoundsException("element " + i);
+		return chunk(k).get(offset(k) + 1 + i);
+	}
+
+	/**
+	 * Copy the state of record k into out.
+	 * @param k
+	 * @param out memory of at least the dimension
+	 * @return out
+	 */
+	public double[] getState(long k, double[] out) {
+		DoubleBuffer b = chunk(k).duplicate();
+		b.position(offset(k) + 1);
+		b.get(out, 0, dimension);
+		return out;
+	}
+
+	DoubleBuffer chunk(long k) {
+		if (k < 0 || k >= count) throw new IndexOutOfBoundsException("record " + k);
+		return chunks[(int) (k / chunkRecords)];
+	}
+
+	int offset(long k) {
+		return (int) (k % chunkRecords) * (dimension + 1);
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,206 @@
+package de.grogra.numeric;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.commons.math.ode.DerivativeException;
+import org.apache.commons.math.ode.sampling.FixedStepHandler;
+import org.apache.commons.math.ode.sampling.StepHandler;
+import org.apache.commons.math.ode.sampling.StepInterpolator;
+
+/**
+ * Streams the trajectory of an integration into a memory-mapped file, so
+ * that runs whose output exceeds the heap can be recorded. Each record
+ * holds the time followed by the state, see {@linkplain TrajectoryReader}
+ * for the file format.
+ *
+ * As step handler of a {@linkplain CVodeAdapter}, or of the integrator of
+ * a {@linkplain FirstOrderIntegratorAdapter}, the state at the end of every
+ * step is written, preceded by the initial state. Wrapped in a
+ * StepNormalizer of Apache Commons Math, the states at equidistant times
+ * are written instead. States can also be passed directly to
+ * {@linkplain #write(double, double[])}.
+ *
+ * The file is mapped in windows of a fixed number of records, a new window
+ * is mapped when the current one is full. Writing a record copies it into
+ * the mapped memory, the operating system writes it to disk. The number of
+ * records in the header is updated whenever a window is full, on
+ * {@linkplain #flush()} and on {@linkplain #close()}, which also truncates
+ * the file to the records written.
+ */
+public class TrajectoryWriter implements StepHandler, FixedStepHandler, Closeable {
+
+	/** default size of a mapping window in bytes */
+	public static final int WINDOW_SIZE = 1 << 26;
+
+	final FileChannel channel;
+	final int dimension;
+	final int windowRecords;
+	final ByteBuffer header = ByteBuffer.allocate(TrajectoryReader.HEADER_SIZE)
+		.order(TrajectoryReader.ORDER);
+
+	// current window and the number of records written
+	MappedByteBuffer window;
+	DoubleBuffer records;
+	long count;
+
+	/**
+	 * Create the file, replacing an existing one, for states of the given
+	 * dimension with windows of about {@value #WINDOW_SIZE} bytes.
+	 * @param file
+	 * @param dimension
+	 * @throws IOException
+	 */
+	public TrajectoryWriter(Path file, int dimension) throws IOException {
+		this(file, dimension, Math.max(1, WINDOW_SIZE / (8 * (dimension + 1))));
+	}
+
+	/**
+	 * Create the file, replacing an existing one, for states of the given
+	 * dimension with windows of the given number of records.
+	 * @param file
+	 * @param dimension
+	 * @param windowRecords
+	 * @throws IOException
+	 */
+	public TrajectoryWriter(Path file, int dimension, int windowRecords) throws IOException {
+		if (dimension <= 0) throw new IllegalArgumentException("dimension must be positive");
+		if (windowRecords <= 0) throw new IllegalArgumentException("window must hold at least one record");
+		if ((long) windowRecords * 8 * (dimension + 1) > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("window too large");
+		this.dimension = dimension;
+		this.windowRecords = windowRecords;
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		writeHeader();
+	}
+
+	public int getDimension() {
+		return dimension;
+	}
+
+	/**
+	 * Return the number of records written.
+	 * @return
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Append the state y at time t.
+	 * @param t
+	 * @param y
+	 * @throws IOException
+	 */
+	public void write(double t, double[] y) throws IOException {
+		assert y.length >= dimension;
+		if (records == null || !records.hasRemaining()) {
+			map();
+		}
+		records.put(t);
+		records.put(y, 0, dimension);
+		count++;
+	}
+
+	// map the window starting after the records written so far
+	void map() throws IOException {
+		if (records != null) {
+			writeHeader();
+		}
+		final long stride = 8L * (dimension + 1);
+		window = channel.map(FileChannel.MapMode.READ_WRITE, TrajectoryReader.HEADER_SIZE + count * stride,
+				windowRecords * stride);
+		records = window.order(TrajectoryReader.ORDER).asDoubleBuffer();
+	}
+
+	void writeHeader() throws IOException {
+		header.clear();
+		header.putInt(TrajectoryReader.MAGIC).putInt(TrajectoryReader.VERSION).putInt(dimension).putInt(0)
+			.putLong(count).putLong(0);
+		header.flip();
+		while (header.hasRemaining()) {
+			channel.write(header, header.position());
+		}
+	}
+
+	/**
+	 * Write the number of records to the header and force all records
+	 * written so far to disk.
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		if (window != null) {
+			window.force();
+		}
+		writeHeader();
+		channel.force(false);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!channel.isOpen()) {
+			return;
+		}
+		try {
+			if (window != null) {
+				window.force();
+			}
+			writeHeader();
+			try {
+				// drop the unused part of the last window
+				channel.truncate(TrajectoryReader.HEADER_SIZE + count * 8L * (dimension + 1));
+			} catch (IOException e) {
+				// Windows refuses while the window is still mapped, which is
+				// harmless as readers use the number of records in the header
+			}
+		} finally {
+			window = null;
+			records = null;
+			channel.close();
+		}
+	}
+
+	// the initial state is interpolated at the start of the first step
+	@Override
+	public boolean requiresDenseOutput() {
+		return true;
+	}
+
+	/**
+	 * Does nothing, integrators call this at the start of every
+	 * integration, which continues the trajectory.
+	 */
+	@Override
+	public void reset() {
+	}
+
+	@Override
+	public void handleStep(StepInterpolator interpolator, boolean isLast) throws DerivativeException {
+		try {
+			if (count == 0) {
+				interpolator.setInterpolatedTime(interpolator.getPreviousTime());
+				write(interpolator.getPreviousTime(), interpolator.getInterpolatedState());
+			}
+			interpolator.setInterpolatedTime(interpolator.getCurrentTime());
+			write(interpolator.getCurrentTime(), interpolator.getInterpolatedState());
+		} catch (IOException e) {
+			throw new DerivativeException(e);
+		}
+	}
+
+	@Override
+	public void handleStep(double t, double[] y, double[] yDot, boolean isLast) throws DerivativeException {
+		try {
+			write(t, y);
+		} catch (IOException e) {
+			throw new DerivativeException(e);
+		}
+	}
+}
@@ -0,0 +1,14 @@
+package de.grogra.numeric.cvode;
+
+import com.sun.jna.Callback;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+
+/**
+ * This function computes the dense Jacobian of the ODE right-hand side
+ * for the dense linear solver of SUNDIALS 2.x (see {@linkplain CVODEOriginal}).
+ */
+public interface CVDlsDenseJacFn extends Callback {
+	int callback(NativeLong N, double t, N_Vector y, N_Vector fy, DlsMat Jac,
+			Pointer user_data, N_Vector tmp1, N_Vector tmp2, N_Vector tmp3);
+}
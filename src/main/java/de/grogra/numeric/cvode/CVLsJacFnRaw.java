@@ -0,0 +1,17 @@
+package de.grogra.numeric.cvode;
+
+import com.sun.jna.Callback;
+import com.sun.jna.Pointer;
+
+/**
+ * This function computes the Jacobian of the ODE right-hand side for the
+ * direct linear solvers (CVLsJacFn). Jac is the SUNMatrix that was passed
+ * to CVodeSetLinearSolver, fy is f(t, y). The tmp vectors may be used as
+ * temporary storage.
+ * 
+ * As for {@linkplain CVRhsFnRaw} all objects are passed as plain pointers.
+ */
+public interface CVLsJacFnRaw extends Callback {
+	int callback(double t, Pointer y, Pointer fy, Pointer Jac, Pointer user_data,
+			Pointer tmp1, Pointer tmp2, Pointer tmp3);
+}
@@ -0,0 +1,12 @@
+package de.grogra.numeric.cvode;
+
+import com.sun.jna.Callback;
+import com.sun.jna.Pointer;
+
+/**
+ * This function prepares data needed by {@linkplain CVLsJacTimesVecFnRaw}
+ * (CVLsJacTimesSetupFn), fy is f(t, y). Vectors are passed as plain pointers.
+ */
+public interface CVLsJacTimesSetupFnRaw extends Callback {
+	int callback(double t, Pointer y, Pointer fy, Pointer user_data);
+}
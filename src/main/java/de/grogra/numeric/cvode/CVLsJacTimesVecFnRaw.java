@@ -0,0 +1,14 @@
+package de.grogra.numeric.cvode;
+
+import com.sun.jna.Callback;
+import com.sun.jna.Pointer;
+
+/**
+ * This function computes the product Jv = J(t, y) v of the Jacobian with
+ * a vector for the iterative linear solvers (CVLsJacTimesVecFn), fy is
+ * f(t, y). Vectors are passed as plain pointers.
+ */
+public interface CVLsJacTimesVecFnRaw extends Callback {
+	int callback(Pointer v, Pointer Jv, double t, Pointer y, Pointer fy,
+			Pointer user_data, Pointer tmp);
+}
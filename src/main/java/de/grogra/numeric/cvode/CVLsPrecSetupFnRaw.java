@@ -0,0 +1,16 @@
+package de.grogra.numeric.cvode;
+
+import com.sun.jna.Callback;
+import com.sun.jna.Pointer;
+
+/**
+ * This function prepares the preconditioner P, an approximation of
+ * I - gamma J (CVLsPrecSetupFn). If jok is zero, Jacobian data must be
+ * recomputed, otherwise saved data may be reused. The int at jcurPtr must
+ * be set to 1 if Jacobian data was recomputed and 0 otherwise.
+ * Vectors are passed as plain pointers.
+ */
+public interface CVLsPrecSetupFnRaw extends Callback {
+	int callback(double t, Pointer y, Pointer fy, int jok, Pointer jcurPtr,
+			double gamma, Pointer user_data);
+}
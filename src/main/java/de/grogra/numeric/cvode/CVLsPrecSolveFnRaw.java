@@ -0,0 +1,15 @@
+package de.grogra.numeric.cvode;
+
+import com.sun.jna.Callback;
+import com.sun.jna.Pointer;
+
+/**
+ * This function solves the preconditioner system P z = r (CVLsPrecSolveFn),
+ * where lr is 1 for the left and 2 for the right preconditioner. The solve
+ * only needs to be accurate to delta in the weighted norm.
+ * Vectors are passed as plain pointers.
+ */
+public interface CVLsPrecSolveFnRaw extends Callback {
+	int callback(double t, Pointer y, Pointer fy, Pointer r, Pointer z,
+			double gamma, double delta, int lr, Pointer user_data);
+}
@@ -1,9 +1,17 @@
 package de.grogra.numeric.cvode;
 
+import java.lang.reflect.Method;
+import java.util.Collections;
+
+import com.sun.jna.FunctionMapper;
+import com.sun.jna.Library;
 import com.sun.jna.Native;
-//import com.sun.jna.NativeLong;
+import com.sun.jna.NativeLibrary;
+import com.sun.jna.NativeLong;
 import com.sun.jna.Pointer;
 import com.sun.jna.ptr.DoubleByReference;
+import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.NativeLongByReference;
 import com.sun.jna.ptr.PointerByReference;
 
 import de.grogra.numeric.CVodeAdapter;
@@ -36,6 +44,9 @@ import de.grogra.numeric.CVodeAdapter;
  * <pre>-Djna.protected</pre>
  * to the VM arguments.
  *
+ * Functions that take callbacks of the raw kind (like {@linkplain CVRhsFnRaw})
+ * have the suffix "Raw", which is dropped to find the native function.
+ *
  * requires 2 libraries ::> sundials_covde.dll + sundials_nvecserial.dll
  * 
  * based on CVODEOriginal.java by Reinhard Hemmerling
@@ -48,7 +59,16 @@ public class CVODE {
 	static {
 		if(N_Vec_Serial.LOADED){
 			//System.out.println("N_Vec_Serial loaded");
-			Native.register("sundials_cvode");
+			// methods with raw callbacks map to the native function without suffix
+			FunctionMapper raw = new FunctionMapper() {
+				@Override
+				public String getFunctionName(NativeLibrary library, Method method) {
+					String name = method.getName();
+					return name.endsWith("Raw") ? name.substring(0, name.length() - 3) : name;
+				}
+			};
+			Native.register(CVODE.class, NativeLibrary.getInstance("sundials_cvode",
+					Collections.singletonMap(Library.OPTION_FUNCTION_MAPPER, raw)));
 			
 			//System.out.println("cvode loaded");
 		} else {
@@ -82,6 +102,12 @@ public class CVODE {
 	public static final int CV_NORMAL				= 1;
 	public static final int CV_ONE_STEP				= 2;
 
+	// pretype of iterative linear solvers
+	public static final int PREC_NONE				= 0;
+	public static final int PREC_LEFT				= 1;
+	public static final int PREC_RIGHT				= 2;
+	public static final int PREC_BOTH				= 3;
+
 	// cvode return flags
 	public static final int CV_SUCCESS				= 0;
 	public static final int CV_TSTOP_RETURN			= 1;
@@ -127,7 +153,15 @@ public class CVODE {
 	public static native Pointer CVodeCreate(int lmm, int iter);
 
 	public static native int CVodeInit(Pointer cvode_mem, CVRhsFn f, double t0, N_Vector y0);
-	
+	public static native int CVodeInitRaw(Pointer cvode_mem, CVRhsFnRaw f, double t0, N_Vector y0);
+
+	/**
+	 * The function CVodeReInit reinitializes an existing CVODE solver for a
+	 * new problem of the same size. All previously set options, the right-hand
+	 * side function and the rootfinding problem are kept.
+	 */
+	public static native int CVodeReInit(Pointer cvode_mem, double t0, N_Vector y0);
+
 	public static native int CVodeSetNonlinearSolver(Pointer cvode_mem,Pointer NLS);
 	
 	public static native void CVodeFree(PointerByReference cvode_mem);
@@ -135,15 +169,104 @@ public class CVODE {
 	public static native int CVodeSStolerances(Pointer cvode_mem, double reltol, double abstol);
 	public static native int CVodeSVtolerances(Pointer cvode_mem, double reltol, N_Vector abstol);
 //	public static native int CVodeWFtolerances(Pointer cvode_mem, ...);
-	
+
+	// optional inputs, a value of zero for hin selects the estimated initial step size
+	public static native int CVodeSetInitStep(Pointer cvode_mem, double hin);
+
+	// optional inputs of the integrator, zero selects the default of each value
+	// except for the maximum order, which must be between 1 and 5 for BDF
+	public static native int CVodeSetMaxNumSteps(Pointer cvode_mem, NativeLong mxsteps);
+	public static native int CVodeSetMaxStep(Pointer cvode_mem, double hmax);
+	public static native int CVodeSetMinStep(Pointer cvode_mem, double hmin);
+	public static native int CVodeSetMaxOrd(Pointer cvode_mem, int maxord);
+	public static native int CVodeSetStabLimDet(Pointer cvode_mem, int stldet);
+	public static native int CVodeSetMaxErrTestFails(Pointer cvode_mem, int maxnef);
+	public static native int CVodeSetMaxNonlinIters(Pointer cvode_mem, int maxcor);
+	public static native int CVodeSetMaxConvFails(Pointer cvode_mem, int maxncf);
+	public static native int CVodeSetNonlinConvCoef(Pointer cvode_mem, double nlscoef);
+
+	// the solver does not step past tstop, which is cleared once it was reached
+	public static native int CVodeSetStopTime(Pointer cvode_mem, double tstop);
+
+	// optional outputs
+	public static native int CVodeGetLastStep(Pointer cvode_mem, DoubleByReference hlast);
+	public static native int CVodeGetCurrentOrder(Pointer cvode_mem, IntByReference qcur);
+	public static native int CVodeGetLastOrder(Pointer cvode_mem, IntByReference qlast);
+	public static native int CVodeGetCurrentTime(Pointer cvode_mem, DoubleByReference tcur);
+
+	/**
+	 * Compute the k-th derivative of the interpolating polynomial at t,
+	 * which must lie within the last step taken. k must be between 0 and
+	 * the order of the last step.
+	 */
+	public static native int CVodeGetDky(Pointer cvode_mem, double t, int k, N_Vector dky);
+
+	// counters, accumulated since the last CVodeInit or CVodeReInit
+	public static native int CVodeGetNumSteps(Pointer cvode_mem, NativeLongByReference nsteps);
+	public static native int CVodeGetNumRhsEvals(Pointer cvode_mem, NativeLongByReference nfevals);
+	public static native int CVodeGetNumLinSolvSetups(Pointer cvode_mem, NativeLongByReference nlinsetups);
+	public static native int CVodeGetNumErrTestFails(Pointer cvode_mem, NativeLongByReference netfails);
+	public static native int CVodeGetNumNonlinSolvIters(Pointer cvode_mem, NativeLongByReference nniters);
+	public static native int CVodeGetNumGEvals(Pointer cvode_mem, NativeLongByReference ngevals);
+
 	//public static native int CVDense(Pointer cvode_mem, int N);
 //	public static native int CVLapackDense(Pointer cvode_mem, int N);
 //	public static native int CVBand(Pointer cvode_mem, int N, int mupper, int mlower);
 //	public static native int CVLapackBand(Pointer cvode_mem, int N, int mupper, int mlower);
 //	public static native int CVDiag(Pointer cvode_mem);
 	// TODO ...
+
+	/**
+	 * Attach a linear solver and its matrix for the Newton iteration.
+	 * Since SUNDIALS 4.0 this replaces CVDense, CVBand etc. Both objects
+	 * are owned by the caller and must be freed after CVodeFree.
+	 * @param LS SUNLinearSolver, e.g. created by SUNLinSol_Dense
+	 * @param A SUNMatrix, or NULL for matrix-free linear solvers
+	 */
+	public static native int CVodeSetLinearSolver(Pointer cvode_mem, Pointer LS, Pointer A);
+
+	/**
+	 * Set a user-supplied Jacobian function for the direct linear solvers.
+	 * Passing null selects the internal difference quotient approximation.
+	 * Must be called after CVodeSetLinearSolver.
+	 */
+	public static native int CVodeSetJacFn(Pointer cvode_mem, CVLsJacFnRaw jac);
+
+	/**
+	 * Set the Jacobian-times-vector functions for the iterative linear solvers.
+	 * Passing null for jtimes selects the internal difference quotient
+	 * approximation, jtsetup may be null if no setup is needed.
+	 */
+	public static native int CVodeSetJacTimes(Pointer cvode_mem, CVLsJacTimesSetupFnRaw jtsetup,
+			CVLsJacTimesVecFnRaw jtimes);
+
+	/**
+	 * Set the preconditioner functions for the iterative linear solvers.
+	 * pset may be null if no setup is needed.
+	 */
+	public static native int CVodeSetPreconditioner(Pointer cvode_mem, CVLsPrecSetupFnRaw pset,
+			CVLsPrecSolveFnRaw psolve);
+
+	/**
+	 * Set the maximum number of steps between evaluations of the Jacobian
+	 * or preconditioner, zero selects the default (50). Must be called after
+	 * CVodeSetLinearSolver, which resets it.
+	 */
+	public static native int CVodeSetMaxStepsBetweenJac(Pointer cvode_mem, NativeLong msbj);
+
+	/**
+	 * Set the factor of the tolerance of the iterative linear solvers
+	 * relative to the nonlinear tolerance, zero selects the default (0.05).
+	 * Must be called after CVodeSetLinearSolver, which resets it.
+	 */
+	public static native int CVodeSetEpsLin(Pointer cvode_mem, double eplifac);
+
+	// generic operations on SUNMatrix and SUNLinearSolver objects
+	public static native void SUNMatDestroy(Pointer A);
+	public static native int SUNLinSolFree(Pointer LS);
 	
 	public static native int CVodeRootInit(Pointer cvode_mem, int nrtfn, CVRootFn g);
+	public static native int CVodeRootInitRaw(Pointer cvode_mem, int nrtfn, CVRootFnRaw g);
 	
 	public static native int CVode(Pointer cvode_mem, double tout,
 			N_Vector yout, DoubleByReference tret, int itask);	
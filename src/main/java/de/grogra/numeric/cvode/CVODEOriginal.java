@@ -112,6 +112,7 @@ public class CVODEOriginal {
 //	public static native int CVodeWFtolerances(Pointer cvode_mem, ...);
 	
 	public static native int CVDense(Pointer cvode_mem, int N);
+	public static native int CVDlsSetDenseJacFn(Pointer cvode_mem, CVDlsDenseJacFn jac);
 //	public static native int CVLapackDense(Pointer cvode_mem, int N);
 //	public static native int CVBand(Pointer cvode_mem, int N, int mupper, int mlower);
 //	public static native int CVLapackBand(Pointer cvode_mem, int N, int mupper, int mlower);
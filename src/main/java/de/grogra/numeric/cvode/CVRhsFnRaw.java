@@ -0,0 +1,16 @@
+package de.grogra.numeric.cvode;
+
+import com.sun.jna.Callback;
+import com.sun.jna.Pointer;
+
+/**
+ * This function computes the ODE right-hand side for a given value of the
+ * independent variable t and state vector y.
+ * 
+ * In contrast to {@linkplain CVRhsFn} the vectors are passed as plain
+ * pointers, so JNA does not create and read an N_Vector structure for
+ * every call. Use {@linkplain N_VectorCache} to access their data.
+ */
+public interface CVRhsFnRaw extends Callback {
+	int callback(double t, Pointer y, Pointer ydot, Pointer user_data);
+}
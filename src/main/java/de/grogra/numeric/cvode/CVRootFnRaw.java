@@ -0,0 +1,15 @@
+package de.grogra.numeric.cvode;
+
+import com.sun.jna.Callback;
+import com.sun.jna.Pointer;
+
+/**
+ * This function implements a vector-valued function g(t, y) such that the
+ * roots of the nrtfn components gi(t, y) are sought.
+ * 
+ * In contrast to {@linkplain CVRootFn} the state vector is passed as plain
+ * pointer. Use {@linkplain N_VectorCache} to access its data.
+ */
+public interface CVRootFnRaw extends Callback {
+	int callback(double t, Pointer y, Pointer gout, Pointer user_data);
+}
@@ -0,0 +1,31 @@
+package de.grogra.numeric.cvode;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import com.sun.jna.Structure;
+
+/**
+ * Matrix type of the direct linear solvers of SUNDIALS 2.x, as passed to
+ * {@linkplain CVDlsDenseJacFn}. Elements are stored column-major in data,
+ * each column occupies ldim elements.
+ */
+public class DlsMat extends Structure {
+	public int type;
+	public NativeLong M;
+	public NativeLong N;
+	public NativeLong ldim;
+	public NativeLong mu;
+	public NativeLong ml;
+	public NativeLong s_mu;
+	public Pointer data;
+	public NativeLong ldata;
+	public Pointer cols;
+
+	@Override
+	protected List getFieldOrder() {
+		return Arrays.asList(new String[] { "type", "M", "N", "ldim", "mu", "ml", "s_mu", "data", "ldata", "cols" });
+	}
+}
@@ -23,7 +23,9 @@ public interface CLibrary extends Library {
 		public Pointer vals; // double*
 	}
 	
-	public static native N_Vector N_VNew_Serial(NativeLong vec_length);
+	N_Vector N_VNew_Serial(NativeLong vec_length);
+	
+	double example10_sendStruct(N_VNew_Serial.ByReference val);
 	
 	public static void main(String[] args) {
 		final CLibrary clib = (CLibrary)Native.loadLibrary("sundials_nvecserial", CLibrary.class);
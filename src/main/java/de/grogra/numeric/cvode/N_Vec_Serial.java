@@ -2,6 +2,7 @@ package de.grogra.numeric.cvode;
 
 import com.sun.jna.Native;
 import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
 
 public class N_Vec_Serial {
 	public static final boolean LOADED;
@@ -15,4 +16,8 @@ public class N_Vec_Serial {
 //	public static native N_Vector N_VMake_Serial(NativeLong vec_length, double[] v_data);
 	public static native void N_VDestroy_Serial(N_Vector v);
 	public static native void N_VPrint_Serial(N_Vector v);
+	
+	// sunindextype is 64 bit wide in the provided libraries
+	public static native long N_VGetLength_Serial(Pointer v);
+	public static native Pointer N_VGetArrayPointer_Serial(Pointer v);
 }
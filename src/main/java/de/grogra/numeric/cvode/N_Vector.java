@@ -45,15 +45,33 @@ public class N_Vector extends Structure {
 		}
 	}
 
+	// length and data pointer of the serial content, read on first access
+	private int length = -1;
+	private Pointer data;
+
+	/**
+	 * Read length and data pointer of the serial vector content once
+	 * and return the data pointer.
+	 * @return
+	 */
+	private Pointer data()
+	{
+		if (data == null) {
+			// ask the library, since the layout of the content depends on sunindextype
+			length = (int) N_Vec_Serial.N_VGetLength_Serial(getPointer());
+			data = N_Vec_Serial.N_VGetArrayPointer_Serial(getPointer());
+		}
+		return data;
+	}
+
 	/**
 	 * Return the number of elements in this vector.
 	 * @return
 	 */
 	public int getLength()
 	{
-		_N_VectorContent_Serial content = new _N_VectorContent_Serial(this.content);
-		content.read();
-		return content.length.intValue();
+		data();
+		return length;
 	}
 
 	/**
@@ -63,9 +81,7 @@ public class N_Vector extends Structure {
 	 */
 	public double get(int index)
 	{
-		_N_VectorContent_Serial content = new _N_VectorContent_Serial(this.content);
-		content.read();
-		return content.data.getDouble(Native.getNativeSize(Double.TYPE)*index);
+		return data().getDouble(Native.getNativeSize(Double.TYPE)*index);
 	}
 	
 	/**
@@ -75,9 +91,7 @@ public class N_Vector extends Structure {
 	 */
 	public void set(int index, double value)
 	{
-		_N_VectorContent_Serial content = new _N_VectorContent_Serial(this.content);
-		content.read();
-		content.data.setDouble(Native.getNativeSize(Double.TYPE)*index, value);
+		data().setDouble(Native.getNativeSize(Double.TYPE)*index, value);
 	}
 	
 	/**
@@ -86,11 +100,9 @@ public class N_Vector extends Structure {
 	 */
 	public void get(double[] data)
 	{
-		_N_VectorContent_Serial content = new _N_VectorContent_Serial(this.content);
-		content.read();
-		final int N = (int)content.length.longValue();
-		assert N == data.length;
-		content.data.read(0, data, 0, N);
+		final Pointer p = data();
+		assert length == data.length;
+		p.read(0, data, 0, length);
 	}
 	
 	/**
@@ -99,10 +111,8 @@ public class N_Vector extends Structure {
 	 */
 	public void set(double[] data)
 	{
-		_N_VectorContent_Serial content = new _N_VectorContent_Serial(this.content);
-		content.read();
-		final int N = (int)content.length.longValue();
-		assert data.length == N;
-		content.data.write(0, data, 0, 1);
+		final Pointer p = data();
+		assert data.length == length;
+		p.write(0, data, 0, length);
 	}
 }
@@ -0,0 +1,132 @@
+package de.grogra.numeric.cvode;
+
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+
+import com.sun.jna.Pointer;
+
+/**
+ * Provides access to the data of serial N_Vectors that are passed as plain
+ * pointers, for instance to {@linkplain CVRhsFnRaw} and {@linkplain CVRootFnRaw}.
+ * 
+ * The vector content is read only once per vector, afterwards length and
+ * data pointer are taken from the cache. CVODE passes only a small number of
+ * different vectors to the callbacks, so after the first few calls no further
+ * allocation or structure reflection happens.
+ * 
+ * An instance is not thread-safe and should be used for the vectors of a
+ * single solver only.
+ */
+public class N_VectorCache {
+
+	// native addresses of the cached vectors and their content
+	private long[] keys = new long[8];
+	private Pointer[] data = new Pointer[8];
+	private int[] lengths = new int[8];
+	private DoubleBuffer[] buffers = new DoubleBuffer[8];
+	private int size;
+	
+	// index of the most recent lookup
+	private int last;
+
+	private int indexOf(Pointer v)
+	{
+		final long key = Pointer.nativeValue(v);
+		if (size > 0 && keys[last] == key) {
+			return last;
+		}
+		for (int i = 0; i < size; i++) {
+			if (keys[i] == key) {
+				return last = i;
+			}
+		}
+		// not yet cached, read vector content once
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, 2 * size);
+			data = Arrays.copyOf(data, 2 * size);
+			lengths = Arrays.copyOf(lengths, 2 * size);
+			buffers = Arrays.copyOf(buffers, 2 * size);
+		}
+		keys[size] = key;
+		data[size] = N_Vec_Serial.N_VGetArrayPointer_Serial(v);
+		lengths[size] = (int) N_Vec_Serial.N_VGetLength_Serial(v);
+		return last = size++;
+	}
+
+	/**
+	 * Return the number of elements of vector v.
+	 * @param v
+	 * @return
+	 */
+	public int getLength(Pointer v)
+	{
+		return lengths[indexOf(v)];
+	}
+
+	/**
+	 * Return the pointer to the elements of vector v.
+	 * @param v
+	 * @return
+	 */
+	public Pointer getData(Pointer v)
+	{
+		return data[indexOf(v)];
+	}
+
+	/**
+	 * Return a buffer that is mapped directly onto the elements of vector v.
+	 * The buffer is created on first request and reused afterwards, its
+	 * position is reset on every call.
+	 * @param v
+	 * @return
+	 */
+	public DoubleBuffer getBuffer(Pointer v)
+	{
+		final int i = indexOf(v);
+		DoubleBuffer b = buffers[i];
+		if (b == null) {
+			b = data[i].getByteBuffer(0, 8L * lengths[i])
+					.order(ByteOrder.nativeOrder()).asDoubleBuffer();
+			buffers[i] = b;
+		}
+		b.clear();
+		return b;
+	}
+
+	/**
+	 * Copy complete vector v into the memory provided by dst.
+	 * @param v
+	 * @param dst
+	 */
+	public void get(Pointer v, double[] dst)
+	{
+		final int i = indexOf(v);
+		assert lengths[i] == dst.length;
+		data[i].read(0, dst, 0, lengths[i]);
+	}
+
+	/**
+	 * Set the complete vector v to the memory provided by src.
+	 * @param v
+	 * @param src
+	 */
+	public void set(Pointer v, double[] src)
+	{
+		final int i = indexOf(v);
+		assert lengths[i] == src.length;
+		data[i].write(0, src, 0, lengths[i]);
+	}
+
+	/**
+	 * Forget all cached vectors. Must be called when vectors
+	 * of the solver are freed.
+	 */
+	public void clear()
+	{
+		Arrays.fill(data, 0, size, null);
+		Arrays.fill(buffers, 0, size, null);
+		size = 0;
+		last = 0;
+	}
+}
@@ -0,0 +1,20 @@
+package de.grogra.numeric.cvode;
+
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+
+/**
+ * Native access to the SUNDIALS band direct linear solver, which uses
+ * the banded LU factorization of SUNDIALS itself on a band SUNMatrix.
+ * 
+ * requires library sundials_sunlinsolband
+ */
+public class Sunlinsolband {
+	public static final boolean LOADED;
+	static {
+		Native.register("sundials_sunlinsolband");
+		LOADED = true;
+	}
+
+	public static native Pointer SUNLinSol_Band(N_Vector y, Pointer A);
+}
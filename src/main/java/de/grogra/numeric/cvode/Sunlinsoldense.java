@@ -0,0 +1,20 @@
+package de.grogra.numeric.cvode;
+
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+
+/**
+ * Native access to the SUNDIALS dense direct linear solver, which uses
+ * the LU factorization of SUNDIALS itself on a dense SUNMatrix.
+ * 
+ * requires library sundials_sunlinsoldense
+ */
+public class Sunlinsoldense {
+	public static final boolean LOADED;
+	static {
+		Native.register("sundials_sunlinsoldense");
+		LOADED = true;
+	}
+
+	public static native Pointer SUNLinSol_Dense(N_Vector y, Pointer A);
+}
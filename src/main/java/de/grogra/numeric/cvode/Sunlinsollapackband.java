@@ -0,0 +1,22 @@
+package de.grogra.numeric.cvode;
+
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+
+/**
+ * Native access to the SUNDIALS band direct linear solver that factorizes
+ * a band SUNMatrix with LAPACK (dgbtrf/dgbtrs).
+ * 
+ * requires library sundials_sunlinsollapackband, which is only built when
+ * SUNDIALS is configured with LAPACK_ENABLE=ON and is not part of the
+ * libraries shipped with this project
+ */
+public class Sunlinsollapackband {
+	public static final boolean LOADED;
+	static {
+		Native.register("sundials_sunlinsollapackband");
+		LOADED = true;
+	}
+
+	public static native Pointer SUNLinSol_LapackBand(N_Vector y, Pointer A);
+}
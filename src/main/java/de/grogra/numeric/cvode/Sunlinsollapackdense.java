@@ -0,0 +1,22 @@
+package de.grogra.numeric.cvode;
+
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+
+/**
+ * Native access to the SUNDIALS dense direct linear solver that factorizes
+ * a dense SUNMatrix with LAPACK (dgetrf/dgetrs).
+ * 
+ * requires library sundials_sunlinsollapackdense, which is only built when
+ * SUNDIALS is configured with LAPACK_ENABLE=ON and is not part of the
+ * libraries shipped with this project
+ */
+public class Sunlinsollapackdense {
+	public static final boolean LOADED;
+	static {
+		Native.register("sundials_sunlinsollapackdense");
+		LOADED = true;
+	}
+
+	public static native Pointer SUNLinSol_LapackDense(N_Vector y, Pointer A);
+}
@@ -0,0 +1,25 @@
+package de.grogra.numeric.cvode;
+
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+
+/**
+ * Native access to the SUNDIALS SPBCGS iterative linear solver
+ * (scaled, preconditioned Bi-CGStab). It is matrix-free and needs only O(N) memory.
+ * 
+ * requires library sundials_sunlinsolspbcgs
+ */
+public class Sunlinsolspbcgs {
+	public static final boolean LOADED;
+	static {
+		Native.register("sundials_sunlinsolspbcgs");
+		LOADED = true;
+	}
+
+	/**
+	 * @param y template vector
+	 * @param pretype one of PREC_NONE, PREC_LEFT, PREC_RIGHT, PREC_BOTH (see {@linkplain CVODE})
+	 * @param maxl maximum dimension of the Krylov subspace, zero selects the default of 5
+	 */
+	public static native Pointer SUNLinSol_SPBCGS(N_Vector y, int pretype, int maxl);
+}
@@ -0,0 +1,25 @@
+package de.grogra.numeric.cvode;
+
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+
+/**
+ * Native access to the SUNDIALS SPGMR iterative linear solver
+ * (scaled, preconditioned GMRES). It is matrix-free and needs only O(N) memory.
+ * 
+ * requires library sundials_sunlinsolspgmr
+ */
+public class Sunlinsolspgmr {
+	public static final boolean LOADED;
+	static {
+		Native.register("sundials_sunlinsolspgmr");
+		LOADED = true;
+	}
+
+	/**
+	 * @param y template vector
+	 * @param pretype one of PREC_NONE, PREC_LEFT, PREC_RIGHT, PREC_BOTH (see {@linkplain CVODE})
+	 * @param maxl maximum dimension of the Krylov subspace, zero selects the default of 5
+	 */
+	public static native Pointer SUNLinSol_SPGMR(N_Vector y, int pretype, int maxl);
+}
@@ -0,0 +1,35 @@
+package de.grogra.numeric.cvode;
+
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+
+/**
+ * Native access to the SUNDIALS band SUNMatrix module.
+ * Each column j is stored contiguously in ldim = smu+ml+1 elements, where
+ * smu is the stored upper bandwidth (including the extra space needed by
+ * the LU factorization). Element (i,j) with j-mu &lt;= i &lt;= j+ml is found at
+ * index j*ldim + i-j+smu of the array returned by SUNBandMatrix_Data.
+ * 
+ * requires library sundials_sunmatrixband
+ */
+public class Sunmatrixband {
+	public static final boolean LOADED;
+	static {
+		Native.register("sundials_sunmatrixband");
+		LOADED = true;
+	}
+
+	/**
+	 * Create a band matrix of size N x N with upper bandwidth mu and lower
+	 * bandwidth ml, with storage suitable for LU factorization.
+	 */
+	public static native Pointer SUNBandMatrix(long N, long mu, long ml);
+
+	public static native long SUNBandMatrix_Rows(Pointer A);
+	public static native long SUNBandMatrix_Columns(Pointer A);
+	public static native long SUNBandMatrix_LowerBandwidth(Pointer A);
+	public static native long SUNBandMatrix_UpperBandwidth(Pointer A);
+	public static native long SUNBandMatrix_StoredUpperBandwidth(Pointer A);
+	public static native long SUNBandMatrix_LDim(Pointer A);
+	public static native Pointer SUNBandMatrix_Data(Pointer A);
+}
@@ -0,0 +1,26 @@
+package de.grogra.numeric.cvode;
+
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+
+/**
+ * Native access to the SUNDIALS dense SUNMatrix module.
+ * Dense matrices are stored column-major, element (i,j) is found at
+ * index j*M+i of the array returned by SUNDenseMatrix_Data.
+ * 
+ * requires library sundials_sunmatrixdense
+ */
+public class Sunmatrixdense {
+	public static final boolean LOADED;
+	static {
+		Native.register("sundials_sunmatrixdense");
+		LOADED = true;
+	}
+
+	public static native Pointer SUNDenseMatrix(long M, long N);
+
+	public static native long SUNDenseMatrix_Rows(Pointer A);
+	public static native long SUNDenseMatrix_Columns(Pointer A);
+	public static native long SUNDenseMatrix_LData(Pointer A);
+	public static native Pointer SUNDenseMatrix_Data(Pointer A);
+}
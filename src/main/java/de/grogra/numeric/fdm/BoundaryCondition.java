@@ -0,0 +1,56 @@
+package de.grogra.numeric.fdm;
+
+/**
+ * Condition on one face of a {@linkplain Grid}, which determines the values
+ * of stencil neighbours outside the grid (ghost points). The boundary face
+ * passes through the outermost grid points.
+ * <ul>
+ * <li>DIRICHLET: ghost points have the given value.</li>
+ * <li>NEUMANN: the outward normal derivative is the given flux, ghost points
+ * mirror the points inside: u(-d) = u(d) + 2 d h flux. A flux of zero
+ * describes an insulated (no-flux) boundary.</li>
+ * <li>PERIODIC: the grid wraps around, must be used on both sides of an axis.</li>
+ * </ul>
+ */
+public final class BoundaryCondition {
+
+	public enum Type {
+		DIRICHLET, NEUMANN, PERIODIC
+	}
+
+	public static final BoundaryCondition NO_FLUX = new BoundaryCondition(Type.NEUMANN, 0);
+	public static final BoundaryCondition PERIODIC = new BoundaryCondition(Type.PERIODIC, 0);
+
+	final Type type;
+	final double value;
+
+	private BoundaryCondition(Type type, double value) {
+		this.type = type;
+		this.value = value;
+	}
+
+	public static BoundaryCondition dirichlet(double value) {
+		return new BoundaryCondition(Type.DIRICHLET, value);
+	}
+
+	public static BoundaryCondition neumann(double flux) {
+		return flux == 0 ? NO_FLUX : new BoundaryCondition(Type.NEUMANN, flux);
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * Return the boundary value for DIRICHLET, the flux for NEUMANN.
+	 * @return
+	 */
+	public double getValue() {
+		return value;
+	}
+
+	@Override
+	public String toString() {
+		return type == Type.PERIODIC ? type.toString() : type + "(" + value + ")";
+	}
+}
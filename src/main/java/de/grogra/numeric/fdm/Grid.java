@@ -0,0 +1,102 @@
+package de.grogra.numeric.fdm;
+
+/**
+ * A structured grid of nx * ny * nz points with uniform spacing along each
+ * axis and a number of components (species) per point. State vectors on the
+ * grid are contiguous arrays, with the components of a point stored next to
+ * each other, then x, then y, then z varying slowest:
+ * <pre>
+ *   index(i, j, k, c) = ((k * ny + j) * nx + i) * components + c
+ * </pre>
+ * This keeps couplings between components of a point and between
+ * neighbours along x close to the diagonal of the Jacobian.
+ */
+public class Grid {
+
+	final int dimensions;
+	final int[] n;
+	final double[] h;
+	final int components;
+	final int[] stride;
+
+	/**
+	 * Create a grid. Unused axes must have one point.
+	 * @param dimensions 1, 2 or 3
+	 * @param nx points along x
+	 * @param ny points along y
+	 * @param nz points along z
+	 * @param hx spacing along x
+	 * @param hy spacing along y
+	 * @param hz spacing along z
+	 * @param components number of components per point
+	 */
+	public Grid(int dimensions, int nx, int ny, int nz, double hx, double hy, double hz, int components) {
+		if (dimensions < 1 || dimensions > 3)
+			throw new IllegalArgumentException("grid must have 1, 2 or 3 dimensions");
+		if (nx < 1 || ny < 1 || nz < 1 || components < 1)
+			throw new IllegalArgumentException("grid must not be empty");
+		if ((dimensions < 2 && ny != 1) || (dimensions < 3 && nz != 1))
+			throw new IllegalArgumentException("unused axes must have a single point");
+		if ((long) nx * ny * nz * components > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("grid too large");
+		this.dimensions = dimensions;
+		this.n = new int[] { nx, ny, nz };
+		this.h = new double[] { hx, hy, hz };
+		this.components = components;
+		this.stride = new int[] { components, nx * components, nx * ny * components };
+	}
+
+	public static Grid line(int nx, double hx, int components) {
+		return new Grid(1, nx, 1, 1, hx, 1, 1, components);
+	}
+
+	public static Grid plane(int nx, int ny, double hx, double hy, int components) {
+		return new Grid(2, nx, ny, 1, hx, hy, 1, components);
+	}
+
+	public static Grid box(int nx, int ny, int nz, double hx, double hy, double hz, int components) {
+		return new Grid(3, nx, ny, nz, hx, hy, hz, components);
+	}
+
+	public int getDimensions() {
+		return dimensions;
+	}
+
+	/**
+	 * Return number of points along an axis (0 = x, 1 = y, 2 = z).
+	 * @param axis
+	 * @return
+	 */
+	public int getPoints(int axis) {
+		return n[axis];
+	}
+
+	public double getSpacing(int axis) {
+		return h[axis];
+	}
+
+	public int getComponents() {
+		return components;
+	}
+
+	/**
+	 * Return distance in the state vector between neighbours along an axis.
+	 * @param axis
+	 * @return
+	 */
+	public int getStride(int axis) {
+		return stride[axis];
+	}
+
+	/**
+	 * Return length of state vectors on this grid.
+	 * @return
+	 */
+	public int size() {
+		return n[0] * n[1] * n[2] * components;
+	}
+
+	public int index(int i, int j, int k, int c) {
+		return ((k * n[1] + j) * n[0] + i) * components + c;
+	}
+}
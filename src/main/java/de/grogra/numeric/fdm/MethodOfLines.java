@@ -0,0 +1,427 @@
+package de.grogra.numeric.fdm;
+
+import java.util.Arrays;
+
+import de.grogra.numeric.JacobianStructure;
+import de.grogra.numeric.PartitionedODE;
+import de.grogra.numeric.SparsityPattern;
+
+/**
+ * Semi-discretisation of a partial differential equation on a structured
+ * {@linkplain Grid} by the method of lines. The rate of component c at a grid
+ * point is the local reaction (if any) plus a sum of stencil terms, each of
+ * which applies a {@linkplain Stencil} to one source component:
+ * <pre>
+ *   du_c/dt = R_c(t, u(p)) + sum over terms with target c of coefficient * (S u_source)(p)
+ * </pre>
+ * Stencil neighbours outside the grid are given by the
+ * {@linkplain BoundaryCondition} of the face they lie beyond, the default
+ * is {@linkplain BoundaryCondition#NO_FLUX} everywhere.
+ *
+ * The rate is computed by sweeping along x-lines of the grid (rows). Points
+ * whose stencil stays inside the grid are handled by a tight loop over flat
+ * offsets into the state array, only points near the boundary resolve their
+ * neighbours individually. Rows are processed in blocks, so that the rows of
+ * neighbouring planes used by all terms are still cached when the next term
+ * is applied.
+ *
+ * The structure of the Jacobian is derived from stencils and boundary
+ * conditions and reported through {@linkplain JacobianStructure}.
+ * Evaluation does not modify the instance, so different rows may be
+ * computed concurrently with {@linkplain #getRate(double[], double, double[], int, int)}.
+ * Rows are the partitions of {@linkplain PartitionedODE}, so wrapping an
+ * instance in a {@linkplain de.grogra.numeric.ParallelODE} evaluates it on
+ * several cores, reading halo rows directly from the shared state.
+ */
+public class MethodOfLines implements PartitionedODE, JacobianStructure {
+
+	// number of rows processed together by all terms
+	static final int BLOCK_ROWS = 16;
+
+	// a stencil applied to one component and added to another
+	static final class Term {
+		final int target;
+		final int source;
+		final int[] dx, dy, dz;
+		final double[] weight;
+		// offsets into the state relative to the index of the target component
+		final int[] offset;
+		// extent of the stencil along each axis
+		final int[] lo = new int[3];
+		final int[] hi = new int[3];
+
+		Term(Grid grid, int target, int source, double coefficient, Stencil stencil) {
+			this.target = target;
+			this.source = source;
+			final int m = stencil.size();
+			dx = new int[m];
+			dy = new int[m];
+			dz = new int[m];
+			weight = new double[m];
+			offset = new int[m];
+			for (int q = 0; q < m; q++) {
+				dx[q] = stencil.getOffset(q, 0);
+				dy[q] = stencil.getOffset(q, 1);
+				dz[q] = stencil.getOffset(q, 2);
+				weight[q] = coefficient * stencil.getWeight(q);
+				offset[q] = dx[q] * grid.stride[0] + dy[q] * grid.stride[1] + dz[q] * grid.stride[2]
+						+ source - target;
+			}
+			for (int axis = 0; axis < 3; axis++) {
+				lo[axis] = stencil.getLowerExtent(axis);
+				hi[axis] = stencil.getUpperExtent(axis);
+				if (axis >= grid.dimensions && (lo[axis] != 0 || hi[axis] != 0))
+					throw new IllegalArgumentException("stencil uses axis " + axis + " of a "
+							+ grid.dimensions + "D grid");
+			}
+		}
+	}
+
+	final Grid grid;
+	final BoundaryCondition[][][] boundary;
+	PointReaction reaction;
+	Term[] terms = new Term[0];
+
+	// structure of the Jacobian, computed on first use
+	SparsityPattern pattern;
+
+	public MethodOfLines(Grid grid) {
+		this.grid = grid;
+		this.boundary = new BoundaryCondition[grid.components][3][2];
+		setBoundary(BoundaryCondition.NO_FLUX);
+	}
+
+	public Grid getGrid() {
+		return grid;
+	}
+
+	/**
+	 * Return number of rows (x-lines) of the grid, which is ny * nz.
+	 * @return
+	 */
+	public int getRowCount() {
+		return grid.n[1] * grid.n[2];
+	}
+
+	/**
+	 * Add a stencil applied to a component to the rate of the same component.
+	 * @param component
+	 * @param stencil
+	 * @return this
+	 */
+	public MethodOfLines add(int component, Stencil stencil) {
+		return add(component, component, 1, stencil);
+	}
+
+	/**
+	 * Add coefficient * (stencil applied to source) to the rate of target.
+	 * @param target component whose rate is changed
+	 * @param source component the stencil is applied to
+	 * @param coefficient
+	 * @param stencil
+	 * @return this
+	 */
+	public MethodOfLines add(int target, int source, double coefficient, Stencil stencil) {
+		if (target < 0 || target >= grid.components || source < 0 || source >= grid.components)
+			throw new IllegalArgumentException("no such component");
+		terms = Arrays.copyOf(terms, terms.length + 1);
+		terms[terms.length - 1] = new Term(grid, target, source, coefficient, stencil);
+		pattern = null;
+		return this;
+	}
+
+	/**
+	 * Add diffusion D * laplacian(u) of a component.
+	 * @param component
+	 * @param D diffusion coefficient
+	 * @return this
+	 */
+	public MethodOfLines addDiffusion(int component, double D) {
+		return add(component, component, D, Stencil.laplacian(grid));
+	}
+
+	/**
+	 * Add upwind advection of a component with constant velocity.
+	 * @param component
+	 * @param vx
+	 * @param vy
+	 * @param vz
+	 * @return this
+	 */
+	public MethodOfLines addAdvection(int component, double vx, double vy, double vz) {
+		return add(component, Stencil.advection(grid, vx, vy, vz));
+	}
+
+	public PointReaction getReaction() {
+		return reaction;
+	}
+
+	/**
+	 * Set the local reaction, or null if there is none. The reaction is
+	 * assumed to couple all components of a point.
+	 * @param reaction
+	 */
+	public void setReaction(PointReaction reaction) {
+		if ((reaction == null) != (this.reaction == null)) pattern = null;
+		this.reaction = reaction;
+	}
+
+	/**
+	 * Set the condition on all faces for all components.
+	 * @param bc
+	 */
+	public void setBoundary(BoundaryCondition bc) {
+		for (int axis = 0; axis < grid.dimensions; axis++) {
+			setBoundary(axis, 0, bc);
+			setBoundary(axis, 1, bc);
+		}
+	}
+
+	/**
+	 * Set the condition on one face for all components.
+	 * @param axis 0 = x, 1 = y, 2 = z
+	 * @param side 0 for the lower, 1 for the upper face
+	 * @param bc
+	 */
+	public void setBoundary(int axis, int side, BoundaryCondition bc) {
+		for (int c = 0; c < grid.components; c++) {
+			setBoundary(c, axis, side, bc);
+		}
+	}
+
+	/**
+	 * Set the condition on one face for one component. A periodic condition
+	 * is set on both faces of the axis.
+	 * @param component
+	 * @param axis 0 = x, 1 = y, 2 = z
+	 * @param side 0 for the lower, 1 for the upper face
+	 * @param bc
+	 */
+	public void setBoundary(int component, int axis, int side, BoundaryCondition bc) {
+		if (axis < 0 || axis >= grid.dimensions)
+			throw new IllegalArgumentException("no such axis");
+		if (bc.type == BoundaryCondition.Type.PERIODIC) {
+			boundary[component][axis][0] = bc;
+			boundary[component][axis][1] = bc;
+		} else {
+			boundary[component][axis][side] = bc;
+		}
+		pattern = null;
+	}
+
+	public BoundaryCondition getBoundary(int component, int axis, int side) {
+		return boundary[component][axis][side];
+	}
+
+	@Override
+	public void getRate(double[] out, double t, double[] state) {
+		getRate(out, t, state, 0, getRowCount());
+	}
+
+	@Override
+	public int getPartitionCount() {
+		return getRowCount();
+	}
+
+	@Override
+	public int getPartitionOffset(int partition) {
+		return partition * grid.stride[1];
+	}
+
+	/**
+	 * Calculate the rate of all points in rows [rowFrom, rowTo) only, where
+	 * row j + k * ny is the x-line at y-index j and z-index k. Other elements
+	 * of out are not modified.
+	 * @param out provides memory for storing the rate
+	 * @param t current time
+	 * @param state current state
+	 * @param rowFrom first row
+	 * @param rowTo end of rows (exclusive)
+	 */
+	@Override
+	public void getRate(double[] out, double t, double[] state, int rowFrom, int rowTo) {
+		final int nc = grid.components;
+		final int rowSize = grid.stride[1];
+
+		// local part
+		if (reaction != null) {
+			for (int p = rowFrom * rowSize, end = rowTo * rowSize; p < end; p += nc) {
+				reaction.getRate(out, t, state, p);
+			}
+		} else {
+			Arrays.fill(out, rowFrom * rowSize, rowTo * rowSize, 0);
+		}
+
+		// transport, a block of rows at a time
+		final int ny = grid.n[1];
+		final int[] ijk = new int[3];
+		final double[] ghost = new double[1];
+		for (int block = rowFrom; block < rowTo; block += BLOCK_ROWS) {
+			final int end = Math.min(block + BLOCK_ROWS, rowTo);
+			for (Term term : terms) {
+				for (int row = block; row < end; row++) {
+					applyRow(term, out, state, row % ny, row / ny, ijk, ghost);
+				}
+			}
+		}
+	}
+
+	// add term to the rate of all points of row (j,k)
+	private void applyRow(Term term, double[] out, double[] y, int j, int k, int[] ijk, double[] ghost) {
+		final int nx = grid.n[0];
+		final int nc = grid.components;
+		final int base = grid.index(0, j, k, term.target);
+
+		// range of points whose stencil lies completely inside the grid
+		int iFrom = nx, iTo = nx;
+		if (j >= term.lo[1] && j < grid.n[1] - term.hi[1] && k >= term.lo[2] && k < grid.n[2] - term.hi[2]) {
+			iFrom = Math.min(term.lo[0], nx);
+			iTo = Math.max(nx - term.hi[0], iFrom);
+		}
+
+		final int[] offset = term.offset;
+		final double[] weight = term.weight;
+		final int m = offset.length;
+		for (int i = iFrom, p = base + iFrom * nc; i < iTo; i++, p += nc) {
+			double sum = 0;
+			for (int q = 0; q < m; q++) {
+				sum += weight[q] * y[p + offset[q]];
+			}
+			out[p] += sum;
+		}
+
+		// points near the boundary
+		for (int i = 0; i < iFrom; i++) {
+			out[base + i * nc] += applyPoint(term, y, i, j, k, ijk, ghost);
+		}
+		for (int i = iTo; i < nx; i++) {
+			out[base + i * nc] += applyPoint(term, y, i, j, k, ijk, ghost);
+		}
+	}
+
+	// evaluate term at one point, resolving neighbours outside the grid
+	private double applyPoint(Term term, double[] y, int i, int j, int k, int[] ijk, double[] ghost) {
+		double sum = 0;
+		for (int q = 0; q < term.weight.length; q++) {
+			ijk[0] = i + term.dx[q];
+			ijk[1] = j + term.dy[q];
+			ijk[2] = k + term.dz[q];
+			int index = resolve(term.source, ijk, ghost);
+			sum += term.weight[q] * (index >= 0 ? y[index] + ghost[0] : ghost[0]);
+		}
+		return sum;
+	}
+
+	/**
+	 * Map a grid position of a component to its index in the state vector,
+	 * applying boundary conditions if it lies outside the grid. The value at
+	 * the position is y[index] + ghost[0]. If -1 is returned, the value is
+	 * given by a Dirichlet condition and is ghost[0].
+	 * @param c component
+	 * @param ijk position, modified
+	 * @param ghost receives the constant part of the value
+	 * @return index, or -1
+	 */
+	int resolve(int c, int[] ijk, double[] ghost) {
+		ghost[0] = 0;
+		for (int axis = 0; axis < grid.dimensions; axis++) {
+			final int n = grid.n[axis];
+			int x = ijk[axis];
+			if (x >= 0 && x < n) continue;
+			final int side = x < 0 ? 0 : 1;
+			final BoundaryCondition bc = boundary[c][axis][side];
+			switch (bc.type) {
+			case DIRICHLET:
+				ghost[0] = bc.value;
+				return -1;
+			case PERIODIC:
+				x %= n;
+				if (x < 0) x += n;
+				break;
+			case NEUMANN:
+				// mirror at the boundary point
+				int d = side == 0 ? -x : x - (n - 1);
+				x = side == 0 ? d : n - 1 - d;
+				if (x < 0 || x >= n)
+					throw new IllegalStateException("stencil reaches beyond mirrored grid along axis " + axis);
+				ghost[0] += 2 * d * grid.h[axis] * bc.value;
+				break;
+			}
+			ijk[axis] = x;
+		}
+		return grid.index(ijk[0], ijk[1], ijk[2], c);
+	}
+
+	@Override
+	public SparsityPattern getSparsityPattern() {
+		if (pattern == null) {
+			pattern = computePattern();
+		}
+		return pattern;
+	}
+
+	public int getUpperBandwidth() {
+		return getSparsityPattern().getUpperBandwidth();
+	}
+
+	public int getLowerBandwidth() {
+		return getSparsityPattern().getLowerBandwidth();
+	}
+
+	// collect all (row, column) pairs of nonzero elements and compress them
+	private SparsityPattern computePattern() {
+		final int N = grid.size();
+		final int nc = grid.components;
+		long[] pairs = new long[N];
+		int count = 0;
+		final int[] ijk = new int[3];
+		final double[] ghost = new double[1];
+		for (int k = 0; k < grid.n[2]; k++) {
+			for (int j = 0; j < grid.n[1]; j++) {
+				for (int i = 0; i < grid.n[0]; i++) {
+					final int point = grid.index(i, j, k, 0);
+					for (int c = 0; c < nc; c++) {
+						// diagonal, and local coupling by the reaction
+						for (int s = 0; s < nc; s++) {
+							if (s != c && reaction == null) continue;
+							if (count == pairs.length) pairs = Arrays.copyOf(pairs, 2 * count);
+							pairs[count++] = pair(point + c, point + s);
+						}
+					}
+					for (Term term : terms) {
+						for (int q = 0; q < term.weight.length; q++) {
+							ijk[0] = i + term.dx[q];
+							ijk[1] = j + term.dy[q];
+							ijk[2] = k + term.dz[q];
+							int index = resolve(term.source, ijk, ghost);
+							if (index < 0) continue;
+							if (count == pairs.length) pairs = Arrays.copyOf(pairs, 2 * count);
+							pairs[count++] = pair(point + term.target, index);
+						}
+					}
+				}
+			}
+		}
+
+		// sort by column, then row, and remove duplicates
+		Arrays.sort(pairs, 0, count);
+		int[] columnStart = new int[N + 1];
+		int[] rows = new int[count];
+		int nnz = 0;
+		for (int l = 0; l < count; l++) {
+			if (l > 0 && pairs[l] == pairs[l - 1]) continue;
+			int column = (int) (pairs[l] >>> 32);
+			rows[nnz++] = (int) pairs[l];
+			columnStart[column + 1] = nnz;
+		}
+		// fill start of empty columns
+		for (int j = 0; j < N; j++) {
+			columnStart[j + 1] = Math.max(columnStart[j + 1], columnStart[j]);
+		}
+		return new SparsityPattern(N, columnStart, Arrays.copyOf(rows, nnz));
+	}
+
+	private static long pair(int row, int column) {
+		return ((long) column << 32) | row;
+	}
+}
@@ -0,0 +1,19 @@
+package de.grogra.numeric.fdm;
+
+/**
+ * Local part of a reaction-diffusion model, which couples the components
+ * of a single grid point. The arrays are the complete state and rate
+ * vectors of the grid, so that nothing needs to be copied.
+ */
+public interface PointReaction {
+
+	/**
+	 * Calculate the local rate of all components of one grid point.
+	 * Stores the rates of the components into out[offset ... offset+components-1].
+	 * @param out rate vector of the grid
+	 * @param t current time
+	 * @param state state vector of the grid
+	 * @param offset index of the first component of the point
+	 */
+	void getRate(double[] out, double t, double[] state, int offset);
+}
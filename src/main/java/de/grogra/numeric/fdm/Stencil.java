@@ -0,0 +1,146 @@
+package de.grogra.numeric.fdm;
+
+import java.util.Arrays;
+
+/**
+ * A linear finite-difference operator given by weighted offsets to
+ * neighbouring grid points: (Su)(p) = sum_q w_q u(p + d_q).
+ * Offsets are given in grid points along x, y and z.
+ * 
+ * Besides user-defined stencils built with {@linkplain #add(int, int, int, double)},
+ * there are factories for the second-order Laplacian and first-order
+ * upwind advection.
+ */
+public class Stencil {
+
+	int size;
+	int[] dx = new int[4];
+	int[] dy = new int[4];
+	int[] dz = new int[4];
+	double[] w = new double[4];
+
+	/**
+	 * Add weight to the neighbour at offset (dx, dy, dz). Weights at the
+	 * same offset are summed up.
+	 * @param dx
+	 * @param dy
+	 * @param dz
+	 * @param weight
+	 * @return this stencil
+	 */
+	public Stencil add(int dx, int dy, int dz, double weight) {
+		for (int q = 0; q < size; q++) {
+			if (this.dx[q] == dx && this.dy[q] == dy && this.dz[q] == dz) {
+				w[q] += weight;
+				return this;
+			}
+		}
+		if (size == w.length) {
+			this.dx = Arrays.copyOf(this.dx, 2 * size);
+			this.dy = Arrays.copyOf(this.dy, 2 * size);
+			this.dz = Arrays.copyOf(this.dz, 2 * size);
+			w = Arrays.copyOf(w, 2 * size);
+		}
+		this.dx[size] = dx;
+		this.dy[size] = dy;
+		this.dz[size] = dz;
+		w[size++] = weight;
+		return this;
+	}
+
+	/**
+	 * Return a new stencil with all weights multiplied by factor.
+	 * @param factor
+	 * @return
+	 */
+	public Stencil scale(double factor) {
+		Stencil s = new Stencil();
+		for (int q = 0; q < size; q++) {
+			s.add(dx[q], dy[q], dz[q], factor * w[q]);
+		}
+		return s;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getOffset(int q, int axis) {
+		return axis == 0 ? dx[q] : axis == 1 ? dy[q] : dz[q];
+	}
+
+	public double getWeight(int q) {
+		return w[q];
+	}
+
+	/**
+	 * Return how far the stencil reaches towards lower (negative) indices along an axis.
+	 * @param axis
+	 * @return
+	 */
+	public int getLowerExtent(int axis) {
+		int e = 0;
+		for (int q = 0; q < size; q++) {
+			e = Math.max(e, -getOffset(q, axis));
+		}
+		return e;
+	}
+
+	/**
+	 * Return how far the stencil reaches towards higher (positive) indices along an axis.
+	 * @param axis
+	 * @return
+	 */
+	public int getUpperExtent(int axis) {
+		int e = 0;
+		for (int q = 0; q < size; q++) {
+			e = Math.max(e, getOffset(q, axis));
+		}
+		return e;
+	}
+
+	/**
+	 * Second-order central Laplacian on all axes of the grid
+	 * (3, 5 or 7 points).
+	 * @param grid
+	 * @return
+	 */
+	public static Stencil laplacian(Grid grid) {
+		Stencil s = new Stencil();
+		for (int axis = 0; axis < grid.getDimensions(); axis++) {
+			double h = grid.getSpacing(axis);
+			double c = 1 / (h * h);
+			int[] d = new int[3];
+			s.add(0, 0, 0, -2 * c);
+			d[axis] = -1;
+			s.add(d[0], d[1], d[2], c);
+			d[axis] = 1;
+			s.add(d[0], d[1], d[2], c);
+		}
+		return s;
+	}
+
+	/**
+	 * First-order upwind discretisation of -(v . grad u) for a constant
+	 * velocity v. Components of v beyond the dimensions of the grid are ignored.
+	 * @param grid
+	 * @param vx
+	 * @param vy
+	 * @param vz
+	 * @return
+	 */
+	public static Stencil advection(Grid grid, double vx, double vy, double vz) {
+		Stencil s = new Stencil();
+		double[] v = { vx, vy, vz };
+		for (int axis = 0; axis < grid.getDimensions(); axis++) {
+			if (v[axis] == 0) continue;
+			double c = Math.abs(v[axis]) / grid.getSpacing(axis);
+			int[] d = new int[3];
+			// take the difference towards the side the flow comes from
+			d[axis] = v[axis] > 0 ? -1 : 1;
+			s.add(0, 0, 0, -c);
+			s.add(d[0], d[1], d[2], c);
+		}
+		return s;
+	}
+}
@@ -0,0 +1,105 @@
+package de.grogra.numeric;
+
+import org.apache.commons.math.ode.DerivativeException;
+import org.apache.commons.math.ode.FirstOrderDifferentialEquations;
+import org.apache.commons.math.ode.IntegratorException;
+
+/**
+ * Variant of {@linkplain CVodeAdapter} that calls CVODE through
+ * java.lang.foreign (see {@linkplain de.grogra.numeric.cvode.CVODEForeign})
+ * instead of JNA. Tolerances, monitors, step handlers, warm start and the
+ * dense and band linear solvers are configured as for CVodeAdapter.
+ * Sparsity patterns are ignored like analytic Jacobians, see
+ * {@linkplain ForeignCVodeSession}, and {@linkplain #getStatistics()}
+ * always returns null.
+ *
+ * The other features of CVodeAdapter are not implemented for this backend:
+ * integration through output times, checkpoints, {@linkplain CVodeOptions},
+ * iterative linear solvers, parallel evaluation and JFR events. Using them
+ * throws an UnsupportedOperationException instead of silently falling back
+ * to JNA.
+ *
+ * Use {@linkplain CVodeBackend} to select between both implementations
+ * at runtime.
+ */
+public class ForeignCVodeAdapter extends CVodeAdapter {
+
+	// native solver kept alive between integrations
+	ForeignCVodeSession foreignSession;
+
+	@Override
+	public double integrate(FirstOrderDifferentialEquations ode, double t0, double[] y0, double t1, double[] y1)
+			throws DerivativeException, IntegratorException {
+		assert y0.length == y1.length;
+		checkSupported();
+
+		// get problem dimension
+		final int N = y0.length;
+
+		try {
+			// reuse native solver if dimension did not change
+			if (foreignSession != null && foreignSession.getDimension() != N) {
+				foreignSession.close();
+				foreignSession = null;
+			}
+			if (foreignSession == null) {
+				foreignSession = new ForeignCVodeSession(N);
+			}
+			ForeignCVodeSession s = foreignSession;
+			s.setWarmStart(warmStart);
+			s.setTolerances(relTolDefault, absTolDefault, absTol);
+			s.setMonitor(nrtfn, monitor);
+			s.setLinearSolver(linearSolver, upperBandwidth, lowerBandwidth);
+			s.setStepHandlers(stepHandlers);
+			s.init(ode, t0, y0);
+			return s.integrate(t1, y1);
+		} catch (NumericException e) {
+			throw new IntegratorException(e);
+		}
+	}
+
+	// throw an exception if a feature of CVodeAdapter is configured
+	// that this backend does not implement
+	void checkSupported() {
+		if (!cvodeOptions.equals(new CVodeOptions()))
+			throw unsupported("CVodeOptions");
+		if (linearSolver.isIterative() || jacobianTimesVector != null || preconditioner != null)
+			throw unsupported("iterative linear solvers");
+		if (pool != null)
+			throw unsupported("parallel evaluation");
+	}
+
+	static UnsupportedOperationException unsupported(String feature) {
+		return new UnsupportedOperationException(feature + " not supported by the foreign CVODE backend");
+	}
+
+	@Override
+	CVodeSession prepare(FirstOrderDifferentialEquations ode, double t0, double[] y0) {
+		// used by all integrations that need a JNA session
+		throw unsupported("integration through output times");
+	}
+
+	@Override
+	public CVodeCheckpoint checkpoint() {
+		throw unsupported("checkpoints");
+	}
+
+	@Override
+	public double resume(FirstOrderDifferentialEquations ode, CVodeCheckpoint checkpoint, double t1, double[] y1) {
+		throw unsupported("checkpoints");
+	}
+
+	@Override
+	public void close() {
+		super.close();
+		if (foreignSession != null) {
+			foreignSession.close();
+			foreignSession = null;
+		}
+	}
+
+	@Override
+	public String getName() {
+		return "CVODE (foreign)";
+	}
+}
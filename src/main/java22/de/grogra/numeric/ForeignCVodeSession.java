@@ -0,0 +1,591 @@
+package de.grogra.numeric;
+
+import static de.grogra.numeric.cvode.CVODE.CV_BDF;
+import static de.grogra.numeric.cvode.CVODE.CV_NORMAL;
+import static de.grogra.numeric.cvode.CVODE.CV_ONE_STEP;
+import static de.grogra.numeric.cvode.CVODE.CV_ROOT_RETURN;
+import static de.grogra.numeric.cvode.CVODE.CV_SUCCESS;
+import static de.grogra.numeric.cvode.CVODE.CV_TOO_MUCH_WORK;
+import static de.grogra.numeric.cvode.CVODE.CV_TSTOP_RETURN;
+import static de.grogra.numeric.cvode.CVODEForeign.CVode;
+import static de.grogra.numeric.cvode.CVODEForeign.CVodeCreate;
+import static de.grogra.numeric.cvode.CVODEForeign.CVodeFree;
+import static de.grogra.numeric.cvode.CVODEForeign.CVodeGetCurrentTime;
+import static de.grogra.numeric.cvode.CVODEForeign.CVodeGetDky;
+import static de.grogra.numeric.cvode.CVODEForeign.CVodeGetLastOrder;
+import static de.grogra.numeric.cvode.CVODEForeign.CVodeGetLastStep;
+import static de.grogra.numeric.cvode.CVODEForeign.CVodeGetReturnFlagName;
+import static de.grogra.numeric.cvode.CVODEForeign.CVodeGetRootInfo;
+import static de.grogra.numeric.cvode.CVODEForeign.CVodeInit;
+import static de.grogra.numeric.cvode.CVODEForeign.CVodeReInit;
+import static de.grogra.numeric.cvode.CVODEForeign.CVodeRootInit;
+import static de.grogra.numeric.cvode.CVODEForeign.CVodeSStolerances;
+import static de.grogra.numeric.cvode.CVODEForeign.CVodeSVtolerances;
+import static de.grogra.numeric.cvode.CVODEForeign.CVodeSetInitStep;
+import static de.grogra.numeric.cvode.CVODEForeign.CVodeSetLinearSolver;
+import static de.grogra.numeric.cvode.CVODEForeign.CVodeSetStopTime;
+import static de.grogra.numeric.cvode.CVODEForeign.N_VDestroy_Serial;
+import static de.grogra.numeric.cvode.CVODEForeign.N_VGetData_Serial;
+import static de.grogra.numeric.cvode.CVODEForeign.N_VNew_Serial;
+import static de.grogra.numeric.cvode.CVODEForeign.SUNBandMatrix;
+import static de.grogra.numeric.cvode.CVODEForeign.SUNDenseMatrix;
+import static de.grogra.numeric.cvode.CVODEForeign.SUNLinSolFree;
+import static de.grogra.numeric.cvode.CVODEForeign.SUNLinSol_Band;
+import static de.grogra.numeric.cvode.CVODEForeign.SUNLinSol_Dense;
+import static de.grogra.numeric.cvode.CVODEForeign.SUNMatDestroy;
+import static de.grogra.numeric.cvode.CVODEForeign.upcallStub;
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_DOUBLE;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.apache.commons.math.ode.DerivativeException;
+import org.apache.commons.math.ode.FirstOrderDifferentialEquations;
+import org.apache.commons.math.ode.sampling.StepHandler;
+
+import de.grogra.numeric.cvode.CVRhsFnForeign;
+import de.grogra.numeric.cvode.CVRootFnForeign;
+
+/**
+ * Counterpart of {@linkplain CVodeSession} that calls CVODE through
+ * java.lang.foreign instead of JNA. Behaviour is the same: the native
+ * solver is created once per dimension and reinitialized for further
+ * integrations, warm start resumes an integration that continues where
+ * the previous one stopped.
+ *
+ * Only the dense and band linear solvers of SUNDIALS are supported for the
+ * Newton iteration, the LAPACK variants of {@linkplain CVodeAdapter.LinearSolver}
+ * fail. A {@linkplain Jacobian} provided by the equations is not used,
+ * CVODE approximates the Jacobian by difference quotients instead, and
+ * the sparsity pattern of a {@linkplain JacobianStructure} is ignored.
+ * Step handlers receive a {@linkplain CVodeStepInterpolator} like with
+ * CVodeSession.
+ *
+ * Callbacks are upcall stubs, vector data is accessed through memory
+ * segments that are resolved once per vector.
+ */
+public class ForeignCVodeSession implements CVodeStepInterpolator.DenseOutput {
+
+	final int N;
+
+	// owns upcall stubs and small native buffers of this session
+	final Arena arena = Arena.ofShared();
+
+	MemorySegment cvode_mem = MemorySegment.NULL;
+	MemorySegment y = MemorySegment.NULL;
+	MemorySegment ydata;
+
+	FirstOrderDifferentialEquations ode;
+	// set if ode can be evaluated on buffers, which avoids copying
+	BufferODE direct;
+
+	// tolerances to apply on next (re)initialization
+	double relTol;
+	double absTol;
+	double[] absTolVector;
+	boolean tolerancesChanged = true;
+
+	// monitor functions as requested and as registered with the solver
+	int nrtfn;
+	Monitor monitor;
+	int nrtfnRegistered = -1;
+	double[] gout = new double[0];
+
+	// linear solver as requested and as attached to the solver
+	CVodeAdapter.LinearSolver linearSolver = CVodeAdapter.LinearSolver.DENSE;
+	CVodeAdapter.LinearSolver linearSolverAttached;
+	int mupper, mlower;
+	int mupperAttached, mlowerAttached;
+	MemorySegment A = MemorySegment.NULL;
+	MemorySegment LS = MemorySegment.NULL;
+
+	boolean warmStart;
+	double tStart;
+	double hInit;
+	boolean initStepPending;
+
+	// solver time and state at the end of the last integration
+	double tLast = Double.NaN;
+	final double[] yLast;
+	FirstOrderDifferentialEquations odeLast;
+
+	final MemorySegment f;
+	final MemorySegment g;
+
+	final double[] state;
+	final double[] rate;
+	final MemorySegment tret = arena.allocate(JAVA_DOUBLE);
+	final MemorySegment tcur = arena.allocate(JAVA_DOUBLE);
+	final MemorySegment qcur = arena.allocate(JAVA_INT);
+
+	// step handlers and the interpolator passed to them
+	Collection<StepHandler> stepHandlers = Collections.emptyList();
+	CVodeStepInterpolator interpolator;
+	// vector for interpolation, allocated on first use
+	MemorySegment dky = MemorySegment.NULL;
+	MemorySegment dkydata;
+	// time of the last return of CVode, where the next step passed to the
+	// step handlers starts
+	double tReturned;
+	// set while a stop time was set that has not been reached yet
+	boolean stopTimePending;
+
+	// data segments of vectors passed to the callbacks, keyed by vector address
+	long[] keys = new long[8];
+	MemorySegment[] data = new MemorySegment[8];
+	DoubleBuffer[] buffers = new DoubleBuffer[8];
+	int size;
+
+	public ForeignCVodeSession(int n) {
+		if (n <= 0) throw new IllegalArgumentException("dimension must be positive");
+		this.N = n;
+		this.state = new double[N];
+		this.rate = new double[N];
+		this.yLast = new double[N];
+
+		// create callback for rate function
+		f = upcallStub(new CVRhsFnForeign() {
+			@Override
+			public int callback(double t, MemorySegment y, MemorySegment ydot,
+					MemorySegment user_data) {
+				try {
+					if (direct != null) {
+						// evaluate directly on native memory
+						direct.getRate(buffer(ydot), t, buffer(y));
+					} else {
+						MemorySegment.copy(data(y), JAVA_DOUBLE, 0, state, 0, N);
+						ode.computeDerivatives(t, state, rate);
+						MemorySegment.copy(rate, 0, data(ydot), JAVA_DOUBLE, 0, N);
+					}
+					return 0;
+				} catch (Throwable throwable) {
+					throwable.printStackTrace();
+				}
+				// return negative value to indicate unrecoverable error
+				return -1;
+			}
+		}, arena);
+
+		// create callback for root functions
+		g = upcallStub(new CVRootFnForeign() {
+			final double[] y = new double[N];
+			@Override
+			public int callback(double t, MemorySegment y, MemorySegment gout,
+					MemorySegment user_data) {
+				try {
+					MemorySegment.copy(data(y), JAVA_DOUBLE, 0, this.y, 0, N);
+					double[] out = ForeignCVodeSession.this.gout;
+					monitor.g(out, t, this.y);
+					MemorySegment.copy(out, 0, gout.reinterpret(JAVA_DOUBLE.byteSize() * nrtfnRegistered),
+							JAVA_DOUBLE, 0, nrtfnRegistered);
+					return 0;
+				} catch (Throwable throwable) {
+					throwable.printStackTrace();
+				}
+				// return non-zero value to indicate error
+				return -1;
+			}
+		}, arena);
+	}
+
+	// return index of vector v in the cache, resolve its data on first use
+	private int indexOf(MemorySegment v) {
+		final long key = v.address();
+		for (int i = 0; i < size; i++) {
+			if (keys[i] == key) {
+				return i;
+			}
+		}
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, 2 * size);
+			data = Arrays.copyOf(data, 2 * size);
+			buffers = Arrays.copyOf(buffers, 2 * size);
+		}
+		keys[size] = key;
+		data[size] = N_VGetData_Serial(v);
+		return size++;
+	}
+
+	MemorySegment data(MemorySegment v) {
+		return data[indexOf(v)];
+	}
+
+	DoubleBuffer buffer(MemorySegment v) {
+		final int i = indexOf(v);
+		DoubleBuffer b = buffers[i];
+		if (b == null) {
+			b = data[i].asByteBuffer().order(ByteOrder.nativeOrder()).asDoubleBuffer();
+			buffers[i] = b;
+		}
+		b.clear();
+		return b;
+	}
+
+	public int getDimension() {
+		return N;
+	}
+
+	/**
+	 * @see CVodeSession#setStepHandlers(Collection)
+	 */
+	public void setStepHandlers(Collection<StepHandler> handlers) {
+		this.stepHandlers = handlers;
+	}
+
+	public void setWarmStart(boolean warmStart) {
+		this.warmStart = warmStart;
+	}
+
+	public void setMonitor(int n, Monitor monitor) {
+		assert n >= 0;
+		this.nrtfn = n;
+		this.monitor = monitor;
+	}
+
+	/**
+	 * @see CVodeSession#setLinearSolver(CVodeAdapter.LinearSolver, int, int)
+	 */
+	public void setLinearSolver(CVodeAdapter.LinearSolver linearSolver, int mupper, int mlower) {
+		assert linearSolver != null;
+		this.linearSolver = linearSolver;
+		this.mupper = mupper < 0 || mupper > N - 1 ? N - 1 : mupper;
+		this.mlower = mlower < 0 || mlower > N - 1 ? N - 1 : mlower;
+	}
+
+	boolean linearSolverChanged() {
+		return linearSolver != linearSolverAttached
+				|| (linearSolver.isBand() && (mupper != mupperAttached || mlower != mlowerAttached));
+	}
+
+	public void setTolerances(double relTol, double absTol, double[] absTolVector) {
+		assert absTolVector == null || absTolVector.length == N;
+		if (relTol != this.relTol || absTol != this.absTol
+				|| !Arrays.equals(absTolVector, this.absTolVector)) {
+			this.relTol = relTol;
+			this.absTol = absTol;
+			this.absTolVector = absTolVector != null ? absTolVector.clone() : null;
+			tolerancesChanged = true;
+		}
+	}
+
+	/**
+	 * Prepare the solver for integration of ode starting at (t0, y0).
+	 * @see CVodeSession#init(FirstOrderDifferentialEquations, double, double[])
+	 */
+	public void init(FirstOrderDifferentialEquations ode, double t0, double[] y0) throws NumericException {
+		assert y0.length == N;
+		int flag;
+		this.ode = ode;
+		this.direct = CVodeSession.getBufferODE(ode);
+
+		if (cvode_mem.equals(MemorySegment.NULL)) {
+			// alloc N_Vector
+			y = N_VNew_Serial(N);
+			if (y.equals(MemorySegment.NULL))
+				throw new NumericException("could not allocate state vector");
+			ydata = N_VGetData_Serial(y);
+
+			// create solver
+			cvode_mem = CVodeCreate(CV_BDF);
+			if (cvode_mem.equals(MemorySegment.NULL))
+				throw new NumericException("could not create CVODE solver");
+
+			// init solver
+			MemorySegment.copy(y0, 0, ydata, JAVA_DOUBLE, 0, N);
+			flag = CVodeInit(cvode_mem, f, t0, y);
+			checkFlag(flag, "could not init CVODE solver");
+		} else if (warmStart && ode == odeLast && !tolerancesChanged
+				&& nrtfn == nrtfnRegistered && !linearSolverChanged()
+				&& Double.compare(t0, tLast) == 0 && Arrays.equals(y0, yLast)) {
+			// integration continues where it stopped, simply resume
+			return;
+		} else {
+			// start with the last step size if requested, otherwise let CVODE estimate it
+			hInit = 0;
+			if (warmStart && CVodeGetLastStep(cvode_mem, tret) == CV_SUCCESS) {
+				hInit = Math.abs(tret.get(JAVA_DOUBLE, 0));
+			}
+			initStepPending = true;
+
+			// reinit solver
+			MemorySegment.copy(y0, 0, ydata, JAVA_DOUBLE, 0, N);
+			flag = CVodeReInit(cvode_mem, t0, y);
+			checkFlag(flag, "could not reinit CVODE solver");
+		}
+		tStart = t0;
+		tReturned = t0;
+		tLast = Double.NaN;
+
+		if (tolerancesChanged) {
+			// set tolerances
+			if (absTolVector != null) {
+				// relative is scalar, absolute is vector
+				for (int i = 0; i < N; i++) {
+					// replace zero tolerance by default one
+					ydata.setAtIndex(JAVA_DOUBLE, i, absTolVector[i] != 0 ? absTolVector[i] : absTol);
+				}
+				flag = CVodeSVtolerances(cvode_mem, relTol, y);
+			} else {
+				// relative is scalar, absolute is scalar
+				flag = CVodeSStolerances(cvode_mem, relTol, absTol);
+			}
+			checkFlag(flag, "could not set tolerances");
+			tolerancesChanged = false;
+		}
+
+		if (linearSolverChanged()) {
+			attachLinearSolver();
+		}
+
+		if (nrtfn != nrtfnRegistered) {
+			// specify rootfinding problem
+			gout = new double[nrtfn];
+			flag = CVodeRootInit(cvode_mem, nrtfn, g);
+			checkFlag(flag, "could not init rootfinding");
+			nrtfnRegistered = nrtfn;
+		}
+	}
+
+	/**
+	 * Create matrix and linear solver and attach them to the solver.
+	 * @see CVodeSession#attachLinearSolver()
+	 */
+	void attachLinearSolver() throws NumericException {
+		final boolean band;
+		switch (linearSolver) {
+		case DENSE:
+			band = false;
+			break;
+		case BAND:
+			band = true;
+			break;
+		default:
+			throw new NumericException("linear solver " + linearSolver + " not supported by this backend");
+		}
+		MemorySegment newA = band ? SUNBandMatrix(N, mupper, mlower) : SUNDenseMatrix(N, N);
+		if (newA.equals(MemorySegment.NULL))
+			throw new NumericException("could not create linear solver " + linearSolver);
+		MemorySegment newLS = band ? SUNLinSol_Band(y, newA) : SUNLinSol_Dense(y, newA);
+		if (newLS.equals(MemorySegment.NULL)) {
+			SUNMatDestroy(newA);
+			throw new NumericException("could not create linear solver " + linearSolver);
+		}
+
+		int flag = CVodeSetLinearSolver(cvode_mem, newLS, newA);
+		if (flag != CV_SUCCESS) {
+			SUNLinSolFree(newLS);
+			SUNMatDestroy(newA);
+			checkFlag(flag, "could not attach linear solver " + linearSolver);
+		}
+
+		freeLinearSolver();
+		A = newA;
+		LS = newLS;
+		linearSolverAttached = linearSolver;
+		mupperAttached = mupper;
+		mlowerAttached = mlower;
+	}
+
+	// free matrix and linear solver, must not be in use by the solver anymore
+	void freeLinearSolver() {
+		if (!LS.equals(MemorySegment.NULL)) {
+			SUNLinSolFree(LS);
+			LS = MemorySegment.NULL;
+		}
+		if (!A.equals(MemorySegment.NULL)) {
+			SUNMatDestroy(A);
+			A = MemorySegment.NULL;
+		}
+		linearSolverAttached = null;
+	}
+
+	/**
+	 * Integrate from the current solver time to t1.
+	 * @see CVodeSession#integrate(double, double[])
+	 */
+	public double integrate(double t1, double[] y1) throws NumericException {
+		assert !cvode_mem.equals(MemorySegment.NULL);
+		assert y1.length == N;
+		int flag;
+
+		if (initStepPending) {
+			// sign of initial step size must match direction of integration
+			flag = CVodeSetInitStep(cvode_mem, t1 < tStart ? -hInit : hInit);
+			checkFlag(flag, "could not set initial step size");
+			initStepPending = false;
+		}
+
+		for (StepHandler h : stepHandlers) {
+			h.reset();
+		}
+
+		// stop exactly at t1 if steps are handled, see CVodeSession#advance
+		boolean stopAtT1 = false;
+		if (!stepHandlers.isEmpty() || stopTimePending) {
+			flag = CVodeGetCurrentTime(cvode_mem, tcur);
+			checkFlag(flag, "could not get current time");
+			if ((t1 - tcur.get(JAVA_DOUBLE, 0)) * (t1 - tReturned) > 0) {
+				flag = CVodeSetStopTime(cvode_mem, t1);
+				checkFlag(flag, "could not set stop time");
+				stopAtT1 = stopTimePending = true;
+			}
+		}
+		final int itask = stepHandlers.isEmpty() || !stopAtT1 ? CV_NORMAL : CV_ONE_STEP;
+		if (!stepHandlers.isEmpty() && interpolator == null) {
+			interpolator = new CVodeStepInterpolator(this);
+		}
+
+		// repeat integration until t1 reached or a monitor requests to stop
+		while (true) {
+			// the step starts where the previous return of CVode was
+			double t0 = tReturned;
+			flag = call(t1, itask);
+			MemorySegment.copy(ydata, JAVA_DOUBLE, 0, y1, 0, N);
+			boolean reached = false, stop = false;
+			if (flag == CV_SUCCESS || flag == CV_TSTOP_RETURN) {
+				reached = tReturned == t1;
+			} else if (flag == CV_ROOT_RETURN) {
+				stop = handleRoots(y1);
+				reached = !stop && tReturned == t1;
+			} else {
+				checkFlag(flag, "error during integration");
+				continue;
+			}
+			if (!stepHandlers.isEmpty()) {
+				interpolator.setStep(t0, tReturned);
+				for (StepHandler h : stepHandlers) {
+					try {
+						h.handleStep(interpolator, reached || stop);
+					} catch (DerivativeException e) {
+						throw new NumericException(e);
+					}
+				}
+			}
+			if (reached || stop) {
+				break;
+			}
+		}
+
+		// remember where integration stopped to allow resuming
+		tLast = tReturned;
+		System.arraycopy(y1, 0, yLast, 0, N);
+		odeLast = ode;
+		return tLast;
+	}
+
+	// call CVode, the state returned is left in y
+	int call(double t1, int itask) {
+		int flag = CVode(cvode_mem, t1, y, tret, itask);
+		if (flag == CV_TSTOP_RETURN) {
+			// CVODE clears the stop time once it was reached
+			stopTimePending = false;
+		}
+		if (flag >= CV_SUCCESS) {
+			tReturned = tret.get(JAVA_DOUBLE, 0);
+		}
+		return flag;
+	}
+
+	// call the event handlers of the monitor functions that triggered at the
+	// time returned, return true if one of them requested to stop
+	boolean handleRoots(double[] y1) throws NumericException {
+		// one of the monitor functions triggered
+		// find out which
+		try (Arena local = Arena.ofConfined()) {
+			MemorySegment rootsfound = local.allocate(JAVA_INT, nrtfnRegistered);
+			int flag = CVodeGetRootInfo(cvode_mem, rootsfound);
+			checkFlag(flag, "root was found, but could not determine which");
+			boolean stop = false;
+			for (int i = 0; i < nrtfnRegistered; i++) {
+				if (rootsfound.getAtIndex(JAVA_INT, i) != 0) {
+					// call event handler
+					stop |= monitor.handleEvent(i, tReturned, y1);
+				}
+			}
+			return stop;
+		}
+	}
+
+	/**
+	 * @see CVodeSession#getCurrentTime()
+	 */
+	public double getCurrentTime() throws NumericException {
+		checkFlag(CVodeGetCurrentTime(cvode_mem, tcur), "could not get current time");
+		return tcur.get(JAVA_DOUBLE, 0);
+	}
+
+	/**
+	 * @see CVodeSession#getDky(double, int, double[])
+	 */
+	public void getDky(double t, int k, double[] out) throws NumericException {
+		assert out.length == N;
+		if (dky.equals(MemorySegment.NULL)) {
+			dky = N_VNew_Serial(N);
+			if (dky.equals(MemorySegment.NULL))
+				throw new NumericException("could not allocate interpolation vector");
+			dkydata = N_VGetData_Serial(dky);
+		}
+		checkFlag(CVodeGetDky(cvode_mem, t, k, dky), "could not interpolate at t = " + t);
+		MemorySegment.copy(dkydata, JAVA_DOUBLE, 0, out, 0, N);
+	}
+
+	/**
+	 * @see CVodeSession#getDerivatives()
+	 */
+	public double[][] getDerivatives() throws NumericException {
+		double t = getCurrentTime();
+		checkFlag(CVodeGetLastOrder(cvode_mem, qcur), "could not get order of last step");
+		double[][] d = new double[qcur.get(JAVA_INT, 0) + 1][N];
+		for (int k = 0; k < d.length; k++) {
+			getDky(t, k, d[k]);
+		}
+		return d;
+	}
+
+	/**
+	 * Free the native solver, state vector and upcall stubs. In contrast
+	 * to {@linkplain CVodeSession#close()} the session cannot be used again.
+	 */
+	public void close() {
+		if (!cvode_mem.equals(MemorySegment.NULL)) {
+			// free solver
+			try (Arena local = Arena.ofConfined()) {
+				MemorySegment p_cvode_mem = local.allocate(ADDRESS);
+				p_cvode_mem.set(ADDRESS, 0, cvode_mem);
+				CVodeFree(p_cvode_mem);
+			}
+			cvode_mem = MemorySegment.NULL;
+		}
+		freeLinearSolver();
+
+		if (!y.equals(MemorySegment.NULL)) {
+			// free N_Vector
+			N_VDestroy_Serial(y);
+			y = MemorySegment.NULL;
+			ydata = null;
+		}
+
+		if (!dky.equals(MemorySegment.NULL)) {
+			N_VDestroy_Serial(dky);
+			dky = MemorySegment.NULL;
+			dkydata = null;
+		}
+
+		size = 0;
+		arena.close();
+	}
+
+	// throw an exception if flag is not CV_SUCCESS
+	static void checkFlag(int flag, String msg) throws NumericException {
+		if (flag != CV_SUCCESS && flag != CV_TOO_MUCH_WORK)
+			throw new NumericException("[" + CVodeGetReturnFlagName(flag)
+					+ "] " + msg);
+	}
+}
@@ -0,0 +1,393 @@
+package de.grogra.numeric.cvode;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_DOUBLE;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+
+/**
+ * This class provides native access to the CVODE library using the
+ * foreign function and memory API (java.lang.foreign) instead of JNA.
+ * It covers the same functions of CVODE and N_Vec_Serial that are
+ * used by {@linkplain de.grogra.numeric.CVodeSession}, callbacks are
+ * passed as upcall stubs.
+ *
+ * The libraries sundials_cvode, sundials_nvecserial, sundials_sunmatrixdense,
+ * sundials_sunlinsoldense, sundials_sunmatrixband and sundials_sunlinsolband
+ * are loaded with
+ * System.loadLibrary, so their location has to be passed with
+ * <pre>-Djava.library.path=/path/to/library</pre>
+ * To avoid warnings about restricted methods, also add
+ * <pre>--enable-native-access=ALL-UNNAMED</pre>
+ * to the VM arguments.
+ *
+ * Pointers are represented by MemorySegments of size zero,
+ * sunindextype is assumed to be 64 bit wide.
+ */
+public class CVODEForeign {
+
+	static final Linker LINKER = Linker.nativeLinker();
+	static final SymbolLookup SYMBOLS;
+
+	static {
+		System.loadLibrary("sundials_nvecserial");
+		System.loadLibrary("sundials_sunmatrixdense");
+		System.loadLibrary("sundials_sunlinsoldense");
+		System.loadLibrary("sundials_sunmatrixband");
+		System.loadLibrary("sundials_sunlinsolband");
+		System.loadLibrary("sundials_cvode");
+		SYMBOLS = SymbolLookup.loaderLookup();
+	}
+
+	// C type long differs in size between platforms
+	static final MemoryLayout C_LONG = LINKER.canonicalLayouts().get("long");
+
+	static final FunctionDescriptor RHS_FN = FunctionDescriptor.of(JAVA_INT,
+			JAVA_DOUBLE, ADDRESS, ADDRESS, ADDRESS);
+	static final FunctionDescriptor ROOT_FN = FunctionDescriptor.of(JAVA_INT,
+			JAVA_DOUBLE, ADDRESS, ADDRESS, ADDRESS);
+
+	static MethodHandle downcall(String name, FunctionDescriptor function) {
+		MemorySegment symbol = SYMBOLS.find(name).orElseThrow(() -> new UnsatisfiedLinkError(name));
+		return LINKER.downcallHandle(symbol, function);
+	}
+
+	static final MethodHandle CVodeCreate = downcall("CVodeCreate",
+			FunctionDescriptor.of(ADDRESS, JAVA_INT));
+	static final MethodHandle CVodeInit = downcall("CVodeInit",
+			FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, JAVA_DOUBLE, ADDRESS));
+	static final MethodHandle CVodeReInit = downcall("CVodeReInit",
+			FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_DOUBLE, ADDRESS));
+	static final MethodHandle CVodeFree = downcall("CVodeFree",
+			FunctionDescriptor.ofVoid(ADDRESS));
+	static final MethodHandle CVodeSStolerances = downcall("CVodeSStolerances",
+			FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_DOUBLE, JAVA_DOUBLE));
+	static final MethodHandle CVodeSVtolerances = downcall("CVodeSVtolerances",
+			FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_DOUBLE, ADDRESS));
+	static final MethodHandle CVodeSetInitStep = downcall("CVodeSetInitStep",
+			FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_DOUBLE));
+	static final MethodHandle CVodeGetLastStep = downcall("CVodeGetLastStep",
+			FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+	static final MethodHandle CVodeSetStopTime = downcall("CVodeSetStopTime",
+			FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_DOUBLE));
+	static final MethodHandle CVodeGetLastOrder = downcall("CVodeGetLastOrder",
+			FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+	static final MethodHandle CVodeGetCurrentTime = downcall("CVodeGetCurrentTime",
+			FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+	static final MethodHandle CVodeGetDky = downcall("CVodeGetDky",
+			FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_DOUBLE, JAVA_INT, ADDRESS));
+	static final MethodHandle CVodeRootInit = downcall("CVodeRootInit",
+			FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT, ADDRESS));
+	static final MethodHandle CVodeSetLinearSolver = downcall("CVodeSetLinearSolver",
+			FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, ADDRESS));
+	static final MethodHandle CVode = downcall("CVode",
+			FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_DOUBLE, ADDRESS, ADDRESS, JAVA_INT));
+	static final MethodHandle CVodeGetRootInfo = downcall("CVodeGetRootInfo",
+			FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+	static final MethodHandle CVodeGetReturnFlagName = downcall("CVodeGetReturnFlagName",
+			FunctionDescriptor.of(ADDRESS, C_LONG));
+
+	static final MethodHandle SUNDenseMatrix = downcall("SUNDenseMatrix",
+			FunctionDescriptor.of(ADDRESS, JAVA_LONG, JAVA_LONG));
+	static final MethodHandle SUNLinSol_Dense = downcall("SUNLinSol_Dense",
+			FunctionDescriptor.of(ADDRESS, ADDRESS, ADDRESS));
+	static final MethodHandle SUNBandMatrix = downcall("SUNBandMatrix",
+			FunctionDescriptor.of(ADDRESS, JAVA_LONG, JAVA_LONG, JAVA_LONG));
+	static final MethodHandle SUNLinSol_Band = downcall("SUNLinSol_Band",
+			FunctionDescriptor.of(ADDRESS, ADDRESS, ADDRESS));
+	static final MethodHandle SUNMatDestroy = downcall("SUNMatDestroy",
+			FunctionDescriptor.ofVoid(ADDRESS));
+	static final MethodHandle SUNLinSolFree = downcall("SUNLinSolFree",
+			FunctionDescriptor.of(JAVA_INT, ADDRESS));
+
+	static final MethodHandle N_VNew_Serial = downcall("N_VNew_Serial",
+			FunctionDescriptor.of(ADDRESS, JAVA_LONG));
+	static final MethodHandle N_VDestroy_Serial = downcall("N_VDestroy_Serial",
+			FunctionDescriptor.ofVoid(ADDRESS));
+	static final MethodHandle N_VGetLength_Serial = downcall("N_VGetLength_Serial",
+			FunctionDescriptor.of(JAVA_LONG, ADDRESS));
+	static final MethodHandle N_VGetArrayPointer_Serial = downcall("N_VGetArrayPointer_Serial",
+			FunctionDescriptor.of(ADDRESS, ADDRESS));
+
+	// wrap exceptions thrown by invokeExact, native functions do not throw
+	private static RuntimeException rethrow(Throwable t) {
+		if (t instanceof RuntimeException) return (RuntimeException) t;
+		if (t instanceof Error) throw (Error) t;
+		return new RuntimeException(t);
+	}
+
+	/**
+	 * The function CVodeCreate instantiates a CVODE solver object and specifies
+	 * the linear multistep method (CV_ADAMS or CV_BDF). Since SUNDIALS 4.0 the
+	 * nonlinear solver is no longer selected here.
+	 * @return pointer to the CVODE memory block, or NULL
+	 */
+	public static MemorySegment CVodeCreate(int lmm) {
+		try {
+			return (MemorySegment) CVodeCreate.invokeExact(lmm);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	public static int CVodeInit(MemorySegment cvode_mem, MemorySegment f, double t0, MemorySegment y0) {
+		try {
+			return (int) CVodeInit.invokeExact(cvode_mem, f, t0, y0);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	public static int CVodeReInit(MemorySegment cvode_mem, double t0, MemorySegment y0) {
+		try {
+			return (int) CVodeReInit.invokeExact(cvode_mem, t0, y0);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	/**
+	 * Free the CVODE memory block. Expects a pointer to the pointer returned
+	 * by CVodeCreate.
+	 */
+	public static void CVodeFree(MemorySegment p_cvode_mem) {
+		try {
+			CVodeFree.invokeExact(p_cvode_mem);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	public static int CVodeSStolerances(MemorySegment cvode_mem, double reltol, double abstol) {
+		try {
+			return (int) CVodeSStolerances.invokeExact(cvode_mem, reltol, abstol);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	public static int CVodeSVtolerances(MemorySegment cvode_mem, double reltol, MemorySegment abstol) {
+		try {
+			return (int) CVodeSVtolerances.invokeExact(cvode_mem, reltol, abstol);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	public static int CVodeSetInitStep(MemorySegment cvode_mem, double hin) {
+		try {
+			return (int) CVodeSetInitStep.invokeExact(cvode_mem, hin);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	public static int CVodeGetLastStep(MemorySegment cvode_mem, MemorySegment hlast) {
+		try {
+			return (int) CVodeGetLastStep.invokeExact(cvode_mem, hlast);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	public static int CVodeSetStopTime(MemorySegment cvode_mem, double tstop) {
+		try {
+			return (int) CVodeSetStopTime.invokeExact(cvode_mem, tstop);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	public static int CVodeGetLastOrder(MemorySegment cvode_mem, MemorySegment qlast) {
+		try {
+			return (int) CVodeGetLastOrder.invokeExact(cvode_mem, qlast);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	public static int CVodeGetCurrentTime(MemorySegment cvode_mem, MemorySegment tcur) {
+		try {
+			return (int) CVodeGetCurrentTime.invokeExact(cvode_mem, tcur);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	/**
+	 * Compute the k-th derivative of the interpolating polynomial at time t,
+	 * which must lie within the last internal step, into the vector dky.
+	 */
+	public static int CVodeGetDky(MemorySegment cvode_mem, double t, int k, MemorySegment dky) {
+		try {
+			return (int) CVodeGetDky.invokeExact(cvode_mem, t, k, dky);
+		} catch (Throwable t1) {
+			throw rethrow(t1);
+		}
+	}
+
+	public static int CVodeRootInit(MemorySegment cvode_mem, int nrtfn, MemorySegment g) {
+		try {
+			return (int) CVodeRootInit.invokeExact(cvode_mem, nrtfn, g);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	public static int CVodeSetLinearSolver(MemorySegment cvode_mem, MemorySegment LS, MemorySegment A) {
+		try {
+			return (int) CVodeSetLinearSolver.invokeExact(cvode_mem, LS, A);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	public static int CVode(MemorySegment cvode_mem, double tout,
+			MemorySegment yout, MemorySegment tret, int itask) {
+		try {
+			return (int) CVode.invokeExact(cvode_mem, tout, yout, tret, itask);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	// 0 - no root, +1 - increasing root, -1 - decreasing root
+	public static int CVodeGetRootInfo(MemorySegment cvode_mem, MemorySegment rootsfound) {
+		try {
+			return (int) CVodeGetRootInfo.invokeExact(cvode_mem, rootsfound);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	public static String CVodeGetReturnFlagName(int flag) {
+		try {
+			MemorySegment name = C_LONG.byteSize() == 8
+					? (MemorySegment) CVodeGetReturnFlagName.invokeExact((long) flag)
+					: (MemorySegment) CVodeGetReturnFlagName.invokeExact(flag);
+			return name.reinterpret(Long.MAX_VALUE).getString(0);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	public static MemorySegment SUNDenseMatrix(long M, long N) {
+		try {
+			return (MemorySegment) SUNDenseMatrix.invokeExact(M, N);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	public static MemorySegment SUNLinSol_Dense(MemorySegment y, MemorySegment A) {
+		try {
+			return (MemorySegment) SUNLinSol_Dense.invokeExact(y, A);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	public static MemorySegment SUNBandMatrix(long N, long mu, long ml) {
+		try {
+			return (MemorySegment) SUNBandMatrix.invokeExact(N, mu, ml);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	public static MemorySegment SUNLinSol_Band(MemorySegment y, MemorySegment A) {
+		try {
+			return (MemorySegment) SUNLinSol_Band.invokeExact(y, A);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	public static void SUNMatDestroy(MemorySegment A) {
+		try {
+			SUNMatDestroy.invokeExact(A);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	public static int SUNLinSolFree(MemorySegment LS) {
+		try {
+			return (int) SUNLinSolFree.invokeExact(LS);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	public static MemorySegment N_VNew_Serial(long vec_length) {
+		try {
+			return (MemorySegment) N_VNew_Serial.invokeExact(vec_length);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	public static void N_VDestroy_Serial(MemorySegment v) {
+		try {
+			N_VDestroy_Serial.invokeExact(v);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	public static long N_VGetLength_Serial(MemorySegment v) {
+		try {
+			return (long) N_VGetLength_Serial.invokeExact(v);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	/**
+	 * Return the elements of the serial vector v as segment of
+	 * N_VGetLength_Serial(v) doubles.
+	 */
+	public static MemorySegment N_VGetData_Serial(MemorySegment v) {
+		try {
+			MemorySegment data = (MemorySegment) N_VGetArrayPointer_Serial.invokeExact(v);
+			return data.reinterpret(JAVA_DOUBLE.byteSize() * N_VGetLength_Serial(v));
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	/**
+	 * Create a function pointer for f, which stays valid until arena is closed.
+	 */
+	public static MemorySegment upcallStub(CVRhsFnForeign f, Arena arena) {
+		try {
+			MethodHandle target = MethodHandles.lookup().findVirtual(CVRhsFnForeign.class, "callback",
+					RHS_FN.toMethodType()).bindTo(f);
+			return LINKER.upcallStub(target, RHS_FN, arena);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Create a function pointer for g, which stays valid until arena is closed.
+	 */
+	public static MemorySegment upcallStub(CVRootFnForeign g, Arena arena) {
+		try {
+			MethodHandle target = MethodHandles.lookup().findVirtual(CVRootFnForeign.class, "callback",
+					ROOT_FN.toMethodType()).bindTo(g);
+			return LINKER.upcallStub(target, ROOT_FN, arena);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,14 @@
+package de.grogra.numeric.cvode;
+
+import java.lang.foreign.MemorySegment;
+
+/**
+ * This function computes the ODE right-hand side for a given value of the
+ * independent variable t and state vector y.
+ * 
+ * Upcall variant of {@linkplain CVRhsFn} for the java.lang.foreign backend,
+ * see {@linkplain CVODEForeign#upcallStub(CVRhsFnForeign, java.lang.foreign.Arena)}.
+ */
+public interface CVRhsFnForeign {
+	int callback(double t, MemorySegment y, MemorySegment ydot, MemorySegment user_data);
+}
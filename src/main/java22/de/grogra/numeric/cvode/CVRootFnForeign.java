@@ -0,0 +1,14 @@
+package de.grogra.numeric.cvode;
+
+import java.lang.foreign.MemorySegment;
+
+/**
+ * This function implements a vector-valued function g(t, y) such that the
+ * roots of the nrtfn components gi(t, y) are sought.
+ * 
+ * Upcall variant of {@linkplain CVRootFn} for the java.lang.foreign backend,
+ * see {@linkplain CVODEForeign#upcallStub(CVRootFnForeign, java.lang.foreign.Arena)}.
+ */
+public interface CVRootFnForeign {
+	int callback(double t, MemorySegment y, MemorySegment gout, MemorySegment user_data);
+}
@@ -0,0 +1,108 @@
+package fdm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import de.grogra.numeric.BDFSolver;
+import de.grogra.numeric.CVodeAdapter;
+import de.grogra.numeric.Monitor;
+import de.grogra.numeric.ODE;
+import de.grogra.numeric.fdm.BoundaryCondition;
+import de.grogra.numeric.fdm.Grid;
+import de.grogra.numeric.fdm.MethodOfLines;
+
+public class BDFSolverTest {
+
+	@Test
+	public void linearDecay() throws Exception {
+		BDFSolver solver = new BDFSolver();
+		solver.setRelTolDefault(1e-8);
+		solver.setAbsTolDefault(1e-10);
+		double[] y = { 1, 2 };
+		solver.integrate((ODE) (rate, t, s) -> {
+			rate[0] = -s[0];
+			rate[1] = -3 * s[1];
+		}, 0, y, 2, y);
+		assertEquals(Math.exp(-2), y[0], 1e-6);
+		assertEquals(2 * Math.exp(-6), y[1], 1e-6);
+		// higher orders are used on smooth solutions
+		assertTrue(solver.getStepCount() < 300);
+	}
+
+	@Test
+	public void robertson() throws Exception {
+		BDFSolver solver = new BDFSolver();
+		solver.setRelTolDefault(1e-6);
+		solver.setTolerances(new double[] { 1e-8, 1e-12, 1e-8 }, null);
+		double[] y = { 1, 0, 0 };
+		solver.integrate((ODE) (rate, t, s) -> {
+			rate[0] = -0.04 * s[0] + 1e4 * s[1] * s[2];
+			rate[2] = 3e7 * s[1] * s[1];
+			rate[1] = -rate[0] - rate[2];
+		}, 0, y, 40, y);
+		assertEquals(0.7158271, y[0], 1e-4);
+		assertEquals(9.185535e-6, y[1], 1e-9);
+		assertEquals(0.2841637, y[2], 1e-4);
+		// an explicit method would need millions of steps
+		assertTrue(solver.getStepCount() < 1000);
+	}
+
+	@Test
+	public void bandMatchesDense() throws Exception {
+		int n = 40;
+		Grid grid = Grid.line(n, 1.0 / n, 1);
+		MethodOfLines mol = new MethodOfLines(grid).addDiffusion(0, 1);
+		mol.setBoundary(BoundaryCondition.dirichlet(0));
+		double[] y0 = new double[n];
+		// eigenvector of the discrete Laplacian with zero ghost values
+		for (int i = 0; i < n; i++) y0[i] = Math.sin(Math.PI * (i + 1) / (n + 1));
+
+		BDFSolver dense = new BDFSolver();
+		double[] yd = new double[n];
+		dense.integrate(mol, 0, y0, 0.1, yd);
+
+		BDFSolver band = new BDFSolver();
+		Map<Object, Object> options = new HashMap<>();
+		options.put(CVodeAdapter.Options.LINEAR_SOLVER, CVodeAdapter.LinearSolver.BAND);
+		band.setOptions(options);
+		double[] yb = new double[n];
+		band.integrate(mol, 0, y0, 0.1, yb);
+
+		for (int i = 0; i < n; i++) {
+			assertEquals(yd[i], yb[i], 1e-5);
+		}
+		double lambda = 4.0 * n * n * Math.pow(Math.sin(Math.PI / (2 * (n + 1))), 2);
+		for (int i = 0; i < n; i++) {
+			assertEquals(y0[i] * Math.exp(-lambda * 0.1), yb[i], 1e-5);
+		}
+	}
+
+	@Test
+	public void monitorStopsAtEvent() throws Exception {
+		BDFSolver solver = new BDFSolver();
+		solver.setRelTolDefault(1e-8);
+		solver.setAbsTolDefault(1e-10);
+		final double[] event = new double[1];
+		solver.setMonitor(1, new Monitor() {
+			@Override
+			public void g(double[] out, double t, double[] y) {
+				out[0] = y[0] - 0.5;
+			}
+
+			@Override
+			public boolean handleEvent(int i, double t, double[] y) {
+				event[0] = t;
+				return true;
+			}
+		});
+		double[] y = { 1 };
+		solver.integrate((ODE) (rate, t, s) -> rate[0] = -s[0], 0, y, 5, y);
+		assertEquals(Math.log(2), event[0], 1e-6);
+		assertEquals(0.5, y[0], 1e-6);
+	}
+}
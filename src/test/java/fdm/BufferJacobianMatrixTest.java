@@ -0,0 +1,42 @@
+package fdm;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.DoubleBuffer;
+
+import org.junit.Test;
+
+import de.grogra.numeric.BufferJacobianMatrix;
+
+public class BufferJacobianMatrixTest {
+
+	@Test
+	public void denseIsColumnMajor() {
+		double[] data = new double[9];
+		BufferJacobianMatrix J = new BufferJacobianMatrix(DoubleBuffer.wrap(data), 3);
+		J.set(2, 1, 5);
+		J.add(2, 1, 1);
+		assertEquals(6, data[1 * 3 + 2], 0);
+		assertEquals(6, J.get(2, 1), 0);
+	}
+
+	@Test
+	public void bandUsesStoredUpperBandwidth() {
+		// N = 5, mu = 1, ml = 2, smu = mu + ml as allocated by SUNBandMatrix
+		int N = 5, mu = 1, ml = 2, smu = 3, ldim = smu + ml + 1;
+		double[] data = new double[N * ldim];
+		BufferJacobianMatrix J = new BufferJacobianMatrix(DoubleBuffer.wrap(data), N, ldim, smu, mu, ml);
+		for (int j = 0; j < N; j++)
+			for (int i = Math.max(0, j - mu); i <= Math.min(N - 1, j + ml); i++)
+				J.set(i, j, 10 * i + j);
+		for (int j = 0; j < N; j++)
+			for (int i = Math.max(0, j - mu); i <= Math.min(N - 1, j + ml); i++)
+				assertEquals(10 * i + j, data[j * ldim + i - j + smu], 0);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void bandRejectsElementsOutsideBand() {
+		BufferJacobianMatrix J = new BufferJacobianMatrix(DoubleBuffer.wrap(new double[5 * 4]), 5, 4, 2, 1, 1);
+		J.set(0, 2, 1);
+	}
+}
@@ -0,0 +1,26 @@
+package fdm;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.Test;
+
+import de.grogra.numeric.CVodeBackend;
+
+public class CVodeBackendTest {
+
+	@After
+	public void clearProperty() {
+		System.clearProperty(CVodeBackend.PROPERTY);
+	}
+
+	@Test
+	public void defaultFromProperty() {
+		assertEquals(CVodeBackend.JNA, CVodeBackend.getDefault());
+		System.setProperty(CVodeBackend.PROPERTY, " ffm ");
+		assertEquals(CVodeBackend.FFM, CVodeBackend.getDefault());
+		// unknown values fall back to JNA
+		System.setProperty(CVodeBackend.PROPERTY, "jni");
+		assertEquals(CVodeBackend.JNA, CVodeBackend.getDefault());
+	}
+}
@@ -0,0 +1,123 @@
+package fdm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import de.grogra.numeric.CVodeCheckpoint;
+
+public class CVodeCheckpointTest {
+
+	// derivatives of order 0 to 2 of a state of dimension 2
+	static final double[][] DERIVATIVES = { { 1, -2 }, { 0.5, 3 }, { 40, -8 } };
+
+	// write a checkpoint file in the documented format
+	static byte[] createFile(double[][] derivatives, double lastStep) {
+		final int n = derivatives[0].length;
+		ByteBuffer b = ByteBuffer.allocate(16 + 16 + 6 * 8 + derivatives.length * 8 * n)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		b.putInt(0x4B435643).putInt(1).putInt(n).putInt(derivatives.length - 1);
+		b.putDouble(2.5).putDouble(lastStep);
+		for (long c = 1; c <= 6; c++) {
+			b.putLong(10 * c);
+		}
+		for (double[] d : derivatives) {
+			for (double v : d) {
+				b.putDouble(v);
+			}
+		}
+		return b.array();
+	}
+
+	static CVodeCheckpoint read(byte[] content) throws IOException {
+		Path file = Files.createTempFile("checkpoint", ".bin");
+		try {
+			Files.write(file, content);
+			return CVodeCheckpoint.read(file);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void writeAndReadRoundTrip() throws Exception {
+		byte[] content = createFile(DERIVATIVES, -0.25);
+		CVodeCheckpoint c = read(content);
+		assertEquals(2.5, c.getTime(), 0);
+		assertEquals(-0.25, c.getLastStep(), 0);
+		assertEquals(2, c.getDimension());
+		assertEquals(2, c.getOrder());
+		assertArrayEquals(DERIVATIVES[0], c.getState(), 0);
+		assertArrayEquals(DERIVATIVES[2], c.getDerivative(2), 0);
+		assertEquals(10, c.getStatistics().getStepCount());
+		assertEquals(60, c.getStatistics().getRootEvaluations());
+		assertEquals(2, c.getStatistics().getOrder());
+
+		Path file = Files.createTempFile("checkpoint", ".bin");
+		try {
+			c.write(file);
+			assertArrayEquals(content, Files.readAllBytes(file));
+			// replaces the previous checkpoint
+			c.write(file);
+			assertArrayEquals(content, Files.readAllBytes(file));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void readRejectsTruncatedOrCorruptFiles() throws Exception {
+		byte[] content = createFile(DERIVATIVES, 0.25);
+		byte[][] invalid = { Arrays.copyOf(content, content.length - 8), Arrays.copyOf(content, 40),
+				Arrays.copyOf(content, content.length + 8), content.clone(), content.clone() };
+		// wrong magic number and version
+		invalid[3][0]++;
+		invalid[4][4]++;
+		for (byte[] b : invalid) {
+			try {
+				read(b);
+				fail("accepted invalid checkpoint of " + b.length + " bytes");
+			} catch (IOException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void restartStepMeetsTolerances() throws Exception {
+		CVodeCheckpoint c = read(createFile(DERIVATIVES, -0.25));
+		final double relTol = 1e-4, absTol = 1e-6;
+		double e0 = 40 / (relTol * 1 + absTol);
+		double e1 = -8 / (relTol * 2 + absTol);
+		double norm = Math.sqrt((e0 * e0 + e1 * e1) / 2);
+		double h = c.getRestartStep(relTol, absTol, null);
+		assertEquals(0.5 * Math.sqrt(2 / norm), h, 1e-15);
+		// local error h^2 / 2 * y'' is the tolerance times the squared safety factor
+		assertEquals(0.25, h * h / 2 * norm, 1e-12);
+
+		// absolute tolerance per element, zero takes the scalar one
+		double[] absTolVector = { 1e-2, 0 };
+		e0 = 40 / (relTol * 1 + 1e-2);
+		norm = Math.sqrt((e0 * e0 + e1 * e1) / 2);
+		assertEquals(0.5 * Math.sqrt(2 / norm), c.getRestartStep(relTol, absTol, absTolVector), 1e-15);
+
+		// limited by the last step size
+		assertEquals(0.25, c.getRestartStep(1e3, 1e3, null), 0);
+	}
+
+	@Test
+	public void restartStepWithoutSecondDerivative() throws Exception {
+		CVodeCheckpoint c = read(createFile(Arrays.copyOf(DERIVATIVES, 2), -0.25));
+		assertEquals(1, c.getOrder());
+		assertEquals(0.25, c.getRestartStep(1e-4, 1e-6, null), 0);
+	}
+}
@@ -0,0 +1,68 @@
+package fdm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import de.grogra.numeric.BDFSolver;
+import de.grogra.numeric.CVodeAdapter;
+import de.grogra.numeric.CVodeAdapter.Options;
+import de.grogra.numeric.CVodeOptions;
+
+public class CVodeOptionsTest {
+
+	@Test
+	public void mapSetsTypedOptions() {
+		Map<Options, Object> map = new EnumMap<>(Options.class);
+		map.put(Options.MAX_STEPS, 5000);
+		map.put(Options.MAX_STEP, 0.5);
+		map.put(Options.MAX_ORDER, 2);
+		map.put(Options.STABILITY_LIMIT_DETECTION, true);
+		map.put(Options.MAX_STEPS_BETWEEN_JACOBIANS, 200L);
+		map.put(Options.UPPER_BANDWIDTH, 1);
+		CVodeAdapter adapter = new CVodeAdapter();
+		adapter.setOptions(map);
+		CVodeOptions o = adapter.getCVodeOptions();
+		assertEquals(5000, o.getMaxSteps());
+		assertEquals(0.5, o.getMaxStep(), 0);
+		assertEquals(2, o.getMaxOrder());
+		assertTrue(o.isStabilityLimitDetection());
+		assertEquals(200, o.getMaxStepsBetweenJacobians());
+		assertEquals(CVodeAdapter.LinearSolver.BAND, adapter.getLinearSolver());
+
+		CVodeOptions copy = new CVodeOptions(o);
+		assertEquals(o, copy);
+		copy.setMaxOrder(0);
+		assertNotEquals(o, copy);
+
+		BDFSolver bdf = new BDFSolver();
+		bdf.setOptions(map);
+		assertEquals(5000, bdf.getMaxSteps());
+		assertEquals(0.5, bdf.getMaxStep(), 0);
+		assertEquals(2, bdf.getMaxOrder());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsOrderOutOfRange() {
+		new CVodeOptions().setMaxOrder(6);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsInconsistentStepBounds() {
+		CVodeOptions o = new CVodeOptions();
+		o.setMaxStep(1);
+		o.setMinStep(2);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsWrongValueType() {
+		Map<Options, Object> map = new EnumMap<>(Options.class);
+		map.put(Options.MAX_STEPS, "many");
+		new CVodeAdapter().setOptions(map);
+	}
+}
@@ -0,0 +1,85 @@
+package fdm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.apache.commons.math.ode.sampling.StepInterpolator;
+import org.junit.Test;
+
+import de.grogra.numeric.CVodeStepInterpolator;
+
+public class CVodeStepInterpolatorTest {
+
+	// derivatives of order 0 to 2 at the end of the step t = 2
+	static final double[][] DERIVATIVES = { { 1, 2 }, { 3, -1 }, { 4, 0.5 } };
+
+	// create a copy of a step from 1.5 to 2 in the external format
+	static CVodeStepInterpolator createCopy() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeDouble(1.5);
+			out.writeDouble(2);
+			out.writeDouble(2);
+			out.writeDouble(2);
+			out.writeInt(DERIVATIVES.length);
+			out.writeInt(DERIVATIVES[0].length);
+			for (double[] d : DERIVATIVES) {
+				for (double v : d) {
+					out.writeDouble(v);
+				}
+			}
+		}
+		CVodeStepInterpolator c = new CVodeStepInterpolator();
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			c.readExternal(in);
+		}
+		return c;
+	}
+
+	// check state and derivative against the Taylor polynomial of DERIVATIVES
+	static void checkInterior(StepInterpolator c) throws Exception {
+		assertEquals(1.5, c.getPreviousTime(), 0);
+		assertEquals(2, c.getCurrentTime(), 0);
+		assertTrue(c.isForward());
+		for (double t = 1.5; t <= 2; t += 0.125) {
+			c.setInterpolatedTime(t);
+			double s = t - 2;
+			double[] y = c.getInterpolatedState();
+			double[] yd = c.getInterpolatedDerivatives();
+			for (int i = 0; i < 2; i++) {
+				assertEquals(DERIVATIVES[0][i] + DERIVATIVES[1][i] * s + DERIVATIVES[2][i] * s * s / 2, y[i], 1e-14);
+				assertEquals(DERIVATIVES[1][i] + DERIVATIVES[2][i] * s, yd[i], 1e-14);
+			}
+		}
+		c.setInterpolatedTime(2);
+		assertArrayEquals(DERIVATIVES[0], c.getInterpolatedState(), 0);
+	}
+
+	@Test
+	public void copyEvaluatesTaylorPolynomial() throws Exception {
+		CVodeStepInterpolator c = createCopy();
+		checkInterior(c);
+		// copies of copies share the polynomial, but not the interpolated time
+		StepInterpolator copy = c.copy();
+		c.setInterpolatedTime(1.5);
+		assertEquals(2, copy.getInterpolatedTime(), 0);
+		checkInterior(copy);
+	}
+
+	@Test
+	public void serializationRoundTrip() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(createCopy());
+		}
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			checkInterior((StepInterpolator) in.readObject());
+		}
+	}
+}
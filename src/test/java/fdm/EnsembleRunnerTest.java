@@ -0,0 +1,110 @@
+package fdm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.commons.math.ode.nonstiff.DormandPrince853Integrator;
+import org.junit.Test;
+
+import de.grogra.numeric.EnsembleRunner;
+import de.grogra.numeric.FirstOrderIntegratorAdapter;
+import de.grogra.numeric.NumericException;
+import de.grogra.numeric.ODE;
+
+public class EnsembleRunnerTest {
+
+	@Test
+	public void decayEnsemble() throws Exception {
+		final int runs = 200;
+		double[][] params = new double[runs][];
+		double[][] y0 = new double[runs][];
+		for (int r = 0; r < runs; r++) {
+			params[r] = new double[] { 0.01 * r };
+			y0[r] = new double[] { 1 + r, 2 * (1 + r) };
+		}
+		double[] out = new double[runs * 2];
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try (EnsembleRunner runner = new EnsembleRunner(
+				() -> new FirstOrderIntegratorAdapter(new DormandPrince853Integrator(1e-8, 1, 1e-12, 1e-12)),
+				pool)) {
+			runner.run(p -> (ODE) (rate, t, y) -> {
+				rate[0] = -p[0] * y[0];
+				rate[1] = -2 * p[0] * y[1];
+			}, params, y0, 0, 2, out);
+		} finally {
+			pool.shutdown();
+		}
+
+		for (int r = 0; r < runs; r++) {
+			double k = params[r][0];
+			assertEquals(y0[r][0] * Math.exp(-2 * k), out[2 * r], 1e-8);
+			assertEquals(y0[r][1] * Math.exp(-4 * k), out[2 * r + 1], 1e-8);
+		}
+	}
+
+	// records which solvers are open
+	static class ClosingSolver extends FirstOrderIntegratorAdapter {
+		final Set<ClosingSolver> open;
+
+		ClosingSolver(Set<ClosingSolver> open) {
+			super(new DormandPrince853Integrator(1e-8, 1, 1e-10, 1e-10));
+			this.open = open;
+			open.add(this);
+		}
+
+		@Override
+		public void integrate(ODE ode, double t0, double[] y0, double t1, double[] y1)
+				throws NumericException {
+			assertTrue("solver used after close", open.contains(this));
+			super.integrate(ode, t0, y0, t1, y1);
+		}
+
+		@Override
+		public void close() {
+			open.remove(this);
+		}
+	}
+
+	@Test
+	public void runAfterCloseUsesNewSolvers() throws Exception {
+		final Set<ClosingSolver> open = Collections.newSetFromMap(new ConcurrentHashMap<>());
+		double[][] y0 = new double[50][];
+		for (int r = 0; r < y0.length; r++) {
+			y0[r] = new double[] { r };
+		}
+		double[] out = new double[y0.length];
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			EnsembleRunner runner = new EnsembleRunner(() -> new ClosingSolver(open), pool);
+			for (int k = 0; k < 3; k++) {
+				runner.run(p -> (ODE) (rate, t, y) -> rate[0] = -y[0], null, y0, 0, 1, out);
+				runner.close();
+				assertEquals(0, open.size());
+			}
+			for (int r = 0; r < y0.length; r++) {
+				assertEquals(r * Math.exp(-1), out[r], 1e-8);
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsStatesExceedingOneArray() throws Exception {
+		// 2^16 runs of dimension 2^15 share one initial state
+		double[][] y0 = new double[1 << 16][];
+		Arrays.fill(y0, new double[1 << 15]);
+		try (EnsembleRunner runner = new EnsembleRunner(
+				() -> new FirstOrderIntegratorAdapter(new DormandPrince853Integrator(1e-8, 1, 1e-10, 1e-10)))) {
+			runner.run(p -> (ODE) (rate, t, y) -> {
+			}, null, y0, 0, 1, new double[0]);
+		}
+	}
+}
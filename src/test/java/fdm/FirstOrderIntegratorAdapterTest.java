@@ -0,0 +1,205 @@
+package fdm;
+
+import static de.grogra.numeric.FirstOrderIntegratorAdapter.CONVERGENCE;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.math.ode.nonstiff.DormandPrince853Integrator;
+import org.junit.Test;
+
+import de.grogra.numeric.FirstOrderIntegratorAdapter;
+import de.grogra.numeric.FirstOrderIntegratorAdapter.EventMode;
+import de.grogra.numeric.Monitor;
+import de.grogra.numeric.ODE;
+
+public class FirstOrderIntegratorAdapterTest {
+
+	static final ODE CLOCK = (rate, t, y) -> rate[0] = 1;
+
+	static FirstOrderIntegratorAdapter createSolver() {
+		return new FirstOrderIntegratorAdapter(
+				new DormandPrince853Integrator(0, Double.POSITIVE_INFINITY, 1e-10, 1e-10));
+	}
+
+	@Test
+	public void manyMonitorsTriggerInOrder() throws Exception {
+		final int n = 50;
+		final List<Integer> events = new ArrayList<>();
+		final List<Double> times = new ArrayList<>();
+		FirstOrderIntegratorAdapter solver = createSolver();
+		solver.setMonitor(n, new Monitor() {
+			@Override
+			public void g(double[] out, double t, double[] y) {
+				// thresholds in reverse order of the index
+				for (int i = 0; i < n; i++) {
+					out[i] = y[0] - 0.1 * (n - i);
+				}
+			}
+
+			@Override
+			public boolean handleEvent(int i, double t, double[] y) {
+				events.add(i);
+				times.add(y[0]);
+				return false;
+			}
+		});
+		double[] y = { 0 };
+		solver.integrate(CLOCK, 0, y, 6, y);
+		assertEquals(6, y[0], 1e-8);
+		assertEquals(n, events.size());
+		for (int k = 0; k < n; k++) {
+			assertEquals(n - 1 - k, (int) events.get(k));
+			assertEquals(0.1 * (k + 1), times.get(k), 1e-3);
+		}
+	}
+
+	@Test
+	public void monitorTriggersOnEveryCrossing() throws Exception {
+		final List<Double> times = new ArrayList<>();
+		FirstOrderIntegratorAdapter solver = createSolver();
+		solver.setMonitor(2, new Monitor() {
+			@Override
+			public void g(double[] out, double t, double[] y) {
+				out[0] = Math.sin(Math.PI * y[0]);
+				// never crosses
+				out[1] = 1 + y[0];
+			}
+
+			@Override
+			public boolean handleEvent(int i, double t, double[] y) {
+				assertEquals(0, i);
+				times.add(t);
+				// stop at the fourth crossing
+				return times.size() == 4;
+			}
+		});
+		double[] y = { 0.5 };
+		solver.integrate(CLOCK, 0.5, y, 10, y);
+		assertEquals(4, times.size());
+		for (int k = 0; k < 4; k++) {
+			assertEquals(k + 1, times.get(k), 1e-3);
+		}
+		assertEquals(4, y[0], 1e-3);
+	}
+
+	@Test
+	public void triggeringDoesNotDependOnScaleOfMonitor() throws Exception {
+		final List<Integer> events = new ArrayList<>();
+		FirstOrderIntegratorAdapter solver = createSolver();
+		solver.setMonitor(3, new Monitor() {
+			@Override
+			public void g(double[] out, double t, double[] y) {
+				out[0] = y[0] - 1;
+				// close to zero at the event, but never crosses
+				out[1] = 1e-6 * (1 + (y[0] - 1) * (y[0] - 1));
+				// large scale, crosses at the same time
+				out[2] = 1e6 * (y[0] - 1);
+			}
+
+			@Override
+			public boolean handleEvent(int i, double t, double[] y) {
+				events.add(i);
+				return false;
+			}
+		});
+		double[] y = { 0 };
+		solver.integrate(CLOCK, 0, y, 3, y);
+		assertEquals(2, events.size());
+		assertTrue(events.contains(0));
+		assertTrue(events.contains(2));
+	}
+
+	@Test
+	public void continuingGivesSameResultsAsRestarting() throws Exception {
+		List<Double> restart = new ArrayList<>();
+		List<Double> resume = new ArrayList<>();
+		int[] restartRates = new int[1];
+		int[] resumeRates = new int[1];
+		double[] y0 = integrateOscillator(EventMode.RESTART, restart, restartRates);
+		double[] y1 = integrateOscillator(EventMode.CONTINUE, resume, resumeRates);
+		// events are located within the convergence of the root search
+		assertArrayEquals(y0, y1, CONVERGENCE);
+		assertEquals(restart.size(), resume.size());
+		for (int k = 0; k < restart.size(); k++) {
+			assertEquals(restart.get(k), resume.get(k), CONVERGENCE);
+		}
+		// step size is kept instead of estimated anew after each event
+		assertTrue(resumeRates[0] < restartRates[0]);
+	}
+
+	// integrate a harmonic oscillator, recording index and time of every
+	// crossing of zero and of +-0.5, until the sixth crossing of 0.5 upwards
+	static double[] integrateOscillator(EventMode mode, final List<Double> events, final int[] rates)
+			throws Exception {
+		FirstOrderIntegratorAdapter solver = createSolver();
+		solver.setEventMode(mode);
+		solver.setMonitor(3, new Monitor() {
+			int count;
+
+			@Override
+			public void g(double[] out, double t, double[] y) {
+				out[0] = y[0];
+				out[1] = y[0] - 0.5;
+				out[2] = y[0] + 0.5;
+			}
+
+			@Override
+			public boolean handleEvent(int i, double t, double[] y) {
+				events.add((double) i);
+				events.add(t);
+				return i == 1 && y[1] > 0 && ++count == 6;
+			}
+		});
+		double[] y = { 0.1, 1 };
+		solver.integrate((ODE) (rate, t, s) -> {
+			rates[0]++;
+			rate[0] = s[1];
+			rate[1] = -s[0];
+		}, 0, y, 100, y);
+		double[] result = { y[0], y[1], events.get(events.size() - 1) };
+		// 3 crossings per half period, the sixth upward one at the latest
+		assertTrue(events.size() >= 2 * 3 * 10);
+		return result;
+	}
+
+	@Test
+	public void coincidentRootsAreReportedOnceInBothModes() throws Exception {
+		for (EventMode mode : EventMode.values()) {
+			final List<Integer> events = new ArrayList<>();
+			final List<Double> times = new ArrayList<>();
+			FirstOrderIntegratorAdapter solver = createSolver();
+			solver.setEventMode(mode);
+			solver.setMonitor(3, new Monitor() {
+				@Override
+				public void g(double[] out, double t, double[] y) {
+					// two identical functions and one of another scale with the same roots
+					out[0] = Math.sin(Math.PI * y[0]);
+					out[1] = Math.sin(Math.PI * y[0]);
+					out[2] = 1e3 * Math.sin(Math.PI * y[0]);
+				}
+
+				@Override
+				public boolean handleEvent(int i, double t, double[] y) {
+					events.add(i);
+					times.add(t);
+					return false;
+				}
+			});
+			double[] y = { 0.5 };
+			solver.integrate(CLOCK, 0.5, y, 4.75, y);
+			assertEquals(4.75, y[0], 1e-8);
+			// roots at 1, 2, 3 and 4, each reported once per function
+			assertEquals(mode.toString(), 12, events.size());
+			for (int k = 0; k < 4; k++) {
+				for (int i = 0; i < 3; i++) {
+					assertTrue(mode.toString(), events.subList(3 * k, 3 * k + 3).contains(i));
+					assertEquals(k + 1, times.get(3 * k + i), CONVERGENCE);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package fdm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.DoubleBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import de.grogra.numeric.ParallelODE;
+import de.grogra.numeric.SparsityPattern;
+import de.grogra.numeric.fdm.BoundaryCondition;
+import de.grogra.numeric.fdm.Grid;
+import de.grogra.numeric.fdm.MethodOfLines;
+import de.grogra.numeric.fdm.PointReaction;
+
+public class MethodOfLinesTest {
+
+	@Test
+	public void diffusionMatchesHandWrittenLoop() {
+		int n = 50;
+		double h = 0.1, D = 2;
+		Grid grid = Grid.line(n, h, 1);
+		MethodOfLines mol = new MethodOfLines(grid).addDiffusion(0, D);
+		mol.setBoundary(0, 0, BoundaryCondition.dirichlet(1));
+		mol.setBoundary(0, 1, BoundaryCondition.neumann(0.5));
+
+		double[] y = new double[n];
+		for (int i = 0; i < n; i++) y[i] = Math.cos(0.3 * i);
+		double[] out = new double[n];
+		mol.getRate(out, 0, y);
+
+		for (int i = 0; i < n; i++) {
+			double l = i > 0 ? y[i - 1] : 1;
+			double r = i < n - 1 ? y[i + 1] : y[n - 2] + 2 * h * 0.5;
+			assertEquals(D * (l - 2 * y[i] + r) / (h * h), out[i], 1e-9);
+		}
+	}
+
+	@Test
+	public void reactionDiffusionOn2DGrid() {
+		int nx = 12, ny = 7;
+		Grid grid = Grid.plane(nx, ny, 1, 1, 2);
+		MethodOfLines mol = new MethodOfLines(grid).addDiffusion(0, 1).addDiffusion(1, 3);
+		mol.setReaction(new PointReaction() {
+			@Override
+			public void getRate(double[] out, double t, double[] state, int offset) {
+				out[offset] = -state[offset] * state[offset + 1];
+				out[offset + 1] = state[offset];
+			}
+		});
+
+		// constant fields do not diffuse under no-flux conditions
+		double[] y = new double[grid.size()];
+		for (int p = 0; p < y.length; p += 2) {
+			y[p] = 2;
+			y[p + 1] = 3;
+		}
+		double[] out = new double[y.length];
+		mol.getRate(out, 0, y);
+		for (int p = 0; p < y.length; p += 2) {
+			assertEquals(-6, out[p], 1e-12);
+			assertEquals(2, out[p + 1], 1e-12);
+		}
+
+		// neighbours along y are one row (nx points of 2 components) apart
+		SparsityPattern pattern = mol.getSparsityPattern();
+		assertEquals(2 * nx, pattern.getUpperBandwidth());
+		assertEquals(2 * nx, pattern.getLowerBandwidth());
+		assertTrue(pattern.isNonZero(grid.index(3, 2, 0, 1), grid.index(3, 2, 0, 0)));
+		assertTrue(pattern.isNonZero(grid.index(3, 2, 0, 0), grid.index(3, 3, 0, 0)));
+		assertTrue(!pattern.isNonZero(grid.index(3, 2, 0, 0), grid.index(3, 3, 0, 1)));
+	}
+
+	@Test
+	public void periodicAdvectionWrapsAround() {
+		int n = 20;
+		Grid grid = Grid.line(n, 0.5, 1);
+		MethodOfLines mol = new MethodOfLines(grid).addAdvection(0, 2, 0, 0);
+		mol.setBoundary(BoundaryCondition.PERIODIC);
+
+		double[] y = new double[n];
+		for (int i = 0; i < n; i++) y[i] = i;
+		double[] out = new double[n];
+		mol.getRate(out, 0, y);
+		// upwind difference takes the left neighbour, which wraps at i = 0
+		assertEquals(-2 * (0 - (n - 1)) / 0.5, out[0], 1e-12);
+		assertEquals(-2 * (5 - 4) / 0.5, out[5], 1e-12);
+		assertEquals(n - 1, mol.getUpperBandwidth());
+	}
+
+	@Test
+	public void parallelEvaluationMatchesSequential() {
+		Grid grid = Grid.box(9, 8, 7, 1, 0.5, 2, 2);
+		MethodOfLines mol = new MethodOfLines(grid).addDiffusion(0, 1).addDiffusion(1, 0.5)
+				.addAdvection(0, 1, -2, 0.5);
+		mol.setBoundary(0, 0, BoundaryCondition.PERIODIC);
+		mol.setBoundary(1, 1, 0, BoundaryCondition.dirichlet(3));
+
+		double[] y = new double[grid.size()];
+		for (int p = 0; p < y.length; p++) y[p] = Math.sin(0.37 * p);
+		double[] expected = new double[y.length];
+		mol.getRate(expected, 0, y);
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			ParallelODE ode = new ParallelODE(mol, pool);
+			ode.setGrainSize(1);
+			double[] out = new double[y.length];
+			ode.getRate(out, 0, y);
+			for (int p = 0; p < y.length; p++) assertEquals(expected[p], out[p], 0);
+
+			DoubleBuffer rate = DoubleBuffer.allocate(y.length);
+			ode.getRate(rate, 0, DoubleBuffer.wrap(y));
+			for (int p = 0; p < y.length; p++) assertEquals(expected[p], rate.get(p), 0);
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package fdm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.grogra.numeric.Monitor;
+import de.grogra.numeric.NumericException;
+import de.grogra.numeric.ODE;
+import de.grogra.numeric.RosenbrockSolver;
+import de.grogra.numeric.RosenbrockSolver.Method;
+
+public class RosenbrockSolverTest {
+
+	// nonlinear and non-autonomous, so that df/dt enters the stages
+	static final ODE PROBLEM = (rate, t, y) -> {
+		rate[0] = -2 * y[0] + y[1] * y[1] + Math.cos(t);
+		rate[1] = y[0] - 0.5 * y[1] * y[1] - Math.sin(3 * t) * y[0];
+	};
+
+	// integrate with n constant steps
+	static double[] solve(Method method, int n) throws NumericException {
+		RosenbrockSolver solver = new RosenbrockSolver(method);
+		solver.setRelTolDefault(1e3);
+		solver.setAbsTolDefault(1e3);
+		solver.setInitialStep(1.0 / n);
+		solver.setMaxStep(1.0 / n);
+		double[] y = { 1, 0.5 };
+		solver.integrate(PROBLEM, 0, y, 1, y);
+		return y;
+	}
+
+	@Test
+	public void orderOfConvergence() throws Exception {
+		for (Method method : Method.values()) {
+			double[] ref = solve(Method.RODAS4, 2048);
+			double[] y1 = solve(method, 16);
+			double[] y2 = solve(method, 32);
+			double e1 = Math.hypot(y1[0] - ref[0], y1[1] - ref[1]);
+			double e2 = Math.hypot(y2[0] - ref[0], y2[1] - ref[1]);
+			double order = Math.log(e1 / e2) / Math.log(2);
+			assertEquals(method.toString(), method.getOrder(), order, 0.3);
+		}
+	}
+
+	@Test
+	public void robertson() throws Exception {
+		for (Method method : Method.values()) {
+			RosenbrockSolver solver = new RosenbrockSolver(method);
+			solver.setAutonomous(true);
+			solver.setRelTolDefault(1e-6);
+			solver.setTolerances(new double[] { 1e-8, 1e-12, 1e-8 }, null);
+			double[] y = { 1, 0, 0 };
+			solver.integrate((ODE) (rate, t, s) -> {
+				rate[0] = -0.04 * s[0] + 1e4 * s[1] * s[2];
+				rate[2] = 3e7 * s[1] * s[1];
+				rate[1] = -rate[0] - rate[2];
+			}, 0, y, 40, y);
+			assertEquals(0.7158271, y[0], 1e-4);
+			assertEquals(9.185535e-6, y[1], 1e-9);
+			assertEquals(0.2841637, y[2], 1e-4);
+			assertTrue(solver.getStepCount() < 1000);
+		}
+	}
+
+	@Test
+	public void denseOutputLocatesEvent() throws Exception {
+		RosenbrockSolver solver = new RosenbrockSolver(Method.RODAS4);
+		solver.setRelTolDefault(1e-8);
+		solver.setAbsTolDefault(1e-10);
+		final double[] event = new double[1];
+		solver.setMonitor(1, new Monitor() {
+			@Override
+			public void g(double[] out, double t, double[] y) {
+				out[0] = y[0] - 0.5;
+			}
+
+			@Override
+			public boolean handleEvent(int i, double t, double[] y) {
+				event[0] = t;
+				return true;
+			}
+		});
+		double[] y = { 1 };
+		solver.integrate((ODE) (rate, t, s) -> rate[0] = -s[0], 0, y, 5, y);
+		assertEquals(Math.log(2), event[0], 1e-6);
+		assertEquals(0.5, y[0], 1e-6);
+	}
+}
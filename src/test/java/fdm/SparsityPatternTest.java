@@ -0,0 +1,74 @@
+package fdm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.DoubleBuffer;
+
+import org.junit.Test;
+
+import de.grogra.numeric.BufferJacobianMatrix;
+import de.grogra.numeric.ColoredJacobian;
+import de.grogra.numeric.ODE;
+import de.grogra.numeric.SparsityPattern;
+
+public class SparsityPatternTest {
+
+	// 1D reaction-diffusion, y_i' = y_{i-1} - 2 y_i + y_{i+1} - y_i^2
+	static final ODE DIFFUSION = new ODE() {
+		@Override
+		public void getRate(double[] out, double t, double[] y) {
+			int n = y.length;
+			for (int i = 0; i < n; i++) {
+				double l = i > 0 ? y[i - 1] : 0;
+				double r = i < n - 1 ? y[i + 1] : 0;
+				out[i] = l - 2 * y[i] + r - y[i] * y[i];
+			}
+		}
+	};
+
+	@Test
+	public void detectsTridiagonalPattern() {
+		int n = 40;
+		double[] y = new double[n];
+		SparsityPattern p = SparsityPattern.detect(DIFFUSION, 0, y);
+		assertEquals(3 * n - 2, p.getNonZeroCount());
+		assertEquals(1, p.getUpperBandwidth());
+		assertEquals(1, p.getLowerBandwidth());
+		assertTrue(p.isNonZero(5, 6));
+		assertFalse(p.isNonZero(5, 7));
+		assertEquals(3, p.getColorCount());
+	}
+
+	@Test
+	public void coloringSeparatesColumnsSharingRows() {
+		SparsityPattern p = SparsityPattern.band(30, 2, 3);
+		int[] colors = p.getColumnColors();
+		for (int j = 0; j < 30; j++)
+			for (int k = j + 1; k < 30; k++)
+				if (colors[j] == colors[k])
+					for (int i = 0; i < 30; i++)
+						assertFalse(p.isNonZero(i, j) && p.isNonZero(i, k));
+		assertEquals(6, p.getColorCount());
+	}
+
+	@Test
+	public void coloredJacobianMatchesAnalytic() {
+		int n = 25;
+		double[] y = new double[n];
+		for (int i = 0; i < n; i++) y[i] = Math.sin(i);
+		double[] f = new double[n];
+		DIFFUSION.getRate(f, 0, y);
+
+		ColoredJacobian jacobian = new ColoredJacobian(DIFFUSION, SparsityPattern.detect(DIFFUSION, 0, y));
+		BufferJacobianMatrix J = new BufferJacobianMatrix(DoubleBuffer.allocate(n * n), n);
+		jacobian.getJacobian(J, 0, y, f);
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				double expected = i == j ? -2 - 2 * y[i] : Math.abs(i - j) == 1 ? 1 : 0;
+				assertEquals(expected, J.get(i, j), 1e-6);
+			}
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package fdm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import de.grogra.numeric.BDFSolver;
+import de.grogra.numeric.CVodeAdapter.Options;
+import de.grogra.numeric.ODE;
+import de.grogra.numeric.SwitchingSolver;
+
+public class SwitchingSolverTest {
+
+	@Test
+	public void nonStiffStaysExplicit() throws Exception {
+		SwitchingSolver solver = new SwitchingSolver();
+		solver.setRelTolDefault(1e-8);
+		solver.setAbsTolDefault(1e-10);
+		double[] y = { 1, 0 };
+		solver.integrate((ODE) (rate, t, s) -> {
+			rate[0] = s[1];
+			rate[1] = -s[0];
+		}, 0, y, 10, y);
+		assertEquals(Math.cos(10), y[0], 1e-6);
+		assertEquals(-Math.sin(10), y[1], 1e-6);
+		assertFalse(solver.isStiff());
+		assertEquals(0, solver.getJacobianCount());
+	}
+
+	@Test
+	public void vanDerPolSwitchesBothWays() throws Exception {
+		final double mu = 100;
+		ODE vdp = (rate, t, s) -> {
+			rate[0] = s[1];
+			rate[1] = mu * ((1 - s[0] * s[0]) * s[1]) - s[0];
+		};
+		SwitchingSolver solver = new SwitchingSolver();
+		double[] y = { 2, 0 };
+		solver.integrate(vdp, 0, y, 200, y);
+
+		BDFSolver bdf = new BDFSolver();
+		bdf.setRelTolDefault(1e-8);
+		bdf.setAbsTolDefault(1e-10);
+		double[] ref = { 2, 0 };
+		bdf.integrate(vdp, 0, ref, 200, ref);
+
+		assertEquals(ref[0], y[0], 1e-3);
+		// stiff along the slow branches, non-stiff in the fast transitions
+		assertTrue(solver.getSwitchCount() >= 2);
+	}
+
+	@Test
+	public void optionsApplyToBDF() throws Exception {
+		Map<Options, Object> map = new EnumMap<>(Options.class);
+		map.put(Options.MAX_ORDER, 2);
+		SwitchingSolver solver = new SwitchingSolver();
+		solver.setOptions(map);
+		assertEquals(2, solver.getMaxOrder());
+		map.put(Options.MAX_ORDER, 0);
+		solver.setOptions(map);
+		assertEquals(BDFSolver.MAX_ORDER, solver.getMaxOrder());
+	}
+}
@@ -0,0 +1,80 @@
+package fdm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.commons.math.ode.nonstiff.DormandPrince853Integrator;
+import org.junit.Test;
+
+import de.grogra.numeric.FirstOrderIntegratorAdapter;
+import de.grogra.numeric.ODE;
+import de.grogra.numeric.TrajectoryReader;
+import de.grogra.numeric.TrajectoryWriter;
+
+public class TrajectoryWriterTest {
+
+	@Test
+	public void recordsStepsOfIntegration() throws Exception {
+		Path file = Files.createTempFile("trajectory", ".bin");
+		try {
+			FirstOrderIntegratorAdapter solver = new FirstOrderIntegratorAdapter(
+					new DormandPrince853Integrator(0, Double.POSITIVE_INFINITY, 1e-10, 1e-10));
+			double[] y = { 1, 2 };
+			// small windows to map several of them
+			try (TrajectoryWriter writer = new TrajectoryWriter(file, 2, 3)) {
+				solver.addStepHandler(writer);
+				solver.integrate((ODE) (rate, t, s) -> {
+					rate[0] = -s[0];
+					rate[1] = -2 * s[1];
+				}, 0, y, 5, y);
+			}
+			try (TrajectoryReader reader = new TrajectoryReader(file)) {
+				assertEquals(2, reader.getDimension());
+				assertTrue(reader.getCount() > 6);
+				assertEquals(0, reader.getTime(0), 0);
+				assertEquals(5, reader.getTime(reader.getCount() - 1), 1e-12);
+				double[] s = new double[2];
+				for (long k = 0; k < reader.getCount(); k++) {
+					double t = reader.getTime(k);
+					if (k > 0) {
+						assertTrue(t > reader.getTime(k - 1));
+					}
+					reader.getState(k, s);
+					assertEquals(Math.exp(-t), s[0], 1e-8);
+					assertEquals(2 * Math.exp(-2 * t), reader.getState(k, 1), 1e-8);
+				}
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void rereadsFlushedRecords() throws Exception {
+		Path file = Files.createTempFile("trajectory", ".bin");
+		try {
+			try (TrajectoryWriter writer = new TrajectoryWriter(file, 1, 4)) {
+				for (int k = 0; k < 10; k++) {
+					writer.write(k, new double[] { k * k });
+				}
+				writer.flush();
+				try (TrajectoryReader reader = new TrajectoryReader(file)) {
+					assertEquals(10, reader.getCount());
+					assertEquals(81, reader.getState(9, 0), 0);
+				}
+				writer.write(10, new double[] { 100 });
+			}
+			try (TrajectoryReader reader = new TrajectoryReader(file)) {
+				assertEquals(11, reader.getCount());
+				assertEquals(10, reader.getTime(10), 0);
+				assertEquals(100, reader.getState(10, 0), 0);
+				assertEquals(16, reader.getState(4, new double[1])[0], 0);
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+}